@@ -1,7 +1,8 @@
 import React, { useState, ChangeEvent, FormEvent, useEffect } from "react";
 import {
   addDataEntry,
-  getUserData,
+  syncUserData,
+  watchUserData,
   deleteBudgetEntry,
   updateSpentAmount,
 } from "../utils/api";
@@ -85,7 +86,7 @@ const Budget: React.FC<BudgetProps> = ({ userId }) => {
 
   async function fetchUserData() {
     try {
-      const userData = await getUserData(userId);
+      const userData = await syncUserData(userId);
       const formattedData = userData.data.map(
         (entry: {
           category: string;
@@ -112,6 +113,7 @@ const Budget: React.FC<BudgetProps> = ({ userId }) => {
 
   useEffect(() => {
     fetchUserData();
+    return watchUserData(userId, () => fetchUserData());
   }, []);
 
   const handleDelete = async (category: string) => {
@@ -128,7 +130,7 @@ const Budget: React.FC<BudgetProps> = ({ userId }) => {
 
   const handleUpdateSpent = async (category: string) => {
     const amount = spentUpdateAmount[category];
-    const userData = await getUserData(userId);
+    const userData = await syncUserData(userId);
     const currentAmount = userData.data.filter(
       (entry: any) => entry.category == category
     )[0].spent;
@@ -22,7 +22,8 @@ import aliveOrchid from "./plants/orchid_alive.png";
 import deadOrchid from "./plants/orchid_dead.png";
 import wiltOrchid from "./plants/orchid_wilted.png";
 import {
-  getUserData,
+  syncUserData,
+  watchUserData,
   updateSpentAmount,
   deleteBudgetEntry,
 } from "../utils/api";
@@ -181,7 +182,7 @@ const Garden: React.FC<GardenProps> = ({ userId }) => {
   useEffect(() => {
     let isMounted = true;
 
-    async function fetchData() {
+    async function fetchData(initial: boolean) {
       if (!userId) {
         setError("User ID is missing.");
         setIsLoading(false);
@@ -189,10 +190,10 @@ const Garden: React.FC<GardenProps> = ({ userId }) => {
       }
 
       try {
-        setIsLoading(true);
+        if (initial) setIsLoading(true);
         setError(null);
 
-        const userData = await getUserData(userId);
+        const userData = await syncUserData(userId);
 
         if (!isMounted) return;
 
@@ -229,10 +230,12 @@ const Garden: React.FC<GardenProps> = ({ userId }) => {
       }
     }
 
-    fetchData();
+    fetchData(true);
+    const unwatch = userId ? watchUserData(userId, () => fetchData(false)) : () => {};
 
     return () => {
       isMounted = false;
+      unwatch();
     };
   }, [userId]);
 
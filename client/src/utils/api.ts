@@ -44,6 +44,56 @@ export async function getUserData(user: string) {
   return response;
 }
 
+// Per-user copy of the budgets kept in sync through the /changes feed, so that
+// only what changed since the last sync is downloaded.
+interface SyncState {
+  epoch: string;
+  version: number;
+  budgets: Map<string, any>;
+}
+
+const syncStates: Record<string, SyncState> = {};
+
+export async function syncUserData(user: string) {
+  const state = syncStates[user];
+  const params: Record<string, string> = { user: user };
+  if (state) {
+    params.epoch = state.epoch;
+    params.since = state.version.toString();
+  }
+
+  const response = await queryAPI("changes", params);
+  if (response.response_type !== "success") {
+    return response;
+  }
+
+  const budgets: Map<string, any> =
+    state && !response.reset ? state.budgets : new Map();
+  for (const category of response.deletes) {
+    budgets.delete(category);
+  }
+  for (const entry of response.upserts) {
+    budgets.set(entry.category, entry);
+  }
+  syncStates[user] = {
+    epoch: response.epoch,
+    version: response.version,
+    budgets: budgets,
+  };
+
+  // same shape as getUserData
+  return { response_type: "success", data: Array.from(budgets.values()) };
+}
+
+// Opens a push channel that calls onChange whenever the user's budgets change
+// on the server (e.g. from another device). Returns a function that closes it.
+export function watchUserData(user: string, onChange: () => void) {
+  const params = new URLSearchParams({ user: user }).toString();
+  const socket = new WebSocket(`${HOST.replace(/^http/, "ws")}/push?${params}`);
+  socket.onmessage = () => onChange();
+  return () => socket.close();
+}
+
 export async function deleteBudgetEntry(user: string, category: string) {
   const response = await queryAPI("delete", {
     user: user,
@@ -0,0 +1,93 @@
+package edu.brown.cs.student.bench;
+
+import edu.brown.cs.student.main.server.alerts.AlertEngine;
+import edu.brown.cs.student.main.server.synthetic.SyntheticDataGenerator;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures what {@link AlertEngine} adds to each budget write, with many budgets already tracked,
+ * against re-checking the writer's whole collection as a scan-based checker would.
+ *
+ * <p>Run with: mvn -Pbench test-compile exec:exec@bench -Dbench.args="-f 1 AlertEngine"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+public class AlertEngineBenchmark {
+
+  @Param({"1000", "100000"})
+  public int users;
+
+  private AlertEngine engine;
+  private List<Map<String, Object>> collection;
+  private Map<String, Object> under;
+  private Map<String, Object> alerted;
+  private int next;
+
+  @Setup
+  public void setup() {
+    // alerts are queued but never delivered; setup queues at most one per budget
+    this.engine = new AlertEngine(alerts -> {}, System::currentTimeMillis, this.users * 8 + 1);
+    SyntheticDataGenerator generator = new SyntheticDataGenerator(42, 8, 0);
+    for (int user = 0; user < this.users; user++) {
+      for (Map<String, Object> budget : generator.budgets(user)) {
+        this.engine.evaluate("user-" + user, "doc-" + budget.get("category"), budget);
+      }
+    }
+    this.collection = new ArrayList<>(generator.budgets(0));
+    this.under = budget("10");
+    this.alerted = budget("95");
+    this.engine.evaluate("user-0", "doc-alerted", this.alerted);
+  }
+
+  private static Map<String, Object> budget(String spent) {
+    Map<String, Object> budget = new HashMap<>();
+    budget.put("category", "alerted");
+    budget.put("budget", "100");
+    budget.put("spent", spent);
+    budget.put("time", "2024-01-01T00:00");
+    return budget;
+  }
+
+  /** A write below every threshold: the common case. */
+  @Benchmark
+  public Object evaluateUnderThreshold() {
+    return this.engine.evaluate("user-" + (this.next++ % this.users), "doc-under", this.under);
+  }
+
+  /** A write past a threshold that was already alerted this period. */
+  @Benchmark
+  public Object evaluateAlreadyAlerted() {
+    return this.engine.evaluate("user-0", "doc-alerted", this.alerted);
+  }
+
+  /** The baseline: recomputing every budget of the writer's collection. */
+  @Benchmark
+  public int scanCollection() {
+    int over = 0;
+    for (Map<String, Object> budget : this.collection) {
+      double limit = Double.parseDouble(budget.get("budget").toString());
+      double spent = Double.parseDouble(budget.get("spent").toString());
+      for (int threshold : AlertEngine.DEFAULT_THRESHOLDS) {
+        if (spent * 100 >= threshold * limit) {
+          over++;
+        }
+      }
+    }
+    return over;
+  }
+}
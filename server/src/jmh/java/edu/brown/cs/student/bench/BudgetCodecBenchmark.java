@@ -0,0 +1,77 @@
+package edu.brown.cs.student.bench;
+
+import com.squareup.moshi.JsonAdapter;
+import com.squareup.moshi.Moshi;
+import com.squareup.moshi.Types;
+import edu.brown.cs.student.main.server.codec.BudgetCodec;
+import edu.brown.cs.student.main.server.synthetic.SyntheticDataGenerator;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Compares {@link BudgetCodec} with the Moshi JSON the handlers use, on one user's synthetic budget
+ * collection. Encoded sizes are printed once during setup.
+ *
+ * <p>Run with: mvn -Pbench test-compile exec:exec@bench -Dbench.args="-f 1 BudgetCodec"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+public class BudgetCodecBenchmark {
+
+  @Param({"5", "50"})
+  public int budgets;
+
+  private List<Map<String, Object>> collection;
+  private JsonAdapter<List<Map<String, Object>>> adapter;
+  private byte[] binary;
+  private byte[] json;
+
+  @Setup
+  public void setup() {
+    Type listOfMaps =
+        Types.newParameterizedType(
+            List.class, Types.newParameterizedType(Map.class, String.class, Object.class));
+    this.adapter = new Moshi.Builder().build().adapter(listOfMaps);
+    this.collection = new SyntheticDataGenerator(42, this.budgets, 0).budgets(0);
+    this.binary = BudgetCodec.encodeAll(this.collection);
+    this.json = this.adapter.toJson(this.collection).getBytes(StandardCharsets.UTF_8);
+    System.out.printf(
+        "%n%d budgets: %d bytes binary, %d bytes JSON%n",
+        this.budgets, this.binary.length, this.json.length);
+  }
+
+  @Benchmark
+  public byte[] encodeBinary() {
+    return BudgetCodec.encodeAll(this.collection);
+  }
+
+  @Benchmark
+  public List<Map<String, Object>> decodeBinary() {
+    return BudgetCodec.decodeAll(this.binary);
+  }
+
+  @Benchmark
+  public byte[] encodeJson() {
+    return this.adapter.toJson(this.collection).getBytes(StandardCharsets.UTF_8);
+  }
+
+  @Benchmark
+  public List<Map<String, Object>> decodeJson() throws IOException {
+    return this.adapter.fromJson(new String(this.json, StandardCharsets.UTF_8));
+  }
+}
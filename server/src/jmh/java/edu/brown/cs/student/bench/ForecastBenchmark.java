@@ -0,0 +1,77 @@
+package edu.brown.cs.student.bench;
+
+import edu.brown.cs.student.main.server.forecast.CategoryForecast;
+import edu.brown.cs.student.main.server.forecast.SpendForecaster;
+import edu.brown.cs.student.main.server.rollover.RolloverScheduler;
+import edu.brown.cs.student.main.server.storage.InMemoryStorage;
+import edu.brown.cs.student.main.server.storage.VersionedStorage;
+import edu.brown.cs.student.main.server.synthetic.SyntheticDataGenerator;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures {@link SpendForecaster} answering for a user with 8 budgets and a year of history: with
+ * nothing written since the last forecast, and right after a write to one budget.
+ *
+ * <p>Run with: mvn -Pbench test-compile exec:exec@bench -Dbench.args="-f 1 Forecast"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+public class ForecastBenchmark {
+
+  private VersionedStorage storage;
+  private SpendForecaster forecaster;
+  private Map<String, Object> written;
+  private int spent;
+
+  @Setup
+  public void setup() throws InterruptedException, ExecutionException {
+    this.storage = new VersionedStorage(new InMemoryStorage(16, 64L * 1024 * 1024));
+    List<Map<String, Object>> budgets = new SyntheticDataGenerator(42, 8, 10).budgets(0);
+    for (Map<String, Object> budget : budgets) {
+      this.storage.addDocument("user-0", "doc-" + budget.get("category"), budget);
+      for (int month = 1; month <= 12; month++) {
+        String end = LocalDateTime.of(2023, month, 1, 0, 0).toString();
+        Map<String, Object> period = new HashMap<>(budget);
+        period.put("period_end", end);
+        this.storage.addDocument(
+            RolloverScheduler.HISTORY_PREFIX + "user-0",
+            "doc-" + budget.get("category") + "-" + end,
+            period);
+      }
+    }
+    long now = LocalDateTime.of(2024, 1, 11, 0, 0).toInstant(ZoneOffset.UTC).toEpochMilli();
+    this.forecaster = new SpendForecaster(this.storage, ZoneOffset.UTC, () -> now, 1000);
+    this.written = new HashMap<>(budgets.get(0));
+    this.forecaster.forecast("user-0");
+  }
+
+  @Benchmark
+  public List<CategoryForecast> forecastUnchanged()
+      throws InterruptedException, ExecutionException {
+    return this.forecaster.forecast("user-0");
+  }
+
+  @Benchmark
+  public List<CategoryForecast> forecastAfterWrite()
+      throws InterruptedException, ExecutionException {
+    this.written.put("spent", String.valueOf(this.spent++ % 1000));
+    this.storage.addDocument("user-0", "doc-" + this.written.get("category"), this.written);
+    return this.forecaster.forecast("user-0");
+  }
+}
@@ -0,0 +1,123 @@
+package edu.brown.cs.student.main.server;
+
+import edu.brown.cs.student.main.server.analytics.SpendingAggregator;
+import edu.brown.cs.student.main.server.analytics.SpendingStats;
+import edu.brown.cs.student.main.server.storage.DocumentWrite;
+import edu.brown.cs.student.main.server.storage.FirebaseUtilities;
+import edu.brown.cs.student.main.server.storage.StorageInterface;
+import io.github.cdimascio.dotenv.Dotenv;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Nightly job computing spending trends across every user: average utilization and overspend rate
+ * per category, and how many plants are alive, wilting or dead. Users are streamed in chunks, so
+ * only two chunks are ever held in memory: the one being aggregated on the fork/join pool and the
+ * next one being read.
+ */
+public class BatchAnalyticsJob {
+
+  public static final String SUMMARY_COLLECTION = "analytics-summary";
+  private static final int MAX_CATEGORIES = 500;
+
+  private final StorageInterface storage;
+  private final int chunkSize;
+  private final int maxInFlight;
+  private final ForkJoinPool pool;
+
+  /**
+   * @param storage where the user collections live and the summary is written
+   * @param chunkSize how many users to read at a time
+   * @param maxInFlight the most collection reads outstanding at once
+   * @param pool the pool to aggregate on
+   */
+  public BatchAnalyticsJob(
+      StorageInterface storage, int chunkSize, int maxInFlight, ForkJoinPool pool) {
+    this.storage = storage;
+    this.chunkSize = chunkSize;
+    this.maxInFlight = maxInFlight;
+    this.pool = pool;
+  }
+
+  /**
+   * Reads every user collection and aggregates it.
+   *
+   * @return the totals over all users
+   */
+  public SpendingStats aggregate() throws InterruptedException, ExecutionException {
+    List<String> users = new ArrayList<>();
+    for (String collection_id : this.storage.listCollections()) {
+      if (collection_id.startsWith("user-")) {
+        users.add(collection_id);
+      }
+    }
+
+    SpendingStats total = new SpendingStats();
+    ForkJoinTask<SpendingStats> pending = null;
+    for (int start = 0; start < users.size(); start += this.chunkSize) {
+      List<String> chunk = users.subList(start, Math.min(users.size(), start + this.chunkSize));
+      Map<String, List<Map<String, Object>>> collections =
+          this.storage.getCollections(chunk, this.maxInFlight);
+      // the previous chunk was aggregating while this one was read
+      if (pending != null) {
+        total.merge(pending.get());
+      }
+      pending = this.pool.submit(new SpendingAggregator(new ArrayList<>(collections.values())));
+    }
+    if (pending != null) {
+      total.merge(pending.get());
+    }
+    return total;
+  }
+
+  /**
+   * Replaces the summary collection with the totals. The collection is cleared first, so categories
+   * missing from this run do not linger from earlier ones; readers may briefly find it empty.
+   *
+   * @param stats the totals to write
+   */
+  public void writeSummary(SpendingStats stats) throws InterruptedException, ExecutionException {
+    List<DocumentWrite> writes = new ArrayList<>();
+    stats
+        .toDocuments(MAX_CATEGORIES)
+        .forEach((doc_id, data) -> writes.add(new DocumentWrite(SUMMARY_COLLECTION, doc_id, data)));
+    this.storage.clearCollection(SUMMARY_COLLECTION);
+    this.storage.addDocuments(writes);
+  }
+
+  /**
+   * Runs the job once against Firebase.
+   *
+   * @param args none
+   */
+  public static void main(String[] args) {
+    try {
+      BatchAnalyticsJob job =
+          new BatchAnalyticsJob(
+              FirebaseUtilities.fromEnvironment(Dotenv.configure().ignoreIfMissing().load()),
+              1000,
+              64,
+              ForkJoinPool.commonPool());
+      long start = System.nanoTime();
+      SpendingStats stats = job.aggregate();
+      job.writeSummary(stats);
+      System.out.printf(
+          "Aggregated %d budgets of %d users in %d ms%n",
+          stats.getBudgets(), stats.getUsers(), (System.nanoTime() - start) / 1_000_000);
+    } catch (IOException e) {
+      e.printStackTrace();
+      System.err.println(
+          "Error: Could not initialize Firebase. Likely due to firebase_config.json not being found. Exiting.");
+      System.exit(1);
+    } catch (InterruptedException | ExecutionException e) {
+      e.printStackTrace();
+      System.err.println("Error: analytics job failed.");
+      System.exit(1);
+    }
+  }
+}
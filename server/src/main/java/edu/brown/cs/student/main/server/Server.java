@@ -2,17 +2,71 @@ package edu.brown.cs.student.main.server;
 
 import static spark.Spark.after;
 
+import edu.brown.cs.student.main.server.alerts.AlertEngine;
+import edu.brown.cs.student.main.server.alerts.AlertNotifier;
+import edu.brown.cs.student.main.server.alerts.FileAlertNotifier;
+import edu.brown.cs.student.main.server.alerts.InMemoryAlertNotifier;
+import edu.brown.cs.student.main.server.filters.CompressionFilter;
+import edu.brown.cs.student.main.server.forecast.SpendForecaster;
 import edu.brown.cs.student.main.server.handlers.AddHandler;
+import edu.brown.cs.student.main.server.handlers.AlertsHandler;
+import edu.brown.cs.student.main.server.handlers.ChangesHandler;
 import edu.brown.cs.student.main.server.handlers.DeleteHandler;
+import edu.brown.cs.student.main.server.handlers.ForecastHandler;
 import edu.brown.cs.student.main.server.handlers.GetUserDataHandler;
+import edu.brown.cs.student.main.server.handlers.MetricsHandler;
 import edu.brown.cs.student.main.server.handlers.OpenAIAdviceHandler;
 import edu.brown.cs.student.main.server.handlers.OpenAISummaryHandler;
+import edu.brown.cs.student.main.server.handlers.ReadinessHandler;
 import edu.brown.cs.student.main.server.handlers.UpdateSpentHandler;
+import edu.brown.cs.student.main.server.insights.AdviceCache;
+import edu.brown.cs.student.main.server.insights.InsightRace;
+import edu.brown.cs.student.main.server.insights.SummaryPrecomputer;
+import edu.brown.cs.student.main.server.invalidation.InvalidationBus;
+import edu.brown.cs.student.main.server.invalidation.MulticastInvalidationBus;
+import edu.brown.cs.student.main.server.metrics.Metrics;
+import edu.brown.cs.student.main.server.openai.BudgetPromptBuilder;
+import edu.brown.cs.student.main.server.openai.CircuitBreaker;
+import edu.brown.cs.student.main.server.openai.LazyOpenAIClient;
 import edu.brown.cs.student.main.server.openai.OpenAIClient;
 import edu.brown.cs.student.main.server.openai.OpenAIClientInterface;
+import edu.brown.cs.student.main.server.openai.ResilientOpenAIClient;
+import edu.brown.cs.student.main.server.push.PushHub;
+import edu.brown.cs.student.main.server.push.PushWebSocket;
+import edu.brown.cs.student.main.server.ratelimit.RateLimitFilter;
+import edu.brown.cs.student.main.server.ratelimit.RateLimiter;
+import edu.brown.cs.student.main.server.rollover.RolloverScheduler;
+import edu.brown.cs.student.main.server.sharding.HashRing;
+import edu.brown.cs.student.main.server.sharding.ShardRouter;
+import edu.brown.cs.student.main.server.shutdown.ShutdownCoordinator;
+import edu.brown.cs.student.main.server.startup.Lazy;
 import edu.brown.cs.student.main.server.storage.FirebaseUtilities;
-import edu.brown.cs.student.main.server.storage.StorageInterface;
+import edu.brown.cs.student.main.server.storage.InMemoryStorage;
+import edu.brown.cs.student.main.server.storage.LazyStorage;
+import edu.brown.cs.student.main.server.storage.ReplicatedStorage;
+import edu.brown.cs.student.main.server.storage.StorageSnapshot;
+import edu.brown.cs.student.main.server.storage.VersionedStorage;
+import io.github.cdimascio.dotenv.Dotenv;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import spark.Filter;
 import spark.Spark;
 
@@ -20,28 +74,241 @@ import spark.Spark;
 public class Server {
 
   public static void setUpServer() {
-    int port = 3232;
+    Dotenv env = Dotenv.configure().ignoreIfMissing().load();
+    // PORT lets several instances run side by side, e.g. as shards on one machine
+    int port = Integer.parseInt(env.get("PORT", "3232"));
     Spark.port(port);
+    // on SIGTERM, requests get SHUTDOWN_DRAIN_MS (default 10 seconds) to finish, and shutting down
+    // as a whole SHUTDOWN_TIMEOUT_MS (default 25 seconds, inside the usual 30 second grace period)
+    ShutdownCoordinator shutdown =
+        new ShutdownCoordinator(
+            Duration.ofMillis(Long.parseLong(env.get("SHUTDOWN_DRAIN_MS", "10000"))),
+            Duration.ofMillis(Long.parseLong(env.get("SHUTDOWN_TIMEOUT_MS", "25000"))));
+    shutdown.installShutdownHook();
 
-    after(
-        (Filter)
-            (request, response) -> {
-              response.header("Access-Control-Allow-Origin", "*");
-              response.header("Access-Control-Allow-Methods", "*");
-            });
-
-    StorageInterface firebaseUtils;
+    VersionedStorage firebaseUtils;
     OpenAIClientInterface openAIClient;
+    // Firestore (with gRPC) and OpenAI are slow to load, so they start in the background while the
+    // routes are registered; /ready reports when they are done
+    ExecutorService startup =
+        Executors.newCachedThreadPool(
+            runnable -> {
+              Thread thread = new Thread(runnable, "startup");
+              thread.setDaemon(true);
+              return thread;
+            });
+    List<Lazy<?>> dependencies = new ArrayList<>();
     try {
-      firebaseUtils = new FirebaseUtilities();
-      openAIClient = new OpenAIClient();
+      if ("memory".equals(env.get("STORAGE"))) {
+        // self-hosted: everything lives in process, snapshotted to disk every minute
+        firebaseUtils = new VersionedStorage(openInMemoryStorage(env, shutdown));
+      } else {
+        // reads of active users are served from listener-maintained replicas, dropped after 10
+        // minutes without use; with INVALIDATION_BUS=multicast, instances sharing the Firestore
+        // project on this machine tell each other about their writes
+        Lazy<FirebaseUtilities> firestore =
+            new Lazy<>("storage", () -> FirebaseUtilities.fromEnvironment(env));
+        firestore.start(startup);
+        dependencies.add(firestore);
+        shutdown.addStep(
+            ShutdownCoordinator.Stage.STORAGE,
+            "firestore",
+            remaining -> {
+              // writes issued while it was still starting are waiting for it, so wait too
+              long start = System.nanoTime();
+              FirebaseUtilities started = firestore.await(remaining);
+              if (started != null) {
+                started.close(
+                    Duration.ofNanos(
+                        Math.max(0, remaining.toNanos() - (System.nanoTime() - start))));
+              }
+            });
+        firebaseUtils =
+            new VersionedStorage(
+                new ReplicatedStorage(
+                    new LazyStorage<>(firestore), TimeUnit.MINUTES.toMillis(10), 2000, 10_000),
+                invalidationBus(env, shutdown));
+      }
+      Lazy<OpenAIClient> openAI = new Lazy<>("openai", OpenAIClient::new);
+      openAI.start(startup);
+      dependencies.add(openAI);
+      shutdown.addStep(
+          ShutdownCoordinator.Stage.CLIENTS,
+          "openai",
+          remaining -> {
+            if (openAI.getState() == Lazy.State.READY) {
+              openAI.get().close();
+            }
+          });
+      shutdown.addStep(
+          ShutdownCoordinator.Stage.CLIENTS, "startup", remaining -> startup.shutdownNow());
+
+      // web sockets must be registered before any filter or route
+      Spark.webSocket("/push", new PushWebSocket(new PushHub(firebaseUtils)));
+      // first of the filters, so requests turned away while shutting down skip the others
+      shutdown.registerFilters();
+
+      after(
+          (Filter)
+              (request, response) -> {
+                response.header("Access-Control-Allow-Origin", "*");
+                response.header("Access-Control-Allow-Methods", "*");
+              });
+      after(new CompressionFilter(1024));
+
+      // with SHARD_NODES (comma-separated base URLs of every instance, this one included as
+      // SHARD_SELF) each user is served by one instance, which also does their background work;
+      // SHARD_MODE=redirect sends clients there instead of forwarding their requests
+      HashRing shardRing = shardRing(env);
+      String shardSelf = env.get("SHARD_SELF", "http://localhost:" + port);
+      if (shardRing != null) {
+        ShardRouter.Mode mode =
+            ShardRouter.Mode.valueOf(env.get("SHARD_MODE", "forward").toUpperCase(Locale.ROOT));
+        System.out.println(
+            "Sharding users over " + shardRing.nodes() + " as " + shardSelf + " (" + mode + ")");
+        Spark.before(new ShardRouter(shardRing, shardSelf, mode, Duration.ofSeconds(25)));
+      }
+
+      // budgets whose period has ended are archived and reset every minute; the index of due
+      // dates is built from storage in the background
+      RolloverScheduler rollovers =
+          new RolloverScheduler(
+              firebaseUtils,
+              ZoneId.systemDefault(),
+              System::currentTimeMillis,
+              250,
+              64,
+              shardRing,
+              shardSelf);
+      rollovers.registerMetrics("rollover");
+      ScheduledExecutorService rolloverExecutor =
+          Executors.newSingleThreadScheduledExecutor(
+              runnable -> {
+                Thread thread = new Thread(runnable, "budget-rollover");
+                thread.setDaemon(true);
+                return thread;
+              });
+      rolloverExecutor.execute(
+          () -> {
+            try {
+              System.out.println("Scheduled rollovers of " + rollovers.scheduleAll() + " budgets");
+            } catch (InterruptedException | ExecutionException | RuntimeException e) {
+              System.err.println("Error scheduling budget rollovers: " + e.getMessage());
+            }
+          });
+      rollovers.start(rolloverExecutor, TimeUnit.MINUTES.toMillis(1));
+      // a rollover in progress finishes its writes; later ones are cancelled
+      shutdown.addStep(
+          ShutdownCoordinator.Stage.WRITERS,
+          "rollovers",
+          remaining -> {
+            rolloverExecutor.shutdown();
+            rolloverExecutor.awaitTermination(remaining.toMillis(), TimeUnit.MILLISECONDS);
+          });
 
-      Spark.get("add", new AddHandler(firebaseUtils));
-      Spark.get("get-user-data", new GetUserDataHandler(firebaseUtils));
-      Spark.get("delete", new DeleteHandler(firebaseUtils));
-      Spark.get("update-spent", new UpdateSpentHandler(firebaseUtils));
-      Spark.get("summary", new OpenAISummaryHandler(firebaseUtils, openAIClient));
-      Spark.get("advice", new OpenAIAdviceHandler(firebaseUtils, openAIClient));
+      // budgets crossing their user's thresholds are kept for /alerts, and appended to ALERTS_FILE
+      // if it is set
+      InMemoryAlertNotifier recentAlerts = new InMemoryAlertNotifier(50);
+      AlertNotifier notifier = recentAlerts;
+      if (env.get("ALERTS_FILE") != null) {
+        notifier = notifier.andThen(new FileAlertNotifier(Paths.get(env.get("ALERTS_FILE"))));
+      }
+      AlertEngine alerts = new AlertEngine(notifier, System::currentTimeMillis, 10_000);
+      // until the saved rules are loaded, every user has the default thresholds
+      Lazy<Integer> alertRules = new Lazy<>("alert_rules", () -> alerts.loadRules(firebaseUtils));
+      alertRules.start(startup);
+      dependencies.add(alertRules);
+      alerts.start();
+      shutdown.addStep(ShutdownCoordinator.Stage.BUFFERS, "alerts", remaining -> alerts.stop());
+
+      // retry transient OpenAI failures, but give up on a request after 20 seconds and stop
+      // calling OpenAI for 30 seconds after 5 failures in a row
+      openAIClient =
+          new ResilientOpenAIClient(
+              new LazyOpenAIClient(openAI),
+              3,
+              Duration.ofMillis(250),
+              Duration.ofSeconds(4),
+              Duration.ofSeconds(20),
+              new CircuitBreaker(5, TimeUnit.SECONDS.toNanos(30), System::nanoTime));
+
+      // summaries and advice wait at most INSIGHTS_DEADLINE_MS (default 1.5 seconds) for OpenAI,
+      // then answer from local templates and forecasts; late answers are cached for next time
+      SpendForecaster forecaster =
+          new SpendForecaster(
+              firebaseUtils, ZoneId.systemDefault(), System::currentTimeMillis, 10_000);
+      // a short queue: a call that would wait behind a backlog would miss its deadline anyway, so
+      // once it is full requests are answered locally at once (the default policy rejects them)
+      ExecutorService insightExecutor =
+          new ThreadPoolExecutor(
+              4,
+              4,
+              0,
+              TimeUnit.MILLISECONDS,
+              new ArrayBlockingQueue<>(16),
+              runnable -> {
+                Thread thread = new Thread(runnable, "openai-insights");
+                thread.setDaemon(true);
+                return thread;
+              });
+      InsightRace insightRace =
+          new InsightRace(
+              openAIClient,
+              Duration.ofMillis(Long.parseLong(env.get("INSIGHTS_DEADLINE_MS", "1500"))),
+              insightExecutor,
+              1000);
+      // answers still racing would only be cached, so they are abandoned
+      shutdown.addStep(
+          ShutdownCoordinator.Stage.CLIENTS,
+          "insights",
+          remaining -> insightExecutor.shutdownNow());
+
+      // summaries of users who have opened Insights are regenerated in the background once their
+      // budgets have gone 30 seconds without a write
+      SummaryPrecomputer summaries =
+          new SummaryPrecomputer(
+              firebaseUtils,
+              openAIClient,
+              new BudgetPromptBuilder(600, 0.02),
+              Duration.ofSeconds(30),
+              1000,
+              10_000,
+              shardRing,
+              shardSelf);
+      shutdown.addStep(
+          ShutdownCoordinator.Stage.WRITERS, "summaries", remaining -> summaries.shutdown());
+
+      // advice is reused for goals at least ADVICE_SIMILARITY (default 0.8) alike from users with
+      // similar budgets, so OpenAI is asked for it with budget profiles instead of amounts
+      AdviceCache adviceCache =
+          new AdviceCache(Double.parseDouble(env.get("ADVICE_SIMILARITY", "0.8")), 10_000);
+
+      // each AI request costs an OpenAI call: allow a burst of 5 per user refilling one every 12
+      // seconds, and at most one per second (burst 60) across everyone
+      RateLimiter aiRateLimiter =
+          new RateLimiter(5, 12, 60, 1, 600, TimeUnit.SECONDS, System::nanoTime);
+      aiRateLimiter.registerMetrics("ratelimit.ai");
+      RateLimitFilter aiRateLimitFilter = new RateLimitFilter(aiRateLimiter);
+      Spark.before("/summary", aiRateLimitFilter);
+      Spark.before("/advice", aiRateLimitFilter);
+
+      Spark.get("add", new AddHandler(firebaseUtils, rollovers, alerts));
+      Spark.get("get-user-data", new GetUserDataHandler(firebaseUtils, firebaseUtils));
+      Spark.get("changes", new ChangesHandler(firebaseUtils));
+      Spark.get("delete", new DeleteHandler(firebaseUtils, alerts));
+      Spark.get("update-spent", new UpdateSpentHandler(firebaseUtils, alerts));
+      Spark.get(
+          "summary",
+          new OpenAISummaryHandler(
+              firebaseUtils, openAIClient, insightRace, forecaster, summaries));
+      Spark.get(
+          "advice",
+          new OpenAIAdviceHandler(
+              firebaseUtils, openAIClient, insightRace, forecaster, adviceCache));
+      Spark.get("alerts", new AlertsHandler(firebaseUtils, alerts, recentAlerts));
+      Spark.get("forecast", new ForecastHandler(forecaster));
+      Spark.get("metrics", new MetricsHandler());
+      Spark.get("ready", new ReadinessHandler(dependencies));
 
       Spark.notFound(
           (request, response) -> {
@@ -52,21 +319,145 @@ public class Server {
       Spark.init();
       Spark.awaitInitialization();
 
-      System.out.println("Server started at http://localhost:" + port);
+      long routesMillis = ManagementFactory.getRuntimeMXBean().getUptime();
+      Metrics.gauge("startup.routes_ms", () -> routesMillis);
+      System.out.println(
+          "Server started at http://localhost:" + Spark.port() + " in " + routesMillis + " ms");
     } catch (IOException e) {
       e.printStackTrace();
       System.err.println(
-          "Error: Could not initialize Firebase. Likely due to firebase_config.json not being found. Exiting.");
+          "Error: Could not initialize storage. Likely due to an unreadable storage snapshot. Exiting.");
       System.exit(1);
     }
   }
 
   /**
-   * Runs Server.
+   * @param env where to read SHARD_NODES from
+   * @return the instances users are sharded over, or null if sharding is not configured
+   */
+  private static HashRing shardRing(Dotenv env) {
+    String nodes = env.get("SHARD_NODES");
+    if (nodes == null || nodes.isBlank()) {
+      return null;
+    }
+    List<String> members = new ArrayList<>();
+    for (String node : nodes.split(",")) {
+      if (!node.isBlank()) {
+        members.add(node.trim());
+      }
+    }
+    return new HashRing(members, 128);
+  }
+
+  /**
+   * @param env where to read INVALIDATION_BUS ("multicast" to enable) and INVALIDATION_GROUP (the
+   *     group's address and port) from
+   * @param shutdown closes the bus, sending the invalidations still pending
+   * @return the bus to the other instances, or null if none is configured
+   */
+  private static InvalidationBus invalidationBus(Dotenv env, ShutdownCoordinator shutdown)
+      throws IOException {
+    if (!"multicast".equals(env.get("INVALIDATION_BUS"))) {
+      return null;
+    }
+    String[] group = env.get("INVALIDATION_GROUP", "239.255.77.77:4446").split(":");
+    // writes within 20 ms of each other share a packet
+    InvalidationBus bus =
+        new MulticastInvalidationBus(
+            new InetSocketAddress(group[0], Integer.parseInt(group[1])),
+            Duration.ofMillis(20),
+            256);
+    shutdown.addStep(ShutdownCoordinator.Stage.BUFFERS, "invalidations", remaining -> bus.close());
+    System.out.println("Exchanging invalidations on " + String.join(":", group));
+    return bus;
+  }
+
+  /**
+   * Creates the in-process storage, restoring the last snapshot if there is one, and arranges for
+   * it to be snapshotted periodically and on shutdown.
+   *
+   * @param env where to read STORAGE_SNAPSHOT (the snapshot file) and STORAGE_MAX_MB from
+   * @param shutdown takes the last snapshot, once nothing writes anymore
+   * @return the restored storage
+   */
+  private static InMemoryStorage openInMemoryStorage(Dotenv env, ShutdownCoordinator shutdown)
+      throws IOException {
+    Path snapshot = Paths.get(env.get("STORAGE_SNAPSHOT", "data/storage.snapshot"));
+    long maxBytes = Long.parseLong(env.get("STORAGE_MAX_MB", "1024")) * 1024 * 1024;
+    InMemoryStorage storage = new InMemoryStorage(64, maxBytes);
+    storage.registerMetrics("storage.memory");
+    if (Files.exists(snapshot)) {
+      long start = System.nanoTime();
+      long documents = StorageSnapshot.restore(snapshot, storage);
+      System.out.println(
+          "Restored "
+              + documents
+              + " documents from "
+              + snapshot
+              + " in "
+              + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)
+              + " ms");
+    }
+
+    ScheduledExecutorService snapshotter =
+        Executors.newSingleThreadScheduledExecutor(
+            runnable -> {
+              Thread thread = new Thread(runnable, "storage-snapshot");
+              thread.setDaemon(true);
+              return thread;
+            });
+    StorageSnapshot.schedule(storage, snapshot, TimeUnit.MINUTES.toMillis(1), snapshotter);
+    shutdown.addStep(
+        ShutdownCoordinator.Stage.STORAGE,
+        "snapshot",
+        remaining -> {
+          snapshotter.shutdown();
+          snapshotter.awaitTermination(remaining.toMillis(), TimeUnit.MILLISECONDS);
+          StorageSnapshot.write(storage, snapshot);
+        });
+    return storage;
+  }
+
+  /**
+   * Starts the server, then, for a training run, waits for /ready, requests a few routes and exits.
+   * Training runs load the classes a real startup loads, e.g. to record them in a class data
+   * sharing archive (see the appcds profile in pom.xml).
    *
-   * @param args none
+   * @param args "--train" for a training run, otherwise none
    */
   public static void main(String[] args) {
     setUpServer();
+    if (List.of(args).contains("--train")) {
+      String base = "http://localhost:" + Spark.port();
+      long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(15);
+      // dependencies that cannot reach their backend (e.g. in a build) have loaded most of their
+      // classes by the deadline
+      while (train(base + "/ready") == 503 && System.nanoTime() < deadline) {
+        try {
+          Thread.sleep(100);
+        } catch (InterruptedException e) {
+          break;
+        }
+      }
+      train(base + "/metrics");
+      train(base + "/forecast");
+      train(base + "/missing");
+      System.exit(0);
+    }
+  }
+
+  /**
+   * @return the status of a GET request to the url, or -1 if it could not be made
+   */
+  private static int train(String url) {
+    try {
+      HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+      connection.setReadTimeout(5000);
+      int status = connection.getResponseCode();
+      connection.disconnect();
+      return status;
+    } catch (IOException e) {
+      return -1;
+    }
   }
 }
@@ -0,0 +1,75 @@
+package edu.brown.cs.student.main.server.alerts;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/** A budget's spending crossed one of its user's thresholds. */
+public class Alert {
+  private final String collectionId;
+  private final String category;
+  private final int threshold;
+  private final double utilization;
+  private final String period;
+  private final long timeMillis;
+
+  /**
+   * @param collectionId the user's collection
+   * @param category the budget's category
+   * @param threshold the highest threshold crossed, in percent
+   * @param utilization how much of the budget is spent, in percent
+   * @param period the start of the budget's period
+   * @param timeMillis when the crossing was detected
+   */
+  public Alert(
+      String collectionId,
+      String category,
+      int threshold,
+      double utilization,
+      String period,
+      long timeMillis) {
+    this.collectionId = collectionId;
+    this.category = category;
+    this.threshold = threshold;
+    this.utilization = utilization;
+    this.period = period;
+    this.timeMillis = timeMillis;
+  }
+
+  public String getCollectionId() {
+    return this.collectionId;
+  }
+
+  public String getCategory() {
+    return this.category;
+  }
+
+  public int getThreshold() {
+    return this.threshold;
+  }
+
+  public double getUtilization() {
+    return this.utilization;
+  }
+
+  public String getPeriod() {
+    return this.period;
+  }
+
+  public long getTimeMillis() {
+    return this.timeMillis;
+  }
+
+  /**
+   * @return the alert as sent to clients
+   */
+  public Map<String, Object> toMap() {
+    Map<String, Object> map = new HashMap<>();
+    map.put("user", this.collectionId.substring(this.collectionId.indexOf('-') + 1));
+    map.put("category", this.category);
+    map.put("threshold", this.threshold);
+    map.put("utilization", Math.round(this.utilization * 10) / 10.0);
+    map.put("period", this.period);
+    map.put("time", this.timeMillis);
+    return map;
+  }
+}
@@ -0,0 +1,310 @@
+package edu.brown.cs.student.main.server.alerts;
+
+import edu.brown.cs.student.main.server.metrics.Metrics;
+import edu.brown.cs.student.main.server.storage.StorageInterface;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.LongSupplier;
+
+/**
+ * Alerts users when a budget's spending crosses one of their thresholds (by default 50%, 80% and
+ * 100% of the budget).
+ *
+ * <p>The engine sits on the write path: handlers pass it each budget they write, and it checks just
+ * that budget against its user's rules, without reading storage. Each budget alerts at most once
+ * per threshold per period: the engine remembers the highest threshold it alerted for the budget's
+ * current period, and jumping past several thresholds at once sends one alert for the highest. A
+ * new period (see {@code RolloverScheduler}) starts over. Alerts are queued and delivered to the
+ * notifier on a separate thread, so a slow notifier never slows a request down; if the queue is
+ * full, alerts are dropped and counted in {@code alerts.dropped}, and the budget's next write past
+ * the threshold tries again.
+ */
+public class AlertEngine {
+
+  public static final int[] DEFAULT_THRESHOLDS = {50, 80, 100};
+
+  /** Users' rules are stored here, one document per user collection. */
+  public static final String RULES_COLLECTION = "alert-rules";
+
+  private static final int MAX_THRESHOLDS = 10;
+  private static final int MAX_BATCH = 100;
+
+  private final AlertNotifier notifier;
+  private final LongSupplier clock;
+  private final BlockingQueue<Alert> queue;
+  private final Map<String, int[]> rules = new ConcurrentHashMap<>();
+  private final Map<String, Sent> sent = new ConcurrentHashMap<>();
+  private Thread dispatcher;
+
+  /** The highest threshold alerted for a budget, and in which of its periods. */
+  private static class Sent {
+    private final String period;
+    private final int threshold;
+
+    private Sent(String period, int threshold) {
+      this.period = period;
+      this.threshold = threshold;
+    }
+  }
+
+  /**
+   * @param notifier delivers the alerts
+   * @param clock the current time in epoch milliseconds
+   * @param capacity the most alerts waiting for delivery
+   */
+  public AlertEngine(AlertNotifier notifier, LongSupplier clock, int capacity) {
+    this.notifier = notifier;
+    this.clock = clock;
+    this.queue = new ArrayBlockingQueue<>(capacity);
+    Metrics.gauge("alerts.queued", this.queue::size);
+  }
+
+  /**
+   * Sets a user's thresholds.
+   *
+   * @param collection_id the user's collection
+   * @param percents the thresholds, in percent of the budget
+   * @throws IllegalArgumentException if there are none, too many, or one is not positive
+   */
+  public void setThresholds(String collection_id, int... percents) {
+    this.rules.put(collection_id, validate(percents));
+  }
+
+  /**
+   * @param collection_id the user's collection
+   * @return the user's thresholds in increasing order
+   */
+  public int[] getThresholds(String collection_id) {
+    return this.rules.getOrDefault(collection_id, DEFAULT_THRESHOLDS).clone();
+  }
+
+  /**
+   * Loads the rules saved in storage, e.g. at startup.
+   *
+   * @param storage where the rules are saved
+   * @return the number of users with their own rules
+   */
+  public int loadRules(StorageInterface storage) throws InterruptedException, ExecutionException {
+    int loaded = 0;
+    for (Map<String, Object> doc : storage.getCollection(RULES_COLLECTION)) {
+      try {
+        this.setThresholds(doc.get("user").toString(), parse(doc.get("thresholds").toString()));
+        loaded++;
+      } catch (RuntimeException e) {
+        System.err.println("Skipping malformed alert rules: " + doc);
+      }
+    }
+    return loaded;
+  }
+
+  /**
+   * Saves a user's thresholds to storage and applies them.
+   *
+   * @param storage where the rules are saved
+   * @param collection_id the user's collection
+   * @param percents the thresholds, in percent of the budget
+   */
+  public void saveThresholds(StorageInterface storage, String collection_id, int... percents) {
+    int[] thresholds = validate(percents);
+    Map<String, Object> doc = new HashMap<>();
+    doc.put("user", collection_id);
+    doc.put("thresholds", format(thresholds));
+    storage.addDocument(RULES_COLLECTION, collection_id, doc);
+    this.rules.put(collection_id, thresholds);
+  }
+
+  /**
+   * Checks a budget that was just written, queueing an alert if it crossed a threshold for the
+   * first time this period. Takes constant time: one map update and a scan of at most {@value
+   * #MAX_THRESHOLDS} thresholds.
+   *
+   * @param collection_id the user's collection
+   * @param doc_id the budget's document
+   * @param budget the budget as written
+   * @return the alert queued, or null if there was none or the queue was full
+   */
+  public Alert evaluate(String collection_id, String doc_id, Map<String, Object> budget) {
+    double utilization = utilization(budget);
+    if (Double.isNaN(utilization)) {
+      return null;
+    }
+    int[] thresholds = this.rules.getOrDefault(collection_id, DEFAULT_THRESHOLDS);
+    int crossed = 0;
+    for (int i = thresholds.length - 1; i >= 0; i--) {
+      if (utilization >= thresholds[i]) {
+        crossed = thresholds[i];
+        break;
+      }
+    }
+    if (crossed == 0) {
+      return null;
+    }
+
+    Object start =
+        budget.get("period_start") != null ? budget.get("period_start") : budget.get("time");
+    String period = start == null ? "" : start.toString();
+    int threshold = crossed;
+    String key = collection_id + "/" + doc_id;
+    Sent mine = new Sent(period, threshold);
+    // what mine replaced, to put back if the alert cannot be queued
+    Sent[] replaced = {null};
+    Sent current =
+        this.sent.compute(
+            key,
+            (k, previous) -> {
+              if (previous != null
+                  && previous.period.equals(period)
+                  && previous.threshold >= threshold) {
+                return previous;
+              }
+              replaced[0] = previous;
+              return mine;
+            });
+    if (current != mine) {
+      return null;
+    }
+
+    Alert alert =
+        new Alert(
+            collection_id,
+            String.valueOf(budget.get("category")),
+            threshold,
+            utilization,
+            period,
+            this.clock.getAsLong());
+    if (!this.queue.offer(alert)) {
+      // not sent, so the next write past the threshold tries again (unless a newer one won)
+      this.sent.computeIfPresent(key, (k, latest) -> latest == mine ? replaced[0] : latest);
+      Metrics.counter("alerts.dropped").increment();
+      return null;
+    }
+    Metrics.counter("alerts.queued_total").increment();
+    return alert;
+  }
+
+  /**
+   * Forgets what was alerted for a budget, e.g. after it was deleted.
+   *
+   * @param collection_id the user's collection
+   * @param doc_id the budget's document
+   */
+  public void forget(String collection_id, String doc_id) {
+    this.sent.remove(collection_id + "/" + doc_id);
+  }
+
+  /** Starts delivering queued alerts on a background thread. */
+  public synchronized void start() {
+    if (this.dispatcher != null) {
+      return;
+    }
+    this.dispatcher =
+        new Thread(
+            () -> {
+              List<Alert> batch = new ArrayList<>();
+              try {
+                while (!Thread.currentThread().isInterrupted()) {
+                  batch.add(this.queue.take());
+                  this.queue.drainTo(batch, MAX_BATCH - 1);
+                  this.deliver(batch);
+                  batch.clear();
+                }
+              } catch (InterruptedException e) {
+                // stopping
+              }
+            },
+            "alert-dispatcher");
+    this.dispatcher.setDaemon(true);
+    this.dispatcher.start();
+  }
+
+  /** Stops the background thread, then delivers whatever is still queued. */
+  public void stop() throws InterruptedException {
+    Thread thread;
+    synchronized (this) {
+      thread = this.dispatcher;
+      this.dispatcher = null;
+    }
+    if (thread != null) {
+      thread.interrupt();
+      thread.join();
+    }
+    this.flush();
+  }
+
+  /** Delivers everything queued on the calling thread. */
+  public void flush() {
+    List<Alert> batch = new ArrayList<>();
+    while (this.queue.drainTo(batch, MAX_BATCH) > 0) {
+      this.deliver(batch);
+      batch.clear();
+    }
+  }
+
+  private void deliver(List<Alert> batch) {
+    try {
+      this.notifier.notify(batch);
+      Metrics.counter("alerts.delivered").add(batch.size());
+    } catch (Exception e) {
+      Metrics.counter("alerts.notify_failures").increment();
+      System.err.println("Error delivering alerts: " + e.getMessage());
+    }
+  }
+
+  /**
+   * @return spent as a percentage of budget, or NaN if either is missing or not a number
+   */
+  private static double utilization(Map<String, Object> budget) {
+    Object amount = budget.get("budget");
+    Object spent = budget.get("spent");
+    if (amount == null || spent == null) {
+      return Double.NaN;
+    }
+    try {
+      double limit = Double.parseDouble(amount.toString());
+      return limit > 0 ? Double.parseDouble(spent.toString()) * 100 / limit : Double.NaN;
+    } catch (NumberFormatException e) {
+      return Double.NaN;
+    }
+  }
+
+  private static int[] validate(int[] percents) {
+    if (percents.length == 0 || percents.length > MAX_THRESHOLDS) {
+      throw new IllegalArgumentException(
+          "Between 1 and " + MAX_THRESHOLDS + " thresholds are allowed");
+    }
+    int[] sorted = Arrays.stream(percents).distinct().sorted().toArray();
+    if (sorted[0] <= 0) {
+      throw new IllegalArgumentException("Thresholds must be positive percentages");
+    }
+    return sorted;
+  }
+
+  /**
+   * @param text comma-separated percentages, e.g. "50,80,100"
+   * @return the percentages
+   * @throws IllegalArgumentException if one is not a number
+   */
+  public static int[] parse(String text) {
+    String[] parts = text.split(",");
+    int[] percents = new int[parts.length];
+    for (int i = 0; i < parts.length; i++) {
+      percents[i] = Integer.parseInt(parts[i].trim());
+    }
+    return percents;
+  }
+
+  private static String format(int[] thresholds) {
+    StringBuilder text = new StringBuilder();
+    for (int threshold : thresholds) {
+      text.append(text.length() == 0 ? "" : ",").append(threshold);
+    }
+    return text.toString();
+  }
+}
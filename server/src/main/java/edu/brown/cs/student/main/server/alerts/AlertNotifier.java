@@ -0,0 +1,27 @@
+package edu.brown.cs.student.main.server.alerts;
+
+import java.util.List;
+
+/** Delivers alerts to users. Called from the alert engine's dispatcher thread, never a request. */
+public interface AlertNotifier {
+
+  /**
+   * @param alerts the alerts queued since the last call, oldest first
+   * @throws Exception if delivery failed; the alerts are not retried
+   */
+  void notify(List<Alert> alerts) throws Exception;
+
+  /**
+   * @param next another notifier
+   * @return a notifier that delivers to this one and then to the other
+   */
+  default AlertNotifier andThen(AlertNotifier next) {
+    return alerts -> {
+      try {
+        this.notify(alerts);
+      } finally {
+        next.notify(alerts);
+      }
+    };
+  }
+}
@@ -0,0 +1,44 @@
+package edu.brown.cs.student.main.server.alerts;
+
+import edu.brown.cs.student.main.server.handlers.Utils;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Appends alerts to a file as JSON lines, e.g. for a mail or push sender that tails it, or for
+ * auditing.
+ */
+public class FileAlertNotifier implements AlertNotifier {
+
+  private final Path file;
+
+  /**
+   * @param file the file to append to; created, along with its directory, if missing
+   */
+  public FileAlertNotifier(Path file) throws IOException {
+    this.file = file;
+    Path parent = file.toAbsolutePath().getParent();
+    Files.createDirectories(parent);
+  }
+
+  @Override
+  public void notify(List<Alert> alerts) throws IOException {
+    // one open, write and close per batch, so the file can be rotated between batches
+    try (BufferedWriter writer =
+        Files.newBufferedWriter(
+            this.file,
+            StandardCharsets.UTF_8,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.APPEND)) {
+      for (Alert alert : alerts) {
+        writer.write(Utils.toMoshiJson(alert.toMap()));
+        writer.newLine();
+      }
+    }
+  }
+}
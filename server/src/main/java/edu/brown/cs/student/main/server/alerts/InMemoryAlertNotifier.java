@@ -0,0 +1,50 @@
+package edu.brown.cs.student.main.server.alerts;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/** Keeps each user's most recent alerts in memory, for clients to fetch from {@code /alerts}. */
+public class InMemoryAlertNotifier implements AlertNotifier {
+
+  private final int perUser;
+  private final Map<String, Deque<Alert>> recent = new ConcurrentHashMap<>();
+
+  /**
+   * @param perUser how many alerts to keep per user; older ones are dropped
+   */
+  public InMemoryAlertNotifier(int perUser) {
+    this.perUser = perUser;
+  }
+
+  @Override
+  public void notify(List<Alert> alerts) {
+    for (Alert alert : alerts) {
+      Deque<Alert> deque =
+          this.recent.computeIfAbsent(alert.getCollectionId(), k -> new ArrayDeque<>());
+      synchronized (deque) {
+        deque.addFirst(alert);
+        if (deque.size() > this.perUser) {
+          deque.removeLast();
+        }
+      }
+    }
+  }
+
+  /**
+   * @param collection_id the user's collection
+   * @return the user's recent alerts, newest first
+   */
+  public List<Alert> recent(String collection_id) {
+    Deque<Alert> deque = this.recent.get(collection_id);
+    if (deque == null) {
+      return List.of();
+    }
+    synchronized (deque) {
+      return new ArrayList<>(deque);
+    }
+  }
+}
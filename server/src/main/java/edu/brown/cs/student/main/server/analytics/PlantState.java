@@ -0,0 +1,24 @@
+package edu.brown.cs.student.main.server.analytics;
+
+/** The state a budget's plant is drawn in, matching the rules the garden page uses. */
+public enum PlantState {
+  ALIVE,
+  WILT,
+  DEAD;
+
+  /**
+   * @param budget the budgeted amount
+   * @param spent the amount spent so far
+   * @return dead once the budget is used up, wilting past half of it, alive otherwise
+   */
+  public static PlantState of(double budget, double spent) {
+    double percentageSpent = spent / budget * 100;
+    if (percentageSpent >= 100) {
+      return DEAD;
+    } else if (percentageSpent > 50) {
+      return WILT;
+    }
+    // includes 0 / 0, which the garden also draws as alive
+    return ALIVE;
+  }
+}
@@ -0,0 +1,51 @@
+package edu.brown.cs.student.main.server.analytics;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Fork/join task that folds a slice of users into {@link SpendingStats}, splitting the slice in
+ * half until it is small enough to aggregate directly.
+ */
+public class SpendingAggregator extends RecursiveTask<SpendingStats> {
+
+  private static final long serialVersionUID = 1L;
+
+  // a few hundred users is enough work to outweigh the cost of a task
+  private static final int THRESHOLD = 256;
+
+  private final List<List<Map<String, Object>>> users;
+  private final int from;
+  private final int to;
+
+  /**
+   * @param users the documents of each user's collection
+   */
+  public SpendingAggregator(List<List<Map<String, Object>>> users) {
+    this(users, 0, users.size());
+  }
+
+  private SpendingAggregator(List<List<Map<String, Object>>> users, int from, int to) {
+    this.users = users;
+    this.from = from;
+    this.to = to;
+  }
+
+  @Override
+  protected SpendingStats compute() {
+    if (this.to - this.from <= THRESHOLD) {
+      SpendingStats stats = new SpendingStats();
+      for (int i = this.from; i < this.to; i++) {
+        stats.addUser(this.users.get(i));
+      }
+      return stats;
+    }
+    int middle = (this.from + this.to) >>> 1;
+    SpendingAggregator left = new SpendingAggregator(this.users, this.from, middle);
+    left.fork();
+    SpendingStats stats = new SpendingAggregator(this.users, middle, this.to).compute();
+    stats.merge(left.join());
+    return stats;
+  }
+}
@@ -0,0 +1,229 @@
+package edu.brown.cs.student.main.server.analytics;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Running totals of spending across many users. Everything is kept in primitive counters so that
+ * millions of budgets can be folded in without allocating per budget; partial results computed in
+ * parallel are combined with {@link #merge}. Not thread safe: each task owns its own instance.
+ */
+public class SpendingStats {
+
+  /** Totals for one category, summed over every user that has it. */
+  private static class CategoryTotals {
+    private long budgets;
+    private long overspent;
+    // budgets with a positive amount, the only ones a utilization can be computed for
+    private long measured;
+    private double utilization;
+    private double budgeted;
+    private double spent;
+
+    private void merge(CategoryTotals other) {
+      this.budgets += other.budgets;
+      this.overspent += other.overspent;
+      this.measured += other.measured;
+      this.utilization += other.utilization;
+      this.budgeted += other.budgeted;
+      this.spent += other.spent;
+    }
+  }
+
+  private final Map<String, CategoryTotals> categories = new HashMap<>();
+  private final Map<String, long[]> plants = new HashMap<>();
+  private final long[] plantStates = new long[PlantState.values().length];
+  private long users;
+  private long budgets;
+  private long skipped;
+
+  /**
+   * Folds one user's budgets into the totals.
+   *
+   * @param documents the documents of one user's collection
+   */
+  public void addUser(List<Map<String, Object>> documents) {
+    this.users++;
+    for (Map<String, Object> document : documents) {
+      this.addBudget(document);
+    }
+  }
+
+  private void addBudget(Map<String, Object> document) {
+    Object category = document.get("category");
+    double budget = parseAmount(document.get("budget"));
+    double spent = parseAmount(document.get("spent"));
+    if (category == null || Double.isNaN(budget) || Double.isNaN(spent)) {
+      this.skipped++;
+      return;
+    }
+    this.budgets++;
+
+    CategoryTotals totals =
+        this.categories.computeIfAbsent(
+            category.toString().trim().toLowerCase(Locale.ROOT), k -> new CategoryTotals());
+    totals.budgets++;
+    totals.budgeted += budget;
+    totals.spent += spent;
+    if (spent > budget) {
+      totals.overspent++;
+    }
+    if (budget > 0) {
+      totals.measured++;
+      totals.utilization += spent / budget;
+    }
+
+    int state = PlantState.of(budget, spent).ordinal();
+    this.plantStates[state]++;
+    Object plant = document.get("plant");
+    if (plant != null) {
+      this.plants
+          .computeIfAbsent(plant.toString(), k -> new long[PlantState.values().length])[state]++;
+    }
+  }
+
+  /**
+   * Adds another partial result into this one.
+   *
+   * @param other totals over a disjoint set of users
+   */
+  public void merge(SpendingStats other) {
+    this.users += other.users;
+    this.budgets += other.budgets;
+    this.skipped += other.skipped;
+    for (int i = 0; i < this.plantStates.length; i++) {
+      this.plantStates[i] += other.plantStates[i];
+    }
+    other.categories.forEach(
+        (category, totals) ->
+            this.categories.computeIfAbsent(category, k -> new CategoryTotals()).merge(totals));
+    other.plants.forEach(
+        (plant, counts) -> {
+          long[] mine = this.plants.computeIfAbsent(plant, k -> new long[counts.length]);
+          for (int i = 0; i < counts.length; i++) {
+            mine[i] += counts[i];
+          }
+        });
+  }
+
+  public long getUsers() {
+    return this.users;
+  }
+
+  public long getBudgets() {
+    return this.budgets;
+  }
+
+  /**
+   * @return budgets left out because their category or amounts were missing or malformed
+   */
+  public long getSkipped() {
+    return this.skipped;
+  }
+
+  public long getPlantStateCount(PlantState state) {
+    return this.plantStates[state.ordinal()];
+  }
+
+  public int getCategoryCount() {
+    return this.categories.size();
+  }
+
+  /**
+   * @param category a category name, compared case-insensitively
+   * @return the average of spent / budget over the category's budgets, or NaN if it has none
+   */
+  public double getAverageUtilization(String category) {
+    CategoryTotals totals = this.categories.get(category.toLowerCase(Locale.ROOT));
+    return totals == null || totals.measured == 0
+        ? Double.NaN
+        : totals.utilization / totals.measured;
+  }
+
+  /**
+   * @param category a category name, compared case-insensitively
+   * @return the share of the category's budgets that are overspent, or NaN if it has none
+   */
+  public double getOverspendRate(String category) {
+    CategoryTotals totals = this.categories.get(category.toLowerCase(Locale.ROOT));
+    return totals == null ? Double.NaN : (double) totals.overspent / totals.budgets;
+  }
+
+  /**
+   * Renders the totals as the documents of the summary collection: an overview, the most common
+   * categories, and the plant state distribution per plant type.
+   *
+   * @param maxCategories how many categories to include, most common first
+   * @return the documents keyed by document id
+   */
+  public Map<String, Map<String, Object>> toDocuments(int maxCategories) {
+    Map<String, Object> overall = new LinkedHashMap<>();
+    overall.put("users", this.users);
+    overall.put("budgets", this.budgets);
+    overall.put("skipped", this.skipped);
+    overall.put("categories", this.categories.size());
+    overall.put("plant_states", stateCounts(this.plantStates));
+
+    List<Map.Entry<String, CategoryTotals>> sorted = new ArrayList<>(this.categories.entrySet());
+    sorted.sort(
+        (a, b) ->
+            a.getValue().budgets != b.getValue().budgets
+                ? Long.compare(b.getValue().budgets, a.getValue().budgets)
+                : a.getKey().compareTo(b.getKey()));
+    List<Map<String, Object>> categoryRows = new ArrayList<>();
+    for (Map.Entry<String, CategoryTotals> entry :
+        sorted.subList(0, Math.min(maxCategories, sorted.size()))) {
+      CategoryTotals totals = entry.getValue();
+      Map<String, Object> row = new LinkedHashMap<>();
+      row.put("category", entry.getKey());
+      row.put("budgets", totals.budgets);
+      row.put(
+          "average_utilization",
+          totals.measured == 0 ? null : totals.utilization / totals.measured);
+      row.put("overspend_rate", (double) totals.overspent / totals.budgets);
+      row.put("total_budget", totals.budgeted);
+      row.put("total_spent", totals.spent);
+      categoryRows.add(row);
+    }
+
+    List<Map<String, Object>> plantRows = new ArrayList<>();
+    this.plants.keySet().stream()
+        .sorted()
+        .forEach(
+            plant -> {
+              Map<String, Object> row = new LinkedHashMap<>();
+              row.put("plant", plant);
+              row.putAll(stateCounts(this.plants.get(plant)));
+              plantRows.add(row);
+            });
+
+    Map<String, Map<String, Object>> documents = new LinkedHashMap<>();
+    documents.put("doc-overall", overall);
+    documents.put("doc-categories", Map.of("categories", categoryRows));
+    documents.put("doc-plants", Map.of("plants", plantRows));
+    return documents;
+  }
+
+  private static Map<String, Object> stateCounts(long[] counts) {
+    Map<String, Object> states = new LinkedHashMap<>();
+    for (PlantState state : PlantState.values()) {
+      states.put(state.name().toLowerCase(Locale.ROOT), counts[state.ordinal()]);
+    }
+    return states;
+  }
+
+  private static double parseAmount(Object value) {
+    if (value == null) {
+      return Double.NaN;
+    }
+    try {
+      return Double.parseDouble(value.toString());
+    } catch (NumberFormatException e) {
+      return Double.NaN;
+    }
+  }
+}
@@ -0,0 +1,496 @@
+package edu.brown.cs.student.main.server.codec;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary encoding of budget documents, for local persistence, caches and transfer between
+ * processes. Decoding returns exactly the map that was encoded.
+ *
+ * <p>A record is a varint field count followed by its fields. Each field starts with a tag byte
+ * holding a field id (the well-known budget fields get ids 1 to 8; other keys use id 0 followed by
+ * the key) and a wire type saying how the value is stored:
+ *
+ * <ul>
+ *   <li>amounts ("budget", "spent") in canonical form ("12", "12.5", "12.05") become zig-zag varint
+ *       cents, and ISO times ("time") become varint epoch seconds and nanos;
+ *   <li>categories, plants and durations are interned: a value is written once and referred to by
+ *       its index afterwards, with common values built in;
+ *   <li>everything else is a length-prefixed UTF-8 string, a varint, a double, a boolean or null.
+ * </ul>
+ *
+ * Values that cannot be stored compactly without changing them (e.g. "12.50") fall back to strings.
+ * Within one {@link #encodeAll} payload the interned values are shared by every record.
+ */
+public class BudgetCodec {
+
+  // field ids are part of the format: only ever append
+  private static final String[] FIELDS = {
+    null, "user", "category", "budget", "duration", "spent", "plant", "time", "notes"
+  };
+  private static final int CATEGORY = 2;
+  private static final int BUDGET = 3;
+  private static final int DURATION = 4;
+  private static final int SPENT = 5;
+  private static final int PLANT = 6;
+  private static final int TIME = 7;
+
+  // the built-in dictionary is part of the format too: only ever append
+  private static final String[] BUILT_IN = {
+    "monthly",
+    "weekly",
+    "yearly",
+    "daily",
+    "biweekly",
+    "plant",
+    "willow tree",
+    "money tree",
+    "maple tree",
+    "cherry blossom tree",
+    "lemon tree",
+    "orchid",
+    "food",
+    "rent",
+    "transportation",
+    "utilities",
+    "fun",
+    "health",
+    "clothes",
+    "subscriptions",
+    "gifts",
+    "savings",
+    "travel",
+    "education",
+    "groceries",
+    "entertainment",
+  };
+  // bounds the memory a single payload can make the decoder hold
+  private static final int MAX_DICTIONARY = 4096;
+
+  private static final int WIRE_COMPACT = 0;
+  private static final int WIRE_STRING = 1;
+  private static final int WIRE_REF = 2;
+  private static final int WIRE_NULL = 3;
+  private static final int WIRE_DEFINE = 4;
+  private static final int WIRE_LONG = 5;
+  private static final int WIRE_DOUBLE = 6;
+  private static final int WIRE_BOOLEAN = 7;
+
+  private static final Map<String, Integer> FIELD_IDS = new HashMap<>();
+  private static final Map<String, Integer> BUILT_IN_INDEXES = new HashMap<>();
+
+  static {
+    for (int id = 1; id < FIELDS.length; id++) {
+      FIELD_IDS.put(FIELDS[id], id);
+    }
+    for (int i = 0; i < BUILT_IN.length; i++) {
+      BUILT_IN_INDEXES.put(BUILT_IN[i], i);
+    }
+  }
+
+  private BudgetCodec() {}
+
+  /**
+   * @param budget a budget document
+   * @return its encoding, using only the built-in dictionary
+   * @throws IllegalArgumentException if a value is not a string, number, boolean or null
+   */
+  public static byte[] encode(Map<String, Object> budget) {
+    Writer writer = new Writer(64);
+    writer.record(budget, new Dictionary());
+    return writer.toByteArray();
+  }
+
+  /**
+   * @param bytes a record produced by {@link #encode}
+   * @return the budget document
+   * @throws IllegalArgumentException if the bytes are not a valid record
+   */
+  public static Map<String, Object> decode(byte[] bytes) {
+    Reader reader = new Reader(bytes);
+    Map<String, Object> budget = reader.record(new Dictionary());
+    reader.expectEnd();
+    return budget;
+  }
+
+  /**
+   * Encodes many budgets (e.g. a user's collection) into one payload whose records share their
+   * interned values.
+   *
+   * @param budgets the budget documents
+   * @return the payload
+   */
+  public static byte[] encodeAll(List<Map<String, Object>> budgets) {
+    Writer writer = new Writer(16 + 48 * budgets.size());
+    Dictionary dictionary = new Dictionary();
+    writer.varint(budgets.size());
+    for (Map<String, Object> budget : budgets) {
+      writer.record(budget, dictionary);
+    }
+    return writer.toByteArray();
+  }
+
+  /**
+   * @param bytes a payload produced by {@link #encodeAll}
+   * @return the budget documents, in their original order
+   * @throws IllegalArgumentException if the bytes are not a valid payload
+   */
+  public static List<Map<String, Object>> decodeAll(byte[] bytes) {
+    Reader reader = new Reader(bytes);
+    Dictionary dictionary = new Dictionary();
+    int count = reader.varint();
+    List<Map<String, Object>> budgets = new ArrayList<>(Math.min(count, bytes.length));
+    for (int i = 0; i < count; i++) {
+      budgets.add(reader.record(dictionary));
+    }
+    reader.expectEnd();
+    return budgets;
+  }
+
+  /** The interned values seen so far, built-in ones first. Encoder and decoder grow it alike. */
+  private static class Dictionary {
+    private final List<String> added = new ArrayList<>();
+    private Map<String, Integer> addedIndexes;
+
+    private int indexOf(String value) {
+      Integer index = BUILT_IN_INDEXES.get(value);
+      if (index == null && this.addedIndexes != null) {
+        index = this.addedIndexes.get(value);
+      }
+      return index == null ? -1 : index;
+    }
+
+    /** Adds a value on the encoding side, where it has to be found again by value. */
+    private boolean add(String value) {
+      if (this.addedIndexes == null) {
+        this.addedIndexes = new HashMap<>();
+      }
+      if (!this.append(value)) {
+        return false;
+      }
+      this.addedIndexes.put(value, BUILT_IN.length + this.added.size() - 1);
+      return true;
+    }
+
+    /** Adds a value on the decoding side, where it is only ever looked up by index. */
+    private boolean append(String value) {
+      if (BUILT_IN.length + this.added.size() >= MAX_DICTIONARY) {
+        return false;
+      }
+      this.added.add(value);
+      return true;
+    }
+
+    private String get(int index) {
+      if (index < BUILT_IN.length) {
+        return BUILT_IN[index];
+      } else if (index - BUILT_IN.length < this.added.size()) {
+        return this.added.get(index - BUILT_IN.length);
+      }
+      throw new IllegalArgumentException("Malformed budget record: unknown dictionary entry");
+    }
+  }
+
+  private static class Writer {
+    private byte[] buffer;
+    private int size;
+
+    private Writer(int capacity) {
+      this.buffer = new byte[capacity];
+    }
+
+    private void ensure(int extra) {
+      if (this.size + extra > this.buffer.length) {
+        this.buffer =
+            Arrays.copyOf(this.buffer, Math.max(this.buffer.length * 2, this.size + extra));
+      }
+    }
+
+    private void write(int b) {
+      this.ensure(1);
+      this.buffer[this.size++] = (byte) b;
+    }
+
+    private void varint(long value) {
+      this.ensure(10);
+      while ((value & ~0x7FL) != 0) {
+        this.buffer[this.size++] = (byte) ((value & 0x7F) | 0x80);
+        value >>>= 7;
+      }
+      this.buffer[this.size++] = (byte) value;
+    }
+
+    private void zigzag(long value) {
+      this.varint((value << 1) ^ (value >> 63));
+    }
+
+    private void string(String value) {
+      int length = value.length();
+      // ASCII, the common case, is copied without an intermediate array
+      this.ensure(length + 5);
+      int start = this.size;
+      this.varint(length);
+      int body = this.size;
+      for (int i = 0; i < length; i++) {
+        char c = value.charAt(i);
+        if (c >= 0x80) {
+          this.size = start;
+          byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+          this.varint(utf8.length);
+          this.ensure(utf8.length);
+          System.arraycopy(utf8, 0, this.buffer, this.size, utf8.length);
+          this.size += utf8.length;
+          return;
+        }
+        this.buffer[body + i] = (byte) c;
+      }
+      this.size = body + length;
+    }
+
+    private void record(Map<String, Object> budget, Dictionary dictionary) {
+      this.varint(budget.size());
+      for (Map.Entry<String, Object> entry : budget.entrySet()) {
+        Integer id = FIELD_IDS.get(entry.getKey());
+        this.field(id == null ? 0 : id, entry.getKey(), entry.getValue(), dictionary);
+      }
+    }
+
+    private void field(int id, String key, Object value, Dictionary dictionary) {
+      int tagAt = this.size;
+      this.write(id << 3);
+      if (id == 0) {
+        this.string(key);
+      }
+      // the value may grow the buffer, so only index it once the value is written
+      int wire = this.value(id, value, dictionary);
+      this.buffer[tagAt] |= (byte) wire;
+    }
+
+    /** Writes the value and returns the wire type it was written with. */
+    private int value(int id, Object value, Dictionary dictionary) {
+      if (value == null) {
+        return WIRE_NULL;
+      } else if (value instanceof String) {
+        String string = (String) value;
+        if (id == BUDGET || id == SPENT) {
+          long cents = canonicalCents(string);
+          if (cents != Long.MIN_VALUE) {
+            this.zigzag(cents);
+            return WIRE_COMPACT;
+          }
+        } else if (id == TIME) {
+          LocalDateTime time = canonicalTime(string);
+          if (time != null) {
+            this.zigzag(time.toEpochSecond(ZoneOffset.UTC));
+            this.varint(time.getNano());
+            return WIRE_COMPACT;
+          }
+        } else if (id == CATEGORY || id == PLANT || id == DURATION) {
+          int index = dictionary.indexOf(string);
+          if (index >= 0) {
+            this.varint(index);
+            return WIRE_REF;
+          }
+          this.string(string);
+          return dictionary.add(string) ? WIRE_DEFINE : WIRE_STRING;
+        }
+        this.string(string);
+        return WIRE_STRING;
+      } else if (value instanceof Long || value instanceof Integer) {
+        this.zigzag(((Number) value).longValue());
+        return WIRE_LONG;
+      } else if (value instanceof Double || value instanceof Float) {
+        long bits = Double.doubleToRawLongBits(((Number) value).doubleValue());
+        this.ensure(8);
+        for (int shift = 56; shift >= 0; shift -= 8) {
+          this.buffer[this.size++] = (byte) (bits >>> shift);
+        }
+        return WIRE_DOUBLE;
+      } else if (value instanceof Boolean) {
+        this.write((Boolean) value ? 1 : 0);
+        return WIRE_BOOLEAN;
+      }
+      throw new IllegalArgumentException(
+          "Cannot encode budget field of type " + value.getClass().getSimpleName());
+    }
+
+    private byte[] toByteArray() {
+      return Arrays.copyOf(this.buffer, this.size);
+    }
+  }
+
+  private static class Reader {
+    private final byte[] bytes;
+    private int position;
+
+    private Reader(byte[] bytes) {
+      this.bytes = bytes;
+    }
+
+    private int read() {
+      if (this.position >= this.bytes.length) {
+        throw new IllegalArgumentException("Malformed budget record: truncated");
+      }
+      return this.bytes[this.position++] & 0xFF;
+    }
+
+    private long varlong() {
+      long value = 0;
+      for (int shift = 0; shift < 64; shift += 7) {
+        int b = this.read();
+        value |= (long) (b & 0x7F) << shift;
+        if ((b & 0x80) == 0) {
+          return value;
+        }
+      }
+      throw new IllegalArgumentException("Malformed budget record: varint too long");
+    }
+
+    private int varint() {
+      long value = this.varlong();
+      if (value < 0 || value > Integer.MAX_VALUE) {
+        throw new IllegalArgumentException("Malformed budget record: length out of range");
+      }
+      return (int) value;
+    }
+
+    private long zigzag() {
+      long value = this.varlong();
+      return (value >>> 1) ^ -(value & 1);
+    }
+
+    private String string() {
+      int length = this.varint();
+      if (length > this.bytes.length - this.position) {
+        throw new IllegalArgumentException("Malformed budget record: truncated");
+      }
+      String value = new String(this.bytes, this.position, length, StandardCharsets.UTF_8);
+      this.position += length;
+      return value;
+    }
+
+    private Map<String, Object> record(Dictionary dictionary) {
+      int fields = this.varint();
+      Map<String, Object> budget = new HashMap<>(Math.min(fields, 64) * 2);
+      for (int i = 0; i < fields; i++) {
+        int tag = this.read();
+        int id = tag >>> 3;
+        int wire = tag & 7;
+        String key;
+        if (id == 0) {
+          key = this.string();
+        } else if (id < FIELDS.length) {
+          key = FIELDS[id];
+        } else {
+          throw new IllegalArgumentException("Malformed budget record: unknown field " + id);
+        }
+        budget.put(key, this.value(id, wire, dictionary));
+      }
+      return budget;
+    }
+
+    private Object value(int id, int wire, Dictionary dictionary) {
+      switch (wire) {
+        case WIRE_COMPACT:
+          if (id == BUDGET || id == SPENT) {
+            return formatCents(this.zigzag());
+          } else if (id == TIME) {
+            long seconds = this.zigzag();
+            return LocalDateTime.ofEpochSecond(seconds, this.varint(), ZoneOffset.UTC).toString();
+          }
+          throw new IllegalArgumentException("Malformed budget record: no compact form for field");
+        case WIRE_STRING:
+          return this.string();
+        case WIRE_REF:
+          return dictionary.get(this.varint());
+        case WIRE_NULL:
+          return null;
+        case WIRE_DEFINE:
+          String value = this.string();
+          dictionary.append(value);
+          return value;
+        case WIRE_LONG:
+          return this.zigzag();
+        case WIRE_DOUBLE:
+          long bits = 0;
+          for (int i = 0; i < 8; i++) {
+            bits = (bits << 8) | this.read();
+          }
+          return Double.longBitsToDouble(bits);
+        default:
+          return this.read() != 0;
+      }
+    }
+
+    private void expectEnd() {
+      if (this.position != this.bytes.length) {
+        throw new IllegalArgumentException("Malformed budget record: trailing bytes");
+      }
+    }
+  }
+
+  /**
+   * @return the amount in cents if formatting it gives back exactly the same string, otherwise
+   *     Long.MIN_VALUE
+   */
+  static long canonicalCents(String amount) {
+    int length = amount.length();
+    int dot = amount.indexOf('.');
+    int wholeEnd = dot < 0 ? length : dot;
+    int start = amount.startsWith("-") ? 1 : 0;
+    // at most 15 integer digits, so the cents cannot overflow
+    if (wholeEnd - start < 1 || wholeEnd - start > 15 || (dot >= 0 && length - dot - 1 > 2)) {
+      return Long.MIN_VALUE;
+    }
+    long cents = 0;
+    for (int i = start; i < length; i++) {
+      char c = amount.charAt(i);
+      if (i == dot) {
+        continue;
+      }
+      if (c < '0' || c > '9') {
+        return Long.MIN_VALUE;
+      }
+      cents = cents * 10 + (c - '0');
+    }
+    int decimals = dot < 0 ? 0 : length - dot - 1;
+    for (int i = decimals; i < 2; i++) {
+      cents *= 10;
+    }
+    cents = start == 1 ? -cents : cents;
+    return formatCents(cents).equals(amount) ? cents : Long.MIN_VALUE;
+  }
+
+  /** Formats cents as "12", "12.5" or "12.05": no trailing zeros, no leading ones. */
+  static String formatCents(long cents) {
+    long whole = Math.abs(cents / 100);
+    int fraction = (int) Math.abs(cents % 100);
+    String sign = cents < 0 ? "-" : "";
+    if (fraction == 0) {
+      return sign + whole;
+    } else if (fraction % 10 == 0) {
+      return sign + whole + "." + fraction / 10;
+    }
+    return sign + whole + (fraction < 10 ? ".0" : ".") + fraction;
+  }
+
+  private static LocalDateTime canonicalTime(String time) {
+    // cheap shape check before paying for a parse: "2024-01-01T00:00..."
+    if (time.length() < 16 || time.charAt(10) != 'T') {
+      return null;
+    }
+    try {
+      LocalDateTime parsed = LocalDateTime.parse(time);
+      return parsed.toString().equals(time) ? parsed : null;
+    } catch (DateTimeParseException e) {
+      return null;
+    }
+  }
+}
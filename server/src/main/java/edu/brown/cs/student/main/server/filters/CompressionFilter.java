@@ -0,0 +1,37 @@
+package edu.brown.cs.student.main.server.filters;
+
+import spark.Filter;
+import spark.Request;
+import spark.Response;
+
+/**
+ * Spark after-filter that gzips response bodies above a size threshold when the client accepts it.
+ * Spark performs the compression itself once the Content-Encoding header is set; small bodies are
+ * left alone because the gzip framing would cost more than it saves.
+ */
+public class CompressionFilter implements Filter {
+
+  private final int minBytes;
+
+  /**
+   * @param minBytes bodies shorter than this many characters are sent uncompressed
+   */
+  public CompressionFilter(int minBytes) {
+    this.minBytes = minBytes;
+  }
+
+  @Override
+  public void handle(Request request, Response response) {
+    String body = response.body();
+    String acceptEncoding = request.headers("Accept-Encoding");
+    response.header("Vary", "Accept-Encoding");
+    if (body == null
+        || body.length() < this.minBytes
+        || acceptEncoding == null
+        || !acceptEncoding.contains("gzip")
+        || response.raw().containsHeader("Content-Encoding")) {
+      return;
+    }
+    response.header("Content-Encoding", "gzip");
+  }
+}
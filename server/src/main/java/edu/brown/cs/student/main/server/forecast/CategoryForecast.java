@@ -0,0 +1,88 @@
+package edu.brown.cs.student.main.server.forecast;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/** The projected end-of-period spending of one budget. */
+public class CategoryForecast {
+  private final String category;
+  private final double budget;
+  private final double spent;
+  private final double projected;
+  private final String periodEnd;
+  private final String method;
+  private final int historyPeriods;
+
+  /**
+   * @param category the budget's category
+   * @param budget the budget's limit
+   * @param spent how much is spent so far this period
+   * @param projected how much will be spent by the end of the period
+   * @param periodEnd when the period ends, or null if the budget has no period
+   * @param method how the projection was made: "linear", "smoothed", or "none"
+   * @param historyPeriods how many archived periods the projection used
+   */
+  public CategoryForecast(
+      String category,
+      double budget,
+      double spent,
+      double projected,
+      String periodEnd,
+      String method,
+      int historyPeriods) {
+    this.category = category;
+    this.budget = budget;
+    this.spent = spent;
+    this.projected = projected;
+    this.periodEnd = periodEnd;
+    this.method = method;
+    this.historyPeriods = historyPeriods;
+  }
+
+  public String getCategory() {
+    return this.category;
+  }
+
+  public double getBudget() {
+    return this.budget;
+  }
+
+  public double getSpent() {
+    return this.spent;
+  }
+
+  public double getProjected() {
+    return this.projected;
+  }
+
+  public String getPeriodEnd() {
+    return this.periodEnd;
+  }
+
+  public String getMethod() {
+    return this.method;
+  }
+
+  public int getHistoryPeriods() {
+    return this.historyPeriods;
+  }
+
+  /**
+   * @return the forecast as sent to clients
+   */
+  public Map<String, Object> toMap() {
+    Map<String, Object> map = new HashMap<>();
+    map.put("category", this.category);
+    map.put("budget", this.budget);
+    map.put("spent", this.spent);
+    map.put("projected", Math.round(this.projected * 100) / 100.0);
+    if (this.budget > 0) {
+      map.put("projected_utilization", Math.round(this.projected * 1000 / this.budget) / 10.0);
+      map.put("over_budget", this.projected > this.budget);
+    }
+    map.put("period_end", this.periodEnd);
+    map.put("method", this.method);
+    map.put("history_periods", this.historyPeriods);
+    return map;
+  }
+}
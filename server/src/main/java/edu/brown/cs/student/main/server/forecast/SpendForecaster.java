@@ -0,0 +1,319 @@
+package edu.brown.cs.student.main.server.forecast;
+
+import edu.brown.cs.student.main.server.metrics.Metrics;
+import edu.brown.cs.student.main.server.rollover.BudgetPeriod;
+import edu.brown.cs.student.main.server.rollover.RolloverScheduler;
+import edu.brown.cs.student.main.server.storage.VersionedStorage;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.LongSupplier;
+
+/**
+ * Projects how much each of a user's budgets will have spent by the end of its period, in process
+ * and without calling OpenAI.
+ *
+ * <p>Two lightweight models are combined. The linear model extrapolates the current period's run
+ * rate (spent so far over the fraction of the period elapsed). The smoothed model is an exponential
+ * moving average of the totals of the budget's archived periods (see {@link RolloverScheduler}).
+ * Early in a period the projection leans on the history, and it moves to the run rate as the period
+ * goes on; budgets without history use the run rate alone.
+ *
+ * <p>Each user's parsed budgets and history are cached (least recently used users are evicted). A
+ * forecast first asks the storage's change log what was written to the user's collections since the
+ * cache was filled, and re-parses only those documents, so a forecast for an unchanged user does no
+ * parsing and no storage reads.
+ */
+public class SpendForecaster {
+
+  /** Weight of the newest period in the smoothed history. */
+  public static final double ALPHA = 0.5;
+
+  // the run rate is not trusted before this fraction of the period has elapsed
+  private static final double MIN_ELAPSED = 0.1;
+
+  private final VersionedStorage storage;
+  private final ZoneId zone;
+  private final LongSupplier clock;
+  private final Map<String, UserModel> users;
+
+  /** A budget's fields, parsed once per write. */
+  private static class Budget {
+    private final String category;
+    private final double budget;
+    private final double spent;
+    // null if the duration is not understood
+    private final BudgetPeriod period;
+    private final LocalDateTime anchor;
+    private final LocalDateTime start;
+    private final LocalDateTime end;
+
+    private Budget(Map<String, Object> data) {
+      this.category = String.valueOf(data.get("category"));
+      double budget = parseNumber(data.get("budget"));
+      double spent = parseNumber(data.get("spent"));
+      this.budget = Double.isNaN(budget) ? 0 : budget;
+      this.spent = Double.isNaN(spent) ? 0 : spent;
+      Object duration = data.get("duration");
+      BudgetPeriod period = duration == null ? null : BudgetPeriod.parse(duration.toString());
+      LocalDateTime anchor = parseTime(data.get("time"));
+      LocalDateTime start = parseTime(data.get("period_start"));
+      this.period = anchor == null ? null : period;
+      this.anchor = anchor;
+      this.start = start == null ? anchor : start;
+      this.end = this.period == null ? null : this.period.boundaryAfter(anchor, this.start);
+    }
+  }
+
+  /** The archived period totals of one category, oldest first, and their smoothed level. */
+  private static class History {
+    private final TreeMap<String, Double> totals = new TreeMap<>();
+    private double level;
+
+    private void update() {
+      boolean first = true;
+      for (double total : this.totals.values()) {
+        this.level = first ? total : ALPHA * total + (1 - ALPHA) * this.level;
+        first = false;
+      }
+    }
+  }
+
+  /** Everything cached about one user; guarded by itself. */
+  private static class UserModel {
+    // versions of the budget and history collections the model reflects; -1 before loading
+    private long version = -1;
+    private long historyVersion = -1;
+    private final Map<String, Budget> budgets = new HashMap<>();
+    // history document id -> its category and period end, to undo it if it changes
+    private final Map<String, String[]> historyDocs = new HashMap<>();
+    private final Map<String, History> history = new HashMap<>();
+  }
+
+  /**
+   * @param storage where budgets and their history live; its change log keeps the cache current
+   * @param zone the time zone the budgets' times are in (the server's, as AddHandler records them)
+   * @param clock the current time in epoch milliseconds
+   * @param maxUsers how many users' models to cache
+   */
+  public SpendForecaster(VersionedStorage storage, ZoneId zone, LongSupplier clock, int maxUsers) {
+    this.storage = storage;
+    this.zone = zone;
+    this.clock = clock;
+    this.users =
+        new LinkedHashMap<>(16, 0.75f, true) {
+          @Override
+          protected boolean removeEldestEntry(Map.Entry<String, UserModel> eldest) {
+            return this.size() > maxUsers;
+          }
+        };
+  }
+
+  /**
+   * Forecasts each of a user's budgets.
+   *
+   * @param collection_id the user's collection
+   * @return a forecast per budget, ordered by category
+   */
+  public List<CategoryForecast> forecast(String collection_id)
+      throws InterruptedException, ExecutionException {
+    UserModel model;
+    synchronized (this.users) {
+      model = this.users.computeIfAbsent(collection_id, k -> new UserModel());
+    }
+    synchronized (model) {
+      this.refresh(collection_id, model);
+      long now = this.clock.getAsLong();
+      List<CategoryForecast> forecasts = new ArrayList<>();
+      for (Budget budget : model.budgets.values()) {
+        forecasts.add(this.project(budget, model.history.get(budget.category), now));
+      }
+      forecasts.sort((a, b) -> a.getCategory().compareTo(b.getCategory()));
+      return forecasts;
+    }
+  }
+
+  /**
+   * @return how many users' models are cached
+   */
+  public int cachedUsers() {
+    synchronized (this.users) {
+      return this.users.size();
+    }
+  }
+
+  private void refresh(String collection_id, UserModel model)
+      throws InterruptedException, ExecutionException {
+    String historyId = RolloverScheduler.HISTORY_PREFIX + collection_id;
+    boolean budgetsCurrent = model.version == this.storage.getVersion(collection_id);
+    boolean historyCurrent = model.historyVersion == this.storage.getVersion(historyId);
+    if (budgetsCurrent && historyCurrent) {
+      Metrics.counter("forecast.cache_hits").increment();
+      return;
+    }
+    if (!budgetsCurrent) {
+      model.version =
+          this.sync(collection_id, model.version, model.budgets::clear, model, this::applyBudget);
+    }
+    if (!historyCurrent) {
+      model.historyVersion =
+          this.sync(
+              historyId,
+              model.historyVersion,
+              () -> {
+                model.historyDocs.clear();
+                model.history.clear();
+              },
+              model,
+              this::applyHistory);
+    }
+  }
+
+  /** Applies one changed document (null data for a deletion) to a user's model. */
+  private interface Applier {
+    void apply(UserModel model, String docId, Map<String, Object> data);
+  }
+
+  /**
+   * Brings the part of a model built from one collection up to date: from the change log if it
+   * still covers the model's version, otherwise by reading the whole collection.
+   *
+   * @return the collection version the model now reflects
+   */
+  private long sync(
+      String collection_id, long since, Runnable clear, UserModel model, Applier applier)
+      throws InterruptedException, ExecutionException {
+    if (since >= 0) {
+      VersionedStorage.ChangeSet changes = this.storage.changesSince(collection_id, since);
+      if (!changes.isReset() || this.storage.isComplete(collection_id)) {
+        if (changes.isReset()) {
+          clear.run();
+        }
+        for (VersionedStorage.Change change : changes.getChanges()) {
+          applier.apply(model, change.getDocId(), change.getData());
+        }
+        Metrics.counter("forecast.incremental_updates").increment();
+        return changes.getVersion();
+      }
+    }
+    // read the version first, so a concurrent write can only make the model look older than it is
+    long version = this.storage.getVersion(collection_id);
+    clear.run();
+    for (Map<String, Object> data : this.storage.getCollection(collection_id)) {
+      applier.apply(model, documentId(data), data);
+    }
+    Metrics.counter("forecast.loads").increment();
+    return version;
+  }
+
+  /**
+   * @return the id of a document read back from storage, as the handlers and rollovers name them
+   */
+  private static String documentId(Map<String, Object> data) {
+    String docId = "doc-" + data.get("category");
+    Object periodEnd = data.get("period_end");
+    return periodEnd == null ? docId : docId + "-" + periodEnd;
+  }
+
+  private void applyBudget(UserModel model, String docId, Map<String, Object> data) {
+    if (data == null) {
+      model.budgets.remove(docId);
+    } else {
+      model.budgets.put(docId, new Budget(data));
+    }
+  }
+
+  private void applyHistory(UserModel model, String docId, Map<String, Object> data) {
+    String[] previous = model.historyDocs.remove(docId);
+    if (previous != null) {
+      History history = model.history.get(previous[0]);
+      history.totals.remove(previous[1]);
+      if (history.totals.isEmpty()) {
+        model.history.remove(previous[0]);
+      } else {
+        history.update();
+      }
+    }
+    if (data == null || data.get("period_end") == null) {
+      return;
+    }
+    double total = parseNumber(data.get("spent"));
+    if (Double.isNaN(total)) {
+      return;
+    }
+    String category = String.valueOf(data.get("category"));
+    String periodEnd = data.get("period_end").toString();
+    model.historyDocs.put(docId, new String[] {category, periodEnd});
+    History history = model.history.computeIfAbsent(category, k -> new History());
+    history.totals.put(periodEnd, total);
+    history.update();
+  }
+
+  private CategoryForecast project(Budget budget, History history, long now) {
+    int periods = history == null ? 0 : history.totals.size();
+    double spent = budget.spent;
+    if (budget.period == null) {
+      return new CategoryForecast(budget.category, budget.budget, spent, spent, null, "none", 0);
+    }
+
+    LocalDateTime start = budget.start;
+    LocalDateTime end = budget.end;
+    long endMillis = this.toMillis(end);
+    if (now >= endMillis) {
+      // the period ended and its rollover has not run yet: forecast the new, empty period
+      LocalDateTime time = LocalDateTime.ofInstant(Instant.ofEpochMilli(now), this.zone);
+      start = budget.period.boundaryAtOrBefore(budget.anchor, time);
+      end = budget.period.boundaryAfter(budget.anchor, time);
+      endMillis = this.toMillis(end);
+      spent = 0;
+    }
+    long startMillis = this.toMillis(start);
+    double elapsed =
+        Math.min(1, Math.max(0, (now - startMillis) / (double) (endMillis - startMillis)));
+
+    double linear = spent / Math.max(elapsed, MIN_ELAPSED);
+    double projected = periods == 0 ? linear : elapsed * linear + (1 - elapsed) * history.level;
+    return new CategoryForecast(
+        budget.category,
+        budget.budget,
+        spent,
+        Math.max(spent, projected),
+        end.toString(),
+        periods == 0 ? "linear" : "smoothed",
+        periods);
+  }
+
+  private long toMillis(LocalDateTime time) {
+    return time.atZone(this.zone).toInstant().toEpochMilli();
+  }
+
+  private static double parseNumber(Object value) {
+    if (value == null) {
+      return Double.NaN;
+    }
+    try {
+      return Double.parseDouble(value.toString());
+    } catch (NumberFormatException e) {
+      return Double.NaN;
+    }
+  }
+
+  private static LocalDateTime parseTime(Object value) {
+    if (value == null) {
+      return null;
+    }
+    try {
+      return LocalDateTime.parse(value.toString());
+    } catch (DateTimeParseException e) {
+      return null;
+    }
+  }
+}
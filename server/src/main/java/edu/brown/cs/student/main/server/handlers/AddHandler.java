@@ -1,5 +1,7 @@
 package edu.brown.cs.student.main.server.handlers;
 
+import edu.brown.cs.student.main.server.alerts.AlertEngine;
+import edu.brown.cs.student.main.server.rollover.RolloverScheduler;
 import edu.brown.cs.student.main.server.storage.StorageInterface;
 import java.time.LocalDateTime;
 import java.util.HashMap;
@@ -11,9 +13,23 @@ import spark.Route;
 public class AddHandler implements Route {
 
   public StorageInterface storageHandler;
+  private final RolloverScheduler rollovers;
+  private final AlertEngine alerts;
 
   public AddHandler(StorageInterface storageHandler) {
+    this(storageHandler, null, null);
+  }
+
+  /**
+   * @param storageHandler where budgets are stored
+   * @param rollovers schedules the end of each added budget's period, or null to not schedule it
+   * @param alerts checks each added budget against its user's alert thresholds, or null
+   */
+  public AddHandler(
+      StorageInterface storageHandler, RolloverScheduler rollovers, AlertEngine alerts) {
     this.storageHandler = storageHandler;
+    this.rollovers = rollovers;
+    this.alerts = alerts;
   }
 
   /**
@@ -64,6 +80,13 @@ public class AddHandler implements Route {
 
       // Add the document to Firestore in the user's collection
       storageHandler.addDocument(userId, docId, data);
+      if (this.rollovers != null) {
+        // re-adding a budget restarts its period
+        this.rollovers.schedule(userId, docId, data);
+      }
+      if (this.alerts != null) {
+        this.alerts.evaluate(userId, docId, data);
+      }
 
       responseMap.put("response_type", "success");
       responseMap.put("user", user);
@@ -0,0 +1,84 @@
+package edu.brown.cs.student.main.server.handlers;
+
+import edu.brown.cs.student.main.server.alerts.Alert;
+import edu.brown.cs.student.main.server.alerts.AlertEngine;
+import edu.brown.cs.student.main.server.alerts.InMemoryAlertNotifier;
+import edu.brown.cs.student.main.server.storage.StorageInterface;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import spark.Request;
+import spark.Response;
+import spark.Route;
+
+public class AlertsHandler implements Route {
+
+  public StorageInterface storageHandler;
+  private final AlertEngine engine;
+  private final InMemoryAlertNotifier recent;
+
+  /**
+   * @param storageHandler where alert rules are saved
+   * @param engine the engine whose thresholds are read and changed
+   * @param recent the notifier keeping each user's recent alerts
+   */
+  public AlertsHandler(
+      StorageInterface storageHandler, AlertEngine engine, InMemoryAlertNotifier recent) {
+    this.storageHandler = storageHandler;
+    this.engine = engine;
+    this.recent = recent;
+  }
+
+  /**
+   * Returns a user's recent alerts and thresholds. If a thresholds parameter is given (e.g.
+   * "50,80,100"), it first replaces the user's thresholds.
+   *
+   * @param request The request object providing information about the HTTP request
+   * @param response The response object providing functionality for modifying the response
+   * @return The content to be set in the response
+   */
+  @Override
+  public Object handle(Request request, Response response) {
+    Map<String, Object> responseMap = new HashMap<>();
+    try {
+      String user = request.queryParams("user");
+      String thresholds = request.queryParams("thresholds");
+
+      if (user == null) {
+        responseMap.put("response_type", "failure");
+        responseMap.put("error", "Missing user parameter.");
+        return Utils.toMoshiJson(responseMap);
+      }
+
+      String userId = "user-" + user;
+      if (thresholds != null) {
+        try {
+          this.engine.saveThresholds(this.storageHandler, userId, AlertEngine.parse(thresholds));
+        } catch (IllegalArgumentException e) {
+          responseMap.put("response_type", "failure");
+          responseMap.put("error", "Invalid thresholds: " + e.getMessage());
+          return Utils.toMoshiJson(responseMap);
+        }
+      }
+
+      List<Map<String, Object>> alerts = new ArrayList<>();
+      for (Alert alert : this.recent.recent(userId)) {
+        alerts.add(alert.toMap());
+      }
+
+      responseMap.put("response_type", "success");
+      responseMap.put("user", user);
+      responseMap.put(
+          "thresholds", Arrays.stream(this.engine.getThresholds(userId)).boxed().toList());
+      responseMap.put("alerts", alerts);
+    } catch (Exception e) {
+      e.printStackTrace();
+      responseMap.put("response_type", "failure");
+      responseMap.put("error", e.getMessage());
+    }
+
+    return Utils.toMoshiJson(responseMap);
+  }
+}
@@ -0,0 +1,101 @@
+package edu.brown.cs.student.main.server.handlers;
+
+import edu.brown.cs.student.main.server.storage.VersionedStorage;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import spark.Request;
+import spark.Response;
+import spark.Route;
+
+/**
+ * Serves the change feed of a user's budgets so clients can sync incrementally. A client sends the
+ * epoch and version of the state it holds and receives only the budgets upserted and the categories
+ * deleted since then. When its state cannot be patched (first sync, server restart, or a version
+ * that has been compacted away) the response is marked {@code reset} and carries the full
+ * collection as upserts.
+ */
+public class ChangesHandler implements Route {
+
+  public VersionedStorage storageHandler;
+
+  public ChangesHandler(VersionedStorage storageHandler) {
+    this.storageHandler = storageHandler;
+  }
+
+  /**
+   * Invoked when a request is made on this route's corresponding path e.g. '/hello'
+   *
+   * @param request The request object providing information about the HTTP request
+   * @param response The response object providing functionality for modifying the response
+   * @return The content to be set in the response
+   */
+  @Override
+  public Object handle(Request request, Response response) {
+    Map<String, Object> responseMap = new HashMap<>();
+    try {
+      String user = request.queryParams("user");
+      String since = request.queryParams("since");
+      String epoch = request.queryParams("epoch");
+
+      if (user == null) {
+        responseMap.put("response_type", "failure");
+        responseMap.put("error", "Missing user parameter.");
+        return Utils.toMoshiJson(responseMap);
+      }
+
+      String userId = "user-" + user;
+      long sinceVersion = -1;
+      if (since != null && this.storageHandler.getEpoch().equals(epoch)) {
+        try {
+          sinceVersion = Long.parseLong(since);
+        } catch (NumberFormatException e) {
+          responseMap.put("response_type", "failure");
+          responseMap.put("error", "since must be a version number.");
+          return Utils.toMoshiJson(responseMap);
+        }
+      }
+
+      List<Map<String, Object>> upserts = new ArrayList<>();
+      List<String> deletes = new ArrayList<>();
+      VersionedStorage.ChangeSet changeSet = this.storageHandler.changesSince(userId, sinceVersion);
+      long version = changeSet.getVersion();
+      boolean reset = changeSet.isReset();
+
+      if (reset && !this.storageHandler.isComplete(userId)) {
+        // the log only covers writes since startup, so fall back to a full read; the version was
+        // taken before the read, so at worst the client re-applies a change it already has
+        for (Map<String, Object> budget : this.storageHandler.getCollection(userId)) {
+          upserts.add(Utils.formatBudget(budget));
+        }
+      } else {
+        for (VersionedStorage.Change change : changeSet.getChanges()) {
+          if (change.isDeleted()) {
+            // clients key budgets by category; anything else in the collection is not theirs
+            String category = Utils.categoryOf(change.getDocId());
+            if (category != null) {
+              deletes.add(category);
+            }
+          } else {
+            upserts.add(Utils.formatBudget(change.getData()));
+          }
+        }
+      }
+
+      responseMap.put("response_type", "success");
+      responseMap.put("epoch", this.storageHandler.getEpoch());
+      responseMap.put("version", version);
+      responseMap.put("reset", reset);
+      responseMap.put("upserts", upserts);
+      responseMap.put("deletes", deletes);
+    } catch (Exception e) {
+      // error likely occurred in the storage handler
+      e.printStackTrace();
+      responseMap.put("response_type", "failure");
+      responseMap.put("error", e.getMessage());
+    }
+
+    return Utils.toMoshiJson(responseMap);
+  }
+}
@@ -1,5 +1,6 @@
 package edu.brown.cs.student.main.server.handlers;
 
+import edu.brown.cs.student.main.server.alerts.AlertEngine;
 import edu.brown.cs.student.main.server.storage.StorageInterface;
 import java.util.HashMap;
 import java.util.Map;
@@ -10,9 +11,19 @@ import spark.Route;
 public class DeleteHandler implements Route {
 
   public StorageInterface storageHandler;
+  private final AlertEngine alerts;
 
   public DeleteHandler(StorageInterface storageHandler) {
+    this(storageHandler, null);
+  }
+
+  /**
+   * @param storageHandler where budgets are stored
+   * @param alerts forgets what was alerted for each deleted budget, or null
+   */
+  public DeleteHandler(StorageInterface storageHandler, AlertEngine alerts) {
     this.storageHandler = storageHandler;
+    this.alerts = alerts;
   }
 
   @Override
@@ -35,6 +46,9 @@ public class DeleteHandler implements Route {
       String docId = "doc-" + category;
 
       storageHandler.deleteDocument(userId, docId);
+      if (this.alerts != null) {
+        this.alerts.forget(userId, docId);
+      }
 
       responseMap.put("response_type", "success");
       responseMap.put("user", user);
@@ -0,0 +1,62 @@
+package edu.brown.cs.student.main.server.handlers;
+
+import edu.brown.cs.student.main.server.forecast.CategoryForecast;
+import edu.brown.cs.student.main.server.forecast.SpendForecaster;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import spark.Request;
+import spark.Response;
+import spark.Route;
+
+public class ForecastHandler implements Route {
+
+  private final SpendForecaster forecaster;
+
+  public ForecastHandler(SpendForecaster forecaster) {
+    this.forecaster = forecaster;
+  }
+
+  /**
+   * Returns each of a user's budgets projected to the end of its period, computed locally.
+   *
+   * @param request The request object providing information about the HTTP request
+   * @param response The response object providing functionality for modifying the response
+   * @return The content to be set in the response
+   */
+  @Override
+  public Object handle(Request request, Response response) {
+    Map<String, Object> responseMap = new HashMap<>();
+    try {
+      String user = request.queryParams("user");
+
+      if (user == null) {
+        responseMap.put("response_type", "failure");
+        responseMap.put("error", "Missing user parameter.");
+        return Utils.toMoshiJson(responseMap);
+      }
+
+      List<Map<String, Object>> forecasts = new ArrayList<>();
+      double projected = 0;
+      double budget = 0;
+      for (CategoryForecast forecast : this.forecaster.forecast("user-" + user)) {
+        forecasts.add(forecast.toMap());
+        projected += forecast.getProjected();
+        budget += forecast.getBudget();
+      }
+
+      responseMap.put("response_type", "success");
+      responseMap.put("user", user);
+      responseMap.put("forecasts", forecasts);
+      responseMap.put("total_projected", Math.round(projected * 100) / 100.0);
+      responseMap.put("total_budget", budget);
+    } catch (Exception e) {
+      e.printStackTrace();
+      responseMap.put("response_type", "failure");
+      responseMap.put("error", e.getMessage());
+    }
+
+    return Utils.toMoshiJson(responseMap);
+  }
+}
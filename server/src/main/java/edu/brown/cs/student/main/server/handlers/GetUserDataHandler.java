@@ -1,6 +1,7 @@
 package edu.brown.cs.student.main.server.handlers;
 
 import edu.brown.cs.student.main.server.storage.StorageInterface;
+import edu.brown.cs.student.main.server.storage.VersionedStorage;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -12,9 +13,20 @@ import spark.Route;
 public class GetUserDataHandler implements Route {
 
   public StorageInterface storageHandler;
+  private final VersionedStorage versions;
 
   public GetUserDataHandler(StorageInterface storageHandler) {
+    this(storageHandler, null);
+  }
+
+  /**
+   * @param storageHandler where budgets are stored
+   * @param versions the versions of the collections in storageHandler, to answer conditional GETs,
+   *     or null to always send the collection
+   */
+  public GetUserDataHandler(StorageInterface storageHandler, VersionedStorage versions) {
     this.storageHandler = storageHandler;
+    this.versions = versions;
   }
 
   /**
@@ -31,21 +43,22 @@ public class GetUserDataHandler implements Route {
       String user = request.queryParams("user");
       String userId = "user-" + user;
 
+      // with versions the response is identified by the collection's version, so a client that
+      // already holds it gets a 304 without the collection being read at all
+      if (this.versions != null) {
+        String etag =
+            "\"" + this.versions.getEpoch() + "-" + this.versions.getVersion(userId) + "\"";
+        response.header("ETag", etag);
+        response.header("Cache-Control", "no-cache");
+        if (matchesETag(request.headers("If-None-Match"), etag)) {
+          response.status(304);
+          return "";
+        }
+      }
+
       List<Map<String, Object>> data = this.storageHandler.getCollection(userId);
       List<Map<String, Object>> dataFormatted =
-          data.stream()
-              .map(
-                  budget -> {
-                    Map<String, Object> res = new HashMap<>();
-                    res.put("category", budget.get("category"));
-                    res.put("budget", budget.get("budget"));
-                    res.put("duration", budget.get("duration"));
-                    res.put("spent", budget.get("spent"));
-                    res.put("plant", budget.get("plant"));
-                    res.put("notes", budget.get("notes"));
-                    return res;
-                  })
-              .collect(Collectors.toList());
+          data.stream().map(Utils::formatBudget).collect(Collectors.toList());
 
       responseMap.put("response_type", "success");
       responseMap.put("data", dataFormatted);
@@ -58,4 +71,17 @@ public class GetUserDataHandler implements Route {
 
     return Utils.toMoshiJson(responseMap);
   }
+
+  private static boolean matchesETag(String ifNoneMatch, String etag) {
+    if (ifNoneMatch == null) {
+      return false;
+    }
+    for (String candidate : ifNoneMatch.split(",")) {
+      String trimmed = candidate.trim();
+      if (trimmed.equals("*") || trimmed.equals(etag)) {
+        return true;
+      }
+    }
+    return false;
+  }
 }
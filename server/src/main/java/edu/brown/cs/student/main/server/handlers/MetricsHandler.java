@@ -0,0 +1,26 @@
+package edu.brown.cs.student.main.server.handlers;
+
+import edu.brown.cs.student.main.server.metrics.Metrics;
+import java.util.HashMap;
+import java.util.Map;
+import spark.Request;
+import spark.Response;
+import spark.Route;
+
+public class MetricsHandler implements Route {
+
+  /**
+   * Returns a snapshot of all registered server metrics.
+   *
+   * @param request The request object providing information about the HTTP request
+   * @param response The response object providing functionality for modifying the response
+   * @return The content to be set in the response
+   */
+  @Override
+  public Object handle(Request request, Response response) {
+    Map<String, Object> responseMap = new HashMap<>();
+    responseMap.put("response_type", "success");
+    responseMap.put("metrics", Metrics.snapshot());
+    return Utils.toMoshiJson(responseMap);
+  }
+}
@@ -1,11 +1,16 @@
 package edu.brown.cs.student.main.server.handlers;
 
+import edu.brown.cs.student.main.server.forecast.CategoryForecast;
+import edu.brown.cs.student.main.server.forecast.SpendForecaster;
+import edu.brown.cs.student.main.server.insights.AdviceCache;
+import edu.brown.cs.student.main.server.insights.InsightRace;
+import edu.brown.cs.student.main.server.insights.LocalInsights;
+import edu.brown.cs.student.main.server.openai.BudgetPromptBuilder;
 import edu.brown.cs.student.main.server.openai.OpenAIClientInterface;
 import edu.brown.cs.student.main.server.storage.StorageInterface;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
 import spark.Request;
 import spark.Response;
 import spark.Route;
@@ -14,10 +19,36 @@ public class OpenAIAdviceHandler implements Route {
 
   public StorageInterface storageHandler;
   public OpenAIClientInterface openAIClient;
+  private final BudgetPromptBuilder promptBuilder = new BudgetPromptBuilder(600, 0.02);
+  private final InsightRace race;
+  private final SpendForecaster forecaster;
+  private final AdviceCache adviceCache;
 
   public OpenAIAdviceHandler(StorageInterface storageHandler, OpenAIClientInterface openAIClient) {
+    this(storageHandler, openAIClient, null, null, null);
+  }
+
+  /**
+   * @param storageHandler where budgets are stored
+   * @param openAIClient the client answering the prompts
+   * @param race gives OpenAI a deadline and answers locally when it misses it, or null to always
+   *     wait for OpenAI
+   * @param forecaster adds where each budget is heading to local answers, or null
+   * @param adviceCache reuses advice given for similar goals and budgets, or null; with one, the
+   *     prompts describe the budgets by profile only (see {@link AdviceCache#describe}), since the
+   *     answers are shared between users
+   */
+  public OpenAIAdviceHandler(
+      StorageInterface storageHandler,
+      OpenAIClientInterface openAIClient,
+      InsightRace race,
+      SpendForecaster forecaster,
+      AdviceCache adviceCache) {
     this.storageHandler = storageHandler;
     this.openAIClient = openAIClient;
+    this.race = race;
+    this.forecaster = forecaster;
+    this.adviceCache = adviceCache;
   }
 
   /**
@@ -41,12 +72,31 @@ public class OpenAIAdviceHandler implements Route {
         return Utils.toMoshiJson(responseMap);
       }
 
-      String prompt = createPrompt(user, goal);
-      String advice = openAIClient.generateSuggestion(prompt);
+      String userId = "user-" + user;
+      List<Map<String, Object>> data = this.readBudgets(userId);
+      String similar = this.adviceCache == null ? null : this.adviceCache.lookup(goal, data);
+      if (similar != null) {
+        responseMap.put("advice", similar);
+        responseMap.put("source", "similar");
+      } else if (this.race == null) {
+        String advice = openAIClient.generateSuggestion(createPrompt(data, goal));
+        this.remember(goal, data, advice);
+        responseMap.put("advice", advice);
+        responseMap.put("source", "openai");
+      } else {
+        InsightRace.Result advice =
+            this.race.race(
+                createPrompt(data, goal),
+                () -> LocalInsights.advice(data, this.forecasts(userId), goal));
+        if (!advice.getSource().equals("local")) {
+          this.remember(goal, data, advice.getText());
+        }
+        responseMap.put("advice", advice.getText());
+        responseMap.put("source", advice.getSource());
+      }
 
       responseMap.put("response_type", "success");
       responseMap.put("user", user);
-      responseMap.put("advice", advice);
     } catch (Exception e) {
       e.printStackTrace();
       responseMap.put("response_type", "failure");
@@ -56,27 +106,43 @@ public class OpenAIAdviceHandler implements Route {
     return Utils.toMoshiJson(responseMap);
   }
 
-  private String createPrompt(String user, String goal) throws Exception {
-    String userId = "user-" + user;
-    List<Map<String, Object>> data = this.storageHandler.getCollection(userId);
-    List<Map<String, Object>> dataFormatted =
-        data.stream()
-            .map(
-                budget -> {
-                  Map<String, Object> res = new HashMap<>();
-                  res.put("category", budget.get("category"));
-                  res.put("budget", budget.get("budget"));
-                  res.put("spent", budget.get("spent"));
-                  return res;
-                })
-            .collect(Collectors.toList());
-    String prompt =
+  private String createPrompt(List<Map<String, Object>> data, String goal) {
+    if (this.adviceCache != null) {
+      // the answer may be reused for other users, so OpenAI only sees what they have in common
+      return "Based on my financial goal, provide budgeting and saving advice. "
+          + "Consider practical steps, timeline, and potential challenges. "
+          + "Here is my goal, then how much of each budget I have spent:\n"
+          + AdviceCache.describe(goal, data);
+    }
+    return this.promptBuilder.build(
         "Based on my financial goals, provide personalized budgeting and saving advice. "
-            + "Consider practical steps, timeline, and potential challenges. Here is my spending history: "
-            + dataFormatted
-            + ". Here is my goal and priorities: "
-            + goal;
+            + "Consider practical steps, timeline, and potential challenges. "
+            + "Here is my spending history, one budget per line:",
+        data,
+        "\nHere is my goal and priorities: " + goal);
+  }
+
+  private void remember(String goal, List<Map<String, Object>> data, String advice) {
+    if (this.adviceCache != null) {
+      this.adviceCache.store(goal, data, advice);
+    }
+  }
+
+  private List<Map<String, Object>> readBudgets(String userId) throws Exception {
+    // warmUp only starts opening the connection, so it overlaps with the read on its own
+    this.openAIClient.warmUp();
+    return this.storageHandler.getCollection(userId);
+  }
 
-    return prompt;
+  private List<CategoryForecast> forecasts(String userId) {
+    if (this.forecaster == null) {
+      return List.of();
+    }
+    try {
+      return this.forecaster.forecast(userId);
+    } catch (Exception e) {
+      // the local answer is still useful without forecasts
+      return List.of();
+    }
   }
 }
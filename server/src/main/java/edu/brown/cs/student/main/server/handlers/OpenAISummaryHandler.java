@@ -1,11 +1,16 @@
 package edu.brown.cs.student.main.server.handlers;
 
+import edu.brown.cs.student.main.server.forecast.CategoryForecast;
+import edu.brown.cs.student.main.server.forecast.SpendForecaster;
+import edu.brown.cs.student.main.server.insights.InsightRace;
+import edu.brown.cs.student.main.server.insights.LocalInsights;
+import edu.brown.cs.student.main.server.insights.SummaryPrecomputer;
+import edu.brown.cs.student.main.server.openai.BudgetPromptBuilder;
 import edu.brown.cs.student.main.server.openai.OpenAIClientInterface;
 import edu.brown.cs.student.main.server.storage.StorageInterface;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
 import spark.Request;
 import spark.Response;
 import spark.Route;
@@ -14,10 +19,34 @@ public class OpenAISummaryHandler implements Route {
 
   public StorageInterface storageHandler;
   public OpenAIClientInterface openAIClient;
+  private final BudgetPromptBuilder promptBuilder = new BudgetPromptBuilder(600, 0.02);
+  private final InsightRace race;
+  private final SpendForecaster forecaster;
+  private final SummaryPrecomputer precomputer;
 
   public OpenAISummaryHandler(StorageInterface storageHandler, OpenAIClientInterface openAIClient) {
+    this(storageHandler, openAIClient, null, null, null);
+  }
+
+  /**
+   * @param storageHandler where budgets are stored
+   * @param openAIClient the client answering the prompts
+   * @param race gives OpenAI a deadline and answers locally when it misses it, or null to always
+   *     wait for OpenAI
+   * @param forecaster adds where each budget is heading to local answers, or null
+   * @param precomputer serves summaries regenerated in the background, or null
+   */
+  public OpenAISummaryHandler(
+      StorageInterface storageHandler,
+      OpenAIClientInterface openAIClient,
+      InsightRace race,
+      SpendForecaster forecaster,
+      SummaryPrecomputer precomputer) {
     this.storageHandler = storageHandler;
     this.openAIClient = openAIClient;
+    this.race = race;
+    this.forecaster = forecaster;
+    this.precomputer = precomputer;
   }
 
   /**
@@ -39,12 +68,30 @@ public class OpenAISummaryHandler implements Route {
         return Utils.toMoshiJson(responseMap);
       }
 
-      String prompt = createPrompt(user);
-      String summary = openAIClient.generateSuggestion(prompt);
+      String userId = "user-" + user;
+      String precomputed = this.precomputer == null ? null : this.precomputer.fresh(userId);
+      if (precomputed != null) {
+        responseMap.put("response_type", "success");
+        responseMap.put("user", user);
+        responseMap.put("summary", precomputed);
+        responseMap.put("source", "precomputed");
+        return Utils.toMoshiJson(responseMap);
+      }
+
+      List<Map<String, Object>> data = this.readBudgets(userId);
+      String prompt = this.promptBuilder.summary(data);
+      if (this.race == null) {
+        responseMap.put("summary", openAIClient.generateSuggestion(prompt));
+        responseMap.put("source", "openai");
+      } else {
+        InsightRace.Result summary =
+            this.race.race(prompt, () -> LocalInsights.summary(data, this.forecasts(userId)));
+        responseMap.put("summary", summary.getText());
+        responseMap.put("source", summary.getSource());
+      }
 
       responseMap.put("response_type", "success");
       responseMap.put("user", user);
-      responseMap.put("summary", summary);
     } catch (Exception e) {
       // error likely occurred in the storage handler
       e.printStackTrace();
@@ -55,23 +102,21 @@ public class OpenAISummaryHandler implements Route {
     return Utils.toMoshiJson(responseMap);
   }
 
-  private String createPrompt(String user) throws Exception {
-    String userId = "user-" + user;
-    List<Map<String, Object>> data = this.storageHandler.getCollection(userId);
-    List<Map<String, Object>> dataFormatted =
-        data.stream()
-            .map(
-                budget -> {
-                  Map<String, Object> res = new HashMap<>();
-                  res.put("category", budget.get("category"));
-                  res.put("budget", budget.get("budget"));
-                  res.put("spent", budget.get("spent"));
-                  return res;
-                })
-            .collect(Collectors.toList());
-    String prompt =
-        "Generate a budget summary of my transactions history. Here is my spending history: "
-            + dataFormatted;
-    return prompt;
+  private List<Map<String, Object>> readBudgets(String userId) throws Exception {
+    // warmUp only starts opening the connection, so it overlaps with the read on its own
+    this.openAIClient.warmUp();
+    return this.storageHandler.getCollection(userId);
+  }
+
+  private List<CategoryForecast> forecasts(String userId) {
+    if (this.forecaster == null) {
+      return List.of();
+    }
+    try {
+      return this.forecaster.forecast(userId);
+    } catch (Exception e) {
+      // the local answer is still useful without forecasts
+      return List.of();
+    }
   }
 }
@@ -0,0 +1,54 @@
+package edu.brown.cs.student.main.server.handlers;
+
+import edu.brown.cs.student.main.server.startup.Lazy;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import spark.Request;
+import spark.Response;
+import spark.Route;
+
+/**
+ * Reports whether the server's lazily started dependencies are ready, for load balancers and deploy
+ * scripts: 200 once all of them are, 503 until then (or for good, if one failed to start).
+ */
+public class ReadinessHandler implements Route {
+
+  private final List<Lazy<?>> dependencies;
+
+  /**
+   * @param dependencies what must be started before the server counts as ready
+   */
+  public ReadinessHandler(List<Lazy<?>> dependencies) {
+    this.dependencies = dependencies;
+  }
+
+  /**
+   * Lists each dependency's state ("pending", "starting", "ready" or "failed", with the error).
+   *
+   * @param request The request object providing information about the HTTP request
+   * @param response The response object providing functionality for modifying the response
+   * @return The content to be set in the response
+   */
+  @Override
+  public Object handle(Request request, Response response) {
+    boolean ready = true;
+    Map<String, Object> states = new HashMap<>();
+    for (Lazy<?> dependency : this.dependencies) {
+      Map<String, Object> state = new HashMap<>();
+      state.put("state", dependency.getState().name().toLowerCase(Locale.ROOT));
+      if (dependency.getError() != null) {
+        state.put("error", dependency.getError());
+      }
+      states.put(dependency.getName(), state);
+      ready &= dependency.getState() == Lazy.State.READY;
+    }
+    Map<String, Object> responseMap = new HashMap<>();
+    responseMap.put("response_type", "success");
+    responseMap.put("ready", ready);
+    responseMap.put("dependencies", states);
+    response.status(ready ? 200 : 503);
+    return Utils.toMoshiJson(responseMap);
+  }
+}
@@ -1,5 +1,6 @@
 package edu.brown.cs.student.main.server.handlers;
 
+import edu.brown.cs.student.main.server.alerts.AlertEngine;
 import edu.brown.cs.student.main.server.storage.StorageInterface;
 import java.util.HashMap;
 import java.util.List;
@@ -11,9 +12,19 @@ import spark.Route;
 public class UpdateSpentHandler implements Route {
 
   public StorageInterface storageHandler;
+  private final AlertEngine alerts;
 
   public UpdateSpentHandler(StorageInterface storageHandler) {
+    this(storageHandler, null);
+  }
+
+  /**
+   * @param storageHandler where budgets are stored
+   * @param alerts checks each updated budget against its user's alert thresholds, or null
+   */
+  public UpdateSpentHandler(StorageInterface storageHandler, AlertEngine alerts) {
     this.storageHandler = storageHandler;
+    this.alerts = alerts;
   }
 
   @Override
@@ -55,6 +66,9 @@ public class UpdateSpentHandler implements Route {
 
       // Add the updated document to Firestore
       storageHandler.addDocument(userId, docId, updatedData);
+      if (this.alerts != null) {
+        this.alerts.evaluate(userId, docId, updatedData);
+      }
 
       responseMap.put("response_type", "success");
       responseMap.put("category", category);
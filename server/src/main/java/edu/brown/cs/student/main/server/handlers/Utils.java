@@ -4,6 +4,7 @@ import com.squareup.moshi.JsonAdapter;
 import com.squareup.moshi.Moshi;
 import com.squareup.moshi.Types;
 import java.lang.reflect.Type;
+import java.util.HashMap;
 import java.util.Map;
 
 public class Utils {
@@ -15,4 +16,35 @@ public class Utils {
 
     return adapter.toJson(map);
   }
+
+  /**
+   * Selects the fields of a stored budget document that are sent to clients.
+   *
+   * @param budget the budget document as stored
+   * @return the client-facing view of the budget
+   */
+  public static Map<String, Object> formatBudget(Map<String, Object> budget) {
+    Map<String, Object> res = new HashMap<>();
+    res.put("category", budget.get("category"));
+    res.put("budget", budget.get("budget"));
+    res.put("duration", budget.get("duration"));
+    res.put("spent", budget.get("spent"));
+    res.put("plant", budget.get("plant"));
+    res.put("notes", budget.get("notes"));
+    return res;
+  }
+
+  /**
+   * Recovers the category of a budget from the id of its document, which AddHandler keys as
+   * "doc-(category)".
+   *
+   * @param docId the id of a document in a user's collection
+   * @return the category, or null if the document is not a budget
+   */
+  public static String categoryOf(String docId) {
+    if (docId == null || !docId.startsWith("doc-")) {
+      return null;
+    }
+    return docId.substring("doc-".length());
+  }
 }
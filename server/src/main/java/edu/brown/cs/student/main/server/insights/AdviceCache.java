@@ -0,0 +1,356 @@
+package edu.brown.cs.student.main.server.insights;
+
+import edu.brown.cs.student.main.server.metrics.Metrics;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Reuses advice given for a similar goal and similar budgets, so near-identical {@code /advice}
+ * requests ("save for a car", "saving for car") cost one OpenAI call between them.
+ *
+ * <p>Goals are normalized (lower case, punctuation and filler words dropped, simple suffixes
+ * stemmed, words sorted) and broken into word and character-trigram shingles. Their similarity is
+ * the Jaccard similarity of the shingle sets, estimated with MinHash signatures and found with
+ * locality-sensitive hashing: the signature is cut into bands, and only entries sharing a band are
+ * compared. Budgets must match by profile: the same categories, each in the same utilization bucket
+ * (under 80%, up to 100%, over), and a total budget within the same power of two. A candidate whose
+ * estimate passes the threshold is checked against the exact similarity before it is reused; those
+ * that fail are counted in {@code advice_cache.false_matches}.
+ *
+ * <p>Since one user's advice may be handed to another, advice meant for this cache must be asked
+ * for with {@link #describe} only: the goal's words without numbers, and the budgets' profile
+ * rather than their amounts.
+ */
+public class AdviceCache {
+
+  private static final int BANDS = 16;
+  private static final int ROWS = 4;
+  private static final int HASHES = BANDS * ROWS;
+  private static final Set<String> FILLER =
+      Set.of(
+          "a", "an", "the", "for", "to", "of", "on", "in", "my", "me", "i", "and", "up", "some",
+          "want", "would", "like", "how", "can", "do", "should", "please", "help");
+
+  private final double threshold;
+  private final int capacity;
+  private final long[] seeds = new long[HASHES];
+  // guarded by this
+  private final Map<String, List<Entry>> buckets = new HashMap<>();
+  private final Deque<Entry> entries = new ArrayDeque<>();
+  private long lookups = 0;
+  private long hits = 0;
+
+  /** A cached answer and what it answered. */
+  private static class Entry {
+    private final String profile;
+    private final long[] shingles;
+    private final long[] signature;
+    private final String advice;
+
+    private Entry(String profile, long[] shingles, long[] signature, String advice) {
+      this.profile = profile;
+      this.shingles = shingles;
+      this.signature = signature;
+      this.advice = advice;
+    }
+  }
+
+  /**
+   * @param threshold the least similarity (0 to 1) between two goals for advice to be reused
+   * @param capacity how many answers to keep; the oldest are dropped first
+   */
+  public AdviceCache(double threshold, int capacity) {
+    this.threshold = threshold;
+    this.capacity = capacity;
+    long seed = 0x2545F4914F6CDD1DL;
+    for (int i = 0; i < HASHES; i++) {
+      seed = mix(seed + i);
+      this.seeds[i] = seed;
+    }
+    Metrics.gauge("advice_cache.hit_rate_percent", this::hitRatePercent);
+    Metrics.gauge("advice_cache.entries", this::size);
+  }
+
+  /**
+   * @param goal the goal the user asked for advice on
+   * @param budgets the user's budget documents
+   * @return advice given earlier for a similar goal and similar budgets, or null
+   */
+  public synchronized String lookup(String goal, List<Map<String, Object>> budgets) {
+    this.lookups++;
+    long[] shingles = shingles(goal);
+    if (shingles.length == 0) {
+      Metrics.counter("advice_cache.misses").increment();
+      return null;
+    }
+    String profile = profile(budgets);
+    long[] signature = this.signature(shingles);
+
+    Entry best = null;
+    double bestSimilarity = 0;
+    Set<Entry> seen = new HashSet<>();
+    for (int band = 0; band < BANDS; band++) {
+      List<Entry> bucket = this.buckets.get(bucketKey(profile, signature, band));
+      if (bucket == null) {
+        continue;
+      }
+      for (Entry candidate : bucket) {
+        if (!seen.add(candidate) || estimate(signature, candidate.signature) < this.threshold) {
+          continue;
+        }
+        double similarity = jaccard(shingles, candidate.shingles);
+        if (similarity < this.threshold) {
+          Metrics.counter("advice_cache.false_matches").increment();
+        } else if (similarity > bestSimilarity) {
+          best = candidate;
+          bestSimilarity = similarity;
+        }
+      }
+    }
+    if (best == null) {
+      Metrics.counter("advice_cache.misses").increment();
+      return null;
+    }
+    this.hits++;
+    Metrics.counter("advice_cache.hits").increment();
+    return best.advice;
+  }
+
+  /**
+   * @param goal the goal the user asked for advice on
+   * @param budgets the user's budget documents
+   * @param advice the advice OpenAI gave
+   */
+  public synchronized void store(String goal, List<Map<String, Object>> budgets, String advice) {
+    long[] shingles = shingles(goal);
+    if (shingles.length == 0) {
+      return;
+    }
+    Entry entry = new Entry(profile(budgets), shingles, this.signature(shingles), advice);
+    for (int band = 0; band < BANDS; band++) {
+      this.buckets
+          .computeIfAbsent(bucketKey(entry.profile, entry.signature, band), k -> new ArrayList<>())
+          .add(entry);
+    }
+    this.entries.addLast(entry);
+    if (this.entries.size() > this.capacity) {
+      this.evict(this.entries.removeFirst());
+    }
+  }
+
+  /**
+   * @return how many answers are cached
+   */
+  public synchronized int size() {
+    return this.entries.size();
+  }
+
+  private synchronized long hitRatePercent() {
+    return this.lookups == 0 ? 0 : this.hits * 100 / this.lookups;
+  }
+
+  private void evict(Entry entry) {
+    for (int band = 0; band < BANDS; band++) {
+      String key = bucketKey(entry.profile, entry.signature, band);
+      List<Entry> bucket = this.buckets.get(key);
+      bucket.remove(entry);
+      if (bucket.isEmpty()) {
+        this.buckets.remove(key);
+      }
+    }
+  }
+
+  /**
+   * Describes a request by what the cache matches on and nothing more, so advice asked for with it
+   * can be shared with every user whose request matches.
+   *
+   * @param goal the goal the user asked for advice on
+   * @param budgets the user's budget documents
+   * @return the goal's words without filler or numbers, e.g. "saving new car" for "Saving $500 for
+   *     a new car!", then one line per budget with its utilization bucket, and the range of the
+   *     total budget
+   */
+  public static String describe(String goal, List<Map<String, Object>> budgets) {
+    Set<String> words = new LinkedHashSet<>();
+    for (String word : goal.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+      if (!word.isEmpty() && !FILLER.contains(word) && !word.matches(".*\\p{N}.*")) {
+        words.add(word);
+      }
+    }
+    StringBuilder description = new StringBuilder("Goal: ").append(String.join(" ", words));
+    Profile profile = new Profile(budgets);
+    for (Map.Entry<String, Character> category : profile.categories.entrySet()) {
+      description.append('\n').append(category.getKey()).append(": ");
+      switch (category.getValue()) {
+        case 'u':
+          description.append("under 80% of budget spent");
+          break;
+        case 'n':
+          description.append("80% to 100% of budget spent");
+          break;
+        default:
+          description.append("over budget");
+      }
+    }
+    if (profile.magnitude > 0) {
+      description
+          .append("\nTotal budget: between ")
+          .append(1L << (profile.magnitude - 1))
+          .append(" and ")
+          .append(1L << profile.magnitude);
+    }
+    return description.toString();
+  }
+
+  /**
+   * @return the goal's normalized words, e.g. "Saving for a new car!" gives [car, new, sav]
+   */
+  private static List<String> normalize(String goal) {
+    TreeSet<String> words = new TreeSet<>();
+    for (String word : goal.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+      if (!word.isEmpty() && !FILLER.contains(word)) {
+        words.add(stem(word));
+      }
+    }
+    return new ArrayList<>(words);
+  }
+
+  private static String stem(String word) {
+    for (String suffix : new String[] {"ing", "ed", "es", "s"}) {
+      if (word.length() > suffix.length() + 2 && word.endsWith(suffix)) {
+        word = word.substring(0, word.length() - suffix.length());
+        break;
+      }
+    }
+    return word.length() > 3 && word.endsWith("e") ? word.substring(0, word.length() - 1) : word;
+  }
+
+  /**
+   * @return the hashes of the goal's words and of the character trigrams of each word, sorted
+   */
+  private static long[] shingles(String goal) {
+    Set<Long> shingles = new HashSet<>();
+    for (String word : normalize(goal)) {
+      shingles.add(mix(word.hashCode()));
+      String padded = "^" + word + "$";
+      for (int i = 0; i + 3 <= padded.length(); i++) {
+        shingles.add(mix(padded.substring(i, i + 3).hashCode() * 31L + 7));
+      }
+    }
+    long[] sorted = new long[shingles.size()];
+    int i = 0;
+    for (long shingle : shingles) {
+      sorted[i++] = shingle;
+    }
+    Arrays.sort(sorted);
+    return sorted;
+  }
+
+  private long[] signature(long[] shingles) {
+    long[] signature = new long[HASHES];
+    Arrays.fill(signature, Long.MAX_VALUE);
+    for (long shingle : shingles) {
+      for (int i = 0; i < HASHES; i++) {
+        signature[i] = Math.min(signature[i], mix(shingle ^ this.seeds[i]));
+      }
+    }
+    return signature;
+  }
+
+  private static String bucketKey(String profile, long[] signature, int band) {
+    long hash = band;
+    for (int row = band * ROWS; row < (band + 1) * ROWS; row++) {
+      hash = mix(hash * 31 + signature[row]);
+    }
+    return profile + "#" + band + ":" + Long.toHexString(hash);
+  }
+
+  /**
+   * @return the share of signature positions that agree, an estimate of the Jaccard similarity
+   */
+  private static double estimate(long[] a, long[] b) {
+    int equal = 0;
+    for (int i = 0; i < HASHES; i++) {
+      if (a[i] == b[i]) {
+        equal++;
+      }
+    }
+    return equal / (double) HASHES;
+  }
+
+  private static double jaccard(long[] a, long[] b) {
+    int i = 0;
+    int j = 0;
+    int common = 0;
+    while (i < a.length && j < b.length) {
+      if (a[i] == b[j]) {
+        common++;
+        i++;
+        j++;
+      } else if (a[i] < b[j]) {
+        i++;
+      } else {
+        j++;
+      }
+    }
+    return common / (double) (a.length + b.length - common);
+  }
+
+  /**
+   * The budgets' categories with their utilization bucket, and the total budget's magnitude; users
+   * whose budgets share a profile can share advice.
+   */
+  private static class Profile {
+    private final TreeMap<String, Character> categories = new TreeMap<>();
+    // the total budget is at least 2^(magnitude - 1) and below 2^magnitude, or 0 if it is under 1
+    private final int magnitude;
+
+    private Profile(List<Map<String, Object>> budgets) {
+      double total = 0;
+      for (Map<String, Object> budget : budgets) {
+        try {
+          double limit = Double.parseDouble(String.valueOf(budget.get("budget")));
+          double spent = Double.parseDouble(String.valueOf(budget.get("spent")));
+          if (limit <= 0) {
+            continue;
+          }
+          total += limit;
+          double utilization = spent / limit;
+          char bucket = utilization < 0.8 ? 'u' : utilization <= 1 ? 'n' : 'o';
+          this.categories.put(
+              String.valueOf(budget.get("category")).toLowerCase(Locale.ROOT), bucket);
+        } catch (NumberFormatException e) {
+          // budgets without numbers do not shape the advice
+        }
+      }
+      this.magnitude = total < 1 ? 0 : 64 - Long.numberOfLeadingZeros((long) total);
+    }
+  }
+
+  private static String profile(List<Map<String, Object>> budgets) {
+    Profile profile = new Profile(budgets);
+    StringBuilder key = new StringBuilder();
+    for (Map.Entry<String, Character> category : profile.categories.entrySet()) {
+      key.append(category.getKey()).append('=').append(category.getValue()).append(',');
+    }
+    return key.append('$').append(profile.magnitude).toString();
+  }
+
+  /** SplitMix64's finalizer: spreads the bits of a value over the whole long. */
+  private static long mix(long z) {
+    z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+    z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+    return z ^ (z >>> 31);
+  }
+}
@@ -0,0 +1,153 @@
+package edu.brown.cs.student.main.server.insights;
+
+import edu.brown.cs.student.main.server.metrics.Metrics;
+import edu.brown.cs.student.main.server.openai.OpenAIClientInterface;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Gives OpenAI a latency budget. A prompt is sent to OpenAI in the background and the caller waits
+ * at most the deadline for it; if the answer is late or the call fails, the caller gets the local
+ * answer instead. A late answer is not wasted: when it arrives it is cached under its prompt, so
+ * the next request with the same prompt (the same budgets and question) is answered from the cache
+ * at once. Concurrent requests with the same prompt share one OpenAI call. If the executor refuses
+ * a call (e.g. its queue is full), the request is answered locally without waiting.
+ */
+public class InsightRace {
+
+  /** An answer, and where it came from: "openai", "cache", or "local". */
+  public static class Result {
+    private final String text;
+    private final String source;
+
+    private Result(String text, String source) {
+      this.text = text;
+      this.source = source;
+    }
+
+    public String getText() {
+      return this.text;
+    }
+
+    public String getSource() {
+      return this.source;
+    }
+  }
+
+  private final OpenAIClientInterface client;
+  private final Duration deadline;
+  private final Executor executor;
+  private final Map<String, CompletableFuture<String>> pending = new ConcurrentHashMap<>();
+  // guarded by itself
+  private final Map<String, String> answers;
+
+  /**
+   * @param client the OpenAI client; its own deadline bounds how long a late call keeps running
+   * @param deadline how long a request waits for OpenAI before answering locally
+   * @param executor runs the OpenAI calls
+   * @param maxAnswers how many answers to cache
+   */
+  public InsightRace(
+      OpenAIClientInterface client, Duration deadline, Executor executor, int maxAnswers) {
+    this.client = client;
+    this.deadline = deadline;
+    this.executor = executor;
+    this.answers =
+        new LinkedHashMap<>(16, 0.75f, true) {
+          @Override
+          protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return this.size() > maxAnswers;
+          }
+        };
+  }
+
+  /**
+   * @param prompt the prompt for OpenAI
+   * @param local computes the local answer; only called if OpenAI misses the deadline or fails
+   * @return OpenAI's answer if it is cached or arrives in time, otherwise the local one
+   */
+  public Result race(String prompt, Supplier<String> local) {
+    String cached;
+    synchronized (this.answers) {
+      cached = this.answers.get(prompt);
+    }
+    if (cached != null) {
+      Metrics.counter("insights.cache_hits").increment();
+      return new Result(cached, "cache");
+    }
+
+    CompletableFuture<String> call = this.call(prompt);
+    try {
+      String text = call.get(this.deadline.toNanos(), TimeUnit.NANOSECONDS);
+      Metrics.counter("insights.openai").increment();
+      return new Result(text, "openai");
+    } catch (TimeoutException e) {
+      Metrics.counter("insights.fallback.timeout").increment();
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RejectedExecutionException) {
+        Metrics.counter("insights.fallback.rejected").increment();
+      } else {
+        Metrics.counter("insights.fallback.failure").increment();
+        System.err.println("OpenAI call failed, answering locally: " + e.getCause().getMessage());
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    return new Result(local.get(), "local");
+  }
+
+  /**
+   * @param prompt a prompt
+   * @return whether OpenAI's answer to it is cached
+   */
+  public boolean isCached(String prompt) {
+    synchronized (this.answers) {
+      return this.answers.containsKey(prompt);
+    }
+  }
+
+  /**
+   * @return the OpenAI call for the prompt, starting one unless one is already running
+   */
+  private CompletableFuture<String> call(String prompt) {
+    CompletableFuture<String> call = new CompletableFuture<>();
+    CompletableFuture<String> running = this.pending.putIfAbsent(prompt, call);
+    if (running != null) {
+      return running;
+    }
+    try {
+      this.executor.execute(
+          () -> {
+            String text;
+            try {
+              text = this.client.generateSuggestion(prompt);
+            } catch (IOException | RuntimeException e) {
+              // unregistered before anyone is told, so a retry starts a new call
+              this.pending.remove(prompt, call);
+              call.completeExceptionally(e);
+              return;
+            }
+            // cached before the call is unregistered, so no request sees neither
+            synchronized (this.answers) {
+              this.answers.put(prompt, text);
+            }
+            this.pending.remove(prompt, call);
+            call.complete(text);
+          });
+    } catch (RejectedExecutionException e) {
+      this.pending.remove(prompt, call);
+      call.completeExceptionally(e);
+    }
+    return call;
+  }
+}
@@ -0,0 +1,251 @@
+package edu.brown.cs.student.main.server.insights;
+
+import edu.brown.cs.student.main.server.forecast.CategoryForecast;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Writes budget summaries and advice from templates, in process, for when OpenAI is slow or
+ * unavailable. The text is driven by each budget's utilization (spent over budget), a ranking of
+ * the most overspent categories, and, when forecasts are given, where each budget is on pace to end
+ * its period. The same budgets always produce the same text.
+ */
+public class LocalInsights {
+
+  // budgets at or above this share of their limit are "close to" it
+  private static final double NEAR_LIMIT = 0.8;
+  // budgets at or below this share of their limit have room to spare
+  private static final double UNDERUSED = 0.5;
+  private static final int MAX_LISTED = 3;
+
+  private LocalInsights() {}
+
+  /** A budget with its numbers parsed. */
+  private static class Line {
+    private final String category;
+    private final double budget;
+    private final double spent;
+
+    private Line(String category, double budget, double spent) {
+      this.category = category;
+      this.budget = budget;
+      this.spent = spent;
+    }
+
+    private double utilization() {
+      return this.spent / this.budget;
+    }
+  }
+
+  /**
+   * @param budgets the user's budget documents
+   * @param forecasts the user's forecasts, or an empty list
+   * @return a short summary of where the user's spending stands
+   */
+  public static String summary(
+      List<Map<String, Object>> budgets, List<CategoryForecast> forecasts) {
+    List<Line> lines = parse(budgets);
+    if (lines.isEmpty()) {
+      return "You have no budgets yet. Add a budget for each category you spend on to get a"
+          + " summary.";
+    }
+    double budget = 0;
+    double spent = 0;
+    for (Line line : lines) {
+      budget += line.budget;
+      spent += line.spent;
+    }
+
+    StringBuilder text = new StringBuilder();
+    text.append(
+        String.format(
+            Locale.US,
+            "Across %d budget%s you have spent %s of %s (%s).",
+            lines.size(),
+            lines.size() == 1 ? "" : "s",
+            money(spent),
+            money(budget),
+            percent(spent / budget)));
+
+    List<Line> over = ranked(lines, line -> line.utilization() > 1);
+    List<Line> near =
+        ranked(lines, line -> line.utilization() >= NEAR_LIMIT && line.utilization() <= 1);
+    List<Line> under = ranked(lines, line -> line.utilization() <= UNDERUSED);
+    if (!over.isEmpty()) {
+      text.append(" Over budget: ").append(list(over)).append('.');
+    }
+    if (!near.isEmpty()) {
+      text.append(" Close to the limit: ").append(list(near)).append('.');
+    }
+    if (over.isEmpty() && near.isEmpty()) {
+      text.append(" Every budget is comfortably within its limit.");
+    }
+    String pace = pace(forecasts);
+    if (!pace.isEmpty()) {
+      text.append(' ').append(pace);
+    }
+    if (!under.isEmpty()) {
+      under.sort(Comparator.comparingDouble(Line::utilization).thenComparing(l -> l.category));
+      text.append(" Most room left: ").append(list(under)).append('.');
+    }
+    return text.toString();
+  }
+
+  /**
+   * @param budgets the user's budget documents
+   * @param forecasts the user's forecasts, or an empty list
+   * @param goal the goal the user asked for advice on
+   * @return concrete steps toward the goal, based on the user's spending
+   */
+  public static String advice(
+      List<Map<String, Object>> budgets, List<CategoryForecast> forecasts, String goal) {
+    List<Line> lines = parse(budgets);
+    StringBuilder text = new StringBuilder();
+    text.append("Toward your goal \"").append(goal.trim()).append("\":");
+    if (lines.isEmpty()) {
+      return text.append(
+              " start by adding a budget for each category you spend on, so you can see where"
+                  + " your money goes and what you can set aside.")
+          .toString();
+    }
+
+    int step = 1;
+    List<Line> over = ranked(lines, line -> line.utilization() > 1);
+    for (Line line : over.subList(0, Math.min(MAX_LISTED, over.size()))) {
+      text.append(
+          String.format(
+              Locale.US,
+              " %d. Rein in %s: it is %s over its %s budget.",
+              step++,
+              line.category,
+              money(line.spent - line.budget),
+              money(line.budget)));
+    }
+
+    List<CategoryForecast> atRisk = headingOver(forecasts);
+    for (CategoryForecast forecast : atRisk.subList(0, Math.min(MAX_LISTED, atRisk.size()))) {
+      text.append(
+          String.format(
+              Locale.US,
+              " %d. Slow down on %s: at this pace it will reach %s of its %s budget.",
+              step++,
+              forecast.getCategory(),
+              money(forecast.getProjected()),
+              money(forecast.getBudget())));
+    }
+
+    double slack = 0;
+    List<Line> under = ranked(lines, line -> line.utilization() <= UNDERUSED);
+    for (Line line : lines) {
+      slack += Math.max(0, line.budget - line.spent);
+    }
+    if (!under.isEmpty()) {
+      under.sort(Comparator.comparingDouble(Line::utilization).thenComparing(l -> l.category));
+      text.append(
+          String.format(
+              Locale.US,
+              " %d. Consider trimming the budgets you use least (%s) and redirecting the"
+                  + " difference to your goal.",
+              step++,
+              list(under)));
+    }
+    if (slack > 0) {
+      text.append(
+          String.format(
+              Locale.US,
+              " %d. If you stay within your budgets, you can set aside up to %s this period.",
+              step++,
+              money(slack)));
+    }
+    if (step == 1) {
+      text.append(
+          " you have spent your budgets exactly; review them to find one to lower for the goal.");
+    }
+    return text.toString();
+  }
+
+  private static String pace(List<CategoryForecast> forecasts) {
+    List<CategoryForecast> heading = headingOver(forecasts);
+    if (heading.isEmpty()) {
+      return "";
+    }
+    List<String> names = new ArrayList<>();
+    for (CategoryForecast forecast : heading.subList(0, Math.min(MAX_LISTED, heading.size()))) {
+      names.add(
+          forecast.getCategory()
+              + " ("
+              + percent(forecast.getProjected() / forecast.getBudget())
+              + " projected)");
+    }
+    return "On pace to go over by the end of the period: " + String.join(", ", names) + ".";
+  }
+
+  /**
+   * @return the budgets still within their limit but projected to exceed it, worst first
+   */
+  private static List<CategoryForecast> headingOver(List<CategoryForecast> forecasts) {
+    List<CategoryForecast> heading = new ArrayList<>();
+    for (CategoryForecast forecast : forecasts) {
+      if (forecast.getBudget() > 0
+          && forecast.getSpent() <= forecast.getBudget()
+          && forecast.getProjected() > forecast.getBudget()) {
+        heading.add(forecast);
+      }
+    }
+    heading.sort(
+        Comparator.comparingDouble((CategoryForecast f) -> f.getBudget() / f.getProjected())
+            .thenComparing(CategoryForecast::getCategory));
+    return heading;
+  }
+
+  private static List<Line> parse(List<Map<String, Object>> budgets) {
+    List<Line> lines = new ArrayList<>();
+    for (Map<String, Object> budget : budgets) {
+      try {
+        double limit = Double.parseDouble(String.valueOf(budget.get("budget")));
+        double spent = Double.parseDouble(String.valueOf(budget.get("spent")));
+        if (limit > 0 && spent >= 0) {
+          lines.add(new Line(String.valueOf(budget.get("category")), limit, spent));
+        }
+      } catch (NumberFormatException e) {
+        // budgets without numbers say nothing about spending
+      }
+    }
+    return lines;
+  }
+
+  /**
+   * @return the lines matching the filter, most utilized first
+   */
+  private static List<Line> ranked(List<Line> lines, Predicate<Line> filter) {
+    List<Line> matching = new ArrayList<>();
+    for (Line line : lines) {
+      if (filter.test(line)) {
+        matching.add(line);
+      }
+    }
+    matching.sort(
+        Comparator.comparingDouble(Line::utilization).reversed().thenComparing(l -> l.category));
+    return matching;
+  }
+
+  private static String list(List<Line> lines) {
+    List<String> names = new ArrayList<>();
+    for (Line line : lines.subList(0, Math.min(MAX_LISTED, lines.size()))) {
+      names.add(line.category + " (" + percent(line.utilization()) + ")");
+    }
+    return String.join(", ", names);
+  }
+
+  private static String money(double amount) {
+    return String.format(Locale.US, "$%,.2f", amount);
+  }
+
+  private static String percent(double share) {
+    return Math.round(share * 100) + "%";
+  }
+}
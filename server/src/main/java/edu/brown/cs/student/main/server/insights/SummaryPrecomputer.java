@@ -0,0 +1,231 @@
+package edu.brown.cs.student.main.server.insights;
+
+import edu.brown.cs.student.main.server.metrics.Metrics;
+import edu.brown.cs.student.main.server.openai.BudgetPromptBuilder;
+import edu.brown.cs.student.main.server.openai.OpenAIClientInterface;
+import edu.brown.cs.student.main.server.sharding.HashRing;
+import edu.brown.cs.student.main.server.storage.VersionedStorage;
+import edu.brown.cs.student.main.server.storage.WatchableStorage.Subscription;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Regenerates users' AI summaries in the background after their budgets change, so {@code /summary}
+ * can answer without waiting for OpenAI.
+ *
+ * <p>Only users who have asked for a summary are followed (the most recent ones, up to a limit). A
+ * write to a followed user's collection starts a debounce window, which every further write
+ * extends; when the window closes the user is queued for regeneration. Regeneration runs on a
+ * single low-priority thread behind a bounded queue; when the queue is full the user is skipped
+ * (counted in {@code summary.precompute.dropped}) and their next {@code /summary} is computed on
+ * the request as before. Each summary is stored with the collection version it was computed from,
+ * and is only served while that is still the collection's version.
+ *
+ * <p>When users are sharded over several instances, only the users this instance owns on the {@link
+ * HashRing} are followed; the others' summaries are regenerated by their owners.
+ */
+public class SummaryPrecomputer {
+
+  private final VersionedStorage storage;
+  private final OpenAIClientInterface client;
+  private final BudgetPromptBuilder promptBuilder;
+  private final long debounceNanos;
+  private final ScheduledExecutorService debouncer;
+  private final ThreadPoolExecutor worker;
+  // guarded by itself; ordered by last request, so the least recently requested user is evicted
+  private final Map<String, Entry> entries;
+  private final Subscription subscription;
+  private final HashRing ring;
+  private final String self;
+
+  /** What is known about one followed user; guarded by itself. */
+  private static class Entry {
+    // the collection version the summary reflects; -1 while there is none
+    private long version = -1;
+    private String text;
+    private long lastWriteNanos;
+    private boolean scheduled;
+  }
+
+  /**
+   * @param storage where budgets live; its writes start the debounce windows
+   * @param client generates the summaries; its own deadline bounds each regeneration
+   * @param promptBuilder builds the same summary prompt {@code /summary} uses
+   * @param debounce how long a user's collection must go without writes before regenerating
+   * @param queueCapacity the most users waiting for regeneration
+   * @param maxUsers the most users followed
+   */
+  public SummaryPrecomputer(
+      VersionedStorage storage,
+      OpenAIClientInterface client,
+      BudgetPromptBuilder promptBuilder,
+      Duration debounce,
+      int queueCapacity,
+      int maxUsers) {
+    this(storage, client, promptBuilder, debounce, queueCapacity, maxUsers, null, null);
+  }
+
+  /**
+   * @param storage where budgets live; its writes start the debounce windows
+   * @param client generates the summaries; its own deadline bounds each regeneration
+   * @param promptBuilder builds the same summary prompt {@code /summary} uses
+   * @param debounce how long a user's collection must go without writes before regenerating
+   * @param queueCapacity the most users waiting for regeneration
+   * @param maxUsers the most users followed
+   * @param ring which instance owns each user, or null if this one owns them all
+   * @param self this instance's node on the ring
+   */
+  public SummaryPrecomputer(
+      VersionedStorage storage,
+      OpenAIClientInterface client,
+      BudgetPromptBuilder promptBuilder,
+      Duration debounce,
+      int queueCapacity,
+      int maxUsers,
+      HashRing ring,
+      String self) {
+    this.storage = storage;
+    this.client = client;
+    this.promptBuilder = promptBuilder;
+    this.ring = ring;
+    this.self = self;
+    this.debounceNanos = debounce.toNanos();
+    this.debouncer = Executors.newSingleThreadScheduledExecutor(daemon("summary-debounce"));
+    this.worker =
+        new ThreadPoolExecutor(
+            1,
+            1,
+            0,
+            TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(queueCapacity),
+            daemon("summary-precompute"),
+            (task, executor) -> Metrics.counter("summary.precompute.dropped").increment());
+    this.entries =
+        new LinkedHashMap<>() {
+          @Override
+          protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return this.size() > maxUsers;
+          }
+        };
+    this.subscription = this.storage.watchWrites(this::onWrite);
+    Metrics.gauge("summary.precompute.queued", () -> this.worker.getQueue().size());
+  }
+
+  /**
+   * Returns the user's precomputed summary if it reflects their current budgets, and follows the
+   * user from now on if this instance owns them.
+   *
+   * @param collection_id the user's collection
+   * @return the summary, or null if there is none for the current budgets
+   */
+  public String fresh(String collection_id) {
+    if (this.ring != null && !this.ring.owner(collection_id).equals(this.self)) {
+      // served here only because the owner could not be reached
+      Metrics.counter("summary.precompute.misses").increment();
+      return null;
+    }
+    Entry entry;
+    synchronized (this.entries) {
+      // re-inserted to move the user to the back of the eviction order
+      entry = this.entries.remove(collection_id);
+      if (entry == null) {
+        entry = new Entry();
+      }
+      this.entries.put(collection_id, entry);
+    }
+    long version = this.storage.getVersion(collection_id);
+    synchronized (entry) {
+      if (entry.text != null && entry.version == version) {
+        Metrics.counter("summary.precompute.hits").increment();
+        return entry.text;
+      }
+    }
+    Metrics.counter("summary.precompute.misses").increment();
+    return null;
+  }
+
+  /** Stops following writes and drops queued regenerations. */
+  public void shutdown() {
+    this.subscription.cancel();
+    this.debouncer.shutdownNow();
+    this.worker.shutdownNow();
+  }
+
+  private void onWrite(String collection_id) {
+    Entry entry;
+    synchronized (this.entries) {
+      // a write does not count as a request: idle users are still evicted first
+      entry = this.entries.get(collection_id);
+    }
+    if (entry == null) {
+      return;
+    }
+    synchronized (entry) {
+      entry.lastWriteNanos = System.nanoTime();
+      if (!entry.scheduled) {
+        entry.scheduled = true;
+        this.debouncer.schedule(
+            () -> this.windowClosed(collection_id, entry),
+            this.debounceNanos,
+            TimeUnit.NANOSECONDS);
+      }
+    }
+  }
+
+  private void windowClosed(String collection_id, Entry entry) {
+    synchronized (entry) {
+      long remaining = entry.lastWriteNanos + this.debounceNanos - System.nanoTime();
+      if (remaining > 0) {
+        // written to during the window: wait until it has been quiet for a full window
+        this.debouncer.schedule(
+            () -> this.windowClosed(collection_id, entry), remaining, TimeUnit.NANOSECONDS);
+        return;
+      }
+      entry.scheduled = false;
+    }
+    this.worker.execute(() -> this.regenerate(collection_id, entry));
+  }
+
+  private void regenerate(String collection_id, Entry entry) {
+    // read the version first, so a concurrent write can only make the summary look older
+    long version = this.storage.getVersion(collection_id);
+    synchronized (entry) {
+      if (entry.version == version) {
+        return;
+      }
+    }
+    try {
+      List<Map<String, Object>> budgets = this.storage.getCollection(collection_id);
+      String text = this.client.generateSuggestion(this.promptBuilder.summary(budgets));
+      synchronized (entry) {
+        if (version > entry.version) {
+          entry.version = version;
+          entry.text = text;
+        }
+      }
+      Metrics.counter("summary.precompute.generated").increment();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (Exception e) {
+      Metrics.counter("summary.precompute.failures").increment();
+      System.err.println("Error precomputing summary for " + collection_id + ": " + e.getMessage());
+    }
+  }
+
+  private static ThreadFactory daemon(String name) {
+    return runnable -> {
+      Thread thread = new Thread(runnable, name);
+      thread.setDaemon(true);
+      thread.setPriority(Thread.MIN_PRIORITY);
+      return thread;
+    };
+  }
+}
@@ -0,0 +1,139 @@
+package edu.brown.cs.student.main.server.invalidation;
+
+import edu.brown.cs.student.main.server.metrics.Metrics;
+import edu.brown.cs.student.main.server.storage.WatchableStorage.Subscription;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Collects published invalidations for a short window and sends them as one batch, so a burst of
+ * writes costs one message rather than one per write. Within a window only the latest event per
+ * document is kept (earlier ones are counted in {@code invalidation.coalesced}); a window is cut
+ * short once it holds {@code maxBatch} documents. Subclasses move the batches between instances.
+ */
+public abstract class BatchingInvalidationBus implements InvalidationBus {
+
+  private final long flushNanos;
+  private final int maxBatch;
+  private final ScheduledExecutorService flusher;
+  private final List<Consumer<List<Invalidation>>> listeners = new CopyOnWriteArrayList<>();
+  // guarded by this; keyed by collection and document
+  private Map<String, Invalidation> pending = new LinkedHashMap<>();
+  private boolean closed = false;
+
+  /**
+   * @param flushInterval how long an event may wait for others to share its batch
+   * @param maxBatch the most events per batch
+   */
+  protected BatchingInvalidationBus(Duration flushInterval, int maxBatch) {
+    this.flushNanos = flushInterval.toNanos();
+    this.maxBatch = maxBatch;
+    this.flusher =
+        Executors.newSingleThreadScheduledExecutor(
+            runnable -> {
+              Thread thread = new Thread(runnable, "invalidation-flush");
+              thread.setDaemon(true);
+              return thread;
+            });
+  }
+
+  /**
+   * Sends a batch to the other instances.
+   *
+   * @param batch the events, oldest first
+   */
+  protected abstract void send(List<Invalidation> batch) throws IOException;
+
+  /** Releases whatever {@link #send} and receiving use; called once, after the last send. */
+  protected abstract void release();
+
+  @Override
+  public void publish(Invalidation event) {
+    Metrics.counter("invalidation.published").increment();
+    synchronized (this) {
+      if (this.closed) {
+        return;
+      }
+      String key = event.getCollectionId() + '\u0000' + event.getDocId();
+      boolean first = this.pending.isEmpty();
+      if (this.pending.remove(key) != null) {
+        Metrics.counter("invalidation.coalesced").increment();
+      }
+      this.pending.put(key, event);
+      if (this.pending.size() >= this.maxBatch) {
+        this.flusher.execute(this::flush);
+      } else if (first) {
+        this.flusher.schedule(this::flush, this.flushNanos, TimeUnit.NANOSECONDS);
+      }
+    }
+  }
+
+  @Override
+  public Subscription subscribe(Consumer<List<Invalidation>> listener) {
+    this.listeners.add(listener);
+    return () -> this.listeners.remove(listener);
+  }
+
+  /**
+   * Hands a batch received from another instance to the listeners.
+   *
+   * @param batch the events
+   */
+  protected void deliver(List<Invalidation> batch) {
+    Metrics.counter("invalidation.received").add(batch.size());
+    for (Consumer<List<Invalidation>> listener : this.listeners) {
+      try {
+        listener.accept(batch);
+      } catch (RuntimeException e) {
+        System.err.println("Error applying invalidations: " + e.getMessage());
+      }
+    }
+  }
+
+  @Override
+  public void close() {
+    synchronized (this) {
+      if (this.closed) {
+        return;
+      }
+      this.closed = true;
+    }
+    this.flusher.execute(this::flush);
+    this.flusher.shutdown();
+    try {
+      this.flusher.awaitTermination(1, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    this.release();
+  }
+
+  private void flush() {
+    List<Invalidation> batch;
+    synchronized (this) {
+      if (this.pending.isEmpty()) {
+        // already sent when the batch filled up
+        return;
+      }
+      batch = new ArrayList<>(this.pending.values());
+      this.pending = new LinkedHashMap<>();
+    }
+    try {
+      this.send(batch);
+      Metrics.counter("invalidation.batches").increment();
+      Metrics.counter("invalidation.sent").add(batch.size());
+    } catch (IOException | RuntimeException e) {
+      Metrics.counter("invalidation.send_failures").increment();
+      System.err.println("Error sending " + batch.size() + " invalidations: " + e.getMessage());
+    }
+  }
+}
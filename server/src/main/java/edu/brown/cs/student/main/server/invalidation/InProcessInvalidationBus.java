@@ -0,0 +1,45 @@
+package edu.brown.cs.student.main.server.invalidation;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Connects server instances running in one process, for tests and local experiments. Each bus joins
+ * a {@link Group} and receives the batches of every other member.
+ */
+public class InProcessInvalidationBus extends BatchingInvalidationBus {
+
+  /** The buses that hear each other. */
+  public static class Group {
+    private final List<InProcessInvalidationBus> members = new CopyOnWriteArrayList<>();
+  }
+
+  private final Group group;
+
+  /**
+   * @param group the buses to exchange invalidations with
+   * @param flushInterval how long an event may wait for others to share its batch
+   * @param maxBatch the most events per batch
+   */
+  public InProcessInvalidationBus(Group group, Duration flushInterval, int maxBatch) {
+    super(flushInterval, maxBatch);
+    this.group = group;
+    group.members.add(this);
+  }
+
+  @Override
+  protected void send(List<Invalidation> batch) {
+    List<Invalidation> copy = List.copyOf(batch);
+    for (InProcessInvalidationBus member : this.group.members) {
+      if (member != this) {
+        member.deliver(copy);
+      }
+    }
+  }
+
+  @Override
+  protected void release() {
+    this.group.members.remove(this);
+  }
+}
@@ -0,0 +1,39 @@
+package edu.brown.cs.student.main.server.invalidation;
+
+/** A write made on one server instance, announced so other instances can drop what it staled. */
+public class Invalidation {
+  private final String collectionId;
+  private final String docId;
+  private final long version;
+
+  /**
+   * @param collectionId the collection written to
+   * @param docId the document written or deleted, or null if the whole collection was cleared
+   * @param version the collection's version on the writing instance after the write
+   */
+  public Invalidation(String collectionId, String docId, long version) {
+    this.collectionId = collectionId;
+    this.docId = docId;
+    this.version = version;
+  }
+
+  public String getCollectionId() {
+    return this.collectionId;
+  }
+
+  /**
+   * @return the document written or deleted, or null if the whole collection was cleared
+   */
+  public String getDocId() {
+    return this.docId;
+  }
+
+  public long getVersion() {
+    return this.version;
+  }
+
+  @Override
+  public String toString() {
+    return this.collectionId + "/" + this.docId + "@" + this.version;
+  }
+}
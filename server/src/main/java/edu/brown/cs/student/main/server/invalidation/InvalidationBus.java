@@ -0,0 +1,33 @@
+package edu.brown.cs.student.main.server.invalidation;
+
+import edu.brown.cs.student.main.server.storage.WatchableStorage.Subscription;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Broadcasts writes between server instances that share a backend, so each can drop the cached
+ * state a write on another instance made stale. Delivery is best effort: an instance that misses an
+ * invalidation serves stale data until its caches expire on their own, as it would without a bus.
+ */
+public interface InvalidationBus {
+
+  /**
+   * Announces a write made on this instance to the others. Does not block; events may be delayed,
+   * batched and coalesced with later events for the same document.
+   *
+   * @param event the write
+   */
+  void publish(Invalidation event);
+
+  /**
+   * Delivers batches of writes made on other instances (never this one's own) to the listener, on a
+   * bus thread, so it must not block.
+   *
+   * @param listener receives each batch
+   * @return a handle that stops the deliveries
+   */
+  Subscription subscribe(Consumer<List<Invalidation>> listener);
+
+  /** Sends what is still pending and stops the bus. */
+  void close();
+}
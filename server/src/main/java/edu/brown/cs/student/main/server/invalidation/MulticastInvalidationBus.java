@@ -0,0 +1,147 @@
+package edu.brown.cs.student.main.server.invalidation;
+
+import edu.brown.cs.student.main.server.metrics.Metrics;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.MulticastSocket;
+import java.net.NetworkInterface;
+import java.net.SocketException;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Connects server instances on one machine over UDP multicast on the loopback interface, with a
+ * time to live of 0 so packets never leave the host.
+ *
+ * <p>A packet holds the sender's random id (its own packets loop back and are dropped), the number
+ * of events, and each event's collection, document ("" for a cleared collection) and version.
+ * Batches too big for one packet are split. A lost packet is not resent; see {@link
+ * InvalidationBus}.
+ */
+public class MulticastInvalidationBus extends BatchingInvalidationBus {
+
+  // well under the loopback MTU, so packets are never fragmented
+  private static final int MAX_PACKET = 8192;
+  // an event with an empty collection and document: two string lengths and the version
+  private static final int MIN_EVENT = 2 + 2 + Long.BYTES;
+
+  private final InetSocketAddress group;
+  private final NetworkInterface loopback;
+  private final MulticastSocket socket;
+  private final long origin = new SecureRandom().nextLong();
+  private final Thread receiver;
+
+  /**
+   * @param group the multicast group and port every instance uses, e.g. 239.255.77.77:4446
+   * @param flushInterval how long an event may wait for others to share its batch
+   * @param maxBatch the most events per batch
+   * @throws IOException if the group cannot be joined
+   */
+  public MulticastInvalidationBus(InetSocketAddress group, Duration flushInterval, int maxBatch)
+      throws IOException {
+    super(flushInterval, maxBatch);
+    this.group = group;
+    this.loopback = NetworkInterface.getByInetAddress(InetAddress.getLoopbackAddress());
+    this.socket = new MulticastSocket(group.getPort());
+    this.socket.setNetworkInterface(this.loopback);
+    this.socket.setTimeToLive(0);
+    this.socket.joinGroup(group, this.loopback);
+    this.receiver = new Thread(this::receive, "invalidation-receiver");
+    this.receiver.setDaemon(true);
+    this.receiver.start();
+  }
+
+  @Override
+  protected void send(List<Invalidation> batch) throws IOException {
+    int from = 0;
+    while (from < batch.size()) {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      DataOutputStream out = new DataOutputStream(bytes);
+      int to = from;
+      List<byte[]> events = new ArrayList<>();
+      int size = Long.BYTES + Integer.BYTES;
+      while (to < batch.size()) {
+        byte[] event = encode(batch.get(to));
+        if (size + event.length > MAX_PACKET && to > from) {
+          break;
+        }
+        events.add(event);
+        size += event.length;
+        to++;
+      }
+      out.writeLong(this.origin);
+      out.writeInt(events.size());
+      for (byte[] event : events) {
+        out.write(event);
+      }
+      byte[] packet = bytes.toByteArray();
+      this.socket.send(new DatagramPacket(packet, packet.length, this.group));
+      from = to;
+    }
+  }
+
+  @Override
+  protected void release() {
+    try {
+      this.socket.leaveGroup(this.group, this.loopback);
+    } catch (IOException e) {
+      // closing the socket below leaves the group anyway
+    }
+    this.socket.close();
+  }
+
+  private void receive() {
+    byte[] buffer = new byte[65536];
+    while (!this.socket.isClosed()) {
+      DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+      try {
+        this.socket.receive(packet);
+      } catch (SocketException e) {
+        // closed
+        return;
+      } catch (IOException e) {
+        System.err.println("Error receiving invalidations: " + e.getMessage());
+        continue;
+      }
+      try {
+        DataInputStream in =
+            new DataInputStream(
+                new ByteArrayInputStream(packet.getData(), packet.getOffset(), packet.getLength()));
+        if (in.readLong() == this.origin) {
+          continue;
+        }
+        int count = in.readInt();
+        if (count < 0 || count > in.available() / MIN_EVENT) {
+          throw new IOException("Bad event count " + count);
+        }
+        List<Invalidation> batch = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+          String collectionId = in.readUTF();
+          String docId = in.readUTF();
+          batch.add(new Invalidation(collectionId, docId.isEmpty() ? null : docId, in.readLong()));
+        }
+        this.deliver(batch);
+      } catch (IOException | RuntimeException e) {
+        // a malformed packet is dropped; it must not stop the receiver
+        Metrics.counter("invalidation.bad_packets").increment();
+      }
+    }
+  }
+
+  private static byte[] encode(Invalidation event) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    out.writeUTF(event.getCollectionId());
+    out.writeUTF(event.getDocId() == null ? "" : event.getDocId());
+    out.writeLong(event.getVersion());
+    return bytes.toByteArray();
+  }
+}
@@ -0,0 +1,51 @@
+package edu.brown.cs.student.main.server.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Process-wide registry of counters and gauges. Counters are cheap to increment from any request
+ * thread; gauges are sampled only when a snapshot is taken (e.g. by the /metrics endpoint).
+ */
+public class Metrics {
+
+  private static final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+  private static final Map<String, Supplier<? extends Number>> gauges = new ConcurrentHashMap<>();
+
+  private Metrics() {}
+
+  /**
+   * Returns the counter registered under the given name, creating it on first use.
+   *
+   * @param name the metric name, e.g. "ratelimit.rejected"
+   * @return the counter
+   */
+  public static LongAdder counter(String name) {
+    return counters.computeIfAbsent(name, k -> new LongAdder());
+  }
+
+  /**
+   * Registers (or replaces) a gauge whose value is read lazily at snapshot time.
+   *
+   * @param name the metric name
+   * @param supplier supplies the current value
+   */
+  public static void gauge(String name, Supplier<? extends Number> supplier) {
+    gauges.put(name, supplier);
+  }
+
+  /**
+   * Takes a point-in-time reading of every registered metric.
+   *
+   * @return metric names mapped to their current values, sorted by name
+   */
+  public static Map<String, Object> snapshot() {
+    Map<String, Object> snapshot = new TreeMap<>();
+    counters.forEach((name, counter) -> snapshot.put(name, counter.sum()));
+    gauges.forEach((name, gauge) -> snapshot.put(name, gauge.get()));
+    return snapshot;
+  }
+}
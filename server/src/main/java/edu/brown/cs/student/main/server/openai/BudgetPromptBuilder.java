@@ -0,0 +1,165 @@
+package edu.brown.cs.student.main.server.openai;
+
+import edu.brown.cs.student.main.server.metrics.Metrics;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Turns a user's budgets into a compact table for an LLM prompt. Instead of the {@code toString()}
+ * of a list of maps (which repeats every key and spends tokens on braces), budgets are written one
+ * per line as {@code category|budget|spent} under a single header. Categories that hold only a
+ * small share of the total budget are folded into one "other" row, and if the table is still over
+ * the token budget the smallest remaining rows are folded in too, so prompt size stays bounded no
+ * matter how many budgets a user has.
+ */
+public class BudgetPromptBuilder {
+
+  private static final String HEADER = "category|budget|spent";
+
+  private final int maxTableTokens;
+  private final double smallShare;
+
+  /**
+   * @param maxTableTokens the estimated token budget for the budget table
+   * @param smallShare categories below this fraction of the total budget are aggregated
+   */
+  public BudgetPromptBuilder(int maxTableTokens, double smallShare) {
+    this.maxTableTokens = maxTableTokens;
+    this.smallShare = smallShare;
+  }
+
+  /**
+   * Builds a prompt of the form {@code prefix + table + suffix} and records its size in metrics.
+   *
+   * @param prefix the instruction placed before the table
+   * @param budgets the user's budget documents
+   * @param suffix text placed after the table, may be empty
+   * @return the full prompt
+   */
+  public String build(String prefix, List<Map<String, Object>> budgets, String suffix) {
+    String prompt = prefix + "\n" + this.formatTable(budgets) + suffix;
+    Metrics.counter("openai.prompts").increment();
+    Metrics.counter("openai.prompt.tokens").add(TokenEstimator.estimate(prompt));
+    return prompt;
+  }
+
+  /**
+   * Builds the prompt asking for a summary of a user's spending. Shared by {@code /summary} and the
+   * background precomputation, so both ask the same question.
+   *
+   * @param budgets the user's budget documents
+   * @return the full prompt
+   */
+  public String summary(List<Map<String, Object>> budgets) {
+    return this.build(
+        "Generate a budget summary of my transactions history. "
+            + "Here is my spending history, one budget per line:",
+        budgets,
+        "");
+  }
+
+  /**
+   * @param budgets the user's budget documents
+   * @return the budgets as a compact, token-bounded table
+   */
+  public String formatTable(List<Map<String, Object>> budgets) {
+    List<Row> rows = new ArrayList<>();
+    double totalBudget = 0;
+    for (Map<String, Object> budget : budgets) {
+      Row row =
+          new Row(
+              String.valueOf(budget.get("category")),
+              parseAmount(budget.get("budget")),
+              parseAmount(budget.get("spent")));
+      rows.add(row);
+      totalBudget += row.budget;
+    }
+    // largest budgets first, so the rows we fold away are always taken from the end
+    rows.sort(Comparator.comparingDouble((Row r) -> r.budget).reversed());
+
+    Row other = new Row("other", 0, 0);
+    int otherCount = 0;
+    while (!rows.isEmpty()) {
+      Row smallest = rows.get(rows.size() - 1);
+      boolean tooSmall = totalBudget > 0 && smallest.budget / totalBudget < this.smallShare;
+      // always keep at least one real row
+      if (rows.size() == 1 || !tooSmall) {
+        break;
+      }
+      rows.remove(rows.size() - 1);
+      other.add(smallest);
+      otherCount++;
+    }
+
+    String table = render(rows, other, otherCount);
+    while (rows.size() > 1 && TokenEstimator.estimate(table) > this.maxTableTokens) {
+      other.add(rows.remove(rows.size() - 1));
+      otherCount++;
+      table = render(rows, other, otherCount);
+    }
+
+    Metrics.counter("openai.prompt.rows_aggregated").add(otherCount);
+    return table;
+  }
+
+  private static String render(List<Row> rows, Row other, int otherCount) {
+    StringBuilder table = new StringBuilder(HEADER);
+    for (Row row : rows) {
+      row.appendTo(table);
+    }
+    if (otherCount > 0) {
+      new Row("other(" + otherCount + ")", other.budget, other.spent).appendTo(table);
+    }
+    return table.toString();
+  }
+
+  private static double parseAmount(Object value) {
+    if (value == null) {
+      return 0;
+    }
+    try {
+      return Double.parseDouble(value.toString());
+    } catch (NumberFormatException e) {
+      return 0;
+    }
+  }
+
+  /** Formats an amount with at most two decimals and no trailing zeros (e.g. 12.5, 40). */
+  private static String formatAmount(double amount) {
+    return BigDecimal.valueOf(amount)
+        .setScale(2, RoundingMode.HALF_UP)
+        .stripTrailingZeros()
+        .toPlainString();
+  }
+
+  private static class Row {
+    private final String category;
+    private double budget;
+    private double spent;
+
+    Row(String category, double budget, double spent) {
+      this.category = category;
+      this.budget = budget;
+      this.spent = spent;
+    }
+
+    void add(Row row) {
+      this.budget += row.budget;
+      this.spent += row.spent;
+    }
+
+    void appendTo(StringBuilder table) {
+      table
+          .append('\n')
+          .append(this.category.replace('|', '/').replace('\n', ' '))
+          .append('|')
+          .append(formatAmount(this.budget))
+          .append('|')
+          .append(formatAmount(this.spent));
+    }
+  }
+}
@@ -0,0 +1,95 @@
+package edu.brown.cs.student.main.server.openai;
+
+import java.util.function.LongSupplier;
+
+/**
+ * A consecutive-failure circuit breaker. After {@code failureThreshold} failures in a row the
+ * circuit opens and every call is refused for {@code openNanos}; after that a single trial call is
+ * let through (half-open). A successful trial closes the circuit again, a failed one re-opens it.
+ */
+public class CircuitBreaker {
+
+  public enum State {
+    CLOSED,
+    OPEN,
+    HALF_OPEN
+  }
+
+  private final int failureThreshold;
+  private final long openNanos;
+  private final LongSupplier clock;
+
+  private State state = State.CLOSED;
+  private int consecutiveFailures = 0;
+  private long openedAt;
+  private boolean trialInFlight = false;
+
+  /**
+   * @param failureThreshold consecutive failures that trip the breaker
+   * @param openNanos how long the breaker stays open before allowing a trial call
+   * @param clock nano-resolution clock, e.g. {@code System::nanoTime}
+   */
+  public CircuitBreaker(int failureThreshold, long openNanos, LongSupplier clock) {
+    this.failureThreshold = failureThreshold;
+    this.openNanos = openNanos;
+    this.clock = clock;
+  }
+
+  /**
+   * Asks for permission to make a call. Every permitted call must be followed by exactly one of
+   * {@link #onSuccess()} or {@link #onFailure()}.
+   *
+   * @return whether the call may proceed
+   */
+  public synchronized boolean tryAcquire() {
+    switch (this.state) {
+      case CLOSED:
+        return true;
+      case OPEN:
+        if (this.clock.getAsLong() - this.openedAt < this.openNanos) {
+          return false;
+        }
+        this.state = State.HALF_OPEN;
+        this.trialInFlight = true;
+        return true;
+      default:
+        // half-open: only one trial call at a time
+        if (this.trialInFlight) {
+          return false;
+        }
+        this.trialInFlight = true;
+        return true;
+    }
+  }
+
+  public synchronized void onSuccess() {
+    this.state = State.CLOSED;
+    this.consecutiveFailures = 0;
+    this.trialInFlight = false;
+  }
+
+  public synchronized void onFailure() {
+    this.trialInFlight = false;
+    this.consecutiveFailures++;
+    if (this.state == State.HALF_OPEN || this.consecutiveFailures >= this.failureThreshold) {
+      this.state = State.OPEN;
+      this.openedAt = this.clock.getAsLong();
+    }
+  }
+
+  /**
+   * Records the end of a permitted call whose outcome says nothing about upstream health (e.g. a
+   * 400 caused by our own request), releasing a half-open trial slot without changing state.
+   */
+  public synchronized void onIgnored() {
+    this.trialInFlight = false;
+    if (this.state == State.HALF_OPEN) {
+      this.state = State.OPEN;
+      this.openedAt = this.clock.getAsLong() - this.openNanos;
+    }
+  }
+
+  public synchronized State getState() {
+    return this.state;
+  }
+}
@@ -0,0 +1,13 @@
+package edu.brown.cs.student.main.server.openai;
+
+import java.io.IOException;
+
+/** Thrown without contacting OpenAI while the circuit breaker considers it unhealthy. */
+public class CircuitOpenException extends IOException {
+
+  private static final long serialVersionUID = 1L;
+
+  public CircuitOpenException() {
+    super("OpenAI is temporarily unavailable. Please try again shortly.");
+  }
+}
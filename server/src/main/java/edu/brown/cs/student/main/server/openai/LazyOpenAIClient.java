@@ -0,0 +1,47 @@
+package edu.brown.cs.student.main.server.openai;
+
+import edu.brown.cs.student.main.server.startup.Lazy;
+import java.io.IOException;
+import java.time.Duration;
+
+/**
+ * An OpenAI client created on first use (see {@link Lazy}). If it failed to start, calls throw
+ * {@link IOException} so callers fall back as they would for any unreachable OpenAI.
+ */
+public class LazyOpenAIClient implements OpenAIClientInterface {
+
+  private final Lazy<? extends OpenAIClientInterface> client;
+
+  /**
+   * @param client creates the client
+   */
+  public LazyOpenAIClient(Lazy<? extends OpenAIClientInterface> client) {
+    this.client = client;
+  }
+
+  @Override
+  public String generateSuggestion(String prompt) throws IOException {
+    return this.client().generateSuggestion(prompt);
+  }
+
+  @Override
+  public String generateSuggestion(String prompt, Duration timeout) throws IOException {
+    return this.client().generateSuggestion(prompt, timeout);
+  }
+
+  @Override
+  public void warmUp() {
+    // must not block, so only warm a client that is already there
+    if (this.client.getState() == Lazy.State.READY) {
+      this.client.get().warmUp();
+    }
+  }
+
+  private OpenAIClientInterface client() throws IOException {
+    try {
+      return this.client.get();
+    } catch (IllegalStateException e) {
+      throw new IOException(e.getMessage(), e.getCause());
+    }
+  }
+}
@@ -3,24 +3,97 @@ package edu.brown.cs.student.main.server.openai;
 import com.squareup.moshi.*;
 import io.github.cdimascio.dotenv.Dotenv;
 import java.io.IOException;
+import java.time.Duration;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import okhttp3.*;
 
 public class OpenAIClient implements OpenAIClientInterface {
 
-  private static String API_KEY = null;
-  private static final String API_URL = "https://api.openai.com/v1/chat/completions";
+  private static final String DEFAULT_API_URL = "https://api.openai.com/v1/chat/completions";
+
+  private final String apiKey;
+  private final String apiUrl;
+  // shared so that connections (and their TLS sessions) are pooled across requests
+  private final OkHttpClient httpClient;
   private final Moshi moshi = new Moshi.Builder().build();
+  private final AtomicBoolean warming = new AtomicBoolean();
 
   public OpenAIClient() {
-    Dotenv dotenv = Dotenv.load();
-    API_KEY = dotenv.get("OPENAI_API_KEY");
+    this(
+        Dotenv.load().get("OPENAI_API_KEY"),
+        DEFAULT_API_URL,
+        new OkHttpClient.Builder()
+            .connectTimeout(5, TimeUnit.SECONDS)
+            .readTimeout(30, TimeUnit.SECONDS)
+            .build());
+  }
+
+  /**
+   * @param apiKey the OpenAI API key
+   * @param apiUrl the chat completions endpoint, overridable for tests
+   * @param httpClient the HTTP client to issue requests with
+   */
+  public OpenAIClient(String apiKey, String apiUrl, OkHttpClient httpClient) {
+    this.apiKey = apiKey;
+    this.apiUrl = apiUrl;
+    this.httpClient = httpClient;
   }
 
   @Override
   public String generateSuggestion(String prompt) throws IOException {
-    OkHttpClient client = new OkHttpClient();
+    return this.execute(prompt, this.httpClient);
+  }
+
+  @Override
+  public String generateSuggestion(String prompt, Duration timeout) throws IOException {
+    // derived clients share the connection pool and dispatcher of the original
+    OkHttpClient client =
+        this.httpClient.newBuilder().callTimeout(timeout.toMillis(), TimeUnit.MILLISECONDS).build();
+    return this.execute(prompt, client);
+  }
+
+  @Override
+  public void warmUp() {
+    // a pooled connection already skips the TCP and TLS handshakes
+    if (this.httpClient.connectionPool().idleConnectionCount() > 0
+        || !this.warming.compareAndSet(false, true)) {
+      return;
+    }
+    // any cheap request opens a connection that later calls to the same host reuse; it goes to the
+    // endpoint itself, authenticated, so the API never sees an anonymous probe from this server
+    Request ping =
+        new Request.Builder()
+            .url(this.apiUrl)
+            .header("Authorization", "Bearer " + this.apiKey)
+            .head()
+            .build();
+    this.httpClient
+        .newCall(ping)
+        .enqueue(
+            new Callback() {
+              @Override
+              public void onFailure(Call call, IOException e) {
+                OpenAIClient.this.warming.set(false);
+              }
+
+              @Override
+              public void onResponse(Call call, Response response) {
+                response.close();
+                OpenAIClient.this.warming.set(false);
+              }
+            });
+  }
+
+  /** Cancels calls still queued, stops the client's threads and closes its pooled connections. */
+  public void close() {
+    this.httpClient.dispatcher().cancelAll();
+    this.httpClient.dispatcher().executorService().shutdown();
+    this.httpClient.connectionPool().evictAll();
+  }
 
+  private String execute(String prompt, OkHttpClient client) throws IOException {
     String context =
         "You are an expert in personal financial budgeting and advice. "
             + "Always respond with a single, clear, and concise paragraph in plain text. "
@@ -42,15 +115,16 @@ public class OpenAIClient implements OpenAIClientInterface {
     RequestBody body = RequestBody.create(jsonPayload, MediaType.get("application/json"));
     Request httpRequest =
         new Request.Builder()
-            .url(API_URL)
-            .header("Authorization", "Bearer " + API_KEY)
+            .url(this.apiUrl)
+            .header("Authorization", "Bearer " + this.apiKey)
             .post(body)
             .build();
 
     // Execute HTTP request and handle response
     try (Response response = client.newCall(httpRequest).execute()) {
       if (!response.isSuccessful()) {
-        throw new IOException("Unexpected code " + response);
+        throw new OpenAIHttpException(
+            response.code(), OpenAIHttpException.parseRetryAfter(response.header("Retry-After")));
       }
 
       // Deserialize JSON response
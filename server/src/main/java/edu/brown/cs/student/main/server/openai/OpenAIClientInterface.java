@@ -1,8 +1,24 @@
 package edu.brown.cs.student.main.server.openai;
 
 import java.io.IOException;
+import java.time.Duration;
 
 public interface OpenAIClientInterface {
 
   String generateSuggestion(String prompt) throws IOException;
+
+  /**
+   * Like {@link #generateSuggestion(String)}, but gives up once the timeout has elapsed.
+   * Implementations that cannot bound their own latency may ignore the timeout.
+   */
+  default String generateSuggestion(String prompt, Duration timeout) throws IOException {
+    return this.generateSuggestion(prompt);
+  }
+
+  /**
+   * Hints that a suggestion is about to be requested, so the client can open its connection while
+   * the caller is still preparing the prompt. Must not block; clients without a connection to
+   * prepare do nothing.
+   */
+  default void warmUp() {}
 }
@@ -0,0 +1,68 @@
+package edu.brown.cs.student.main.server.openai;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+/** Thrown when the OpenAI API answers with a non-2xx status code. */
+public class OpenAIHttpException extends IOException {
+
+  private static final long serialVersionUID = 1L;
+
+  private final int statusCode;
+  private final Duration retryAfter;
+
+  /**
+   * @param statusCode the HTTP status returned by the API
+   * @param retryAfter the delay requested by the Retry-After header, or null if absent
+   */
+  public OpenAIHttpException(int statusCode, Duration retryAfter) {
+    super("Unexpected code " + statusCode + " from OpenAI");
+    this.statusCode = statusCode;
+    this.retryAfter = retryAfter;
+  }
+
+  public int getStatusCode() {
+    return this.statusCode;
+  }
+
+  /**
+   * @return the server-requested delay before retrying, or null if none was given
+   */
+  public Duration getRetryAfter() {
+    return this.retryAfter;
+  }
+
+  /**
+   * @return whether the failure is transient (rate limited or a server-side error)
+   */
+  public boolean isRetryable() {
+    return this.statusCode == 429 || this.statusCode >= 500;
+  }
+
+  /**
+   * Parses a Retry-After header, which is either a number of seconds or an HTTP date.
+   *
+   * @param header the raw header value, may be null
+   * @return the requested delay, or null if the header is absent or malformed
+   */
+  public static Duration parseRetryAfter(String header) {
+    if (header == null || header.isBlank()) {
+      return null;
+    }
+    try {
+      return Duration.ofSeconds(Math.max(0, Long.parseLong(header.trim())));
+    } catch (NumberFormatException e) {
+      // fall through to the HTTP-date form
+    }
+    try {
+      ZonedDateTime at = ZonedDateTime.parse(header.trim(), DateTimeFormatter.RFC_1123_DATE_TIME);
+      Duration delay = Duration.between(ZonedDateTime.now(at.getZone()), at);
+      return delay.isNegative() ? Duration.ZERO : delay;
+    } catch (DateTimeParseException e) {
+      return null;
+    }
+  }
+}
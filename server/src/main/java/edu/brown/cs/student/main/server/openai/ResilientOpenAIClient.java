@@ -0,0 +1,142 @@
+package edu.brown.cs.student.main.server.openai;
+
+import edu.brown.cs.student.main.server.metrics.Metrics;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Wraps another {@link OpenAIClientInterface} with retries, a circuit breaker and an overall
+ * deadline. Rate limiting (429), server errors (5xx) and network failures are retried with
+ * exponential backoff and full jitter, honoring the server's Retry-After when it gives one. Every
+ * attempt, and every wait between attempts, counts against a single per-call deadline, so a caller
+ * never waits longer than the deadline no matter how unhealthy the upstream is.
+ */
+public class ResilientOpenAIClient implements OpenAIClientInterface {
+
+  private final OpenAIClientInterface delegate;
+  private final int maxAttempts;
+  private final Duration baseBackoff;
+  private final Duration maxBackoff;
+  private final Duration deadline;
+  private final CircuitBreaker circuitBreaker;
+
+  /**
+   * @param delegate the client that actually talks to OpenAI
+   * @param maxAttempts the maximum number of attempts per call, including the first
+   * @param baseBackoff the backoff ceiling before the first retry; doubles on every retry
+   * @param maxBackoff the largest backoff ceiling
+   * @param deadline the total time budget of a call, across all attempts
+   * @param circuitBreaker the breaker shared by every call through this client
+   */
+  public ResilientOpenAIClient(
+      OpenAIClientInterface delegate,
+      int maxAttempts,
+      Duration baseBackoff,
+      Duration maxBackoff,
+      Duration deadline,
+      CircuitBreaker circuitBreaker) {
+    this.delegate = delegate;
+    this.maxAttempts = maxAttempts;
+    this.baseBackoff = baseBackoff;
+    this.maxBackoff = maxBackoff;
+    this.deadline = deadline;
+    this.circuitBreaker = circuitBreaker;
+    Metrics.gauge(
+        "openai.circuit.open",
+        () -> circuitBreaker.getState() == CircuitBreaker.State.OPEN ? 1 : 0);
+  }
+
+  @Override
+  public void warmUp() {
+    // no point connecting while every call would be refused anyway
+    if (this.circuitBreaker.getState() != CircuitBreaker.State.OPEN) {
+      this.delegate.warmUp();
+    }
+  }
+
+  @Override
+  public String generateSuggestion(String prompt) throws IOException {
+    return this.generateSuggestion(prompt, this.deadline);
+  }
+
+  @Override
+  public String generateSuggestion(String prompt, Duration timeout) throws IOException {
+    long deadlineAt = System.nanoTime() + Math.min(timeout.toNanos(), this.deadline.toNanos());
+    IOException lastFailure = null;
+
+    for (int attempt = 0; attempt < this.maxAttempts; attempt++) {
+      if (attempt > 0) {
+        Duration backoff = this.backoff(attempt, lastFailure);
+        if (System.nanoTime() + backoff.toNanos() >= deadlineAt) {
+          // waiting would take us past the deadline; fail now instead of later
+          break;
+        }
+        Metrics.counter("openai.retries").increment();
+        this.sleep(backoff);
+      }
+
+      if (!this.circuitBreaker.tryAcquire()) {
+        Metrics.counter("openai.circuit.rejected").increment();
+        throw new CircuitOpenException();
+      }
+
+      long remaining = deadlineAt - System.nanoTime();
+      if (remaining <= 0) {
+        this.circuitBreaker.onIgnored();
+        break;
+      }
+      try {
+        String result = this.delegate.generateSuggestion(prompt, Duration.ofNanos(remaining));
+        this.circuitBreaker.onSuccess();
+        return result;
+      } catch (OpenAIHttpException e) {
+        if (!e.isRetryable()) {
+          // our request was bad; that says nothing about OpenAI's health
+          this.circuitBreaker.onIgnored();
+          throw e;
+        }
+        this.circuitBreaker.onFailure();
+        lastFailure = e;
+      } catch (InterruptedIOException e) {
+        // includes timeouts
+        this.circuitBreaker.onFailure();
+        lastFailure = e;
+        if (Thread.currentThread().isInterrupted()) {
+          throw e;
+        }
+      } catch (IOException e) {
+        this.circuitBreaker.onFailure();
+        lastFailure = e;
+      }
+    }
+
+    Metrics.counter("openai.failures").increment();
+    if (lastFailure == null) {
+      throw new InterruptedIOException("OpenAI request exceeded its deadline of " + this.deadline);
+    }
+    throw lastFailure;
+  }
+
+  private Duration backoff(int attempt, IOException lastFailure) {
+    if (lastFailure instanceof OpenAIHttpException
+        && ((OpenAIHttpException) lastFailure).getRetryAfter() != null) {
+      return ((OpenAIHttpException) lastFailure).getRetryAfter();
+    }
+    // "full jitter": a uniformly random wait up to an exponentially growing ceiling
+    long ceiling =
+        Math.min(
+            this.maxBackoff.toMillis(), this.baseBackoff.toMillis() << Math.min(attempt - 1, 20));
+    return Duration.ofMillis(ThreadLocalRandom.current().nextLong(ceiling + 1));
+  }
+
+  private void sleep(Duration duration) throws InterruptedIOException {
+    try {
+      Thread.sleep(duration.toMillis());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting to retry OpenAI request");
+    }
+  }
+}
@@ -0,0 +1,46 @@
+package edu.brown.cs.student.main.server.openai;
+
+/**
+ * Cheap, local approximation of how many tokens a BPE tokenizer (like the one used by the GPT
+ * models) will produce for a piece of text. Common English words are usually one token, longer
+ * words split roughly every seven characters, digits are grouped in threes and each punctuation
+ * character is its own token. It errs slightly on the high side, which is the safe direction for
+ * enforcing a budget.
+ */
+public class TokenEstimator {
+
+  private TokenEstimator() {}
+
+  /**
+   * @param text the text to measure
+   * @return the estimated number of tokens
+   */
+  public static int estimate(CharSequence text) {
+    int tokens = 0;
+    int i = 0;
+    int n = text.length();
+    while (i < n) {
+      char c = text.charAt(i);
+      if (Character.isWhitespace(c)) {
+        // leading spaces are folded into the following word
+        i++;
+      } else if (Character.isLetter(c)) {
+        int start = i;
+        while (i < n && Character.isLetter(text.charAt(i))) {
+          i++;
+        }
+        tokens += (i - start + 6) / 7;
+      } else if (Character.isDigit(c)) {
+        int start = i;
+        while (i < n && Character.isDigit(text.charAt(i))) {
+          i++;
+        }
+        tokens += (i - start + 2) / 3;
+      } else {
+        tokens++;
+        i++;
+      }
+    }
+    return tokens;
+  }
+}
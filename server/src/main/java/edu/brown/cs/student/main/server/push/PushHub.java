@@ -0,0 +1,144 @@
+package edu.brown.cs.student.main.server.push;
+
+import edu.brown.cs.student.main.server.handlers.Utils;
+import edu.brown.cs.student.main.server.metrics.Metrics;
+import edu.brown.cs.student.main.server.storage.DocumentChange;
+import edu.brown.cs.student.main.server.storage.WatchableStorage;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+/**
+ * Fans out changes to watched collections to connected clients. However many sessions watch a
+ * collection, the hub holds at most one upstream watch on it: the first subscriber attaches it and
+ * the last one to leave cancels it.
+ */
+public class PushHub {
+
+  /** A connected client that pushed messages are written to. */
+  public interface Sink {
+    void send(String message) throws IOException;
+  }
+
+  private static class Upstream {
+    private final Set<Sink> sinks = new CopyOnWriteArraySet<>();
+    private WatchableStorage.Subscription subscription;
+  }
+
+  private final WatchableStorage storage;
+  // guarded by this
+  private final Map<String, Upstream> upstreams = new HashMap<>();
+
+  public PushHub(WatchableStorage storage) {
+    this.storage = storage;
+    Metrics.gauge("push.collections", this::watchedCollections);
+  }
+
+  /**
+   * Starts pushing changes to the collection to the sink.
+   *
+   * @param collection_id the collection to watch
+   * @param sink the client to push to
+   */
+  public synchronized void subscribe(String collection_id, Sink sink) {
+    Upstream upstream = this.upstreams.get(collection_id);
+    if (upstream == null) {
+      upstream = new Upstream();
+      this.upstreams.put(collection_id, upstream);
+      Upstream target = upstream;
+      upstream.subscription =
+          this.storage.watchCollection(
+              collection_id,
+              new WatchableStorage.CollectionListener() {
+                @Override
+                public void onChanges(List<DocumentChange> changes, boolean initial) {
+                  PushHub.this.broadcast(target, changes, initial);
+                }
+
+                @Override
+                public void onError(Throwable error) {
+                  PushHub.this.failed(collection_id, target);
+                }
+              });
+    }
+    upstream.sinks.add(sink);
+  }
+
+  /**
+   * Stops pushing changes to the sink, dropping the upstream watch if nobody else needs it.
+   *
+   * @param collection_id the collection the sink was subscribed to
+   * @param sink the client to stop pushing to
+   */
+  public synchronized void unsubscribe(String collection_id, Sink sink) {
+    Upstream upstream = this.upstreams.get(collection_id);
+    if (upstream == null) {
+      return;
+    }
+    upstream.sinks.remove(sink);
+    if (upstream.sinks.isEmpty()) {
+      this.upstreams.remove(collection_id);
+      upstream.subscription.cancel();
+    }
+  }
+
+  /**
+   * Forgets an upstream watch that failed, so the next subscriber to the collection attaches a new
+   * one. Its current sinks stay connected but receive nothing more until they resubscribe.
+   */
+  private synchronized void failed(String collection_id, Upstream upstream) {
+    Metrics.counter("push.watch_failures").increment();
+    this.upstreams.remove(collection_id, upstream);
+  }
+
+  /**
+   * @return the number of collections with an upstream watch attached
+   */
+  public synchronized int watchedCollections() {
+    return this.upstreams.size();
+  }
+
+  private void broadcast(Upstream upstream, List<DocumentChange> changes, boolean initial) {
+    // clients load the full collection themselves when they connect, and a late subscriber would
+    // never see the initial batch anyway, so only live changes are pushed
+    if (initial && !changes.isEmpty()) {
+      return;
+    }
+    String message = toMessage(changes, initial);
+    for (Sink sink : upstream.sinks) {
+      try {
+        sink.send(message);
+        Metrics.counter("push.messages").increment();
+      } catch (IOException e) {
+        // the session is going away; its close callback will unsubscribe it
+        Metrics.counter("push.send_failures").increment();
+      }
+    }
+  }
+
+  private static String toMessage(List<DocumentChange> changes, boolean reset) {
+    List<Map<String, Object>> upserts = new ArrayList<>();
+    List<String> deletes = new ArrayList<>();
+    for (DocumentChange change : changes) {
+      if (change.isDeleted()) {
+        // clients key budgets by category; anything else in the collection is not theirs
+        String category = Utils.categoryOf(change.getDocId());
+        if (category != null) {
+          deletes.add(category);
+        }
+      } else {
+        upserts.add(Utils.formatBudget(change.getData()));
+      }
+    }
+    Map<String, Object> message = new HashMap<>();
+    message.put("type", "changes");
+    message.put("reset", reset);
+    message.put("upserts", upserts);
+    message.put("deletes", deletes);
+    return Utils.toMoshiJson(message);
+  }
+}
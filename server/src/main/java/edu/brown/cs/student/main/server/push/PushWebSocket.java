@@ -0,0 +1,62 @@
+package edu.brown.cs.student.main.server.push;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.eclipse.jetty.websocket.api.Session;
+import org.eclipse.jetty.websocket.api.annotations.OnWebSocketClose;
+import org.eclipse.jetty.websocket.api.annotations.OnWebSocketConnect;
+import org.eclipse.jetty.websocket.api.annotations.WebSocket;
+
+/**
+ * WebSocket endpoint through which browsers receive a user's budget changes as they happen. Clients
+ * connect to {@code /push?user=<id>}; each message is a JSON object of the form {@code
+ * {"type":"changes","reset":false,"upserts":[...],"deletes":[...]}}. A reset message means the
+ * collection was cleared and only the listed upserts remain.
+ */
+@WebSocket
+public class PushWebSocket {
+
+  private final PushHub hub;
+  private final Map<Session, Subscriber> subscribers = new ConcurrentHashMap<>();
+
+  public PushWebSocket(PushHub hub) {
+    this.hub = hub;
+  }
+
+  private static class Subscriber implements PushHub.Sink {
+    private final Session session;
+    private final String collectionId;
+
+    Subscriber(Session session, String collectionId) {
+      this.session = session;
+      this.collectionId = collectionId;
+    }
+
+    @Override
+    public void send(String message) {
+      // non-blocking: a slow browser must not stall the thread delivering upstream changes
+      this.session.getRemote().sendStringByFuture(message);
+    }
+  }
+
+  @OnWebSocketConnect
+  public void onConnect(Session session) {
+    List<String> users = session.getUpgradeRequest().getParameterMap().get("user");
+    if (users == null || users.isEmpty()) {
+      session.close(1008, "Missing user parameter.");
+      return;
+    }
+    Subscriber subscriber = new Subscriber(session, "user-" + users.get(0));
+    this.subscribers.put(session, subscriber);
+    this.hub.subscribe(subscriber.collectionId, subscriber);
+  }
+
+  @OnWebSocketClose
+  public void onClose(Session session, int statusCode, String reason) {
+    Subscriber subscriber = this.subscribers.remove(session);
+    if (subscriber != null) {
+      this.hub.unsubscribe(subscriber.collectionId, subscriber);
+    }
+  }
+}
@@ -0,0 +1,46 @@
+package edu.brown.cs.student.main.server.ratelimit;
+
+import edu.brown.cs.student.main.server.handlers.Utils;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import spark.Filter;
+import spark.Request;
+import spark.Response;
+import spark.Spark;
+
+/**
+ * Spark before-filter that rejects requests with 429 Too Many Requests once the caller has run out
+ * of tokens. Requests are attributed to the "user" query parameter, falling back to the client IP.
+ */
+public class RateLimitFilter implements Filter {
+
+  private final RateLimiter rateLimiter;
+
+  public RateLimitFilter(RateLimiter rateLimiter) {
+    this.rateLimiter = rateLimiter;
+  }
+
+  @Override
+  public void handle(Request request, Response response) {
+    String user = request.queryParams("user");
+    String key = user != null ? "user-" + user : "ip-" + request.ip();
+
+    long waitNanos = this.rateLimiter.tryAcquire(key);
+    if (waitNanos == 0) {
+      return;
+    }
+
+    long retryAfterSeconds = Math.max(1, TimeUnit.NANOSECONDS.toSeconds(waitNanos - 1) + 1);
+    Map<String, Object> responseMap = new HashMap<>();
+    responseMap.put("response_type", "failure");
+    responseMap.put("error", "Too many requests. Try again in " + retryAfterSeconds + " seconds.");
+    responseMap.put("retry_after", retryAfterSeconds);
+
+    // halting skips the after-filters, so the CORS header has to be set here
+    response.header("Access-Control-Allow-Origin", "*");
+    response.header("Retry-After", String.valueOf(retryAfterSeconds));
+    response.type("application/json");
+    Spark.halt(429, Utils.toMoshiJson(responseMap));
+  }
+}
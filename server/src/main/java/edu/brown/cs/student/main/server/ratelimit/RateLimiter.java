@@ -0,0 +1,118 @@
+package edu.brown.cs.student.main.server.ratelimit;
+
+import edu.brown.cs.student.main.server.metrics.Metrics;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Combines one token bucket per user with a single global bucket. A request must get a token from
+ * both: the per-user bucket stops a single client from monopolizing the endpoint, and the global
+ * bucket caps total upstream spend. Idle per-user buckets are swept opportunistically from the
+ * request path, so no background thread is needed.
+ */
+public class RateLimiter {
+
+  private final long userCapacity;
+  private final long userNanosPerToken;
+  private final long idleNanos;
+  private final LongSupplier clock;
+
+  private final TokenBucket globalBucket;
+  private final Map<String, TokenBucket> userBuckets = new ConcurrentHashMap<>();
+  private final AtomicLong nextSweep;
+
+  /**
+   * @param userCapacity burst size allowed per user
+   * @param userRefill time to refill one per-user token
+   * @param globalCapacity burst size allowed across all users
+   * @param globalRefill time to refill one global token
+   * @param idleTimeout how long an untouched, full user bucket is kept before being dropped
+   * @param unit the unit of the three durations above
+   * @param clock nano-resolution clock, e.g. {@code System::nanoTime}
+   */
+  public RateLimiter(
+      long userCapacity,
+      long userRefill,
+      long globalCapacity,
+      long globalRefill,
+      long idleTimeout,
+      TimeUnit unit,
+      LongSupplier clock) {
+    this.userCapacity = userCapacity;
+    this.userNanosPerToken = unit.toNanos(userRefill);
+    this.idleNanos = unit.toNanos(idleTimeout);
+    this.clock = clock;
+
+    long now = clock.getAsLong();
+    this.globalBucket = new TokenBucket(globalCapacity, unit.toNanos(globalRefill), now);
+    this.nextSweep = new AtomicLong(now + this.idleNanos);
+  }
+
+  /**
+   * Attempts to admit one request for the given key.
+   *
+   * @param key the user (or client address) the request is attributed to
+   * @return 0 if admitted, otherwise the number of nanos the caller should wait before retrying
+   */
+  public long tryAcquire(String key) {
+    long now = this.clock.getAsLong();
+    this.sweepIfDue(now);
+
+    TokenBucket userBucket =
+        this.userBuckets.computeIfAbsent(
+            key, k -> new TokenBucket(this.userCapacity, this.userNanosPerToken, now));
+    long userWait = userBucket.tryAcquire(now);
+    if (userWait > 0) {
+      Metrics.counter("ratelimit.rejected.user").increment();
+      return userWait;
+    }
+
+    long globalWait = this.globalBucket.tryAcquire(now);
+    if (globalWait > 0) {
+      // the user did not actually get to spend this token
+      userBucket.refund();
+      Metrics.counter("ratelimit.rejected.global").increment();
+      return globalWait;
+    }
+
+    Metrics.counter("ratelimit.allowed").increment();
+    return 0;
+  }
+
+  /** Registers gauges describing current bucket occupancy under the given metric prefix. */
+  public void registerMetrics(String prefix) {
+    Metrics.gauge(
+        prefix + ".global.available", () -> this.globalBucket.available(this.clock.getAsLong()));
+    Metrics.gauge(prefix + ".global.capacity", this.globalBucket::getCapacity);
+    Metrics.gauge(prefix + ".users.tracked", this.userBuckets::size);
+    Metrics.gauge(prefix + ".users.tokens_in_use", this::userTokensInUse);
+  }
+
+  /**
+   * @return the number of per-user buckets currently held in memory
+   */
+  public int trackedUsers() {
+    return this.userBuckets.size();
+  }
+
+  private long userTokensInUse() {
+    long now = this.clock.getAsLong();
+    long inUse = 0;
+    for (TokenBucket bucket : this.userBuckets.values()) {
+      inUse += bucket.getCapacity() - bucket.available(now);
+    }
+    return inUse;
+  }
+
+  private void sweepIfDue(long now) {
+    long due = this.nextSweep.get();
+    // only the thread that wins the CAS performs the sweep
+    if (now - due < 0 || !this.nextSweep.compareAndSet(due, now + this.idleNanos)) {
+      return;
+    }
+    this.userBuckets.entrySet().removeIf(entry -> entry.getValue().isIdle(now, this.idleNanos));
+  }
+}
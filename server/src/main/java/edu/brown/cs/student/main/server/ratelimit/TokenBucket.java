@@ -0,0 +1,88 @@
+package edu.brown.cs.student.main.server.ratelimit;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A lock-free token bucket. Rather than storing a token count and a refill timestamp (which would
+ * need a lock to update together), the bucket keeps a single "theoretical arrival time" (the GCRA
+ * formulation): the instant at which the bucket would be completely full again. Taking a token
+ * pushes that instant forward by one refill interval, and the request is allowed as long as it does
+ * not end up more than {@code capacity} intervals in the future.
+ */
+public class TokenBucket {
+
+  private final long capacity;
+  private final long nanosPerToken;
+  private final long burstNanos;
+
+  // instant (in clock nanos) at which the bucket is full again
+  private final AtomicLong fullAt;
+  private volatile long lastAccess;
+
+  /**
+   * @param capacity the maximum number of tokens the bucket can hold (the burst size)
+   * @param nanosPerToken how long it takes to refill a single token
+   * @param now the current clock reading, in nanos
+   */
+  public TokenBucket(long capacity, long nanosPerToken, long now) {
+    if (capacity <= 0 || nanosPerToken <= 0) {
+      throw new IllegalArgumentException("TokenBucket: capacity and refill rate must be positive");
+    }
+    this.capacity = capacity;
+    this.nanosPerToken = nanosPerToken;
+    this.burstNanos = capacity * nanosPerToken;
+    this.fullAt = new AtomicLong(now);
+    this.lastAccess = now;
+  }
+
+  /**
+   * Attempts to take one token.
+   *
+   * @param now the current clock reading, in nanos
+   * @return 0 if a token was taken, otherwise how many nanos until one will be available
+   */
+  public long tryAcquire(long now) {
+    this.lastAccess = now;
+    while (true) {
+      long current = this.fullAt.get();
+      long next = Math.max(current, now) + this.nanosPerToken;
+      long overflow = next - now - this.burstNanos;
+      if (overflow > 0) {
+        return overflow;
+      }
+      if (this.fullAt.compareAndSet(current, next)) {
+        return 0;
+      }
+    }
+  }
+
+  /** Returns a previously acquired token, e.g. when a later check rejected the request. */
+  public void refund() {
+    this.fullAt.addAndGet(-this.nanosPerToken);
+  }
+
+  /**
+   * @param now the current clock reading, in nanos
+   * @return the number of whole tokens currently available
+   */
+  public long available(long now) {
+    long debt = Math.max(0, this.fullAt.get() - now);
+    return this.capacity - (debt + this.nanosPerToken - 1) / this.nanosPerToken;
+  }
+
+  public long getCapacity() {
+    return this.capacity;
+  }
+
+  /**
+   * A bucket is idle once it has refilled completely and has not been touched for the given time;
+   * dropping it is then indistinguishable from keeping it.
+   *
+   * @param now the current clock reading, in nanos
+   * @param idleNanos how long the bucket must have gone unused
+   * @return whether the bucket can be discarded
+   */
+  public boolean isIdle(long now, long idleNanos) {
+    return this.fullAt.get() <= now && now - this.lastAccess >= idleNanos;
+  }
+}
@@ -0,0 +1,136 @@
+package edu.brown.cs.student.main.server.rollover;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The length of a budget's period, parsed from its free-text "duration" field. Understands the
+ * usual words ("weekly", "monthly", "yearly", ...), a bare number of days ("30"), and counts of
+ * units ("2 weeks", "6 months"). Month-based periods follow the calendar, so a monthly budget
+ * started on the 31st rolls over on the last day of shorter months.
+ */
+public class BudgetPeriod {
+
+  private static final Pattern COUNTED =
+      Pattern.compile("(\\d{1,4})\\s*(day|days|week|weeks|month|months|year|years)?");
+
+  private final int days;
+  private final int months;
+
+  private BudgetPeriod(int days, int months) {
+    this.days = days;
+    this.months = months;
+  }
+
+  /**
+   * @param duration a budget's duration field
+   * @return its period, or null if the duration is missing or not understood
+   */
+  public static BudgetPeriod parse(String duration) {
+    if (duration == null) {
+      return null;
+    }
+    String text = duration.trim().toLowerCase(Locale.ROOT);
+    switch (text) {
+      case "daily":
+      case "day":
+        return new BudgetPeriod(1, 0);
+      case "weekly":
+      case "week":
+        return new BudgetPeriod(7, 0);
+      case "biweekly":
+      case "fortnightly":
+        return new BudgetPeriod(14, 0);
+      case "monthly":
+      case "month":
+        return new BudgetPeriod(0, 1);
+      case "quarterly":
+        return new BudgetPeriod(0, 3);
+      case "yearly":
+      case "annually":
+      case "annual":
+      case "year":
+        return new BudgetPeriod(0, 12);
+      default:
+        break;
+    }
+    Matcher matcher = COUNTED.matcher(text);
+    if (!matcher.matches()) {
+      return null;
+    }
+    int count = Integer.parseInt(matcher.group(1));
+    String unit = matcher.group(2) == null ? "day" : matcher.group(2);
+    if (count == 0) {
+      return null;
+    } else if (unit.startsWith("day")) {
+      return new BudgetPeriod(count, 0);
+    } else if (unit.startsWith("week")) {
+      return new BudgetPeriod(count * 7, 0);
+    } else if (unit.startsWith("month")) {
+      return new BudgetPeriod(0, count);
+    }
+    return new BudgetPeriod(0, count * 12);
+  }
+
+  /**
+   * @param start when the period started
+   * @param k how many periods later
+   * @return the start of the k-th period after the one starting at {@code start}
+   */
+  private LocalDateTime plus(LocalDateTime start, long k) {
+    // always step from the original start, so month ends do not drift (Jan 31, Feb 29, Mar 31)
+    return this.months > 0 ? start.plusMonths(k * this.months) : start.plusDays(k * this.days);
+  }
+
+  /**
+   * @return the smallest k of at least 1 for which {@code start + k * period} is after {@code
+   *     after}
+   */
+  private long periodsUntilAfter(LocalDateTime start, LocalDateTime after) {
+    // whole calendar units elapsed never overshoot, so count them and step forward from there
+    long elapsed =
+        this.months > 0
+            ? ChronoUnit.MONTHS.between(start, after) / this.months
+            : ChronoUnit.DAYS.between(start, after) / this.days;
+    long k = Math.max(1, elapsed);
+    while (!this.plus(start, k).isAfter(after)) {
+      k++;
+    }
+    return k;
+  }
+
+  /**
+   * Finds the first period boundary after a given instant. Periods tile time from {@code start}
+   * onwards, so a budget that missed several rollovers (e.g. while the server was down) lands on
+   * the boundary that closes the current period.
+   *
+   * @param start when the budget's current period started
+   * @param after the instant to look past
+   * @return the earliest {@code start + k * period} with k at least 1 that is after {@code after}
+   */
+  public LocalDateTime boundaryAfter(LocalDateTime start, LocalDateTime after) {
+    return this.plus(start, this.periodsUntilAfter(start, after));
+  }
+
+  /**
+   * Finds the start of the period containing a given instant.
+   *
+   * @param start when the budget's current period started
+   * @param at the instant
+   * @return the latest {@code start + k * period} with k at least 0 that is not after {@code at}
+   */
+  public LocalDateTime boundaryAtOrBefore(LocalDateTime start, LocalDateTime at) {
+    if (at.isBefore(start)) {
+      return start;
+    }
+    return this.plus(start, this.periodsUntilAfter(start, at) - 1);
+  }
+
+  @Override
+  public String toString() {
+    return this.months > 0 ? this.months + " months" : this.days + " days";
+  }
+}
@@ -0,0 +1,499 @@
+package edu.brown.cs.student.main.server.rollover;
+
+import edu.brown.cs.student.main.server.metrics.Metrics;
+import edu.brown.cs.student.main.server.sharding.HashRing;
+import edu.brown.cs.student.main.server.storage.DocumentWrite;
+import edu.brown.cs.student.main.server.storage.StorageInterface;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Starts a new period for budgets whose period (their "duration") has ended: the closed period's
+ * totals are archived to the user's history collection, and the budget's "spent" is reset to 0.
+ *
+ * <p>Budgets are indexed in a priority queue by their next rollover, so each run only touches the
+ * budgets that are due, never every user. Due budgets are handled in batches: their users'
+ * collections are read together, and the archive and reset documents are written together.
+ *
+ * <p>Periods are counted from the budget's "time" (when it was added), so they do not drift; the
+ * start of the current period is kept in "period_start". A budget whose rollovers were missed (e.g.
+ * while the server was down) is rolled over once, archiving everything spent since its last
+ * rollover.
+ *
+ * <p>Storage has no transactions or field updates, so a reset rewrites the whole budget. To keep
+ * that from undoing concurrent changes, due budgets are read again just before the writes: a budget
+ * deleted in the meantime is not recreated, one whose period was already rolled over (e.g. by
+ * another instance) is skipped, and the rest are archived and reset from their latest contents.
+ * Spending recorded in the instant between that read and the write can still be lost.
+ *
+ * <p>When users are sharded over several instances, each instance only schedules the users it owns
+ * on the {@link HashRing}, so a budget is not read and rolled over by all of them. A budget added
+ * here for another instance's user (served locally because its owner could not be reached) is still
+ * scheduled, since its owner will not learn of it until it restarts.
+ */
+public class RolloverScheduler {
+
+  /** Archived periods of user-N are kept in history-user-N. */
+  public static final String HISTORY_PREFIX = "history-";
+
+  private static final Comparator<Entry> BY_DUE =
+      Comparator.comparingLong(entry -> entry.dueMillis);
+
+  private final StorageInterface storage;
+  private final ZoneId zone;
+  private final LongSupplier clock;
+  private final int batchSize;
+  private final int maxInFlight;
+  private final HashRing ring;
+  private final String self;
+
+  // guarded by this; entries replaced in scheduled are left in the queue and skipped when polled,
+  // until they outnumber the live ones and the queue is rebuilt
+  private PriorityQueue<Entry> queue = new PriorityQueue<>(BY_DUE);
+  private final Map<String, Map<String, Entry>> scheduled = new HashMap<>();
+  private int scheduledCount = 0;
+
+  private static class Entry {
+    private final String collectionId;
+    private final String docId;
+    private final long dueMillis;
+
+    private Entry(String collectionId, String docId, long dueMillis) {
+      this.collectionId = collectionId;
+      this.docId = docId;
+      this.dueMillis = dueMillis;
+    }
+  }
+
+  /**
+   * @param storage where the budgets live
+   * @param zone the time zone the budgets' times are in (the server's, as AddHandler records them)
+   * @param clock the current time in epoch milliseconds
+   * @param batchSize how many budgets to roll over per batch; each writes two documents
+   * @param maxInFlight the most collection reads outstanding at once
+   */
+  public RolloverScheduler(
+      StorageInterface storage, ZoneId zone, LongSupplier clock, int batchSize, int maxInFlight) {
+    this(storage, zone, clock, batchSize, maxInFlight, null, null);
+  }
+
+  /**
+   * @param storage where the budgets live
+   * @param zone the time zone the budgets' times are in (the server's, as AddHandler records them)
+   * @param clock the current time in epoch milliseconds
+   * @param batchSize how many budgets to roll over per batch; each writes two documents
+   * @param maxInFlight the most collection reads outstanding at once
+   * @param ring which instance owns each user, or null if this one owns them all
+   * @param self this instance's node on the ring
+   */
+  public RolloverScheduler(
+      StorageInterface storage,
+      ZoneId zone,
+      LongSupplier clock,
+      int batchSize,
+      int maxInFlight,
+      HashRing ring,
+      String self) {
+    this.storage = storage;
+    this.zone = zone;
+    this.clock = clock;
+    this.batchSize = batchSize;
+    this.maxInFlight = maxInFlight;
+    this.ring = ring;
+    this.self = self;
+  }
+
+  /**
+   * Registers gauges for the number of scheduled budgets and the next rollover.
+   *
+   * @param prefix the metric name prefix, e.g. "rollover"
+   */
+  public void registerMetrics(String prefix) {
+    Metrics.gauge(prefix + ".scheduled", this::scheduledCount);
+    Metrics.gauge(prefix + ".next_due_ms", this::nextDueMillis);
+  }
+
+  /**
+   * @return the number of budgets waiting for a rollover
+   */
+  public synchronized int scheduledCount() {
+    return this.scheduledCount;
+  }
+
+  /**
+   * @return when the next rollover is due, in epoch milliseconds, or Long.MAX_VALUE if none is
+   */
+  public synchronized long nextDueMillis() {
+    this.dropStale();
+    Entry next = this.queue.peek();
+    return next == null ? Long.MAX_VALUE : next.dueMillis;
+  }
+
+  /**
+   * Schedules (or reschedules) a budget's next rollover, e.g. after it was added or changed.
+   *
+   * @param collection_id the user's collection
+   * @param doc_id the budget's document
+   * @param budget the budget's contents
+   * @return whether the budget has a period that can roll over
+   */
+  public boolean schedule(String collection_id, String doc_id, Map<String, Object> budget) {
+    Schedule schedule = Schedule.of(budget);
+    synchronized (this) {
+      if (schedule == null) {
+        this.remove(collection_id, doc_id);
+        return false;
+      }
+      this.put(new Entry(collection_id, doc_id, this.toMillis(schedule.next())));
+      return true;
+    }
+  }
+
+  /**
+   * Schedules every budget of every user this instance owns, e.g. at startup. Users are read in
+   * chunks of the batch size.
+   *
+   * @return the number of budgets scheduled
+   */
+  public int scheduleAll() throws InterruptedException, ExecutionException {
+    List<String> users = new ArrayList<>();
+    for (String collection_id : this.storage.listCollections()) {
+      if (collection_id.startsWith("user-") && this.owns(collection_id)) {
+        users.add(collection_id);
+      }
+    }
+    int count = 0;
+    for (int start = 0; start < users.size(); start += this.batchSize) {
+      List<String> chunk = users.subList(start, Math.min(users.size(), start + this.batchSize));
+      for (Map.Entry<String, List<Map<String, Object>>> collection :
+          this.storage.getCollections(chunk, this.maxInFlight).entrySet()) {
+        for (Map<String, Object> budget : collection.getValue()) {
+          if (this.schedule(collection.getKey(), docId(budget), budget)) {
+            count++;
+          }
+        }
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Rolls over every budget that is due now.
+   *
+   * @return the number of budgets rolled over
+   */
+  public int runDue() throws InterruptedException, ExecutionException {
+    LocalDateTime now = this.toLocal(this.clock.getAsLong());
+    long nowMillis = this.toMillis(now);
+    int rolled = 0;
+    List<Entry> due;
+    while (!(due = this.pollDue(nowMillis)).isEmpty()) {
+      try {
+        rolled += this.rollOver(due, now);
+      } catch (InterruptedException | ExecutionException | RuntimeException e) {
+        // put the batch back so the next run retries it
+        synchronized (this) {
+          for (Entry entry : due) {
+            this.reschedule(entry, entry.dueMillis);
+          }
+        }
+        throw e;
+      }
+    }
+    Metrics.counter("rollover.processed").add(rolled);
+    return rolled;
+  }
+
+  /**
+   * Runs {@link #runDue} periodically. Failures are logged and counted in {@code
+   * rollover.failures}; the budgets involved are retried on the next run.
+   *
+   * @param scheduler runs the rollovers
+   * @param periodMillis how often to check for due budgets
+   * @return the scheduled task, to cancel it
+   */
+  public ScheduledFuture<?> start(ScheduledExecutorService scheduler, long periodMillis) {
+    return scheduler.scheduleWithFixedDelay(
+        () -> {
+          try {
+            this.runDue();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          } catch (ExecutionException | RuntimeException e) {
+            Metrics.counter("rollover.failures").increment();
+            System.err.println("Error rolling over budgets: " + e.getMessage());
+          }
+        },
+        0,
+        periodMillis,
+        TimeUnit.MILLISECONDS);
+  }
+
+  private int rollOver(List<Entry> due, LocalDateTime now)
+      throws InterruptedException, ExecutionException {
+    Map<Entry, Long> nextDue = new HashMap<>();
+    Map<Entry, Map<String, Object>> rolling = new LinkedHashMap<>();
+    Map<String, Map<String, Map<String, Object>>> budgets = this.read(due);
+    for (Entry entry : due) {
+      Map<String, Object> budget = budgets.get(entry.collectionId).get(entry.docId);
+      Schedule schedule = budget == null ? null : Schedule.of(budget);
+      LocalDateTime next = schedule == null ? null : schedule.next();
+      if (next == null) {
+        // deleted, or its duration changed to one without a period
+        nextDue.put(entry, null);
+      } else if (next.isAfter(now)) {
+        // re-added since it was scheduled, so its period restarted
+        nextDue.put(entry, this.toMillis(next));
+      } else {
+        rolling.put(entry, budget);
+      }
+    }
+    if (rolling.isEmpty()) {
+      this.rescheduleAll(nextDue);
+      return 0;
+    }
+
+    List<DocumentWrite> writes = new ArrayList<>(2 * rolling.size());
+    Map<String, Map<String, Map<String, Object>>> latest =
+        this.read(new ArrayList<>(rolling.keySet()));
+    for (Map.Entry<Entry, Map<String, Object>> roll : rolling.entrySet()) {
+      Entry entry = roll.getKey();
+      Map<String, Object> budget = latest.get(entry.collectionId).get(entry.docId);
+      Schedule schedule = budget == null ? null : Schedule.of(budget);
+      if (schedule == null) {
+        nextDue.put(entry, null);
+      } else if (!samePeriod(budget, roll.getValue())) {
+        // rolled over or re-added since the first read; its new period decides what comes next
+        nextDue.put(entry, this.toMillis(schedule.next()));
+      } else {
+        LocalDateTime periodEnd = schedule.period.boundaryAtOrBefore(schedule.anchor, now);
+        writes.add(archive(entry, budget, schedule.start, periodEnd));
+        Map<String, Object> reset = new HashMap<>(budget);
+        reset.put("spent", "0");
+        reset.put("period_start", periodEnd.toString());
+        writes.add(new DocumentWrite(entry.collectionId, entry.docId, reset));
+        nextDue.put(
+            entry, this.toMillis(schedule.period.boundaryAfter(schedule.anchor, periodEnd)));
+      }
+    }
+    if (!writes.isEmpty()) {
+      this.storage.addDocuments(writes);
+    }
+    this.rescheduleAll(nextDue);
+    return writes.size() / 2;
+  }
+
+  /**
+   * Reads the collections of the given entries.
+   *
+   * @return each collection's budgets by document id
+   */
+  private Map<String, Map<String, Map<String, Object>>> read(List<Entry> entries)
+      throws InterruptedException, ExecutionException {
+    List<String> collection_ids = new ArrayList<>();
+    for (Entry entry : entries) {
+      if (!collection_ids.contains(entry.collectionId)) {
+        collection_ids.add(entry.collectionId);
+      }
+    }
+    Map<String, Map<String, Map<String, Object>>> budgets = new HashMap<>();
+    for (Map.Entry<String, List<Map<String, Object>>> collection :
+        this.storage.getCollections(collection_ids, this.maxInFlight).entrySet()) {
+      Map<String, Map<String, Object>> byDoc = new HashMap<>();
+      for (Map<String, Object> budget : collection.getValue()) {
+        byDoc.put(docId(budget), budget);
+      }
+      budgets.put(collection.getKey(), byDoc);
+    }
+    for (String collection_id : collection_ids) {
+      budgets.putIfAbsent(collection_id, Map.of());
+    }
+    return budgets;
+  }
+
+  /** Whether two reads of a budget are in the same period, i.e. no rollover happened in between. */
+  private static boolean samePeriod(Map<String, Object> budget, Map<String, Object> earlier) {
+    return Objects.equals(budget.get("time"), earlier.get("time"))
+        && Objects.equals(budget.get("duration"), earlier.get("duration"))
+        && Objects.equals(budget.get("period_start"), earlier.get("period_start"));
+  }
+
+  private void rescheduleAll(Map<Entry, Long> nextDue) {
+
+    synchronized (this) {
+      for (Map.Entry<Entry, Long> entry : nextDue.entrySet()) {
+        if (entry.getValue() == null) {
+          this.removeIfCurrent(entry.getKey());
+        } else {
+          this.reschedule(entry.getKey(), entry.getValue());
+        }
+      }
+    }
+  }
+
+  private static DocumentWrite archive(
+      Entry entry, Map<String, Object> budget, LocalDateTime start, LocalDateTime end) {
+    Map<String, Object> period = new HashMap<>();
+    period.put("user", budget.get("user"));
+    period.put("category", budget.get("category"));
+    period.put("budget", budget.get("budget"));
+    period.put("spent", budget.get("spent"));
+    period.put("duration", budget.get("duration"));
+    period.put("plant", budget.get("plant"));
+    period.put("period_start", start.toString());
+    period.put("period_end", end.toString());
+    return new DocumentWrite(HISTORY_PREFIX + entry.collectionId, entry.docId + "-" + end, period);
+  }
+
+  /** Takes up to a batch of due entries off the queue, skipping replaced ones. */
+  private synchronized List<Entry> pollDue(long nowMillis) {
+    List<Entry> due = new ArrayList<>();
+    while (due.size() < this.batchSize) {
+      this.dropStale();
+      Entry next = this.queue.peek();
+      if (next == null || next.dueMillis > nowMillis) {
+        break;
+      }
+      due.add(this.queue.poll());
+    }
+    return due;
+  }
+
+  private void dropStale() {
+    while (!this.queue.isEmpty() && !this.isCurrent(this.queue.peek())) {
+      this.queue.poll();
+    }
+  }
+
+  private boolean isCurrent(Entry entry) {
+    Map<String, Entry> docs = this.scheduled.get(entry.collectionId);
+    return docs != null && docs.get(entry.docId) == entry;
+  }
+
+  private void put(Entry entry) {
+    Entry previous =
+        this.scheduled
+            .computeIfAbsent(entry.collectionId, k -> new HashMap<>(8))
+            .put(entry.docId, entry);
+    if (previous == null) {
+      this.scheduledCount++;
+    }
+    this.queue.add(entry);
+    if (this.queue.size() > 2 * this.scheduledCount + 64) {
+      this.rebuildQueue();
+    }
+  }
+
+  /**
+   * Drops the replaced entries from the queue. It only runs once they outnumber the live ones, so
+   * its cost is spread over the reschedules that left them behind.
+   */
+  private void rebuildQueue() {
+    PriorityQueue<Entry> live = new PriorityQueue<>(Math.max(1, this.scheduledCount), BY_DUE);
+    for (Map<String, Entry> docs : this.scheduled.values()) {
+      live.addAll(docs.values());
+    }
+    this.queue = live;
+  }
+
+  private void remove(String collection_id, String doc_id) {
+    Map<String, Entry> docs = this.scheduled.get(collection_id);
+    if (docs != null && docs.remove(doc_id) != null) {
+      this.scheduledCount--;
+      if (docs.isEmpty()) {
+        this.scheduled.remove(collection_id);
+      }
+    }
+  }
+
+  /** Reschedules a polled entry, unless the budget was scheduled again in the meantime. */
+  private void reschedule(Entry entry, long dueMillis) {
+    if (this.isCurrent(entry)) {
+      this.put(new Entry(entry.collectionId, entry.docId, dueMillis));
+    }
+  }
+
+  private void removeIfCurrent(Entry entry) {
+    if (this.isCurrent(entry)) {
+      this.remove(entry.collectionId, entry.docId);
+    }
+  }
+
+  /** The timing fields of a budget, parsed once. */
+  private static class Schedule {
+    private final BudgetPeriod period;
+    // when the budget was added; its periods are counted from here
+    private final LocalDateTime anchor;
+    private final LocalDateTime start;
+
+    private Schedule(BudgetPeriod period, LocalDateTime anchor, LocalDateTime start) {
+      this.period = period;
+      this.anchor = anchor;
+      this.start = start;
+    }
+
+    /**
+     * @return the budget's schedule, or null if it has no period that can roll over
+     */
+    private static Schedule of(Map<String, Object> budget) {
+      Object duration = budget.get("duration");
+      BudgetPeriod period = duration == null ? null : BudgetPeriod.parse(duration.toString());
+      LocalDateTime anchor = period == null ? null : parseTime(budget.get("time"));
+      if (anchor == null) {
+        return null;
+      }
+      LocalDateTime start = parseTime(budget.get("period_start"));
+      return new Schedule(period, anchor, start == null ? anchor : start);
+    }
+
+    /**
+     * @return the end of the budget's current period
+     */
+    private LocalDateTime next() {
+      return this.period.boundaryAfter(this.anchor, this.start);
+    }
+  }
+
+  private static LocalDateTime parseTime(Object value) {
+    if (value == null) {
+      return null;
+    }
+    try {
+      return LocalDateTime.parse(value.toString());
+    } catch (DateTimeParseException e) {
+      return null;
+    }
+  }
+
+  private boolean owns(String collection_id) {
+    return this.ring == null || this.ring.owner(collection_id).equals(this.self);
+  }
+
+  /** Budgets are stored as doc-(category), see AddHandler. */
+  private static String docId(Map<String, Object> budget) {
+    return "doc-" + budget.get("category");
+  }
+
+  private long toMillis(LocalDateTime time) {
+    return time.atZone(this.zone).toInstant().toEpochMilli();
+  }
+
+  private LocalDateTime toLocal(long millis) {
+    return LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), this.zone);
+  }
+}
@@ -0,0 +1,65 @@
+package edu.brown.cs.student.main.server.sharding;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A consistent-hash ring assigning keys (user collections) to nodes (server instances). Each node
+ * is placed on the ring at many points ("virtual nodes") and a key belongs to the first point at or
+ * after its hash, so keys spread evenly and adding or removing a node only moves the keys between
+ * it and its neighbours, about 1/n of them.
+ */
+public class HashRing {
+
+  private final TreeMap<Long, String> points = new TreeMap<>();
+  private final List<String> nodes;
+
+  /**
+   * @param nodes the nodes, e.g. the base URLs of the server instances
+   * @param virtualNodes how many points each node gets on the ring
+   * @throws IllegalArgumentException if there are no nodes
+   */
+  public HashRing(Collection<String> nodes, int virtualNodes) {
+    if (nodes.isEmpty()) {
+      throw new IllegalArgumentException("A hash ring needs at least one node");
+    }
+    this.nodes = List.copyOf(nodes);
+    for (String node : this.nodes) {
+      for (int i = 0; i < virtualNodes; i++) {
+        this.points.put(hash(node + "#" + i), node);
+      }
+    }
+  }
+
+  /**
+   * @param key a key, e.g. "user-1"
+   * @return the node that owns it
+   */
+  public String owner(String key) {
+    Map.Entry<Long, String> point = this.points.ceilingEntry(hash(key));
+    return point != null ? point.getValue() : this.points.firstEntry().getValue();
+  }
+
+  /**
+   * @return the nodes, in the order they were given
+   */
+  public List<String> nodes() {
+    return new ArrayList<>(this.nodes);
+  }
+
+  /** 64-bit FNV-1a, finished with SplitMix64's mixer so close strings land far apart. */
+  private static long hash(String key) {
+    long hash = 0xcbf29ce484222325L;
+    for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+      hash ^= b;
+      hash *= 0x100000001b3L;
+    }
+    hash = (hash ^ (hash >>> 30)) * 0xBF58476D1CE4E5B9L;
+    hash = (hash ^ (hash >>> 27)) * 0x94D049BB133111EBL;
+    return hash ^ (hash >>> 31);
+  }
+}
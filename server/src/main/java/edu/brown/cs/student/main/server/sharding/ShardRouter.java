@@ -0,0 +1,117 @@
+package edu.brown.cs.student.main.server.sharding;
+
+import edu.brown.cs.student.main.server.metrics.Metrics;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.List;
+import spark.Filter;
+import spark.Request;
+import spark.Response;
+import spark.Spark;
+
+/**
+ * Sends each request about a user to the server instance that owns the user on a {@link HashRing},
+ * so a user's caches (replicas, forecasts, precomputed summaries, ...) live on one instance instead
+ * of being duplicated on all of them. Requests without a user parameter are served wherever they
+ * arrive.
+ *
+ * <p>In forward mode the instance proxies the request to the owner and relays its answer; if the
+ * owner cannot be reached in time the request is served locally, trading affinity for availability.
+ * In redirect mode the client is sent to the owner with a 307. A forwarded request is marked with
+ * {@value #FORWARDED_HEADER} and always served by its receiver, so instances that briefly disagree
+ * on membership cannot bounce a request between them.
+ */
+public class ShardRouter implements Filter {
+
+  public static final String FORWARDED_HEADER = "X-Shard-Forwarded-By";
+
+  // response headers relayed from the owner, e.g. for conditional GETs and CORS
+  private static final List<String> RELAYED_HEADERS =
+      List.of(
+          "Content-Type",
+          "ETag",
+          "Cache-Control",
+          "Access-Control-Allow-Origin",
+          "Access-Control-Allow-Methods");
+
+  /** How requests for other instances' users are handled. */
+  public enum Mode {
+    FORWARD,
+    REDIRECT
+  }
+
+  private final HashRing ring;
+  private final String self;
+  private final Mode mode;
+  private final HttpClient client;
+  private final Duration timeout;
+
+  /**
+   * @param ring the instances and which users they own
+   * @param self this instance's node on the ring
+   * @param mode whether to forward requests or redirect clients
+   * @param timeout how long to wait for the owner when forwarding
+   */
+  public ShardRouter(HashRing ring, String self, Mode mode, Duration timeout) {
+    if (!ring.nodes().contains(self)) {
+      throw new IllegalArgumentException(self + " is not one of the ring's nodes " + ring.nodes());
+    }
+    this.ring = ring;
+    this.self = self;
+    this.mode = mode;
+    this.timeout = timeout;
+    this.client = HttpClient.newBuilder().connectTimeout(timeout).build();
+  }
+
+  @Override
+  public void handle(Request request, Response response) throws Exception {
+    String user = request.queryParams("user");
+    if (user == null || request.headers(FORWARDED_HEADER) != null) {
+      return;
+    }
+    String owner = this.ring.owner("user-" + user);
+    if (owner.equals(this.self)) {
+      Metrics.counter("shard.local").increment();
+      return;
+    }
+
+    String query = request.queryString();
+    String target = owner + request.pathInfo() + (query == null ? "" : "?" + query);
+    if (this.mode == Mode.REDIRECT) {
+      Metrics.counter("shard.redirected").increment();
+      // filters registered after this one do not run on a halt, so add the CORS headers here
+      response.header("Access-Control-Allow-Origin", "*");
+      response.header("Location", target);
+      Spark.halt(307);
+    }
+
+    HttpResponse<String> forwarded;
+    try {
+      HttpRequest.Builder builder =
+          HttpRequest.newBuilder(URI.create(target))
+              .timeout(this.timeout)
+              .header(FORWARDED_HEADER, this.self)
+              .method(
+                  request.requestMethod(),
+                  HttpRequest.BodyPublishers.ofByteArray(request.bodyAsBytes()));
+      String ifNoneMatch = request.headers("If-None-Match");
+      if (ifNoneMatch != null) {
+        builder.header("If-None-Match", ifNoneMatch);
+      }
+      forwarded = this.client.send(builder.build(), HttpResponse.BodyHandlers.ofString());
+    } catch (IOException e) {
+      Metrics.counter("shard.forward_failures").increment();
+      System.err.println("Could not forward to " + owner + ", serving locally: " + e.getMessage());
+      return;
+    }
+    Metrics.counter("shard.forwarded").increment();
+    for (String header : RELAYED_HEADERS) {
+      forwarded.headers().firstValue(header).ifPresent(value -> response.header(header, value));
+    }
+    Spark.halt(forwarded.statusCode(), forwarded.body());
+  }
+}
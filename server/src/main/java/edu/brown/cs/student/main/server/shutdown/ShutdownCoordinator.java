@@ -0,0 +1,209 @@
+package edu.brown.cs.student.main.server.shutdown;
+
+import edu.brown.cs.student.main.server.handlers.Utils;
+import edu.brown.cs.student.main.server.metrics.Metrics;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import spark.Filter;
+import spark.Spark;
+
+/**
+ * Shuts the server down without dropping requests or writes, e.g. on SIGTERM during a rolling
+ * deploy.
+ *
+ * <p>Once shutdown begins, new requests are turned away with 503 and {@code Connection: close} (so
+ * the load balancer and clients retry on another instance; /ready fails too), and the requests
+ * already being handled get up to the drain timeout to finish. Then Spark is stopped and the
+ * registered steps run stage by stage (in registration order within a stage), each given what is
+ * left of the overall timeout.
+ */
+public class ShutdownCoordinator {
+
+  /** When a step runs: each stage only starts once the ones before it are done. */
+  public enum Stage {
+    /** Background work that writes to storage, e.g. rollovers. */
+    WRITERS,
+    /** Writes and notifications held in memory, e.g. queued alerts. */
+    BUFFERS,
+    /** Storage itself: awaiting its outstanding writes and closing it. */
+    STORAGE,
+    /** Everything else: other clients and thread pools. */
+    CLIENTS
+  }
+
+  /** Part of shutting down, e.g. flushing a buffer or closing a client. */
+  public interface Step {
+
+    /**
+     * @param remaining how long is left before the process exits regardless
+     */
+    void run(Duration remaining) throws Exception;
+  }
+
+  private final Duration drainTimeout;
+  private final Duration timeout;
+  private final AtomicBoolean draining = new AtomicBoolean();
+  private final AtomicInteger inFlight = new AtomicInteger();
+  // guarded by this
+  private final List<Registered> steps = new ArrayList<>();
+
+  private static class Registered {
+    private final Stage stage;
+    private final String name;
+    private final Step step;
+
+    private Registered(Stage stage, String name, Step step) {
+      this.stage = stage;
+      this.name = name;
+      this.step = step;
+    }
+  }
+
+  /**
+   * @param drainTimeout the longest to wait for in-flight requests
+   * @param timeout the longest the whole shutdown may take, draining included
+   */
+  public ShutdownCoordinator(Duration drainTimeout, Duration timeout) {
+    this.drainTimeout = drainTimeout;
+    this.timeout = timeout;
+    Metrics.gauge("shutdown.in_flight", this.inFlight::get);
+  }
+
+  /**
+   * Registers the filters that count in-flight requests and turn new ones away while draining. Must
+   * be called before any other filter, so no other filter runs for a turned away request.
+   */
+  public void registerFilters() {
+    Spark.before(
+        (Filter)
+            (request, response) -> {
+              if (this.draining.get()) {
+                Metrics.counter("shutdown.rejected").increment();
+                // halting skips the after filters, so the CORS headers are set here
+                response.header("Access-Control-Allow-Origin", "*");
+                response.header("Access-Control-Allow-Methods", "*");
+                response.header("Connection", "close");
+                response.header("Retry-After", "1");
+                response.type("application/json");
+                Spark.halt(
+                    503,
+                    Utils.toMoshiJson(
+                        Map.of("response_type", "failure", "error", "server is shutting down")));
+              }
+              request.attribute(ShutdownCoordinator.class.getName(), true);
+              this.inFlight.incrementAndGet();
+            });
+    // after-after filters run however the request ended, halted or failed included
+    Spark.afterAfter(
+        (Filter)
+            (request, response) -> {
+              if (request.attribute(ShutdownCoordinator.class.getName()) != null) {
+                this.inFlight.decrementAndGet();
+              }
+            });
+  }
+
+  /**
+   * @param stage when the step runs
+   * @param name what to call the step in the log
+   * @param step runs after the requests are drained and the steps of earlier stages are done
+   */
+  public synchronized void addStep(Stage stage, String name, Step step) {
+    this.steps.add(new Registered(stage, name, step));
+  }
+
+  /** Shuts the server down when the JVM is asked to exit. */
+  public void installShutdownHook() {
+    Runtime.getRuntime().addShutdownHook(new Thread(this::shutdown, "shutdown"));
+  }
+
+  /**
+   * @return whether shutdown has begun
+   */
+  public boolean isDraining() {
+    return this.draining.get();
+  }
+
+  /**
+   * @return the number of requests being handled
+   */
+  public int inFlight() {
+    return this.inFlight.get();
+  }
+
+  /**
+   * Drains the requests, stops Spark and runs the steps. Only the first call does anything.
+   *
+   * @return whether every request drained and every step completed in time
+   */
+  public boolean shutdown() {
+    if (!this.draining.compareAndSet(false, true)) {
+      return false;
+    }
+    long start = System.nanoTime();
+    long deadline = start + this.timeout.toNanos();
+    long drainDeadline = Math.min(deadline, start + this.drainTimeout.toNanos());
+    System.out.println("Shutting down: draining " + this.inFlight.get() + " requests");
+    boolean clean = true;
+    // an interrupt is held back until every step has run, since it would fail each of their waits
+    boolean interrupted = false;
+    try {
+      while (this.inFlight.get() > 0 && System.nanoTime() < drainDeadline) {
+        Thread.sleep(10);
+      }
+    } catch (InterruptedException e) {
+      interrupted = true;
+    }
+    if (this.inFlight.get() > 0) {
+      System.err.println("Gave up waiting for " + this.inFlight.get() + " requests");
+      clean = false;
+    }
+    Spark.stop();
+    if (clean) {
+      // Jetty would wait for stuck requests too, at the expense of the steps
+      Spark.awaitStop();
+    }
+
+    List<Registered> steps;
+    synchronized (this) {
+      steps = new ArrayList<>(this.steps);
+    }
+    // a stable sort keeps registration order within a stage
+    steps.sort(Comparator.comparing(registered -> registered.stage));
+    for (Registered registered : steps) {
+      long remaining = Math.max(0, deadline - System.nanoTime());
+      long stepStart = System.nanoTime();
+      try {
+        registered.step.run(Duration.ofNanos(remaining));
+        System.out.println(
+            "Shut down "
+                + registered.name
+                + " in "
+                + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - stepStart)
+                + " ms");
+      } catch (InterruptedException e) {
+        System.err.println("Interrupted shutting down " + registered.name);
+        interrupted = true;
+        clean = false;
+      } catch (Exception e) {
+        System.err.println("Error shutting down " + registered.name + ": " + e.getMessage());
+        clean = false;
+      }
+    }
+    System.out.println(
+        "Shut down in "
+            + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)
+            + " ms"
+            + (clean ? "" : " (not cleanly)"));
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+    return clean;
+  }
+}
@@ -0,0 +1,128 @@
+package edu.brown.cs.student.main.server.startup;
+
+import edu.brown.cs.student.main.server.metrics.Metrics;
+import java.time.Duration;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A dependency that is created on first use rather than at startup, so the server can answer
+ * requests while slow clients (Firestore and its gRPC stack, OpenAI) are still loading. It is
+ * created once: either by {@link #start} in the background, or by the first {@link #get}, and every
+ * caller arriving meanwhile waits for that one creation. A creation that fails is not retried; the
+ * failure is reported by {@link #getState} and rethrown to every caller.
+ *
+ * @param <T> the dependency's type
+ */
+public class Lazy<T> {
+
+  /** Where a dependency is in its creation. */
+  public enum State {
+    PENDING,
+    STARTING,
+    READY,
+    FAILED
+  }
+
+  private final String name;
+  private final Callable<T> factory;
+  private final CompletableFuture<T> value = new CompletableFuture<>();
+  private final AtomicBoolean started = new AtomicBoolean();
+  private volatile State state = State.PENDING;
+  private volatile long startupMillis = -1;
+  private volatile String error;
+
+  /**
+   * @param name what to call the dependency in logs, metrics and readiness reports
+   * @param factory creates the dependency
+   */
+  public Lazy(String name, Callable<T> factory) {
+    this.name = name;
+    this.factory = factory;
+    Metrics.gauge("startup." + name + "_ms", () -> this.startupMillis);
+  }
+
+  /**
+   * Creates the dependency on one of the executor's threads, unless that has already begun.
+   *
+   * @param executor where to create it
+   */
+  public void start(Executor executor) {
+    if (this.started.compareAndSet(false, true)) {
+      executor.execute(this::create);
+    }
+  }
+
+  /**
+   * Returns the dependency, creating it on this thread if nobody has begun to.
+   *
+   * @return the dependency
+   * @throws IllegalStateException if it could not be created
+   */
+  public T get() {
+    if (this.started.compareAndSet(false, true)) {
+      this.create();
+    }
+    try {
+      return this.value.join();
+    } catch (CompletionException e) {
+      throw new IllegalStateException(
+          this.name + " is unavailable: " + e.getCause().getMessage(), e.getCause());
+    }
+  }
+
+  /**
+   * Waits for a creation that has begun, without starting one, e.g. to close the dependency.
+   *
+   * @param timeout the longest to wait
+   * @return the dependency, or null if its creation has not begun, failed, or is still running
+   */
+  public T await(Duration timeout) throws InterruptedException {
+    if (!this.started.get()) {
+      return null;
+    }
+    try {
+      return this.value.get(timeout.toNanos(), TimeUnit.NANOSECONDS);
+    } catch (ExecutionException | TimeoutException e) {
+      return null;
+    }
+  }
+
+  public String getName() {
+    return this.name;
+  }
+
+  public State getState() {
+    return this.state;
+  }
+
+  /**
+   * @return why creating the dependency failed, or null if it has not
+   */
+  public String getError() {
+    return this.error;
+  }
+
+  private void create() {
+    this.state = State.STARTING;
+    long start = System.nanoTime();
+    try {
+      T created = this.factory.call();
+      this.startupMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+      this.state = State.READY;
+      this.value.complete(created);
+      System.out.println("Started " + this.name + " in " + this.startupMillis + " ms");
+    } catch (Exception e) {
+      this.error = String.valueOf(e.getMessage());
+      this.state = State.FAILED;
+      this.value.completeExceptionally(e);
+      System.err.println("Error starting " + this.name + ": " + e.getMessage());
+    }
+  }
+}
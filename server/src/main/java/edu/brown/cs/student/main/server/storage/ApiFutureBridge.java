@@ -0,0 +1,37 @@
+package edu.brown.cs.student.main.server.storage;
+
+import com.google.api.core.ApiFuture;
+import com.google.api.core.ApiFutureCallback;
+import com.google.api.core.ApiFutures;
+import com.google.common.util.concurrent.MoreExecutors;
+import java.util.concurrent.CompletableFuture;
+
+/** Converts the Google SDK's {@link ApiFuture}s into {@link CompletableFuture}s. */
+public class ApiFutureBridge {
+
+  private ApiFutureBridge() {}
+
+  /**
+   * @param apiFuture the SDK future
+   * @return a future completed with the SDK future's result or failure
+   */
+  public static <T> CompletableFuture<T> toCompletable(ApiFuture<T> apiFuture) {
+    CompletableFuture<T> future = new CompletableFuture<>();
+    ApiFutures.addCallback(
+        apiFuture,
+        new ApiFutureCallback<T>() {
+          @Override
+          public void onFailure(Throwable t) {
+            future.completeExceptionally(t);
+          }
+
+          @Override
+          public void onSuccess(T result) {
+            future.complete(result);
+          }
+        },
+        // completion only hands the value over, so it can run on the SDK's thread
+        MoreExecutors.directExecutor());
+    return future;
+  }
+}
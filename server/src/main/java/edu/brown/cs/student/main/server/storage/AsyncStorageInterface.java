@@ -0,0 +1,22 @@
+package edu.brown.cs.student.main.server.storage;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Non-blocking counterpart of {@link StorageInterface}. Every operation returns immediately with a
+ * future that completes once the backend has applied (or failed to apply) it, so callers can
+ * overlap storage I/O with other work and never lose track of a write.
+ */
+public interface AsyncStorageInterface {
+
+  CompletableFuture<Void> addDocumentAsync(
+      String collection_id, String doc_id, Map<String, Object> data);
+
+  CompletableFuture<List<Map<String, Object>>> getCollectionAsync(String collection_id);
+
+  CompletableFuture<Void> clearCollectionAsync(String collection_id);
+
+  CompletableFuture<Void> deleteDocumentAsync(String collection_id, String doc_id);
+}
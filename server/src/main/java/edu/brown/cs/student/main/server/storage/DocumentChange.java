@@ -0,0 +1,49 @@
+package edu.brown.cs.student.main.server.storage;
+
+import java.util.Map;
+
+/** A single document written to or deleted from a collection, as seen by a watcher. */
+public class DocumentChange {
+
+  private final String collectionId;
+  private final String docId;
+  private final Map<String, Object> data;
+  private final long commitTimeMillis;
+
+  /**
+   * @param collectionId the collection the document belongs to
+   * @param docId the document's id
+   * @param data the document's new contents, or null if it was deleted
+   * @param commitTimeMillis when the storage backend committed the change (epoch millis)
+   */
+  public DocumentChange(
+      String collectionId, String docId, Map<String, Object> data, long commitTimeMillis) {
+    this.collectionId = collectionId;
+    this.docId = docId;
+    this.data = data;
+    this.commitTimeMillis = commitTimeMillis;
+  }
+
+  public String getCollectionId() {
+    return this.collectionId;
+  }
+
+  public String getDocId() {
+    return this.docId;
+  }
+
+  /**
+   * @return the document's new contents, or null if it was deleted
+   */
+  public Map<String, Object> getData() {
+    return this.data;
+  }
+
+  public boolean isDeleted() {
+    return this.data == null;
+  }
+
+  public long getCommitTimeMillis() {
+    return this.commitTimeMillis;
+  }
+}
@@ -0,0 +1,34 @@
+package edu.brown.cs.student.main.server.storage;
+
+import java.util.Map;
+
+/** A document to be written as part of a batch, see {@link StorageInterface#addDocuments}. */
+public class DocumentWrite {
+
+  private final String collectionId;
+  private final String docId;
+  private final Map<String, Object> data;
+
+  /**
+   * @param collectionId the collection to write to
+   * @param docId the document's id
+   * @param data the document's contents, replacing any previous ones
+   */
+  public DocumentWrite(String collectionId, String docId, Map<String, Object> data) {
+    this.collectionId = collectionId;
+    this.docId = docId;
+    this.data = data;
+  }
+
+  public String getCollectionId() {
+    return this.collectionId;
+  }
+
+  public String getDocId() {
+    return this.docId;
+  }
+
+  public Map<String, Object> getData() {
+    return this.data;
+  }
+}
@@ -1,38 +1,116 @@
 package edu.brown.cs.student.main.server.storage;
 
 import com.google.api.core.ApiFuture;
+import com.google.api.core.ApiFutures;
+import com.google.auth.oauth2.AccessToken;
 import com.google.auth.oauth2.GoogleCredentials;
+import com.google.cloud.Timestamp;
 import com.google.cloud.firestore.CollectionReference;
 import com.google.cloud.firestore.DocumentReference;
 import com.google.cloud.firestore.Firestore;
+import com.google.cloud.firestore.FirestoreOptions;
+import com.google.cloud.firestore.ListenerRegistration;
 import com.google.cloud.firestore.QueryDocumentSnapshot;
 import com.google.cloud.firestore.QuerySnapshot;
+import com.google.cloud.firestore.WriteBatch;
+import com.google.cloud.firestore.WriteResult;
+import com.google.common.util.concurrent.MoreExecutors;
 import com.google.firebase.FirebaseApp;
 import com.google.firebase.FirebaseOptions;
 import com.google.firebase.cloud.FirestoreClient;
+import io.github.cdimascio.dotenv.Dotenv;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
-public class FirebaseUtilities implements StorageInterface {
+public class FirebaseUtilities
+    implements StorageInterface, AsyncStorageInterface, WatchableStorage {
 
+  // Firestore rejects batches with more writes than this
+  private static final int MAX_BATCH_WRITES = 500;
+  private static final int MAX_BATCHES_IN_FLIGHT = 8;
+
+  // Firebase apps are named, so several instances (e.g. in tests) can live in one process
+  private static final AtomicInteger INSTANCES = new AtomicInteger();
+
+  private final FirebaseApp app;
+  private final Firestore db;
+  // writes that have been sent but not yet acknowledged, awaited by close
+  private final Set<CompletableFuture<?>> pendingWrites = ConcurrentHashMap.newKeySet();
+
+  /** Connects with the service account key in resources/firebase_config.json. */
   public FirebaseUtilities() throws IOException {
-    String workingDirectory = System.getProperty("user.dir");
-    Path firebaseConfigPath = Paths.get(workingDirectory, "resources", "firebase_config.json");
+    this(Paths.get(System.getProperty("user.dir"), "resources", "firebase_config.json"));
+  }
 
-    FileInputStream serviceAccount = new FileInputStream(firebaseConfigPath.toString());
+  /**
+   * @param configPath a service account key file for the Firebase project
+   */
+  public FirebaseUtilities(Path configPath) throws IOException {
+    this(serviceAccountOptions(configPath));
+  }
+
+  private FirebaseUtilities(FirebaseOptions options) {
+    this.app = FirebaseApp.initializeApp(options, "storage-" + INSTANCES.incrementAndGet());
+    this.db = FirestoreClient.getFirestore(this.app);
+  }
 
+  /**
+   * Connects to a local Firestore emulator instead of a real project, e.g. for the appcds training
+   * run.
+   *
+   * @param host the emulator's host and port, e.g. "localhost:8081"
+   * @param projectId the project id; the emulator keeps a separate database per project
+   */
+  public static FirebaseUtilities forEmulator(String host, String projectId) {
+    // the emulator grants full access to the "owner" token, so no real credentials are needed
     FirebaseOptions options =
-        new FirebaseOptions.Builder()
-            .setCredentials(GoogleCredentials.fromStream(serviceAccount))
+        FirebaseOptions.builder()
+            .setCredentials(GoogleCredentials.create(new AccessToken("owner", null)))
+            .setProjectId(projectId)
+            .setFirestoreOptions(
+                FirestoreOptions.newBuilder().setEmulatorHost(host).setProjectId(projectId).build())
             .build();
+    return new FirebaseUtilities(options);
+  }
 
-    FirebaseApp.initializeApp(options);
+  /**
+   * Connects as configured: to the emulator at FIRESTORE_EMULATOR_HOST (with the project
+   * FIREBASE_PROJECT_ID, "demo-budget" by default) if it is set, otherwise with the service account
+   * key at FIREBASE_CONFIG (resources/firebase_config.json by default).
+   *
+   * @param env the configuration, from .env or the environment
+   */
+  public static FirebaseUtilities fromEnvironment(Dotenv env) throws IOException {
+    String emulatorHost = env.get("FIRESTORE_EMULATOR_HOST");
+    if (emulatorHost != null && !emulatorHost.isEmpty()) {
+      return forEmulator(emulatorHost, env.get("FIREBASE_PROJECT_ID", "demo-budget"));
+    }
+    return new FirebaseUtilities(
+        Paths.get(env.get("FIREBASE_CONFIG", "resources/firebase_config.json")).toAbsolutePath());
+  }
+
+  private static FirebaseOptions serviceAccountOptions(Path configPath) throws IOException {
+    try (FileInputStream serviceAccount = new FileInputStream(configPath.toString())) {
+      return FirebaseOptions.builder()
+          .setCredentials(GoogleCredentials.fromStream(serviceAccount))
+          .build();
+    }
   }
 
   public List<Map<String, Object>> getCollection(String collection_id)
@@ -40,52 +118,122 @@ public class FirebaseUtilities implements StorageInterface {
     if (collection_id == null) {
       throw new IllegalArgumentException("getCollection: collection_id cannot be null");
     }
+    return this.getCollectionAsync(collection_id).get();
+  }
+
+  @Override
+  public CompletableFuture<List<Map<String, Object>>> getCollectionAsync(String collection_id) {
+    if (collection_id == null) {
+      throw new IllegalArgumentException("getCollectionAsync: collection_id cannot be null");
+    }
 
-    Firestore db = FirestoreClient.getFirestore();
     // 1: Make the data payload to add to your collection
     // CollectionReference dataRef = db.collection("users").document(uid).collection(collection_id);
-    CollectionReference dataRef = db.collection(collection_id);
-    // 2: Get pin documents
-    QuerySnapshot dataQuery = dataRef.get().get();
+    CollectionReference dataRef = this.db.collection(collection_id);
+    // 2: Get pin documents, 3: get data from document queries once they arrive
+    return ApiFutureBridge.toCompletable(dataRef.get())
+        .thenApply(
+            dataQuery -> {
+              List<Map<String, Object>> data = new ArrayList<>();
+              for (QueryDocumentSnapshot doc : dataQuery.getDocuments()) {
+                data.add(doc.getData());
+              }
+              return data;
+            });
+  }
+
+  @Override
+  public Map<String, List<Map<String, Object>>> getCollections(
+      List<String> collection_ids, int maxInFlight)
+      throws InterruptedException, ExecutionException {
+    if (collection_ids == null) {
+      throw new IllegalArgumentException("getCollections: collection_ids cannot be null");
+    }
+
+    // the SDK's reads are already asynchronous, so no threads are needed to overlap them; the
+    // semaphore only bounds how many queries are outstanding at once
+    Semaphore inFlight = new Semaphore(maxInFlight);
+    List<ApiFuture<QuerySnapshot>> queries = new ArrayList<>(collection_ids.size());
+    for (String collection_id : collection_ids) {
+      inFlight.acquire();
+      ApiFuture<QuerySnapshot> query = this.db.collection(collection_id).get();
+      query.addListener(inFlight::release, MoreExecutors.directExecutor());
+      queries.add(query);
+    }
+    List<QuerySnapshot> snapshots = ApiFutures.allAsList(queries).get();
 
-    // 3: Get data from document queries
-    List<Map<String, Object>> data = new ArrayList<>();
-    for (QueryDocumentSnapshot doc : dataQuery.getDocuments()) {
-      data.add(doc.getData());
+    Map<String, List<Map<String, Object>>> results = new LinkedHashMap<>();
+    for (int i = 0; i < collection_ids.size(); i++) {
+      List<Map<String, Object>> data = new ArrayList<>();
+      for (QueryDocumentSnapshot doc : snapshots.get(i).getDocuments()) {
+        data.add(doc.getData());
+      }
+      results.put(collection_ids.get(i), data);
     }
+    return results;
+  }
 
-    return data;
+  @Override
+  public List<String> listCollections() {
+    List<String> ids = new ArrayList<>();
+    // the SDK pages through the collection ids lazily as they are iterated
+    for (CollectionReference collection : this.db.listCollections()) {
+      ids.add(collection.getId());
+    }
+    return ids;
   }
 
   @Override
   public void addDocument(String collection_id, String doc_id, Map<String, Object> data)
       throws IllegalArgumentException {
+    // wait for the write, so callers only report success once Firestore has accepted it
+    join(this.addDocumentAsync(collection_id, doc_id, data));
+  }
+
+  @Override
+  public CompletableFuture<Void> addDocumentAsync(
+      String collection_id, String doc_id, Map<String, Object> data) {
     if (collection_id == null || doc_id == null || data == null) {
       throw new IllegalArgumentException(
           "addDocument: collection_id, doc_id, or data cannot be null");
     }
 
-    Firestore db = FirestoreClient.getFirestore();
-    CollectionReference collectionRef = db.collection(collection_id);
+    CollectionReference collectionRef = this.db.collection(collection_id);
 
-    collectionRef.document(doc_id).set(data);
+    return this.track(ApiFutureBridge.toCompletable(collectionRef.document(doc_id).set(data)))
+        .thenApply(result -> null);
   }
 
   @Override
-  public void clearCollection(String collectionId) {
-    Firestore db = FirestoreClient.getFirestore();
-    CollectionReference collectionRef = db.collection(collectionId);
-
+  public void addDocuments(List<DocumentWrite> writes) {
+    // commits run concurrently, but only a few at a time so huge loads do not swamp the client
+    Semaphore inFlight = new Semaphore(MAX_BATCHES_IN_FLIGHT);
+    List<CompletableFuture<?>> commits = new ArrayList<>();
     try {
-      // Get all documents in the collection
-      ApiFuture<QuerySnapshot> future = collectionRef.get();
-      List<QueryDocumentSnapshot> documents = future.get().getDocuments();
-
-      // Delete each document
-      for (QueryDocumentSnapshot document : documents) {
-        document.getReference().delete();
+      for (int i = 0; i < writes.size(); i += MAX_BATCH_WRITES) {
+        WriteBatch batch = this.db.batch();
+        for (DocumentWrite write :
+            writes.subList(i, Math.min(writes.size(), i + MAX_BATCH_WRITES))) {
+          batch.set(
+              this.db.collection(write.getCollectionId()).document(write.getDocId()),
+              write.getData());
+        }
+        inFlight.acquire();
+        commits.add(
+            this.track(ApiFutureBridge.toCompletable(batch.commit()))
+                .whenComplete((result, error) -> inFlight.release()));
       }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while writing documents", e);
+    }
+    join(CompletableFuture.allOf(commits.toArray(new CompletableFuture<?>[0])));
+  }
 
+  @Override
+  public void clearCollection(String collectionId) {
+    try {
+      this.clearCollectionAsync(collectionId).get();
       System.out.println("Cleared collection: " + collectionId);
     } catch (InterruptedException | ExecutionException e) {
       System.err.println("Error clearing collection: " + collectionId);
@@ -93,25 +241,141 @@ public class FirebaseUtilities implements StorageInterface {
     }
   }
 
+  @Override
+  public CompletableFuture<Void> clearCollectionAsync(String collectionId) {
+    CollectionReference collectionRef = this.db.collection(collectionId);
+
+    // Get all documents in the collection, then delete them in batched commits
+    return ApiFutureBridge.toCompletable(collectionRef.get())
+        .thenCompose(
+            snapshot -> {
+              List<QueryDocumentSnapshot> documents = snapshot.getDocuments();
+              List<CompletableFuture<?>> commits = new ArrayList<>();
+              for (int i = 0; i < documents.size(); i += MAX_BATCH_WRITES) {
+                WriteBatch batch = this.db.batch();
+                for (QueryDocumentSnapshot document :
+                    documents.subList(i, Math.min(documents.size(), i + MAX_BATCH_WRITES))) {
+                  batch.delete(document.getReference());
+                }
+                commits.add(this.track(ApiFutureBridge.toCompletable(batch.commit())));
+              }
+              return CompletableFuture.allOf(commits.toArray(new CompletableFuture<?>[0]));
+            });
+  }
+
   @Override
   public void deleteDocument(String collection_id, String doc_id) {
+    join(this.deleteDocumentAsync(collection_id, doc_id));
+    System.out.println("Deleted document: " + doc_id + " from collection: " + collection_id);
+  }
+
+  @Override
+  public CompletableFuture<Void> deleteDocumentAsync(String collection_id, String doc_id) {
     if (collection_id == null || doc_id == null) {
       throw new IllegalArgumentException("deleteDocument: collection_id or doc_id cannot be null");
     }
 
-    Firestore db = FirestoreClient.getFirestore();
-    DocumentReference docRef = db.collection(collection_id).document(doc_id);
+    DocumentReference docRef = this.db.collection(collection_id).document(doc_id);
+
+    // Delete the specific document
+    return this.track(ApiFutureBridge.toCompletable(docRef.delete())).thenApply(result -> null);
+  }
 
+  /**
+   * Waits for the writes still in flight, then closes the Firestore client and its Firebase app.
+   * Writes issued afterwards fail.
+   *
+   * @param timeout the longest to wait for the writes
+   * @return the number of writes that had not been acknowledged when the wait ended
+   */
+  public int close(Duration timeout) throws InterruptedException {
+    CompletableFuture<?>[] pending = this.pendingWrites.toArray(new CompletableFuture<?>[0]);
     try {
-      // Delete the specific document
-      docRef.delete();
-      System.out.println("Deleted document: " + doc_id + " from collection: " + collection_id);
+      CompletableFuture.allOf(pending).get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+    } catch (ExecutionException e) {
+      // failed writes were already reported to their callers
+    } catch (TimeoutException e) {
+      System.err.println("Gave up on " + this.pendingWrites.size() + " unacknowledged writes");
+    }
+    int abandoned = this.pendingWrites.size();
+    try {
+      this.db.close();
     } catch (Exception e) {
-      System.err.println("Error deleting document: " + e.getMessage());
-      e.printStackTrace();
+      System.err.println("Error closing Firestore: " + e.getMessage());
+    }
+    this.app.delete();
+    return abandoned;
+  }
+
+  /**
+   * Waits for a future whose failure should surface as an unchecked exception. Runtime failures are
+   * rethrown as they are, so callers see the SDK's own exception and message.
+   *
+   * @param future the future to wait for
+   * @return its result
+   */
+  private static <T> T join(CompletableFuture<T> future) {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while waiting for storage", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new IllegalStateException(e.getCause().getMessage(), e.getCause());
     }
   }
 
+  private <T> CompletableFuture<T> track(CompletableFuture<T> write) {
+    this.pendingWrites.add(write);
+    write.whenComplete((result, error) -> this.pendingWrites.remove(write));
+    return write;
+  }
+
+  @Override
+  public Subscription watchCollection(String collection_id, CollectionListener listener) {
+    if (collection_id == null || listener == null) {
+      throw new IllegalArgumentException(
+          "watchCollection: collection_id or listener cannot be null");
+    }
+
+    // Firestore's first snapshot holds every document in the collection
+    AtomicBoolean initial = new AtomicBoolean(true);
+    ListenerRegistration registration =
+        this.db
+            .collection(collection_id)
+            .addSnapshotListener(
+                (snapshot, error) -> {
+                  if (error != null) {
+                    System.err.println("Error watching collection: " + collection_id);
+                    error.printStackTrace();
+                    listener.onError(error);
+                    return;
+                  }
+                  if (snapshot == null) {
+                    return;
+                  }
+                  List<DocumentChange> changes = new ArrayList<>();
+                  for (com.google.cloud.firestore.DocumentChange change :
+                      snapshot.getDocumentChanges()) {
+                    QueryDocumentSnapshot doc = change.getDocument();
+                    boolean removed =
+                        change.getType() == com.google.cloud.firestore.DocumentChange.Type.REMOVED;
+                    Timestamp committed = removed ? snapshot.getReadTime() : doc.getUpdateTime();
+                    changes.add(
+                        new DocumentChange(
+                            collection_id,
+                            doc.getId(),
+                            removed ? null : doc.getData(),
+                            committed.toDate().getTime()));
+                  }
+                  listener.onChanges(changes, initial.getAndSet(false));
+                });
+    return registration::remove;
+  }
+
   // recursively removes all the documents and collections inside a collection
   // https://firebase.google.com/docs/firestore/manage-data/delete-data#collections
   private void deleteCollection(CollectionReference collection) {
@@ -121,10 +385,12 @@ public class FirebaseUtilities implements StorageInterface {
       ApiFuture<QuerySnapshot> future = collection.get();
       List<QueryDocumentSnapshot> documents = future.get().getDocuments();
 
-      // delete each document
+      // delete each document, and wait for the deletes so none is lost on shutdown
+      List<ApiFuture<WriteResult>> deletes = new ArrayList<>();
       for (QueryDocumentSnapshot doc : documents) {
-        doc.getReference().delete();
+        deletes.add(doc.getReference().delete());
       }
+      ApiFutures.allAsList(deletes).get();
 
       // NOTE: the query to documents may be arbitrarily large. A more robust
       // solution would involve batching the collection.get() call.
@@ -0,0 +1,322 @@
+package edu.brown.cs.student.main.server.storage;
+
+import edu.brown.cs.student.main.server.metrics.Metrics;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Thread-safe storage that keeps every collection in process memory, for self-hosted deployments
+ * and load tests without Firestore.
+ *
+ * <p>Each collection is a map guarded by one of a fixed set of locks chosen by its id, so writes to
+ * different collections rarely contend. Writes update the map in place, so their cost does not grow
+ * with the collection; reads and snapshots copy it under the lock, which they would have to do
+ * anyway to hand out copies. Callers can therefore never observe or cause a later change. The
+ * memory held by documents is estimated as they are written, and writes that would go over the
+ * configured limit are refused.
+ */
+public class InMemoryStorage implements StorageInterface {
+
+  /** A stored document with the memory it was estimated to take. Never modified. */
+  static class StoredDocument {
+    final Map<String, Object> data;
+    final long bytes;
+
+    StoredDocument(String doc_id, Map<String, Object> data) {
+      this.data = data;
+      this.bytes = estimateBytes(doc_id, data);
+    }
+  }
+
+  // rough per-object costs on a 64-bit JVM with compressed pointers
+  private static final long ENTRY_BYTES = 48;
+  private static final long MAP_BYTES = 64;
+  private static final long STRING_BYTES = 40;
+  private static final long BOXED_BYTES = 16;
+
+  // each collection's map is only touched with its lock held; see lock()
+  private final Map<String, Map<String, StoredDocument>> collections = new ConcurrentHashMap<>();
+  private final ReentrantLock[] stripes;
+  private final long maxBytes;
+  private final AtomicLong usedBytes = new AtomicLong();
+  private final AtomicLong documents = new AtomicLong();
+  private final AtomicLong writes = new AtomicLong();
+
+  /**
+   * @param stripes how many locks to spread the collections over, rounded up to a power of two
+   * @param maxBytes the most memory documents may take, as estimated by {@link #estimateBytes}
+   */
+  public InMemoryStorage(int stripes, long maxBytes) {
+    int size = Integer.highestOneBit(Math.max(1, stripes - 1)) << 1;
+    this.stripes = new ReentrantLock[size];
+    for (int i = 0; i < size; i++) {
+      this.stripes[i] = new ReentrantLock();
+    }
+    this.maxBytes = maxBytes;
+  }
+
+  /**
+   * Registers gauges for the memory and document counts under the given prefix.
+   *
+   * @param prefix the metric name prefix, e.g. "storage.memory"
+   */
+  public void registerMetrics(String prefix) {
+    Metrics.gauge(prefix + ".bytes", this.usedBytes::get);
+    Metrics.gauge(prefix + ".max_bytes", () -> this.maxBytes);
+    Metrics.gauge(prefix + ".documents", this.documents::get);
+    Metrics.gauge(prefix + ".collections", this.collections::size);
+  }
+
+  /**
+   * @return the estimated memory currently held by documents
+   */
+  public long usedBytes() {
+    return this.usedBytes.get();
+  }
+
+  /**
+   * @return the number of documents across all collections
+   */
+  public long documentCount() {
+    return this.documents.get();
+  }
+
+  /**
+   * @return a counter that changes whenever the stored data does, e.g. to skip unneeded snapshots
+   */
+  public long writeCount() {
+    return this.writes.get();
+  }
+
+  private ReentrantLock lock(String collection_id) {
+    int hash = collection_id.hashCode();
+    // spread the high bits, as ConcurrentHashMap does
+    return this.stripes[(hash ^ (hash >>> 16)) & (this.stripes.length - 1)];
+  }
+
+  /** Charges (or, if negative, refunds) memory, refusing charges that go over the limit. */
+  private void charge(long delta) {
+    if (delta > 0 && this.usedBytes.addAndGet(delta) > this.maxBytes) {
+      this.usedBytes.addAndGet(-delta);
+      throw new IllegalStateException(
+          "Storage is full: the " + this.maxBytes + " byte limit has been reached");
+    } else if (delta <= 0) {
+      this.usedBytes.addAndGet(delta);
+    }
+  }
+
+  @Override
+  public void addDocument(String collection_id, String doc_id, Map<String, Object> data) {
+    if (collection_id == null || doc_id == null || data == null) {
+      throw new IllegalArgumentException(
+          "addDocument: collection_id, doc_id, or data cannot be null");
+    }
+    // copied outside the lock; unmodifiable so the copies handed to readers can share it
+    StoredDocument document =
+        new StoredDocument(doc_id, Collections.unmodifiableMap(new HashMap<>(data)));
+
+    ReentrantLock lock = this.lock(collection_id);
+    lock.lock();
+    try {
+      Map<String, StoredDocument> collection =
+          this.collections.getOrDefault(collection_id, Map.of());
+      StoredDocument previous = collection.get(doc_id);
+      this.charge(document.bytes - (previous == null ? 0 : previous.bytes));
+
+      this.collections.computeIfAbsent(collection_id, k -> new HashMap<>()).put(doc_id, document);
+      if (previous == null) {
+        this.documents.incrementAndGet();
+      }
+      this.writes.incrementAndGet();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Applies the writes a collection at a time, taking each collection's lock once per call rather
+   * than once per document. If the storage fills up, the collections before the one that did not
+   * fit are written and the rest are not.
+   */
+  @Override
+  public void addDocuments(List<DocumentWrite> batch) {
+    Map<String, List<DocumentWrite>> byCollection = new LinkedHashMap<>();
+    for (DocumentWrite write : batch) {
+      if (write.getCollectionId() == null || write.getDocId() == null || write.getData() == null) {
+        throw new IllegalArgumentException(
+            "addDocuments: collection_id, doc_id, or data cannot be null");
+      }
+      byCollection.computeIfAbsent(write.getCollectionId(), k -> new ArrayList<>()).add(write);
+    }
+
+    for (Map.Entry<String, List<DocumentWrite>> group : byCollection.entrySet()) {
+      // a document written twice in one batch ends up with its last contents
+      Map<String, StoredDocument> documents = new LinkedHashMap<>();
+      for (DocumentWrite write : group.getValue()) {
+        documents.put(
+            write.getDocId(),
+            new StoredDocument(
+                write.getDocId(), Collections.unmodifiableMap(new HashMap<>(write.getData()))));
+      }
+
+      ReentrantLock lock = this.lock(group.getKey());
+      lock.lock();
+      try {
+        Map<String, StoredDocument> collection =
+            this.collections.getOrDefault(group.getKey(), Map.of());
+        // charged before anything is applied, so a collection that does not fit is left untouched
+        long delta = 0;
+        int added = 0;
+        for (Map.Entry<String, StoredDocument> document : documents.entrySet()) {
+          StoredDocument previous = collection.get(document.getKey());
+          delta += document.getValue().bytes - (previous == null ? 0 : previous.bytes);
+          added += previous == null ? 1 : 0;
+        }
+        this.charge(delta);
+        this.collections.computeIfAbsent(group.getKey(), k -> new HashMap<>()).putAll(documents);
+        this.documents.addAndGet(added);
+        this.writes.addAndGet(group.getValue().size());
+      } finally {
+        lock.unlock();
+      }
+    }
+  }
+
+  @Override
+  public List<Map<String, Object>> getCollection(String collection_id) {
+    if (collection_id == null) {
+      throw new IllegalArgumentException("getCollection: collection_id cannot be null");
+    }
+    Collection<StoredDocument> documents = this.copyCollection(collection_id).values();
+    // the documents themselves are immutable, so they are copied outside the lock
+    List<Map<String, Object>> data = new ArrayList<>(documents.size());
+    for (StoredDocument document : documents) {
+      data.add(new HashMap<>(document.data));
+    }
+    return data;
+  }
+
+  @Override
+  public List<String> listCollections() {
+    return new ArrayList<>(this.collections.keySet());
+  }
+
+  /**
+   * Copies a collection's entries (but not the documents, which never change) under its lock.
+   *
+   * @param collection_id the collection
+   * @return its current documents by id, empty if it does not exist
+   */
+  Map<String, StoredDocument> copyCollection(String collection_id) {
+    ReentrantLock lock = this.lock(collection_id);
+    lock.lock();
+    try {
+      return new HashMap<>(this.collections.getOrDefault(collection_id, Map.of()));
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Replaces a collection wholesale, e.g. when restoring a snapshot.
+   *
+   * @param collection_id the collection to replace
+   * @param documents its new documents, which the storage takes ownership of
+   */
+  void putCollection(String collection_id, Map<String, StoredDocument> documents) {
+    long bytes = 0;
+    for (StoredDocument document : documents.values()) {
+      bytes += document.bytes;
+    }
+    ReentrantLock lock = this.lock(collection_id);
+    lock.lock();
+    try {
+      Map<String, StoredDocument> previous = this.collections.getOrDefault(collection_id, Map.of());
+      long previousBytes = 0;
+      for (StoredDocument document : previous.values()) {
+        previousBytes += document.bytes;
+      }
+      this.charge(bytes - previousBytes);
+      if (documents.isEmpty()) {
+        this.collections.remove(collection_id);
+      } else {
+        this.collections.put(collection_id, documents);
+      }
+      this.documents.addAndGet(documents.size() - previous.size());
+      this.writes.incrementAndGet();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public void clearCollection(String collection_id) {
+    this.putCollection(collection_id, new HashMap<>());
+  }
+
+  @Override
+  public void deleteDocument(String collection_id, String doc_id) {
+    if (collection_id == null || doc_id == null) {
+      throw new IllegalArgumentException("deleteDocument: collection_id or doc_id cannot be null");
+    }
+    ReentrantLock lock = this.lock(collection_id);
+    lock.lock();
+    try {
+      Map<String, StoredDocument> collection = this.collections.get(collection_id);
+      StoredDocument removed = collection == null ? null : collection.remove(doc_id);
+      if (removed == null) {
+        return;
+      }
+      // like Firestore, a collection without documents no longer exists
+      if (collection.isEmpty()) {
+        this.collections.remove(collection_id);
+      }
+      this.usedBytes.addAndGet(-removed.bytes);
+      this.documents.decrementAndGet();
+      this.writes.incrementAndGet();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Estimates the heap taken by a document: its map entries, keys and values, recursing into nested
+   * maps and lists. Meant for enforcing a limit, not for exact accounting.
+   *
+   * @param doc_id the document's id
+   * @param data the document's contents
+   * @return the estimated size in bytes
+   */
+  static long estimateBytes(String doc_id, Map<String, Object> data) {
+    return estimateValue(doc_id) + estimateValue(data);
+  }
+
+  private static long estimateValue(Object value) {
+    if (value == null) {
+      return 0;
+    } else if (value instanceof String) {
+      return STRING_BYTES + ((String) value).length();
+    } else if (value instanceof Map) {
+      long bytes = MAP_BYTES;
+      for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+        bytes += ENTRY_BYTES + estimateValue(entry.getKey()) + estimateValue(entry.getValue());
+      }
+      return bytes;
+    } else if (value instanceof List) {
+      long bytes = MAP_BYTES;
+      for (Object element : (List<?>) value) {
+        bytes += 8 + estimateValue(element);
+      }
+      return bytes;
+    }
+    return BOXED_BYTES;
+  }
+}
@@ -0,0 +1,70 @@
+package edu.brown.cs.student.main.server.storage;
+
+import edu.brown.cs.student.main.server.startup.Lazy;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Storage whose backend is created on first use (see {@link Lazy}). Until the backend is ready,
+ * calls wait for it; if it failed to start they throw {@link IllegalStateException}, which the
+ * handlers report as a failure like any other storage error.
+ *
+ * @param <S> the backend's type
+ */
+public class LazyStorage<S extends StorageInterface & WatchableStorage>
+    implements StorageInterface, WatchableStorage {
+
+  private final Lazy<S> backend;
+
+  /**
+   * @param backend creates the backend
+   */
+  public LazyStorage(Lazy<S> backend) {
+    this.backend = backend;
+  }
+
+  @Override
+  public void addDocument(String collection_id, String doc_id, Map<String, Object> data) {
+    this.backend.get().addDocument(collection_id, doc_id, data);
+  }
+
+  @Override
+  public void addDocuments(List<DocumentWrite> writes) {
+    this.backend.get().addDocuments(writes);
+  }
+
+  @Override
+  public List<Map<String, Object>> getCollection(String collection_id)
+      throws InterruptedException, ExecutionException {
+    return this.backend.get().getCollection(collection_id);
+  }
+
+  @Override
+  public Map<String, List<Map<String, Object>>> getCollections(
+      List<String> collection_ids, int maxInFlight)
+      throws InterruptedException, ExecutionException {
+    return this.backend.get().getCollections(collection_ids, maxInFlight);
+  }
+
+  @Override
+  public List<String> listCollections() {
+    return this.backend.get().listCollections();
+  }
+
+  @Override
+  public void clearCollection(String collection_id)
+      throws InterruptedException, ExecutionException {
+    this.backend.get().clearCollection(collection_id);
+  }
+
+  @Override
+  public void deleteDocument(String collection_id, String doc_id) {
+    this.backend.get().deleteDocument(collection_id, doc_id);
+  }
+
+  @Override
+  public Subscription watchCollection(String collection_id, CollectionListener listener) {
+    return this.backend.get().watchCollection(collection_id, listener);
+  }
+}
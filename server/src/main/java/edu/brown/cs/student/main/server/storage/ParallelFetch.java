@@ -0,0 +1,77 @@
+package edu.brown.cs.student.main.server.storage;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Fetches many collections concurrently through a blocking per-collection read, for backends that
+ * have no native batched or asynchronous read.
+ */
+class ParallelFetch {
+
+  /** Reads one collection, blocking until it is available. */
+  interface Reader {
+    List<Map<String, Object>> read(String collection_id)
+        throws InterruptedException, ExecutionException;
+  }
+
+  // reads block, so they get their own pool rather than the common one
+  private static final ForkJoinPool POOL =
+      new ForkJoinPool(
+          64,
+          pool -> {
+            ForkJoinWorkerThread thread =
+                ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setDaemon(true);
+            thread.setName("storage-fetch-" + thread.getPoolIndex());
+            return thread;
+          },
+          null,
+          false);
+
+  private ParallelFetch() {}
+
+  /**
+   * @param collection_ids the collections to read
+   * @param reader reads a single collection
+   * @param maxInFlight the most reads running at once
+   * @return every collection's documents, in the order the ids were given
+   */
+  static Map<String, List<Map<String, Object>>> fetchAll(
+      List<String> collection_ids, Reader reader, int maxInFlight)
+      throws InterruptedException, ExecutionException {
+    Semaphore inFlight = new Semaphore(maxInFlight);
+    List<Future<List<Map<String, Object>>>> futures = new ArrayList<>(collection_ids.size());
+    try {
+      for (String id : collection_ids) {
+        // block the submitting thread rather than queueing unbounded work
+        inFlight.acquire();
+        futures.add(
+            POOL.submit(
+                () -> {
+                  try {
+                    return reader.read(id);
+                  } finally {
+                    inFlight.release();
+                  }
+                }));
+      }
+
+      Map<String, List<Map<String, Object>>> results = new LinkedHashMap<>();
+      for (int i = 0; i < collection_ids.size(); i++) {
+        results.put(collection_ids.get(i), futures.get(i).get());
+      }
+      return results;
+    } catch (InterruptedException | ExecutionException e) {
+      futures.forEach(f -> f.cancel(true));
+      throw e;
+    }
+  }
+}
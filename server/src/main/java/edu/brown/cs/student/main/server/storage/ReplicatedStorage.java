@@ -0,0 +1,470 @@
+package edu.brown.cs.student.main.server.storage;
+
+import edu.brown.cs.student.main.server.metrics.Metrics;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Serves reads of recently active collections from an in-memory replica instead of querying the
+ * backend each time. The first read of a collection attaches a watch on it; the backend's initial
+ * snapshot fills the replica and later changes keep it fresh, so the replica trails the backend by
+ * at most the listener lag (exported as the {@code replica.lag_ms.*} metrics). Writes made through
+ * this class are applied to the replica immediately, so a client always reads its own writes.
+ * Replicas of collections that have not been read or written for a while are dropped together with
+ * their watch, and so is a replica whose watch fails; reads of it go to the backend until the next
+ * read attaches a new one.
+ *
+ * <p>Watches of a collection made through this class share the replica's watch instead of opening
+ * another one on the backend, and keep the replica from being dropped while they are registered.
+ * Local writes are remembered until the watch echoes them back, so a late echo neither rolls the
+ * replica back to an overwritten value nor passes for a remote change; changes that are not echoes
+ * of local writes, i.e. writes made elsewhere, are reported to {@link #watchRemoteChanges}
+ * listeners once they have been applied.
+ */
+public class ReplicatedStorage implements StorageInterface, WatchableStorage {
+
+  private final StorageInterface delegate;
+  private final WatchableStorage watcher;
+  private final long idleMillis;
+  private final long loadTimeoutMillis;
+  private final int maxCollections;
+
+  private final Map<String, Replica> replicas = new ConcurrentHashMap<>();
+  private final AtomicLong nextSweep;
+  private final AtomicLong lastLagMillis = new AtomicLong();
+  private final AtomicLong maxLagMillis = new AtomicLong();
+  // local writes remembered per document while their echoes are outstanding; beyond that the
+  // oldest is forgotten, and its echo, if it still comes, is taken for a remote change
+  private static final int MAX_PENDING = 16;
+  private final List<Consumer<List<DocumentChange>>> remoteListeners = new CopyOnWriteArrayList<>();
+
+  private static class Replica {
+    private final Map<String, Map<String, Object>> docs = new ConcurrentHashMap<>();
+    private final CountDownLatch loaded = new CountDownLatch(1);
+    // watches sharing this replica's; guarded by the replica, like the fields below
+    private final List<CollectionListener> listeners = new ArrayList<>();
+    // local writes whose echo from the watch has not arrived yet, oldest first, by document
+    private final Map<String, List<Map<String, Object>>> pending = new HashMap<>();
+    private volatile long lastAccess;
+    private volatile boolean failed;
+    private boolean detached;
+    private Subscription subscription;
+  }
+
+  /**
+   * @param delegate the backend; its watches must start with an initial snapshot (as Firestore
+   *     snapshot listeners do)
+   * @param idleMillis how long a replica may go unused before it is dropped
+   * @param loadTimeoutMillis how long a first read waits for the initial snapshot before falling
+   *     back to reading the backend directly
+   * @param maxCollections the most collections replicated at once; beyond that reads go straight to
+   *     the backend
+   */
+  public <S extends StorageInterface & WatchableStorage> ReplicatedStorage(
+      S delegate, long idleMillis, long loadTimeoutMillis, int maxCollections) {
+    this.delegate = delegate;
+    this.watcher = delegate;
+    this.idleMillis = idleMillis;
+    this.loadTimeoutMillis = loadTimeoutMillis;
+    this.maxCollections = maxCollections;
+    this.nextSweep = new AtomicLong(System.currentTimeMillis() + idleMillis);
+
+    Metrics.gauge("replica.collections", this.replicas::size);
+    Metrics.gauge("replica.lag_ms.last", this.lastLagMillis::get);
+    Metrics.gauge("replica.lag_ms.max", this.maxLagMillis::get);
+  }
+
+  @Override
+  public List<Map<String, Object>> getCollection(String collection_id)
+      throws InterruptedException, ExecutionException {
+    if (collection_id == null) {
+      throw new IllegalArgumentException("getCollection: collection_id cannot be null");
+    }
+    long now = System.currentTimeMillis();
+    this.sweepIfDue(now);
+
+    Replica replica = this.replicas.get(collection_id);
+    if (replica == null) {
+      if (this.replicas.size() >= this.maxCollections) {
+        Metrics.counter("replica.misses").increment();
+        return this.delegate.getCollection(collection_id);
+      }
+      replica = this.attach(collection_id);
+    }
+    replica.lastAccess = now;
+
+    if (!replica.loaded.await(this.loadTimeoutMillis, TimeUnit.MILLISECONDS) || replica.failed) {
+      Metrics.counter("replica.misses").increment();
+      return this.delegate.getCollection(collection_id);
+    }
+    Metrics.counter("replica.hits").increment();
+    List<Map<String, Object>> data = new ArrayList<>();
+    for (Map<String, Object> doc : replica.docs.values()) {
+      data.add(new HashMap<>(doc));
+    }
+    return data;
+  }
+
+  /**
+   * Serves collections that are already replicated from memory and reads the rest from the backend
+   * in one batch. Unlike {@link #getCollection}, this does not start replicating the collections it
+   * reads, so bulk jobs do not evict the replicas of active users.
+   */
+  @Override
+  public Map<String, List<Map<String, Object>>> getCollections(
+      List<String> collection_ids, int maxInFlight)
+      throws InterruptedException, ExecutionException {
+    Map<String, List<Map<String, Object>>> results = new LinkedHashMap<>();
+    List<String> missing = new ArrayList<>();
+    for (String collection_id : collection_ids) {
+      Replica replica = this.replicas.get(collection_id);
+      if (replica != null && replica.loaded.getCount() == 0 && !replica.failed) {
+        List<Map<String, Object>> data = new ArrayList<>();
+        for (Map<String, Object> doc : replica.docs.values()) {
+          data.add(new HashMap<>(doc));
+        }
+        results.put(collection_id, data);
+      } else {
+        results.put(collection_id, null);
+        missing.add(collection_id);
+      }
+    }
+    if (!missing.isEmpty()) {
+      results.putAll(this.delegate.getCollections(missing, maxInFlight));
+    }
+    return results;
+  }
+
+  @Override
+  public List<String> listCollections() {
+    return this.delegate.listCollections();
+  }
+
+  @Override
+  public void addDocument(String collection_id, String doc_id, Map<String, Object> data) {
+    Replica replica = this.replicas.get(collection_id);
+    Map<String, Object> copy = new HashMap<>(data);
+    expect(replica, doc_id, copy);
+    try {
+      this.delegate.addDocument(collection_id, doc_id, data);
+    } catch (RuntimeException e) {
+      forget(replica, doc_id, copy);
+      throw e;
+    }
+    if (replica != null) {
+      replica.docs.put(doc_id, copy);
+      replica.lastAccess = System.currentTimeMillis();
+    }
+  }
+
+  @Override
+  public void addDocuments(List<DocumentWrite> writes) {
+    List<Replica> replicas = new ArrayList<>(writes.size());
+    List<Map<String, Object>> copies = new ArrayList<>(writes.size());
+    for (DocumentWrite write : writes) {
+      Replica replica = this.replicas.get(write.getCollectionId());
+      Map<String, Object> copy = new HashMap<>(write.getData());
+      expect(replica, write.getDocId(), copy);
+      replicas.add(replica);
+      copies.add(copy);
+    }
+    try {
+      this.delegate.addDocuments(writes);
+    } catch (RuntimeException e) {
+      for (int i = 0; i < writes.size(); i++) {
+        forget(replicas.get(i), writes.get(i).getDocId(), copies.get(i));
+      }
+      throw e;
+    }
+    long now = System.currentTimeMillis();
+    for (int i = 0; i < writes.size(); i++) {
+      Replica replica = replicas.get(i);
+      if (replica != null) {
+        replica.docs.put(writes.get(i).getDocId(), copies.get(i));
+        replica.lastAccess = now;
+      }
+    }
+  }
+
+  @Override
+  public void clearCollection(String collection_id)
+      throws InterruptedException, ExecutionException {
+    this.delegate.clearCollection(collection_id);
+    Replica replica = this.replicas.get(collection_id);
+    if (replica != null) {
+      replica.docs.clear();
+    }
+  }
+
+  @Override
+  public void deleteDocument(String collection_id, String doc_id) {
+    Replica replica = this.replicas.get(collection_id);
+    expect(replica, doc_id, null);
+    try {
+      this.delegate.deleteDocument(collection_id, doc_id);
+    } catch (RuntimeException e) {
+      forget(replica, doc_id, null);
+      throw e;
+    }
+    if (replica != null) {
+      replica.docs.remove(doc_id);
+    }
+  }
+
+  /** Remembers a local write (null for a delete) so its echo is not mistaken for a new change. */
+  private static void expect(Replica replica, String doc_id, Map<String, Object> data) {
+    if (replica == null) {
+      return;
+    }
+    synchronized (replica) {
+      List<Map<String, Object>> writes =
+          replica.pending.computeIfAbsent(doc_id, k -> new ArrayList<>(2));
+      writes.add(data);
+      if (writes.size() > MAX_PENDING) {
+        writes.remove(0);
+      }
+    }
+  }
+
+  /** Forgets a local write that failed, so it has no echo to wait for. */
+  private static void forget(Replica replica, String doc_id, Map<String, Object> data) {
+    if (replica == null) {
+      return;
+    }
+    synchronized (replica) {
+      List<Map<String, Object>> writes = replica.pending.get(doc_id);
+      int index = writes == null ? -1 : writes.lastIndexOf(data);
+      if (index >= 0) {
+        writes.remove(index);
+      }
+    }
+  }
+
+  /**
+   * Consumes the echo of a local write, with the replica's lock held. The watch may skip echoes of
+   * writes that were quickly overwritten, so the writes before the matched one are dropped too.
+   *
+   * @return whether the change is the echo of a write still waiting for it
+   */
+  private static boolean echoed(Replica replica, DocumentChange change) {
+    List<Map<String, Object>> writes = replica.pending.get(change.getDocId());
+    int index = writes == null ? -1 : writes.indexOf(change.getData());
+    if (index < 0) {
+      return false;
+    }
+    writes.subList(0, index + 1).clear();
+    if (writes.isEmpty()) {
+      replica.pending.remove(change.getDocId());
+    }
+    return true;
+  }
+
+  /**
+   * Shares the collection's replica watch with the listener, attaching one if needed. If the
+   * replica is already loaded the listener's initial batch is the replica's contents. Only when the
+   * replica limit is reached, or the replica has just been dropped, does the listener get a watch
+   * of its own on the backend.
+   */
+  @Override
+  public Subscription watchCollection(String collection_id, CollectionListener listener) {
+    Replica replica = this.replicas.get(collection_id);
+    if (replica == null && this.replicas.size() < this.maxCollections) {
+      replica = this.attach(collection_id);
+    }
+    if (replica != null) {
+      Replica shared = replica;
+      synchronized (shared) {
+        if (!shared.detached) {
+          if (shared.loaded.getCount() == 0) {
+            long now = System.currentTimeMillis();
+            List<DocumentChange> contents = new ArrayList<>();
+            shared.docs.forEach(
+                (id, data) -> contents.add(new DocumentChange(collection_id, id, data, now)));
+            listener.onChanges(contents, true);
+          }
+          shared.listeners.add(listener);
+          return () -> {
+            synchronized (shared) {
+              shared.listeners.remove(listener);
+            }
+          };
+        }
+      }
+    }
+    return this.watcher.watchCollection(collection_id, listener);
+  }
+
+  /**
+   * Calls the listener with the changes a replica applies after its initial snapshot that it did
+   * not already hold and that are not echoes of writes made through this instance. It runs on the
+   * backend's watch thread once the replica serves the changes, and must not block.
+   *
+   * @param listener receives each batch of changes
+   * @return a handle that stops the callbacks
+   */
+  public Subscription watchRemoteChanges(Consumer<List<DocumentChange>> listener) {
+    this.remoteListeners.add(listener);
+    return () -> this.remoteListeners.remove(listener);
+  }
+
+  private Replica attach(String collection_id) {
+    Replica replica = new Replica();
+    replica.lastAccess = System.currentTimeMillis();
+    Replica existing = this.replicas.putIfAbsent(collection_id, replica);
+    if (existing != null) {
+      return existing;
+    }
+    // watched outside the map: the backend may still be starting (see LazyStorage), and blocking
+    // inside computeIfAbsent would stall every other read that hashes near this collection
+    Subscription subscription;
+    try {
+      subscription =
+          this.watcher.watchCollection(
+              collection_id,
+              new CollectionListener() {
+                @Override
+                public void onChanges(List<DocumentChange> changes, boolean initial) {
+                  ReplicatedStorage.this.apply(replica, changes, initial);
+                }
+
+                @Override
+                public void onError(Throwable error) {
+                  ReplicatedStorage.this.fail(collection_id, replica, error);
+                }
+              });
+    } catch (RuntimeException e) {
+      // reads fall back to the backend, which reports the error
+      this.fail(collection_id, replica, e);
+      return replica;
+    }
+    boolean cancel;
+    synchronized (replica) {
+      replica.subscription = subscription;
+      cancel = replica.detached;
+    }
+    if (cancel) {
+      subscription.cancel();
+    }
+    return replica;
+  }
+
+  private void apply(Replica replica, List<DocumentChange> changes, boolean initial) {
+    List<DocumentChange> remote = new ArrayList<>();
+    synchronized (replica) {
+      if (initial) {
+        replica.docs.clear();
+      }
+      long now = System.currentTimeMillis();
+      for (DocumentChange change : changes) {
+        if (!initial) {
+          long lag = Math.max(0, now - change.getCommitTimeMillis());
+          this.lastLagMillis.set(lag);
+          this.maxLagMillis.accumulateAndGet(lag, Math::max);
+          if (echoed(replica, change)) {
+            // this instance's own write: the replica has it, or a newer one, once the write returns
+            continue;
+          }
+          if (!Objects.equals(replica.docs.get(change.getDocId()), change.getData())) {
+            remote.add(change);
+          }
+        }
+        if (change.isDeleted()) {
+          replica.docs.remove(change.getDocId());
+        } else {
+          replica.docs.put(change.getDocId(), change.getData());
+        }
+      }
+      if (initial) {
+        replica.loaded.countDown();
+      }
+      for (CollectionListener listener : replica.listeners) {
+        listener.onChanges(changes, initial);
+      }
+    }
+    if (!remote.isEmpty()) {
+      for (Consumer<List<DocumentChange>> listener : this.remoteListeners) {
+        listener.accept(remote);
+      }
+    }
+  }
+
+  private void fail(String collection_id, Replica replica, Throwable error) {
+    Metrics.counter("replica.errors").increment();
+    System.err.println("Dropping the replica of " + collection_id + ": " + error.getMessage());
+    List<CollectionListener> listeners;
+    Subscription subscription;
+    synchronized (replica) {
+      replica.failed = true;
+      listeners = new ArrayList<>(replica.listeners);
+      replica.listeners.clear();
+      subscription = detach(replica);
+    }
+    this.replicas.remove(collection_id, replica);
+    if (subscription != null) {
+      subscription.cancel();
+    }
+    // release reads waiting for the initial snapshot; they go to the backend instead
+    replica.loaded.countDown();
+    for (CollectionListener listener : listeners) {
+      listener.onError(error);
+    }
+  }
+
+  /**
+   * Marks the replica as dropped, with its lock held. The caller cancels the returned watch outside
+   * the lock; if the watch is still being registered, attach cancels it instead.
+   *
+   * @return the watch to cancel, or null if there is none (yet) or it was already cancelled
+   */
+  private static Subscription detach(Replica replica) {
+    if (replica.detached) {
+      return null;
+    }
+    replica.detached = true;
+    return replica.subscription;
+  }
+
+  private void sweepIfDue(long now) {
+    long due = this.nextSweep.get();
+    // only the thread that wins the CAS performs the sweep
+    if (now < due || !this.nextSweep.compareAndSet(due, now + this.idleMillis)) {
+      return;
+    }
+    this.maxLagMillis.set(this.lastLagMillis.get());
+    this.replicas
+        .entrySet()
+        .removeIf(
+            entry -> {
+              Replica replica = entry.getValue();
+              Subscription subscription;
+              synchronized (replica) {
+                if (now - replica.lastAccess < this.idleMillis || !replica.listeners.isEmpty()) {
+                  return false;
+                }
+                subscription = detach(replica);
+              }
+              if (subscription != null) {
+                subscription.cancel();
+              }
+              return true;
+            });
+  }
+
+  /**
+   * @return the number of collections currently replicated
+   */
+  public int replicatedCollections() {
+    return this.replicas.size();
+  }
+}
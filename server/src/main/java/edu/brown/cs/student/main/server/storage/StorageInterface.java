@@ -14,4 +14,39 @@ public interface StorageInterface {
   void clearCollection(String collection_id) throws InterruptedException, ExecutionException;
 
   void deleteDocument(String collection_id, String doc_id);
+
+  /**
+   * Writes many documents, possibly across collections. The default implementation calls {@link
+   * #addDocument} for each; backends that can group writes into fewer round trips should override
+   * it. The writes are not atomic: a failure may leave some of them applied.
+   *
+   * @param writes the documents to write
+   */
+  default void addDocuments(List<DocumentWrite> writes) {
+    for (DocumentWrite write : writes) {
+      this.addDocument(write.getCollectionId(), write.getDocId(), write.getData());
+    }
+  }
+
+  /**
+   * Reads many collections at once. The default implementation issues concurrent {@link
+   * #getCollection} calls, at most {@code maxInFlight} at a time; backends with native asynchronous
+   * reads should override it.
+   *
+   * @param collection_ids the collections to read
+   * @param maxInFlight the most reads outstanding at once
+   * @return every collection's documents, keyed and ordered by the given ids
+   */
+  default Map<String, List<Map<String, Object>>> getCollections(
+      List<String> collection_ids, int maxInFlight)
+      throws InterruptedException, ExecutionException {
+    return ParallelFetch.fetchAll(collection_ids, this::getCollection, maxInFlight);
+  }
+
+  /**
+   * Lists every top-level collection, for bulk jobs that have to visit all users.
+   *
+   * @return the ids of all collections
+   */
+  List<String> listCollections();
 }
@@ -0,0 +1,324 @@
+package edu.brown.cs.student.main.server.storage;
+
+import edu.brown.cs.student.main.server.metrics.Metrics;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Saves an {@link InMemoryStorage} to a compact binary file and restores it, so a self-hosted
+ * server keeps its data across restarts.
+ *
+ * <p>Each collection is copied under its stripe lock and then encoded outside it, so a snapshot
+ * delays writers to a collection only for as long as copying its entries takes (the documents
+ * themselves are immutable and shared). Each collection is saved as it was at some instant, though
+ * not necessarily the same instant for every collection. Snapshots are written to a temporary file
+ * that then replaces the previous snapshot, so a crash mid-write leaves the old one intact.
+ * Restoring memory-maps the file and decodes it straight from the mapping.
+ *
+ * <p>Format: magic, version, collection count, then per collection its id, document count and
+ * documents (id and tagged fields), all strings as a varint length and UTF-8, ending with a CRC32
+ * of everything before it.
+ */
+public class StorageSnapshot {
+
+  private static final int MAGIC = 0x4D545331; // "MTS1"
+  private static final int VERSION = 1;
+
+  private static final byte NULL = 0;
+  private static final byte STRING = 1;
+  private static final byte LONG = 2;
+  private static final byte DOUBLE = 3;
+  private static final byte BOOLEAN = 4;
+  private static final byte MAP = 5;
+  private static final byte LIST = 6;
+
+  private StorageSnapshot() {}
+
+  /**
+   * Writes every collection of the storage to the given file, replacing it atomically.
+   *
+   * @param storage the storage to save
+   * @param file where to save it
+   * @return the number of documents written
+   */
+  public static long write(InMemoryStorage storage, Path file) throws IOException {
+    Path parent = file.toAbsolutePath().getParent();
+    Files.createDirectories(parent);
+    Path temp = Files.createTempFile(parent, file.getFileName().toString(), ".tmp");
+    long documents = 0;
+    try {
+      try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+        CRC32 crc = new CRC32();
+        DataOutputStream out =
+            new DataOutputStream(
+                new CheckedOutputStream(
+                    new BufferedOutputStream(closeShield(channel), 1 << 16), crc));
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+
+        // the collection count has to be known up front, so take the (weakly consistent) set first
+        List<String> ids = storage.listCollections();
+        writeVarint(out, ids.size());
+        for (String id : ids) {
+          // copied one at a time, so each is consistent and writers wait for one copy at most; a
+          // collection deleted since listing is written empty, and dropped on restore
+          Map<String, InMemoryStorage.StoredDocument> collection = storage.copyCollection(id);
+          writeString(out, id);
+          writeVarint(out, collection.size());
+          for (Map.Entry<String, InMemoryStorage.StoredDocument> doc : collection.entrySet()) {
+            writeString(out, doc.getKey());
+            writeValue(out, doc.getValue().data);
+            documents++;
+          }
+        }
+        out.flush();
+        // the checksum covers everything before it, so it is written around the checked stream
+        ByteBuffer trailer = ByteBuffer.allocate(Long.BYTES).putLong(0, crc.getValue());
+        while (trailer.hasRemaining()) {
+          channel.write(trailer);
+        }
+        channel.force(true);
+      }
+      Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+    return documents;
+  }
+
+  /**
+   * Loads a snapshot into the storage, replacing any collections it contains.
+   *
+   * @param file the snapshot to load
+   * @param storage the storage to load it into
+   * @return the number of documents loaded
+   * @throws IOException if the file cannot be read or is not an intact snapshot
+   */
+  public static long restore(Path file, InMemoryStorage storage) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      long size = channel.size();
+      if (size < 2 * Integer.BYTES + Long.BYTES || size > Integer.MAX_VALUE) {
+        throw new IOException("Not a storage snapshot: " + file);
+      }
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+
+      CRC32 crc = new CRC32();
+      crc.update(buffer.duplicate().limit((int) size - Long.BYTES));
+      if (crc.getValue() != buffer.getLong((int) size - Long.BYTES)) {
+        throw new IOException("Corrupt storage snapshot (checksum mismatch): " + file);
+      }
+      buffer.limit((int) size - Long.BYTES);
+      if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+        throw new IOException("Not a storage snapshot, or an unsupported version: " + file);
+      }
+
+      // field names repeat in every document, so share one copy of each
+      Map<String, String> keys = new HashMap<>();
+      long documents = 0;
+      try {
+        int collections = readVarint(buffer);
+        for (int i = 0; i < collections; i++) {
+          String collection_id = readString(buffer);
+          int count = readVarint(buffer);
+          Map<String, InMemoryStorage.StoredDocument> docs = new HashMap<>(count * 2);
+          for (int j = 0; j < count; j++) {
+            String doc_id = readString(buffer);
+            @SuppressWarnings("unchecked")
+            Map<String, Object> data = (Map<String, Object>) readValue(buffer, keys);
+            if (data == null) {
+              throw new IOException("Malformed storage snapshot (document without data): " + file);
+            }
+            docs.put(doc_id, new InMemoryStorage.StoredDocument(doc_id, data));
+          }
+          storage.putCollection(collection_id, docs);
+          documents += count;
+        }
+      } catch (BufferUnderflowException | ClassCastException | NegativeArraySizeException e) {
+        throw new IOException("Malformed storage snapshot: " + file, e);
+      }
+      return documents;
+    }
+  }
+
+  /**
+   * Snapshots the storage periodically, skipping runs in which nothing was written. Failures are
+   * logged and counted in {@code storage.snapshot.failures}; the next run tries again.
+   *
+   * @param storage the storage to save
+   * @param file where to save it
+   * @param periodMillis how often to check for changes
+   * @param scheduler runs the snapshots
+   * @return the scheduled task, to cancel it
+   */
+  public static ScheduledFuture<?> schedule(
+      InMemoryStorage storage, Path file, long periodMillis, ScheduledExecutorService scheduler) {
+    long[] lastSaved = {storage.writeCount()};
+    return scheduler.scheduleWithFixedDelay(
+        () -> {
+          long writes = storage.writeCount();
+          if (writes == lastSaved[0]) {
+            return;
+          }
+          try {
+            long start = System.nanoTime();
+            write(storage, file);
+            lastSaved[0] = writes;
+            Metrics.counter("storage.snapshot.written").increment();
+            Metrics.counter("storage.snapshot.millis")
+                .add(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+          } catch (IOException | RuntimeException e) {
+            Metrics.counter("storage.snapshot.failures").increment();
+            System.err.println("Error writing storage snapshot: " + e.getMessage());
+          }
+        },
+        periodMillis,
+        periodMillis,
+        TimeUnit.MILLISECONDS);
+  }
+
+  private static void writeValue(DataOutputStream out, Object value) throws IOException {
+    if (value == null) {
+      out.writeByte(NULL);
+    } else if (value instanceof String) {
+      out.writeByte(STRING);
+      writeString(out, (String) value);
+    } else if (value instanceof Long || value instanceof Integer) {
+      out.writeByte(LONG);
+      out.writeLong(((Number) value).longValue());
+    } else if (value instanceof Number) {
+      out.writeByte(DOUBLE);
+      out.writeDouble(((Number) value).doubleValue());
+    } else if (value instanceof Boolean) {
+      out.writeByte(BOOLEAN);
+      out.writeBoolean((Boolean) value);
+    } else if (value instanceof Map) {
+      out.writeByte(MAP);
+      Map<?, ?> map = (Map<?, ?>) value;
+      writeVarint(out, map.size());
+      for (Map.Entry<?, ?> entry : map.entrySet()) {
+        writeString(out, entry.getKey().toString());
+        writeValue(out, entry.getValue());
+      }
+    } else if (value instanceof List) {
+      out.writeByte(LIST);
+      List<?> list = (List<?>) value;
+      writeVarint(out, list.size());
+      for (Object element : list) {
+        writeValue(out, element);
+      }
+    } else {
+      // anything else is kept in its string form rather than failing the whole snapshot
+      out.writeByte(STRING);
+      writeString(out, value.toString());
+    }
+  }
+
+  private static Object readValue(ByteBuffer in, Map<String, String> keys) throws IOException {
+    byte tag = in.get();
+    switch (tag) {
+      case NULL:
+        return null;
+      case STRING:
+        return readString(in);
+      case LONG:
+        return in.getLong();
+      case DOUBLE:
+        return in.getDouble();
+      case BOOLEAN:
+        return in.get() != 0;
+      case MAP:
+        {
+          int size = readVarint(in);
+          Map<String, Object> map = new HashMap<>(size * 2);
+          for (int i = 0; i < size; i++) {
+            String key = readString(in);
+            map.put(keys.computeIfAbsent(key, k -> k), readValue(in, keys));
+          }
+          return Collections.unmodifiableMap(map);
+        }
+      case LIST:
+        {
+          int size = readVarint(in);
+          List<Object> list = new ArrayList<>(size);
+          for (int i = 0; i < size; i++) {
+            list.add(readValue(in, keys));
+          }
+          return Collections.unmodifiableList(list);
+        }
+      default:
+        throw new IOException("Unknown value tag in storage snapshot: " + tag);
+    }
+  }
+
+  private static void writeString(DataOutputStream out, String value) throws IOException {
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    writeVarint(out, bytes.length);
+    out.write(bytes);
+  }
+
+  private static String readString(ByteBuffer in) {
+    int length = readVarint(in);
+    byte[] bytes = new byte[length];
+    in.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static void writeVarint(DataOutputStream out, int value) throws IOException {
+    while ((value & ~0x7F) != 0) {
+      out.writeByte((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    out.writeByte(value);
+  }
+
+  private static int readVarint(ByteBuffer in) {
+    int value = 0;
+    for (int shift = 0; shift < 32; shift += 7) {
+      byte b = in.get();
+      value |= (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+    throw new BufferUnderflowException();
+  }
+
+  /** Adapts the channel to a stream without letting the stream close it. */
+  private static OutputStream closeShield(FileChannel channel) {
+    return new OutputStream() {
+      @Override
+      public void write(int b) throws IOException {
+        this.write(new byte[] {(byte) b}, 0, 1);
+      }
+
+      @Override
+      public void write(byte[] b, int off, int len) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+        while (buffer.hasRemaining()) {
+          channel.write(buffer);
+        }
+      }
+    };
+  }
+}
@@ -0,0 +1,470 @@
+package edu.brown.cs.student.main.server.storage;
+
+import edu.brown.cs.student.main.server.invalidation.Invalidation;
+import edu.brown.cs.student.main.server.invalidation.InvalidationBus;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
+
+/**
+ * Decorates another {@link StorageInterface} with a monotonically increasing version per
+ * collection, bumped after every write that goes through this instance, and a change log that
+ * records the latest version of the documents written recently. Versions live in memory, so they
+ * are qualified by an epoch that changes every time the server starts; a (epoch, version) pair
+ * therefore never refers to two different states of a collection.
+ *
+ * <p>When several instances share a backend, an {@link InvalidationBus} tells each about the
+ * others' writes. A write announced by another instance bumps the collection's version here too and
+ * truncates its change log (the data of the write is not sent), so version-keyed caches and
+ * conditional GETs stop matching and readers of the log reload the collection. A {@link
+ * ReplicatedStorage} backend may still serve the old data at that point; when its replica catches
+ * up, the write is recorded here as a new version, so whatever was cached from the old data under
+ * the bumped version stops matching too.
+ *
+ * <p>The log keeps a copy of each document it records, so it is bounded in two ways: a collection
+ * that accumulates too many entries is truncated, and only the most recently written collections
+ * keep entries at all. A truncated log still counts versions; its readers are told to reset.
+ *
+ * <p>A write holds its collection's log lock from the backend write until it is recorded, so the
+ * log orders concurrent writes to a collection the same way the backend does. Writes to one
+ * collection are therefore serialized here, backend round trip included.
+ */
+public class VersionedStorage implements StorageInterface, WatchableStorage {
+
+  // tombstones kept per collection before they are compacted away
+  private static final int MAX_TOMBSTONES = 256;
+  // entries kept per collection before its log is truncated
+  private static final int MAX_ENTRIES = 512;
+  // collections whose logs keep entries; the least recently written are truncated first
+  private static final int MAX_RETAINED = 4096;
+
+  private final StorageInterface delegate;
+  private final String epoch;
+  private final Map<String, CollectionLog> logs = new ConcurrentHashMap<>();
+  private final List<Consumer<String>> writeListeners = new CopyOnWriteArrayList<>();
+  private final InvalidationBus bus;
+  // guarded by itself, and always locked before any log
+  private final Map<String, CollectionLog> retained =
+      new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CollectionLog> eldest) {
+          if (this.size() <= MAX_RETAINED) {
+            return false;
+          }
+          eldest.getValue().truncate();
+          return true;
+        }
+      };
+
+  public VersionedStorage(StorageInterface delegate) {
+    this(delegate, null);
+  }
+
+  /**
+   * @param delegate the backend
+   * @param bus announces this instance's writes to the other instances sharing the backend and
+   *     delivers theirs, or null if this is the only instance
+   */
+  public VersionedStorage(StorageInterface delegate, InvalidationBus bus) {
+    this.delegate = delegate;
+    this.epoch = Long.toString(System.currentTimeMillis(), 36);
+    this.bus = bus;
+    if (bus != null) {
+      bus.subscribe(this::invalidated);
+    }
+    if (delegate instanceof ReplicatedStorage) {
+      ((ReplicatedStorage) delegate).watchRemoteChanges(this::replicated);
+    }
+  }
+
+  /** A single entry of the change feed: an upsert (with data) or a tombstone (data is null). */
+  public static class Change {
+    private final String docId;
+    private final long version;
+    private final Map<String, Object> data;
+
+    Change(String docId, long version, Map<String, Object> data) {
+      this.docId = docId;
+      this.version = version;
+      this.data = data;
+    }
+
+    public String getDocId() {
+      return this.docId;
+    }
+
+    public long getVersion() {
+      return this.version;
+    }
+
+    /**
+     * @return the document's contents, or null if the document was deleted
+     */
+    public Map<String, Object> getData() {
+      return this.data;
+    }
+
+    public boolean isDeleted() {
+      return this.data == null;
+    }
+  }
+
+  /**
+   * The changes to a collection after some version. When {@code reset} is set the caller's state
+   * can no longer be patched (it predates a clear or a compaction) and the changes are the full
+   * contents of the collection as far as this log knows them; see {@link #changesSince}.
+   */
+  public static class ChangeSet {
+    private final long version;
+    private final boolean reset;
+    private final List<Change> changes;
+
+    ChangeSet(long version, boolean reset, List<Change> changes) {
+      this.version = version;
+      this.reset = reset;
+      this.changes = changes;
+    }
+
+    public long getVersion() {
+      return this.version;
+    }
+
+    public boolean isReset() {
+      return this.reset;
+    }
+
+    public List<Change> getChanges() {
+      return this.changes;
+    }
+  }
+
+  private static class CollectionLog {
+    private final String collectionId;
+    private final List<CollectionListener> listeners = new CopyOnWriteArrayList<>();
+    private long version = 0;
+    // versions at or below this cannot be served incrementally
+    private long floor = 0;
+    // whether every live document of the collection is in latest (true once it has been cleared)
+    private boolean complete = false;
+    private int tombstones = 0;
+    private final Map<String, Change> latest = new HashMap<>();
+
+    CollectionLog(String collectionId) {
+      this.collectionId = collectionId;
+    }
+
+    synchronized long record(String docId, Map<String, Object> data) {
+      // notifying under the lock keeps listeners in the same order as versions
+      DocumentChange change =
+          new DocumentChange(this.collectionId, docId, data, System.currentTimeMillis());
+      for (CollectionListener listener : this.listeners) {
+        listener.onChanges(List.of(change), false);
+      }
+      this.version++;
+      Change previous = this.latest.put(docId, new Change(docId, this.version, data));
+      if (previous != null && previous.isDeleted()) {
+        this.tombstones--;
+      }
+      if (data == null && ++this.tombstones > MAX_TOMBSTONES) {
+        this.compact();
+      }
+      if (this.latest.size() > MAX_ENTRIES) {
+        this.truncate();
+      }
+      return this.version;
+    }
+
+    synchronized long clear() {
+      // the collection's full contents are now: nothing
+      for (CollectionListener listener : this.listeners) {
+        listener.onChanges(List.of(), true);
+      }
+      this.version++;
+      this.latest.clear();
+      this.tombstones = 0;
+      this.floor = this.version;
+      this.complete = true;
+      return this.version;
+    }
+
+    synchronized void invalidate() {
+      // written elsewhere: what the log holds can no longer be trusted to be the latest
+      this.version++;
+      this.truncate();
+    }
+
+    synchronized void truncate() {
+      this.latest.clear();
+      this.tombstones = 0;
+      this.floor = this.version;
+      this.complete = false;
+    }
+
+    private void compact() {
+      Iterator<Change> it = this.latest.values().iterator();
+      while (it.hasNext()) {
+        if (it.next().isDeleted()) {
+          it.remove();
+        }
+      }
+      this.tombstones = 0;
+      this.floor = this.version;
+    }
+  }
+
+  /**
+   * Returns the current version of a collection. Callers that want to label data with a version
+   * must read the version <em>before</em> reading the data: a concurrent write can then only make
+   * the label older than the data, never newer, so a stale copy is never mistaken for a fresh one.
+   *
+   * @param collection_id the collection
+   * @return the number of writes made to it through this instance since startup
+   */
+  public long getVersion(String collection_id) {
+    CollectionLog log = this.logs.get(collection_id);
+    if (log == null) {
+      return 0;
+    }
+    synchronized (log) {
+      return log.version;
+    }
+  }
+
+  /**
+   * @return an identifier for this process's lifetime, which qualifies every version
+   */
+  public String getEpoch() {
+    return this.epoch;
+  }
+
+  /**
+   * Returns what changed in a collection after the given version.
+   *
+   * <p>If the version is still covered by the log, the result holds the latest upsert or tombstone
+   * of every document written after it. Otherwise the result is marked as a reset: if the log holds
+   * the whole collection (it was cleared during this epoch) the changes are its live documents, and
+   * if not the changes are empty and the caller must reload the collection in full.
+   *
+   * @param collection_id the collection
+   * @param since the last version the caller has applied
+   * @return the changes, and the version they bring the caller up to
+   */
+  public ChangeSet changesSince(String collection_id, long since) {
+    CollectionLog log = this.logs.get(collection_id);
+    if (log == null) {
+      // never written through this instance: version 0, and nothing to patch with
+      return new ChangeSet(0, since != 0, List.of());
+    }
+    synchronized (log) {
+      List<Change> changes = new ArrayList<>();
+      boolean reset = since < log.floor || since > log.version;
+      for (Change change : log.latest.values()) {
+        if (reset ? !change.isDeleted() && log.complete : change.version > since) {
+          changes.add(change);
+        }
+      }
+      changes.sort((a, b) -> Long.compare(a.version, b.version));
+      return new ChangeSet(log.version, reset, changes);
+    }
+  }
+
+  /**
+   * @param collection_id the collection
+   * @return whether {@link #changesSince} can answer a reset from memory alone
+   */
+  public boolean isComplete(String collection_id) {
+    CollectionLog log = this.logs.get(collection_id);
+    if (log == null) {
+      return false;
+    }
+    synchronized (log) {
+      return log.complete;
+    }
+  }
+
+  private CollectionLog log(String collection_id) {
+    return this.logs.computeIfAbsent(collection_id, k -> new CollectionLog(k));
+  }
+
+  @Override
+  public Subscription watchCollection(String collection_id, CollectionListener listener) {
+    if (this.delegate instanceof WatchableStorage) {
+      return ((WatchableStorage) this.delegate).watchCollection(collection_id, listener);
+    }
+    CollectionLog log = this.log(collection_id);
+    log.listeners.add(listener);
+    return () -> log.listeners.remove(listener);
+  }
+
+  /**
+   * Calls the listener with a collection's id after every write to it through this instance, on the
+   * writing thread, and after every write announced by another instance, on the bus's thread; it
+   * must not block. Unlike {@link #watchCollection} this covers every collection at once.
+   *
+   * @param listener receives the id of each written collection
+   * @return a handle that stops the callbacks
+   */
+  public Subscription watchWrites(Consumer<String> listener) {
+    this.writeListeners.add(listener);
+    return () -> this.writeListeners.remove(listener);
+  }
+
+  private long record(String collection_id, String doc_id, Map<String, Object> data) {
+    CollectionLog log = this.log(collection_id);
+    long version = log.record(doc_id, data);
+    this.retain(collection_id, log);
+    return version;
+  }
+
+  private void retain(String collection_id, CollectionLog log) {
+    // outside the log's lock, since evicting another collection locks that one's log
+    synchronized (this.retained) {
+      this.retained.put(collection_id, log);
+    }
+  }
+
+  private void written(String collection_id) {
+    for (Consumer<String> listener : this.writeListeners) {
+      listener.accept(collection_id);
+    }
+  }
+
+  private void announce(String collection_id, String doc_id, long version) {
+    if (this.bus != null) {
+      this.bus.publish(new Invalidation(collection_id, doc_id, version));
+    }
+  }
+
+  private void invalidated(List<Invalidation> batch) {
+    Set<String> collections = new LinkedHashSet<>();
+    for (Invalidation event : batch) {
+      collections.add(event.getCollectionId());
+    }
+    for (String collection_id : collections) {
+      this.log(collection_id).invalidate();
+      this.written(collection_id);
+    }
+  }
+
+  /** Records writes made elsewhere once the replica serves them; they were announced already. */
+  private void replicated(List<DocumentChange> changes) {
+    Set<String> collections = new LinkedHashSet<>();
+    for (DocumentChange change : changes) {
+      Map<String, Object> data = change.isDeleted() ? null : new HashMap<>(change.getData());
+      this.record(change.getCollectionId(), change.getDocId(), data);
+      collections.add(change.getCollectionId());
+    }
+    for (String collection_id : collections) {
+      this.written(collection_id);
+    }
+  }
+
+  @Override
+  public void addDocument(String collection_id, String doc_id, Map<String, Object> data) {
+    CollectionLog log = this.log(collection_id);
+    long version;
+    synchronized (log) {
+      this.delegate.addDocument(collection_id, doc_id, data);
+      version = log.record(doc_id, new HashMap<>(data));
+    }
+    this.retain(collection_id, log);
+    this.announce(collection_id, doc_id, version);
+    this.written(collection_id);
+  }
+
+  @Override
+  public void addDocuments(List<DocumentWrite> writes) {
+    // locked in a fixed order, so concurrent batches over the same collections cannot deadlock
+    Map<String, CollectionLog> logs = new TreeMap<>();
+    for (DocumentWrite write : writes) {
+      logs.computeIfAbsent(write.getCollectionId(), this::log);
+    }
+    long[] versions = new long[writes.size()];
+    locked(
+        logs.values().iterator(),
+        () -> {
+          this.delegate.addDocuments(writes);
+          for (int i = 0; i < writes.size(); i++) {
+            DocumentWrite write = writes.get(i);
+            versions[i] =
+                logs.get(write.getCollectionId())
+                    .record(write.getDocId(), new HashMap<>(write.getData()));
+          }
+        });
+    for (Map.Entry<String, CollectionLog> log : logs.entrySet()) {
+      this.retain(log.getKey(), log.getValue());
+    }
+    for (int i = 0; i < writes.size(); i++) {
+      this.announce(writes.get(i).getCollectionId(), writes.get(i).getDocId(), versions[i]);
+    }
+    for (String collection_id : logs.keySet()) {
+      this.written(collection_id);
+    }
+  }
+
+  /** Runs the action holding every given log's lock, taken in the iterator's order. */
+  private static void locked(Iterator<CollectionLog> logs, Runnable action) {
+    if (!logs.hasNext()) {
+      action.run();
+      return;
+    }
+    synchronized (logs.next()) {
+      locked(logs, action);
+    }
+  }
+
+  @Override
+  public List<Map<String, Object>> getCollection(String collection_id)
+      throws InterruptedException, ExecutionException {
+    return this.delegate.getCollection(collection_id);
+  }
+
+  @Override
+  public Map<String, List<Map<String, Object>>> getCollections(
+      List<String> collection_ids, int maxInFlight)
+      throws InterruptedException, ExecutionException {
+    return this.delegate.getCollections(collection_ids, maxInFlight);
+  }
+
+  @Override
+  public List<String> listCollections() {
+    return this.delegate.listCollections();
+  }
+
+  @Override
+  public void clearCollection(String collection_id)
+      throws InterruptedException, ExecutionException {
+    CollectionLog log = this.log(collection_id);
+    long version;
+    synchronized (log) {
+      this.delegate.clearCollection(collection_id);
+      version = log.clear();
+    }
+    this.retain(collection_id, log);
+    this.announce(collection_id, null, version);
+    this.written(collection_id);
+  }
+
+  @Override
+  public void deleteDocument(String collection_id, String doc_id) {
+    CollectionLog log = this.log(collection_id);
+    long version;
+    synchronized (log) {
+      this.delegate.deleteDocument(collection_id, doc_id);
+      version = log.record(doc_id, null);
+    }
+    this.retain(collection_id, log);
+    this.announce(collection_id, doc_id, version);
+    this.written(collection_id);
+  }
+}
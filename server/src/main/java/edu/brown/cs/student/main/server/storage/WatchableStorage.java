@@ -0,0 +1,40 @@
+package edu.brown.cs.student.main.server.storage;
+
+import java.util.List;
+
+/** Storage that can notify listeners of changes to a collection as they happen. */
+public interface WatchableStorage {
+
+  /** Receives batches of changes to a watched collection. */
+  interface CollectionListener {
+
+    /**
+     * @param changes the documents that changed, in commit order
+     * @param initial whether this batch is the collection's full contents at the time the watch was
+     *     registered rather than a change; backends that cannot provide one never send it
+     */
+    void onChanges(List<DocumentChange> changes, boolean initial);
+
+    /**
+     * Called when the watch fails; no changes follow it. The default ignores the failure.
+     *
+     * @param error why the watch stopped
+     */
+    default void onError(Throwable error) {}
+  }
+
+  /** A registered watch; cancelling it stops further callbacks. */
+  interface Subscription {
+    void cancel();
+  }
+
+  /**
+   * Starts delivering changes to a collection to the listener. Callbacks may arrive on a backend
+   * thread and must not block.
+   *
+   * @param collection_id the collection to watch
+   * @param listener receives the changes
+   * @return a handle that stops the watch
+   */
+  Subscription watchCollection(String collection_id, CollectionListener listener);
+}
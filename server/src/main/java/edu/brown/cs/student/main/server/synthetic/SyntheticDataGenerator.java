@@ -0,0 +1,254 @@
+package edu.brown.cs.student.main.server.synthetic;
+
+import edu.brown.cs.student.main.server.storage.DocumentWrite;
+import edu.brown.cs.student.main.server.storage.StorageInterface;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * Deterministically generates production-shaped users for benchmarks and load tests: N users, each
+ * with M budgets in distinct categories, each budget's spent amount being the sum of K
+ * transactions. Every user is derived from the seed and its index alone, so any user can be
+ * regenerated on its own (and in parallel) and the same seed always yields the same data.
+ */
+public class SyntheticDataGenerator {
+
+  /** A category with how often users budget for it and its typical monthly amount. */
+  private static class Category {
+    private final String name;
+    private final double weight;
+    private final double monthlyBudget;
+
+    private Category(String name, double weight, double monthlyBudget) {
+      this.name = name;
+      this.weight = weight;
+      this.monthlyBudget = monthlyBudget;
+    }
+  }
+
+  private static final Category[] CATEGORIES = {
+    new Category("food", 10, 400),
+    new Category("rent", 8, 1200),
+    new Category("transportation", 6, 150),
+    new Category("utilities", 5, 150),
+    new Category("fun", 5, 120),
+    new Category("health", 3, 100),
+    new Category("clothes", 3, 100),
+    new Category("subscriptions", 3, 40),
+    new Category("gifts", 2, 80),
+    new Category("savings", 2, 500),
+    new Category("travel", 1.5, 500),
+    new Category("education", 1, 300),
+  };
+
+  // the plants offered by the budget form
+  private static final String[] PLANTS = {
+    "plant",
+    "willow tree",
+    "money tree",
+    "maple tree",
+    "cherry blossom tree",
+    "lemon tree",
+    "orchid"
+  };
+
+  private static final String[] DURATIONS = {"monthly", "weekly", "yearly"};
+  private static final double[] DURATION_WEIGHTS = {0.7, 0.2, 0.1};
+  private static final double[] DURATION_MONTHS = {1, 12.0 / 52, 12};
+
+  private final long seed;
+  private final int budgetsPerUser;
+  private final int transactionsPerBudget;
+
+  /**
+   * @param seed the seed all users are derived from
+   * @param budgetsPerUser how many budgets each user has; categories beyond the built-in ones are
+   *     numbered ("misc 1", ...)
+   * @param transactionsPerBudget how many transactions make up each budget's spent amount
+   */
+  public SyntheticDataGenerator(long seed, int budgetsPerUser, int transactionsPerBudget) {
+    if (budgetsPerUser < 0 || transactionsPerBudget < 0) {
+      throw new IllegalArgumentException("budgetsPerUser and transactionsPerBudget must be >= 0");
+    }
+    this.seed = seed;
+    this.budgetsPerUser = budgetsPerUser;
+    this.transactionsPerBudget = transactionsPerBudget;
+  }
+
+  /**
+   * @param user the user's index
+   * @return the user's budget documents, shaped like the ones {@code /add} stores
+   */
+  public List<Map<String, Object>> budgets(int user) {
+    SplittableRandom random = this.random(user);
+    List<Map<String, Object>> budgets = new ArrayList<>(this.budgetsPerUser);
+    // a per-user spending habit, so that some users are consistently over budget
+    double habit = 0.4 + random.nextDouble() * 0.7;
+    for (String category : this.pickCategories(random)) {
+      int duration = pick(random, DURATION_WEIGHTS);
+      double monthly = typicalBudget(category) * Math.exp(gaussian(random) * 0.5);
+      long budget = Math.max(5, Math.round(monthly * DURATION_MONTHS[duration]));
+      double share = Math.max(0, habit + gaussian(random) * 0.25);
+      long spentCents = this.transactionsPerBudget == 0 ? 0 : Math.round(budget * share * 100);
+
+      Map<String, Object> data = new HashMap<>();
+      data.put("user", String.valueOf(user));
+      data.put("category", category);
+      data.put("budget", String.valueOf(budget));
+      data.put("duration", DURATIONS[duration]);
+      data.put("spent", formatCents(spentCents));
+      data.put("plant", PLANTS[random.nextInt(PLANTS.length)]);
+      data.put("time", "2024-01-01T00:00");
+      data.put("notes", null);
+      budgets.add(data);
+    }
+    return budgets;
+  }
+
+  /**
+   * The individual transactions behind a budget's spent amount, e.g. to replay them through {@code
+   * /update-spent}. They always add up to the budget's spent amount.
+   *
+   * @param user the user's index
+   * @param budget the budget's position in {@link #budgets(int)}
+   * @return the transaction amounts in dollars
+   */
+  public double[] transactions(int user, int budget) {
+    Map<String, Object> data = this.budgets(user).get(budget);
+    long spentCents = Math.round(Double.parseDouble(data.get("spent").toString()) * 100);
+    // a stream of its own, so the split does not disturb the budgets' values
+    SplittableRandom random =
+        new SplittableRandom((this.seed * 0x9E3779B97F4A7C15L + user) ^ ((budget + 1L) << 32));
+    long[] cents = splitCents(random, spentCents, this.transactionsPerBudget);
+    double[] amounts = new double[cents.length];
+    for (int i = 0; i < cents.length; i++) {
+      amounts[i] = cents[i] / 100.0;
+    }
+    return amounts;
+  }
+
+  /**
+   * @param user the user's index
+   * @return the writes that store the user's budgets
+   */
+  public List<DocumentWrite> writes(int user) {
+    List<DocumentWrite> writes = new ArrayList<>(this.budgetsPerUser);
+    for (Map<String, Object> budget : this.budgets(user)) {
+      writes.add(new DocumentWrite("user-" + user, "doc-" + budget.get("category"), budget));
+    }
+    return writes;
+  }
+
+  /**
+   * Stores users {@code firstUser} to {@code firstUser + users - 1}, grouping their documents into
+   * batches of {@code batchSize} for {@link StorageInterface#addDocuments}.
+   *
+   * @param storage where to store the users
+   * @param firstUser the index of the first user
+   * @param users how many users to store
+   * @param batchSize how many documents to write per batch
+   * @return the number of documents written
+   */
+  public long load(StorageInterface storage, int firstUser, int users, int batchSize) {
+    long written = 0;
+    List<DocumentWrite> batch = new ArrayList<>(batchSize);
+    for (int user = firstUser; user < firstUser + users; user++) {
+      for (DocumentWrite write : this.writes(user)) {
+        batch.add(write);
+        if (batch.size() == batchSize) {
+          storage.addDocuments(batch);
+          written += batch.size();
+          batch = new ArrayList<>(batchSize);
+        }
+      }
+    }
+    if (!batch.isEmpty()) {
+      storage.addDocuments(batch);
+      written += batch.size();
+    }
+    return written;
+  }
+
+  private SplittableRandom random(int user) {
+    // mix the index so neighbouring users do not get correlated streams
+    return new SplittableRandom(this.seed * 0x9E3779B97F4A7C15L + user);
+  }
+
+  /** Picks distinct categories, favouring the common ones. */
+  private List<String> pickCategories(SplittableRandom random) {
+    List<Category> remaining = new ArrayList<>(List.of(CATEGORIES));
+    List<String> picked = new ArrayList<>(this.budgetsPerUser);
+    while (picked.size() < this.budgetsPerUser && !remaining.isEmpty()) {
+      double total = 0;
+      for (Category category : remaining) {
+        total += category.weight;
+      }
+      double target = random.nextDouble() * total;
+      int i = 0;
+      while (i < remaining.size() - 1 && (target -= remaining.get(i).weight) >= 0) {
+        i++;
+      }
+      picked.add(remaining.remove(i).name);
+    }
+    for (int i = 1; picked.size() < this.budgetsPerUser; i++) {
+      picked.add("misc " + i);
+    }
+    return picked;
+  }
+
+  private static double typicalBudget(String category) {
+    for (Category known : CATEGORIES) {
+      if (known.name.equals(category)) {
+        return known.monthlyBudget;
+      }
+    }
+    return 100;
+  }
+
+  private static int pick(SplittableRandom random, double[] weights) {
+    double target = random.nextDouble();
+    for (int i = 0; i < weights.length - 1; i++) {
+      target -= weights[i];
+      if (target < 0) {
+        return i;
+      }
+    }
+    return weights.length - 1;
+  }
+
+  /** Splits an amount into {@code parts} random, exponentially distributed shares. */
+  private static long[] splitCents(SplittableRandom random, long totalCents, int parts) {
+    long[] cents = new long[parts];
+    if (parts == 0) {
+      return cents;
+    }
+    double[] weights = new double[parts];
+    double sum = 0;
+    for (int i = 0; i < parts; i++) {
+      weights[i] = -Math.log(1 - random.nextDouble());
+      sum += weights[i];
+    }
+    long assigned = 0;
+    for (int i = 0; i < parts - 1; i++) {
+      cents[i] = (long) (totalCents * weights[i] / sum);
+      assigned += cents[i];
+    }
+    cents[parts - 1] = totalCents - assigned;
+    return cents;
+  }
+
+  private static double gaussian(SplittableRandom random) {
+    // Box-Muller; SplittableRandom has no nextGaussian
+    return Math.sqrt(-2 * Math.log(1 - random.nextDouble()))
+        * Math.cos(2 * Math.PI * random.nextDouble());
+  }
+
+  private static String formatCents(long cents) {
+    return cents % 100 == 0
+        ? String.valueOf(cents / 100)
+        : String.format("%d.%02d", cents / 100, cents % 100);
+  }
+}
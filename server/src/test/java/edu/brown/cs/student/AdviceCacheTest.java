@@ -0,0 +1,97 @@
+package edu.brown.cs.student;
+
+import static edu.brown.cs.student.mocks.Budgets.budget;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import edu.brown.cs.student.main.server.insights.AdviceCache;
+import edu.brown.cs.student.main.server.metrics.Metrics;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class AdviceCacheTest {
+
+  private AdviceCache cache;
+
+  @BeforeEach
+  public void setup() {
+    this.cache = new AdviceCache(0.8, 3);
+  }
+
+  private static final List<Map<String, Object>> BUDGETS =
+      List.of(budget("food", "200", "250"), budget("rent", "1000", "500"));
+
+  @Test
+  public void testParaphrasedGoalsReuseAdvice() {
+    this.cache.store("save for a car", BUDGETS, "car advice");
+    for (String goal :
+        List.of(
+            "saving for car", "Save for my car!", "saving for cars", "I want to save for a car")) {
+      assertEquals("car advice", this.cache.lookup(goal, BUDGETS), goal);
+    }
+    assertNull(this.cache.lookup("save for a house", BUDGETS));
+    assertNull(this.cache.lookup("pay off my credit card", BUDGETS));
+  }
+
+  @Test
+  public void testBudgetsMustHaveTheSameProfile() {
+    this.cache.store("save for a car", BUDGETS, "car advice");
+    // similar amounts, same buckets: same profile
+    List<Map<String, Object>> similar =
+        List.of(budget("food", "220", "240"), budget("rent", "900", "400"));
+    assertEquals("car advice", this.cache.lookup("saving for car", similar));
+    // food is now under budget
+    List<Map<String, Object>> under =
+        List.of(budget("food", "200", "100"), budget("rent", "1000", "500"));
+    assertNull(this.cache.lookup("save for a car", under));
+    // a much larger total budget
+    List<Map<String, Object>> richer =
+        List.of(budget("food", "2000", "2500"), budget("rent", "10000", "5000"));
+    assertNull(this.cache.lookup("save for a car", richer));
+  }
+
+  @Test
+  public void testOldestAnswersAreEvicted() {
+    this.cache.store("save for a car", BUDGETS, "car");
+    this.cache.store("save for a house", BUDGETS, "house");
+    this.cache.store("build an emergency fund", BUDGETS, "fund");
+    this.cache.store("pay off student loans", BUDGETS, "loans");
+    assertEquals(3, this.cache.size());
+    assertNull(this.cache.lookup("save for a car", BUDGETS));
+    assertEquals("loans", this.cache.lookup("paying off student loans", BUDGETS));
+  }
+
+  @Test
+  public void testHitsAndMissesAreCounted() {
+    long hits = Metrics.counter("advice_cache.hits").sum();
+    long misses = Metrics.counter("advice_cache.misses").sum();
+    assertNull(this.cache.lookup("save for a car", BUDGETS));
+    this.cache.store("save for a car", BUDGETS, "car advice");
+    this.cache.lookup("saving for car", BUDGETS);
+    this.cache.lookup("!!!", BUDGETS);
+    assertEquals(hits + 1, Metrics.counter("advice_cache.hits").sum());
+    assertEquals(misses + 2, Metrics.counter("advice_cache.misses").sum());
+  }
+
+  @Test
+  public void testDescriptionLeavesOutAmountsAndNumbers() {
+    String description =
+        AdviceCache.describe(
+            "Saving $4,500 for a new car by 2026!",
+            List.of(budget("food", "200", "250"), budget("rent", "1000", "500")));
+    assertEquals(
+        "Goal: saving new car by\n"
+            + "food: over budget\n"
+            + "rent: under 80% of budget spent\n"
+            + "Total budget: between 1024 and 2048",
+        description);
+    // requests that share advice share the budget lines of their description
+    String similar =
+        AdviceCache.describe(
+            "save for a car", List.of(budget("food", "220", "240"), budget("rent", "900", "400")));
+    assertEquals(
+        description.substring(description.indexOf('\n')), similar.substring(similar.indexOf('\n')));
+  }
+}
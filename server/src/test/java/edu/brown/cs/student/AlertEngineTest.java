@@ -0,0 +1,147 @@
+package edu.brown.cs.student;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import edu.brown.cs.student.main.server.alerts.Alert;
+import edu.brown.cs.student.main.server.alerts.AlertEngine;
+import edu.brown.cs.student.main.server.alerts.FileAlertNotifier;
+import edu.brown.cs.student.main.server.alerts.InMemoryAlertNotifier;
+import edu.brown.cs.student.mocks.MockStorage;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class AlertEngineTest {
+
+  private InMemoryAlertNotifier recent;
+  private AlertEngine engine;
+
+  @BeforeEach
+  public void setup() {
+    this.recent = new InMemoryAlertNotifier(10);
+    this.engine = new AlertEngine(this.recent, () -> 1000L, 100);
+  }
+
+  private static Map<String, Object> budget(String spent, String periodStart) {
+    Map<String, Object> budget = new HashMap<>();
+    budget.put("category", "food");
+    budget.put("budget", "200");
+    budget.put("spent", spent);
+    budget.put("time", "2024-01-01T00:00");
+    if (periodStart != null) {
+      budget.put("period_start", periodStart);
+    }
+    return budget;
+  }
+
+  private Alert evaluate(String spent, String periodStart) {
+    return this.engine.evaluate("user-1", "doc-food", budget(spent, periodStart));
+  }
+
+  @Test
+  public void testAlertsOncePerThreshold() {
+    assertNull(this.evaluate("90", null));
+    assertEquals(50, this.evaluate("100", null).getThreshold());
+    assertNull(this.evaluate("120", null));
+    assertEquals(80, this.evaluate("170", null).getThreshold());
+    assertNull(this.evaluate("150", null));
+    assertNull(this.evaluate("190", null));
+    assertEquals(100, this.evaluate("200", null).getThreshold());
+    assertNull(this.evaluate("400", null));
+
+    this.engine.flush();
+    List<Alert> alerts = this.recent.recent("user-1");
+    assertEquals(3, alerts.size());
+    assertEquals(100, alerts.get(0).getThreshold());
+    assertEquals(50, alerts.get(2).getThreshold());
+  }
+
+  @Test
+  public void testJumpAlertsForHighestThresholdOnly() {
+    Alert alert = this.evaluate("250", null);
+    assertEquals(100, alert.getThreshold());
+    assertEquals(125.0, alert.getUtilization());
+    assertNull(this.evaluate("170", null));
+
+    this.engine.flush();
+    assertEquals(1, this.recent.recent("user-1").size());
+  }
+
+  @Test
+  public void testNewPeriodStartsOver() {
+    assertEquals(100, this.evaluate("200", null).getThreshold());
+    assertNull(this.evaluate("0", "2024-02-01T00:00"));
+    Alert alert = this.evaluate("100", "2024-02-01T00:00");
+    assertEquals(50, alert.getThreshold());
+    assertEquals("2024-02-01T00:00", alert.getPeriod());
+  }
+
+  @Test
+  public void testDroppedAlertIsRetried() {
+    AlertEngine full = new AlertEngine(this.recent, () -> 1000L, 1);
+    assertEquals(50, full.evaluate("user-1", "doc-rent", budget("100", null)).getThreshold());
+    // the queue is full: dropped, and not counted as sent
+    assertNull(full.evaluate("user-1", "doc-food", budget("100", null)));
+    full.flush();
+    assertEquals(50, full.evaluate("user-1", "doc-food", budget("110", null)).getThreshold());
+  }
+
+  @Test
+  public void testDeletedBudgetStartsOver() {
+    assertEquals(50, this.evaluate("100", null).getThreshold());
+    this.engine.forget("user-1", "doc-food");
+    assertEquals(50, this.evaluate("100", null).getThreshold());
+  }
+
+  @Test
+  public void testIgnoresBudgetsWithoutNumbers() {
+    assertNull(this.evaluate("a lot", null));
+    Map<String, Object> free = budget("10", null);
+    free.put("budget", "0");
+    assertNull(this.engine.evaluate("user-1", "doc-food", free));
+  }
+
+  @Test
+  public void testCustomThresholdsAreSavedAndLoaded() throws Exception {
+    MockStorage storage = new MockStorage();
+    this.engine.saveThresholds(storage, "user-1", 90, 25);
+    assertArrayEquals(new int[] {25, 90}, this.engine.getThresholds("user-1"));
+    assertArrayEquals(AlertEngine.DEFAULT_THRESHOLDS, this.engine.getThresholds("user-2"));
+    assertEquals(25, this.evaluate("60", null).getThreshold());
+
+    AlertEngine restarted = new AlertEngine(this.recent, () -> 0L, 100);
+    assertEquals(1, restarted.loadRules(storage));
+    assertArrayEquals(new int[] {25, 90}, restarted.getThresholds("user-1"));
+
+    assertThrows(IllegalArgumentException.class, () -> this.engine.setThresholds("user-1"));
+    assertThrows(IllegalArgumentException.class, () -> this.engine.setThresholds("user-1", 0));
+    assertThrows(IllegalArgumentException.class, () -> AlertEngine.parse("50,lots"));
+  }
+
+  @Test
+  public void testDispatcherDeliversToEveryNotifier(@TempDir Path dir) throws Exception {
+    Path file = dir.resolve("alerts/alerts.jsonl");
+    AlertEngine chained =
+        new AlertEngine(this.recent.andThen(new FileAlertNotifier(file)), () -> 1000L, 100);
+    chained.start();
+    chained.evaluate("user-1", "doc-food", budget("100", null));
+    chained.evaluate("user-1", "doc-rent", budget("200", null));
+    chained.stop();
+
+    assertEquals(2, this.recent.recent("user-1").size());
+    List<String> lines = Files.readAllLines(file);
+    assertEquals(2, lines.size());
+    assertTrue(lines.get(0).contains("\"category\":\"food\""));
+    assertTrue(lines.get(0).contains("\"threshold\":50"));
+    assertTrue(lines.get(1).contains("\"threshold\":100"));
+  }
+}
@@ -0,0 +1,78 @@
+package edu.brown.cs.student;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.squareup.moshi.JsonAdapter;
+import com.squareup.moshi.Moshi;
+import com.squareup.moshi.Types;
+import edu.brown.cs.student.main.server.handlers.OpenAISummaryHandler;
+import edu.brown.cs.student.main.server.openai.OpenAIClientInterface;
+import edu.brown.cs.student.mocks.MockStorage;
+import java.lang.reflect.Type;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import okio.Buffer;
+import org.junit.jupiter.api.Test;
+import spark.Spark;
+
+public class AsyncStorageTest {
+
+  private static final Type mapStringObjectType =
+      Types.newParameterizedType(Map.class, String.class, Object.class);
+
+  @Test
+  public void testSummaryOverlapsReadWithWarmUp() throws Exception {
+    Spark.stop();
+    Spark.awaitStop();
+    Spark.port(0);
+
+    CountDownLatch warmedUp = new CountDownLatch(1);
+    AtomicBoolean overlapped = new AtomicBoolean();
+    MockStorage slowStorage =
+        new MockStorage() {
+          @Override
+          public List<Map<String, Object>> getCollection(String collectionId)
+              throws InterruptedException, ExecutionException {
+            // only completes quickly if the warm-up has started by the time the read finishes
+            overlapped.set(warmedUp.await(5, TimeUnit.SECONDS));
+            return super.getCollection(collectionId);
+          }
+        };
+    OpenAIClientInterface client =
+        new OpenAIClientInterface() {
+          @Override
+          public String generateSuggestion(String prompt) {
+            return "Mocked response";
+          }
+
+          @Override
+          public void warmUp() {
+            warmedUp.countDown();
+          }
+        };
+    Spark.get("/summary", new OpenAISummaryHandler(slowStorage, client));
+    Spark.awaitInitialization();
+
+    try {
+      URL requestURL = new URL("http://localhost:" + Spark.port() + "/summary?user=1");
+      HttpURLConnection connection = (HttpURLConnection) requestURL.openConnection();
+      connection.connect();
+      JsonAdapter<Map<String, Object>> adapter =
+          new Moshi.Builder().build().adapter(mapStringObjectType);
+      Map<String, Object> body =
+          adapter.fromJson(new Buffer().readFrom(connection.getInputStream()));
+      assertEquals("success", body.get("response_type"));
+      assertTrue(overlapped.get());
+    } finally {
+      Spark.stop();
+      Spark.awaitStop();
+    }
+  }
+}
@@ -0,0 +1,89 @@
+package edu.brown.cs.student;
+
+import static edu.brown.cs.student.mocks.Budgets.budget;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import edu.brown.cs.student.main.server.BatchAnalyticsJob;
+import edu.brown.cs.student.main.server.analytics.PlantState;
+import edu.brown.cs.student.main.server.analytics.SpendingStats;
+import edu.brown.cs.student.main.server.storage.StorageInterface;
+import edu.brown.cs.student.mocks.MockStorage;
+import edu.brown.cs.student.mocks.SyntheticUserStorage;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.jupiter.api.Test;
+
+public class BatchAnalyticsJobTest {
+
+  @Test
+  public void testAggregatesAcrossUsers() throws Exception {
+    MockStorage storage = new MockStorage();
+    storage.addDocument("user-1", "doc-food", budget("food", "100", "40"));
+    storage.addDocument("user-1", "doc-rent", budget("rent", "1000", "1000"));
+    storage.addDocument("user-2", "doc-food", budget("Food", "200", "300"));
+    storage.addDocument("user-2", "doc-fun", budget("fun", "lots", "5"));
+    // not a user: ignored
+    storage.addDocument("analytics-summary", "doc-overall", budget("food", "1", "1"));
+    // left over from an earlier run
+    storage.addDocument("analytics-summary", "doc-stale", budget("food", "1", "1"));
+
+    BatchAnalyticsJob job = new BatchAnalyticsJob(storage, 1, 4, ForkJoinPool.commonPool());
+    SpendingStats stats = job.aggregate();
+
+    assertEquals(2, stats.getUsers());
+    assertEquals(3, stats.getBudgets());
+    assertEquals(1, stats.getSkipped());
+    assertEquals((0.4 + 1.5) / 2, stats.getAverageUtilization("food"), 1e-9);
+    assertEquals(0.5, stats.getOverspendRate("food"), 1e-9);
+    assertEquals(1, stats.getPlantStateCount(PlantState.ALIVE));
+    assertEquals(0, stats.getPlantStateCount(PlantState.WILT));
+    assertEquals(2, stats.getPlantStateCount(PlantState.DEAD));
+
+    job.writeSummary(stats);
+    Map<String, Object> overall =
+        storage.getDocument(BatchAnalyticsJob.SUMMARY_COLLECTION, "doc-overall");
+    assertEquals(2L, overall.get("users"));
+    assertEquals(Map.of("alive", 1L, "wilt", 0L, "dead", 2L), overall.get("plant_states"));
+    List<?> categories =
+        (List<?>)
+            storage
+                .getDocument(BatchAnalyticsJob.SUMMARY_COLLECTION, "doc-categories")
+                .get("categories");
+    assertEquals("food", ((Map<?, ?>) categories.get(0)).get("category"));
+    assertNull(storage.getDocument(BatchAnalyticsJob.SUMMARY_COLLECTION, "doc-stale"));
+  }
+
+  @Test
+  public void testPlantStatesMatchTheGarden() {
+    assertEquals(PlantState.ALIVE, PlantState.of(100, 50));
+    assertEquals(PlantState.WILT, PlantState.of(100, 50.01));
+    assertEquals(PlantState.DEAD, PlantState.of(100, 100));
+    assertEquals(PlantState.DEAD, PlantState.of(0, 1));
+    assertEquals(PlantState.ALIVE, PlantState.of(0, 0));
+  }
+
+  @Test
+  public void testParallelMatchesSequential() throws Exception {
+    StorageInterface storage = new SyntheticUserStorage(5000);
+    SpendingStats parallel =
+        new BatchAnalyticsJob(storage, 700, 16, ForkJoinPool.commonPool()).aggregate();
+
+    SpendingStats sequential = new SpendingStats();
+    for (String user : storage.listCollections()) {
+      sequential.addUser(storage.getCollection(user));
+    }
+
+    assertEquals(sequential.getUsers(), parallel.getUsers());
+    assertEquals(sequential.getBudgets(), parallel.getBudgets());
+    for (PlantState state : PlantState.values()) {
+      assertEquals(sequential.getPlantStateCount(state), parallel.getPlantStateCount(state));
+    }
+    assertEquals(
+        sequential.getAverageUtilization("rent"), parallel.getAverageUtilization("rent"), 1e-9);
+    // floating point sums depend on the merge order, so only compare the exact counts
+    assertEquals(
+        sequential.toDocuments(10).get("doc-plants"), parallel.toDocuments(10).get("doc-plants"));
+  }
+}
@@ -0,0 +1,48 @@
+package edu.brown.cs.student;
+
+import edu.brown.cs.student.main.server.BatchAnalyticsJob;
+import edu.brown.cs.student.main.server.analytics.SpendingStats;
+import edu.brown.cs.student.mocks.SyntheticUserStorage;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Reports how the analytics job's runtime scales with the number of users, against synthetic
+ * in-memory users so that only aggregation (not Firestore) is measured. Takes the user counts to
+ * try as arguments. Run with
+ *
+ * <pre>
+ * mvn test-compile dependency:build-classpath -Dmdep.outputFile=cp.txt
+ * java -cp target/classes:target/test-classes:$(cat cp.txt) \
+ *     edu.brown.cs.student.BatchAnalyticsScaling [users...]
+ * </pre>
+ */
+public class BatchAnalyticsScaling {
+
+  public static void main(String[] args) throws Exception {
+    int[] sizes = {10_000, 100_000, 1_000_000};
+    if (args.length > 0) {
+      sizes = new int[args.length];
+      for (int i = 0; i < args.length; i++) {
+        sizes[i] = Integer.parseInt(args[i]);
+      }
+    }
+
+    // one untimed run so the JIT has compiled the hot paths
+    new BatchAnalyticsJob(new SyntheticUserStorage(20_000), 1000, 64, ForkJoinPool.commonPool())
+        .aggregate();
+
+    System.out.printf(
+        "parallelism %d%n%10s %10s %10s %12s%n",
+        ForkJoinPool.commonPool().getParallelism(), "users", "budgets", "ms", "users/s");
+    for (int users : sizes) {
+      BatchAnalyticsJob job =
+          new BatchAnalyticsJob(
+              new SyntheticUserStorage(users), 1000, 64, ForkJoinPool.commonPool());
+      long start = System.nanoTime();
+      SpendingStats stats = job.aggregate();
+      long millis = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+      System.out.printf(
+          "%10d %10d %10d %12d%n", users, stats.getBudgets(), millis, users * 1000L / millis);
+    }
+  }
+}
@@ -0,0 +1,117 @@
+package edu.brown.cs.student;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import edu.brown.cs.student.main.server.codec.BudgetCodec;
+import edu.brown.cs.student.main.server.handlers.Utils;
+import edu.brown.cs.student.main.server.synthetic.SyntheticDataGenerator;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+public class BudgetCodecTest {
+
+  private static Map<String, Object> budget() {
+    Map<String, Object> budget = new HashMap<>();
+    budget.put("user", "42");
+    budget.put("category", "food");
+    budget.put("budget", "400");
+    budget.put("duration", "monthly");
+    budget.put("spent", "123.45");
+    budget.put("plant", "orchid");
+    budget.put("time", "2024-11-05T14:03:27.123456");
+    budget.put("notes", null);
+    return budget;
+  }
+
+  @Test
+  public void testRoundTripIsExact() {
+    Map<String, Object> budget = budget();
+    byte[] bytes = BudgetCodec.encode(budget);
+    assertEquals(budget, BudgetCodec.decode(bytes));
+    // every field but the user id fits in a couple of bytes
+    assertTrue(bytes.length < 32, "encoded to " + bytes.length + " bytes");
+  }
+
+  @Test
+  public void testValuesWithoutCompactFormKeepTheirText() {
+    Map<String, Object> budget = budget();
+    budget.put("budget", "12.50");
+    budget.put("spent", "lots");
+    budget.put("time", "yesterday");
+    budget.put("category", "bubble tea ☕");
+    budget.put("notes", "ünïcödé");
+    assertEquals(budget, BudgetCodec.decode(BudgetCodec.encode(budget)));
+
+    for (String amount :
+        List.of("0", "-0", "7", "-3.5", "0.05", "1.", ".5", "", "+1", "1.234", "0012", "1e3")) {
+      budget.put("spent", amount);
+      assertEquals(amount, BudgetCodec.decode(BudgetCodec.encode(budget)).get("spent"));
+    }
+  }
+
+  @Test
+  public void testOtherKeysAndTypes() {
+    Map<String, Object> budget = budget();
+    budget.put("count", 3L);
+    budget.put("ratio", 0.25);
+    budget.put("archived", true);
+    budget.put("extra", null);
+    assertEquals(budget, BudgetCodec.decode(BudgetCodec.encode(budget)));
+
+    budget.put("nested", List.of("a"));
+    assertThrows(IllegalArgumentException.class, () -> BudgetCodec.encode(budget));
+  }
+
+  @Test
+  public void testCollectionsShareInternedValues() {
+    List<Map<String, Object>> budgets = new ArrayList<>();
+    for (int i = 0; i < 5000; i++) {
+      Map<String, Object> budget = budget();
+      // more distinct categories than the dictionary holds
+      budget.put("category", "custom " + (i % 4500));
+      budgets.add(budget);
+    }
+    byte[] bytes = BudgetCodec.encodeAll(budgets);
+    assertEquals(budgets, BudgetCodec.decodeAll(bytes));
+
+    List<Map<String, Object>> collection = new SyntheticDataGenerator(9, 6, 4).budgets(1);
+    assertEquals(collection, BudgetCodec.decodeAll(BudgetCodec.encodeAll(collection)));
+  }
+
+  @Test
+  public void testMuchSmallerThanJson() {
+    SyntheticDataGenerator generator = new SyntheticDataGenerator(3, 5, 10);
+    long json = 0;
+    long binary = 0;
+    for (int user = 0; user < 200; user++) {
+      List<Map<String, Object>> budgets = generator.budgets(user);
+      binary += BudgetCodec.encodeAll(budgets).length;
+      for (Map<String, Object> budget : budgets) {
+        json += Utils.toMoshiJson(budget).getBytes(StandardCharsets.UTF_8).length;
+      }
+    }
+    assertTrue(binary * 3 < json, "binary " + binary + " vs json " + json);
+  }
+
+  @Test
+  public void testMalformedInputIsRejected() {
+    byte[] bytes = BudgetCodec.encode(budget());
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> BudgetCodec.decode(Arrays.copyOf(bytes, bytes.length - 1)));
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> BudgetCodec.decode(Arrays.copyOf(bytes, bytes.length + 1)));
+    // a reference to a dictionary entry that was never defined
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> BudgetCodec.decode(new byte[] {1, (byte) (2 << 3 | 2), 100}));
+  }
+}
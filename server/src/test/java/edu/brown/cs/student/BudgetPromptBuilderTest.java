@@ -0,0 +1,80 @@
+package edu.brown.cs.student;
+
+import static edu.brown.cs.student.mocks.Budgets.budget;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import edu.brown.cs.student.main.server.metrics.Metrics;
+import edu.brown.cs.student.main.server.openai.BudgetPromptBuilder;
+import edu.brown.cs.student.main.server.openai.TokenEstimator;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+public class BudgetPromptBuilderTest {
+
+  @Test
+  public void testCompactTableSortedByBudget() {
+    BudgetPromptBuilder builder = new BudgetPromptBuilder(1000, 0);
+    String table =
+        builder.formatTable(
+            List.of(budget("food", "200", "150.5"), budget("rent", "1000.00", "1000")));
+    assertEquals("category|budget|spent\nrent|1000|1000\nfood|200|150.5", table);
+  }
+
+  @Test
+  public void testSmallCategoriesAreAggregated() {
+    BudgetPromptBuilder builder = new BudgetPromptBuilder(1000, 0.05);
+    String table =
+        builder.formatTable(
+            List.of(
+                budget("rent", "1000", "900"),
+                budget("gum", "5", "2"),
+                budget("stamps", "10", "10"),
+                budget("food", "300", "120")));
+    assertEquals("category|budget|spent\nrent|1000|900\nfood|300|120\nother(2)|15|12", table);
+  }
+
+  @Test
+  public void testTableStaysWithinTokenBudget() {
+    List<Map<String, Object>> budgets = new ArrayList<>();
+    for (int i = 0; i < 500; i++) {
+      budgets.add(budget("category number " + i, String.valueOf(100 + i), "50"));
+    }
+    String naive = budgets.toString();
+
+    BudgetPromptBuilder builder = new BudgetPromptBuilder(200, 0);
+    String table = builder.formatTable(budgets);
+    assertTrue(TokenEstimator.estimate(table) <= 200);
+    assertTrue(TokenEstimator.estimate(table) < TokenEstimator.estimate(naive) / 10);
+    // nothing is lost: the folded rows are summed into "other"
+    assertTrue(table.contains("\nother("));
+    assertTrue(table.startsWith("category|budget|spent\ncategory number 499|599|50"));
+  }
+
+  @Test
+  public void testMalformedAmountsAndSeparatorsAreSafe() {
+    BudgetPromptBuilder builder = new BudgetPromptBuilder(1000, 0);
+    String table = builder.formatTable(List.of(budget("a|b", "lots", "3")));
+    assertEquals("category|budget|spent\na/b|0|3", table);
+  }
+
+  @Test
+  public void testPromptTokensRecorded() {
+    long before = Metrics.counter("openai.prompt.tokens").sum();
+    String prompt =
+        new BudgetPromptBuilder(1000, 0)
+            .build("Summarize:", List.of(budget("food", "10", "5")), "");
+    assertEquals(
+        TokenEstimator.estimate(prompt), Metrics.counter("openai.prompt.tokens").sum() - before);
+  }
+
+  @Test
+  public void testTokenEstimate() {
+    assertEquals(0, TokenEstimator.estimate("   "));
+    assertEquals(1, TokenEstimator.estimate("food"));
+    assertEquals(2, TokenEstimator.estimate("transportation"));
+    assertEquals(6, TokenEstimator.estimate("rent|1000|9"));
+  }
+}
@@ -0,0 +1,197 @@
+package edu.brown.cs.student;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.squareup.moshi.JsonAdapter;
+import com.squareup.moshi.Moshi;
+import com.squareup.moshi.Types;
+import edu.brown.cs.student.main.server.handlers.ChangesHandler;
+import edu.brown.cs.student.main.server.storage.VersionedStorage;
+import edu.brown.cs.student.mocks.MockStorage;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import okio.Buffer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import spark.Spark;
+
+public class ChangesHandlerTest {
+
+  private static VersionedStorage storage;
+  private static JsonAdapter<Map<String, Object>> adapter;
+  private static final Type mapStringObjectType =
+      Types.newParameterizedType(Map.class, String.class, Object.class);
+
+  @BeforeAll
+  public static void setupOnce() {
+    Spark.stop();
+    Spark.awaitStop();
+    Spark.port(0);
+  }
+
+  @BeforeEach
+  public void setup() {
+    storage = new VersionedStorage(new MockStorage());
+    Spark.get("/changes", new ChangesHandler(storage));
+    Spark.awaitInitialization();
+
+    Moshi moshi = new Moshi.Builder().build();
+    adapter = moshi.adapter(mapStringObjectType);
+  }
+
+  @AfterEach
+  public void tearDown() {
+    Spark.unmap("/changes");
+    Spark.awaitStop();
+  }
+
+  private Map<String, Object> request(String apiCall) throws IOException {
+    URL requestURL = new URL("http://localhost:" + Spark.port() + "/" + apiCall);
+    HttpURLConnection clientConnection = (HttpURLConnection) requestURL.openConnection();
+    clientConnection.connect();
+    assertEquals(200, clientConnection.getResponseCode());
+    Map<String, Object> responseBody =
+        adapter.fromJson(new Buffer().readFrom(clientConnection.getInputStream()));
+    clientConnection.disconnect();
+    return responseBody;
+  }
+
+  private static void addBudget(String category, String spent) {
+    storage.addDocument(
+        "user-1",
+        "doc-" + category,
+        Map.of("category", category, "budget", "100", "spent", spent, "plant", "orchid"));
+  }
+
+  private static String since(Map<String, Object> response) {
+    return "&epoch="
+        + response.get("epoch")
+        + "&since="
+        + ((Number) response.get("version")).longValue();
+  }
+
+  @Test
+  public void testFirstSyncIsFullReset() throws Exception {
+    addBudget("food", "10");
+    addBudget("rent", "900");
+
+    Map<String, Object> response = request("changes?user=1");
+    assertEquals("success", response.get("response_type"));
+    assertEquals(true, response.get("reset"));
+    assertEquals(2.0, response.get("version"));
+    assertEquals(2, ((List<?>) response.get("upserts")).size());
+  }
+
+  @Test
+  public void testIncrementalUpsertsAndTombstones() throws Exception {
+    addBudget("food", "10");
+    addBudget("rent", "900");
+    Map<String, Object> first = request("changes?user=1");
+
+    addBudget("food", "25");
+    storage.deleteDocument("user-1", "doc-rent");
+    addBudget("fun", "0");
+
+    Map<String, Object> delta = request("changes?user=1" + since(first));
+    assertEquals(false, delta.get("reset"));
+    assertEquals(5.0, delta.get("version"));
+    List<?> upserts = (List<?>) delta.get("upserts");
+    assertEquals(2, upserts.size());
+    assertEquals("25", ((Map<?, ?>) upserts.get(0)).get("spent"));
+    assertEquals("fun", ((Map<?, ?>) upserts.get(1)).get("category"));
+    assertEquals(List.of("rent"), delta.get("deletes"));
+
+    // nothing new: an empty delta at the same version
+    Map<String, Object> empty = request("changes?user=1" + since(delta));
+    assertEquals(false, empty.get("reset"));
+    assertEquals(0, ((List<?>) empty.get("upserts")).size());
+    assertEquals(0, ((List<?>) empty.get("deletes")).size());
+  }
+
+  @Test
+  public void testStaleEpochOrClearForcesReset() throws Exception {
+    addBudget("food", "10");
+    Map<String, Object> first = request("changes?user=1");
+
+    Map<String, Object> otherEpoch = request("changes?user=1&epoch=old&since=1");
+    assertEquals(true, otherEpoch.get("reset"));
+
+    storage.clearCollection("user-1");
+    addBudget("rent", "5");
+    Map<String, Object> afterClear = request("changes?user=1" + since(first));
+    assertEquals(true, afterClear.get("reset"));
+    List<?> upserts = (List<?>) afterClear.get("upserts");
+    assertEquals(1, upserts.size());
+    assertEquals("rent", ((Map<?, ?>) upserts.get(0)).get("category"));
+  }
+
+  @Test
+  public void testLongLogIsTruncatedToReset() throws Exception {
+    addBudget("food", "10");
+    Map<String, Object> first = request("changes?user=1");
+
+    for (int i = 0; i < 1000; i++) {
+      addBudget("category" + i, "0");
+    }
+    Map<String, Object> delta = request("changes?user=1" + since(first));
+    assertEquals(true, delta.get("reset"));
+    assertEquals(1001.0, delta.get("version"));
+    assertEquals(1001, ((List<?>) delta.get("upserts")).size());
+  }
+
+  @Test
+  public void testNonBudgetTombstoneIsSkipped() throws Exception {
+    addBudget("food", "10");
+    Map<String, Object> first = request("changes?user=1");
+
+    storage.deleteDocument("user-1", "summary");
+    storage.deleteDocument("user-1", "doc-food");
+    Map<String, Object> delta = request("changes?user=1" + since(first));
+    assertEquals(List.of("food"), delta.get("deletes"));
+  }
+
+  @Test
+  public void testLogFollowsTheBackendsOrder() throws Exception {
+    CountDownLatch stored = new CountDownLatch(1);
+    MockStorage backend =
+        new MockStorage() {
+          @Override
+          public void addDocument(String collectionId, String docId, Map<String, Object> data) {
+            super.addDocument(collectionId, docId, data);
+            if ("10".equals(data.get("spent"))) {
+              // a slow write: stored, but not yet acknowledged when the next write starts
+              stored.countDown();
+              try {
+                Thread.sleep(100);
+              } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+              }
+            }
+          }
+        };
+    storage = new VersionedStorage(backend);
+    Thread slow = new Thread(() -> addBudget("food", "10"));
+    slow.start();
+    stored.await();
+    addBudget("food", "20");
+    slow.join();
+
+    assertEquals("20", backend.getDocument("user-1", "doc-food").get("spent"));
+    List<VersionedStorage.Change> changes = storage.changesSince("user-1", 0).getChanges();
+    assertEquals("20", changes.get(changes.size() - 1).getData().get("spent"));
+  }
+
+  @Test
+  public void testMissingUser() throws Exception {
+    Map<String, Object> response = request("changes?since=0");
+    assertEquals("failure", response.get("response_type"));
+    assertEquals("Missing user parameter.", response.get("error"));
+  }
+}
@@ -0,0 +1,151 @@
+package edu.brown.cs.student;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import com.squareup.moshi.JsonAdapter;
+import com.squareup.moshi.Moshi;
+import com.squareup.moshi.Types;
+import edu.brown.cs.student.main.server.filters.CompressionFilter;
+import edu.brown.cs.student.main.server.handlers.GetUserDataHandler;
+import edu.brown.cs.student.main.server.storage.VersionedStorage;
+import edu.brown.cs.student.mocks.MockStorage;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+import okio.Buffer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import spark.Spark;
+
+/** Tests ETag-based conditional GETs and response compression on /get-user-data. */
+public class ConditionalGetTest {
+
+  private static JsonAdapter<Map<String, Object>> adapter;
+  private static final Type mapStringObjectType =
+      Types.newParameterizedType(Map.class, String.class, Object.class);
+
+  private VersionedStorage storage;
+  private AtomicInteger collectionReads;
+
+  @BeforeAll
+  public static void setupOnce() {
+    Spark.stop();
+    Spark.awaitStop();
+    Spark.port(0);
+  }
+
+  @BeforeEach
+  public void setup() {
+    this.collectionReads = new AtomicInteger();
+    this.storage =
+        new VersionedStorage(
+            new MockStorage() {
+              @Override
+              public List<Map<String, Object>> getCollection(String collectionId)
+                  throws InterruptedException, ExecutionException {
+                collectionReads.incrementAndGet();
+                return super.getCollection(collectionId);
+              }
+            });
+    Spark.after(new CompressionFilter(512));
+    Spark.get("/get-user-data", new GetUserDataHandler(this.storage, this.storage));
+    Spark.awaitInitialization();
+
+    Moshi moshi = new Moshi.Builder().build();
+    adapter = moshi.adapter(mapStringObjectType);
+  }
+
+  @AfterEach
+  public void tearDown() {
+    Spark.stop();
+    Spark.awaitStop();
+  }
+
+  private HttpURLConnection tryRequest(String apiCall, Map<String, String> headers)
+      throws IOException {
+    URL requestURL = new URL("http://localhost:" + Spark.port() + "/" + apiCall);
+    HttpURLConnection clientConnection = (HttpURLConnection) requestURL.openConnection();
+    headers.forEach(clientConnection::setRequestProperty);
+    clientConnection.connect();
+    return clientConnection;
+  }
+
+  private void addBudget(String category) {
+    this.storage.addDocument(
+        "user-1",
+        "doc-" + category,
+        Map.of("category", category, "budget", "100", "spent", "10", "plant", "orchid"));
+  }
+
+  @Test
+  public void testMatchingETagReturns304WithoutReadingData() throws Exception {
+    addBudget("food");
+    HttpURLConnection first = tryRequest("get-user-data?user=1", Map.of());
+    assertEquals(200, first.getResponseCode());
+    String etag = first.getHeaderField("ETag");
+    assertNotNull(etag);
+    assertEquals(1, this.collectionReads.get());
+
+    HttpURLConnection second = tryRequest("get-user-data?user=1", Map.of("If-None-Match", etag));
+    assertEquals(304, second.getResponseCode());
+    assertEquals(etag, second.getHeaderField("ETag"));
+    assertEquals(1, this.collectionReads.get());
+  }
+
+  @Test
+  public void testWriteChangesETag() throws Exception {
+    addBudget("food");
+    String etag = tryRequest("get-user-data?user=1", Map.of()).getHeaderField("ETag");
+
+    addBudget("rent");
+    HttpURLConnection connection =
+        tryRequest("get-user-data?user=1", Map.of("If-None-Match", etag));
+    assertEquals(200, connection.getResponseCode());
+    assertNotEquals(etag, connection.getHeaderField("ETag"));
+    Map<String, Object> responseBody =
+        adapter.fromJson(new Buffer().readFrom(connection.getInputStream()));
+    assertEquals(2, ((List<?>) responseBody.get("data")).size());
+  }
+
+  @Test
+  public void testLargeResponsesAreGzipped() throws Exception {
+    for (int i = 0; i < 20; i++) {
+      addBudget("category-" + i);
+    }
+    HttpURLConnection connection =
+        tryRequest("get-user-data?user=1", Map.of("Accept-Encoding", "gzip"));
+    assertEquals(200, connection.getResponseCode());
+    assertEquals("gzip", connection.getHeaderField("Content-Encoding"));
+    Map<String, Object> responseBody =
+        adapter.fromJson(new Buffer().readFrom(new GZIPInputStream(connection.getInputStream())));
+    assertEquals(20, ((List<?>) responseBody.get("data")).size());
+  }
+
+  @Test
+  public void testSmallResponsesAndNonGzipClientsAreUncompressed() throws Exception {
+    addBudget("food");
+    HttpURLConnection small = tryRequest("get-user-data?user=1", Map.of("Accept-Encoding", "gzip"));
+    assertNull(small.getHeaderField("Content-Encoding"));
+
+    for (int i = 0; i < 20; i++) {
+      addBudget("category-" + i);
+    }
+    HttpURLConnection identity =
+        tryRequest("get-user-data?user=1", Map.of("Accept-Encoding", "identity"));
+    assertNull(identity.getHeaderField("Content-Encoding"));
+    Map<String, Object> responseBody =
+        adapter.fromJson(new Buffer().readFrom(identity.getInputStream()));
+    assertEquals("success", responseBody.get("response_type"));
+  }
+}
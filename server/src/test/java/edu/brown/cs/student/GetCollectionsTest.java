@@ -0,0 +1,70 @@
+package edu.brown.cs.student;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import edu.brown.cs.student.mocks.MockStorage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+public class GetCollectionsTest {
+
+  /** Storage whose reads take a while, recording how many overlap. */
+  private static class SlowStorage extends MockStorage {
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicInteger maxRunning = new AtomicInteger();
+
+    @Override
+    public List<Map<String, Object>> getCollection(String collectionId)
+        throws InterruptedException, ExecutionException {
+      int now = this.running.incrementAndGet();
+      this.maxRunning.accumulateAndGet(now, Math::max);
+      try {
+        Thread.sleep(20);
+        if (collectionId.equals("user-broken")) {
+          throw new IllegalStateException("Storage failure");
+        }
+        return super.getCollection(collectionId);
+      } finally {
+        this.running.decrementAndGet();
+      }
+    }
+  }
+
+  @Test
+  public void testFetchesConcurrentlyWithBoundedInFlight() throws Exception {
+    SlowStorage storage = new SlowStorage();
+    List<String> ids = new ArrayList<>();
+    for (int i = 0; i < 40; i++) {
+      ids.add("user-" + i);
+      storage.addDocument("user-" + i, "doc-food", Map.of("category", "food", "user", "" + i));
+    }
+
+    long start = System.nanoTime();
+    Map<String, List<Map<String, Object>>> results = storage.getCollections(ids, 8);
+    long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+    assertEquals(ids, new ArrayList<>(results.keySet()));
+    assertEquals("7", results.get("user-7").get(0).get("user"));
+    assertTrue(storage.maxRunning.get() <= 8);
+    assertTrue(storage.maxRunning.get() > 1);
+    // 40 reads of 20ms each would take 800ms one at a time
+    assertTrue(elapsedMillis < 600, "took " + elapsedMillis + "ms");
+  }
+
+  @Test
+  public void testFailurePropagates() {
+    SlowStorage storage = new SlowStorage();
+    ExecutionException e =
+        assertThrows(
+            ExecutionException.class,
+            () -> storage.getCollections(List.of("user-1", "user-broken", "user-2"), 2));
+    assertTrue(e.getCause() instanceof IllegalStateException);
+    assertTrue(e.getCause().getMessage().contains("Storage failure"));
+  }
+}
@@ -0,0 +1,144 @@
+package edu.brown.cs.student;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import edu.brown.cs.student.main.server.storage.InMemoryStorage;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.jupiter.api.Test;
+
+public class InMemoryStorageTest {
+
+  @Test
+  public void testReadsAreCopies() {
+    InMemoryStorage storage = new InMemoryStorage(16, 1 << 20);
+    Map<String, Object> data = new HashMap<>(Map.of("category", "food", "spent", "1"));
+    storage.addDocument("user-1", "doc-food", data);
+
+    // neither the caller's map nor a returned one reaches the stored document
+    data.put("spent", "2");
+    storage.getCollection("user-1").get(0).put("spent", "3");
+    assertEquals("1", storage.getCollection("user-1").get(0).get("spent"));
+  }
+
+  @Test
+  public void testMemoryAccountingAndLimit() {
+    InMemoryStorage storage = new InMemoryStorage(4, 2000);
+    storage.addDocument("user-1", "doc-a", Map.of("category", "a"));
+    long one = storage.usedBytes();
+    assertTrue(one > 0);
+
+    // replacing a document does not count it twice
+    storage.addDocument("user-1", "doc-a", Map.of("category", "b"));
+    assertEquals(one, storage.usedBytes());
+
+    String big = "x".repeat(3000);
+    IllegalStateException e =
+        assertThrows(
+            IllegalStateException.class,
+            () -> storage.addDocument("user-1", "doc-big", Map.of("notes", big)));
+    assertTrue(e.getMessage().contains("2000"));
+    assertEquals(one, storage.usedBytes());
+    assertEquals(1, storage.documentCount());
+
+    storage.deleteDocument("user-1", "doc-a");
+    assertEquals(0, storage.usedBytes());
+    assertEquals(List.of(), storage.listCollections());
+  }
+
+  @Test
+  public void testNoLostUpdatesUnderConcurrency() throws Exception {
+    InMemoryStorage storage = new InMemoryStorage(8, Long.MAX_VALUE);
+    int threads = 8;
+    int operations = 5000;
+    // few collections, so writers constantly contend and collections keep emptying and refilling
+    String[] collections = {"user-1", "user-2", "user-3"};
+
+    ExecutorService executor = Executors.newFixedThreadPool(threads + 2);
+    CountDownLatch start = new CountDownLatch(1);
+    AtomicBoolean writing = new AtomicBoolean(true);
+    ConcurrentLinkedQueue<Throwable> readerErrors = new ConcurrentLinkedQueue<>();
+    List<Future<Set<String>>> writers = new ArrayList<>();
+    for (int t = 0; t < threads; t++) {
+      int thread = t;
+      writers.add(
+          executor.submit(
+              () -> {
+                start.await();
+                // each thread owns its document ids and remembers which ones it left behind
+                Set<String> alive = new HashSet<>();
+                for (int i = 0; i < operations; i++) {
+                  String collection = collections[i % collections.length];
+                  String doc = "doc-" + thread + "-" + (i % 50);
+                  String key = collection + "/" + doc;
+                  if ((i * 31 + thread) % 3 == 0) {
+                    storage.deleteDocument(collection, doc);
+                    alive.remove(key);
+                  } else {
+                    storage.addDocument(
+                        collection, doc, Map.of("owner", String.valueOf(thread), "key", key));
+                    alive.add(key);
+                  }
+                }
+                return alive;
+              }));
+    }
+    for (int r = 0; r < 2; r++) {
+      executor.submit(
+          () -> {
+            try {
+              start.await();
+              while (writing.get()) {
+                for (String collection : collections) {
+                  for (Map<String, Object> doc : storage.getCollection(collection)) {
+                    assertTrue(doc.containsKey("key"));
+                  }
+                }
+              }
+            } catch (Throwable e) {
+              readerErrors.add(e);
+            }
+            return null;
+          });
+    }
+
+    start.countDown();
+    Set<String> expected = new HashSet<>();
+    for (Future<Set<String>> writer : writers) {
+      expected.addAll(writer.get(60, TimeUnit.SECONDS));
+    }
+    writing.set(false);
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+    assertTrue(readerErrors.isEmpty(), readerErrors.toString());
+
+    Set<String> actual = new HashSet<>();
+    for (String collection : storage.listCollections()) {
+      for (Map<String, Object> doc : storage.getCollection(collection)) {
+        actual.add(doc.get("key").toString());
+      }
+    }
+    assertEquals(expected, actual);
+    assertEquals(expected.size(), storage.documentCount());
+
+    // emptying everything brings the accounting back to zero
+    for (String collection : collections) {
+      storage.clearCollection(collection);
+    }
+    assertEquals(0, storage.usedBytes());
+    assertEquals(0, storage.documentCount());
+  }
+}
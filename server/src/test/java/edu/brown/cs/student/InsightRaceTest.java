@@ -0,0 +1,127 @@
+package edu.brown.cs.student;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import edu.brown.cs.student.main.server.insights.InsightRace;
+import edu.brown.cs.student.main.server.openai.OpenAIClientInterface;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class InsightRaceTest {
+
+  private ExecutorService executor;
+  private CountDownLatch release;
+  private AtomicInteger calls;
+
+  @BeforeEach
+  public void setup() {
+    this.executor = Executors.newCachedThreadPool();
+    this.release = new CountDownLatch(1);
+    this.calls = new AtomicInteger();
+  }
+
+  @AfterEach
+  public void tearDown() {
+    this.release.countDown();
+    this.executor.shutdownNow();
+  }
+
+  /** Answers once released. */
+  private OpenAIClientInterface slowClient() {
+    return prompt -> {
+      this.calls.incrementAndGet();
+      try {
+        this.release.await();
+      } catch (InterruptedException e) {
+        throw new IOException(e);
+      }
+      return "openai: " + prompt;
+    };
+  }
+
+  private InsightRace race(OpenAIClientInterface client) {
+    return new InsightRace(client, Duration.ofMillis(50), this.executor, 10);
+  }
+
+  @Test
+  public void testFastAnswerWins() {
+    InsightRace race = this.race(prompt -> "openai: " + prompt);
+    InsightRace.Result result = race.race("p", () -> "local");
+    assertEquals("openai: p", result.getText());
+    assertEquals("openai", result.getSource());
+    assertEquals("cache", race.race("p", () -> "local").getSource());
+  }
+
+  @Test
+  public void testLateAnswerFallsBackThenIsCached() throws Exception {
+    InsightRace race = this.race(this.slowClient());
+    InsightRace.Result result = race.race("p", () -> "local");
+    assertEquals("local", result.getText());
+    assertEquals("local", result.getSource());
+
+    this.release.countDown();
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (!race.isCached("p") && System.nanoTime() < deadline) {
+      Thread.sleep(5);
+    }
+    result = race.race("p", () -> "local");
+    assertEquals("openai: p", result.getText());
+    assertEquals("cache", result.getSource());
+    assertEquals(1, this.calls.get());
+  }
+
+  @Test
+  public void testSamePromptSharesOneCall() {
+    InsightRace race = this.race(this.slowClient());
+    race.race("p", () -> "local");
+    race.race("p", () -> "local");
+    assertEquals("local", race.race("other", () -> "local").getSource());
+    assertEquals(2, this.calls.get());
+  }
+
+  @Test
+  public void testFailureFallsBackAndIsRetried() {
+    InsightRace race =
+        this.race(
+            prompt -> {
+              this.calls.incrementAndGet();
+              throw new IOException("OpenAI is down");
+            });
+    assertEquals("local", race.race("p", () -> "local").getSource());
+    assertEquals("local", race.race("p", () -> "local").getSource());
+    assertTrue(!race.isCached("p"));
+    assertEquals(2, this.calls.get());
+  }
+
+  @Test
+  public void testRejectedCallAnswersLocallyAtOnce() {
+    AtomicInteger submitted = new AtomicInteger();
+    InsightRace race =
+        new InsightRace(
+            prompt -> "openai: " + prompt,
+            Duration.ofSeconds(30),
+            task -> {
+              // the first call finds the queue full, the next one runs
+              if (submitted.incrementAndGet() == 1) {
+                throw new RejectedExecutionException("queue full");
+              }
+              task.run();
+            },
+            10);
+    long start = System.nanoTime();
+    assertEquals("local", race.race("p", () -> "local").getSource());
+    assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+    // the rejected call was not left registered, so the next request makes a new one
+    assertEquals("openai", race.race("p", () -> "local").getSource());
+  }
+}
@@ -0,0 +1,160 @@
+package edu.brown.cs.student;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import edu.brown.cs.student.main.server.invalidation.InProcessInvalidationBus;
+import edu.brown.cs.student.main.server.invalidation.Invalidation;
+import edu.brown.cs.student.main.server.invalidation.MulticastInvalidationBus;
+import edu.brown.cs.student.main.server.metrics.Metrics;
+import edu.brown.cs.student.main.server.storage.InMemoryStorage;
+import edu.brown.cs.student.main.server.storage.VersionedStorage;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.MulticastSocket;
+import java.net.NetworkInterface;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+public class InvalidationBusTest {
+
+  @Test
+  public void testWritesInvalidateOtherInstances() throws Exception {
+    InMemoryStorage shared = new InMemoryStorage(4, Long.MAX_VALUE);
+    InProcessInvalidationBus.Group group = new InProcessInvalidationBus.Group();
+    InProcessInvalidationBus busA = new InProcessInvalidationBus(group, Duration.ofMillis(5), 64);
+    InProcessInvalidationBus busB = new InProcessInvalidationBus(group, Duration.ofMillis(5), 64);
+    VersionedStorage a = new VersionedStorage(shared, busA);
+    VersionedStorage b = new VersionedStorage(shared, busB);
+
+    a.addDocument("user", "doc-food", Map.of("category", "food", "spent", "1"));
+    long before = b.getVersion("user");
+    CountDownLatch written = new CountDownLatch(1);
+    b.watchWrites(collection -> written.countDown());
+
+    a.addDocument("user", "doc-food", Map.of("category", "food", "spent", "2"));
+    assertTrue(written.await(2, TimeUnit.SECONDS));
+    assertTrue(b.getVersion("user") > before);
+    // b does not know what changed, so its readers must reload
+    VersionedStorage.ChangeSet changes = b.changesSince("user", before);
+    assertTrue(changes.isReset());
+    assertFalse(b.isComplete("user"));
+    assertEquals("2", b.getCollection("user").get(0).get("spent"));
+
+    busA.close();
+    busB.close();
+  }
+
+  @Test
+  public void testBurstsAreBatchedAndCoalesced() throws Exception {
+    InProcessInvalidationBus.Group group = new InProcessInvalidationBus.Group();
+    InProcessInvalidationBus sender =
+        new InProcessInvalidationBus(group, Duration.ofSeconds(30), 3);
+    InProcessInvalidationBus receiver =
+        new InProcessInvalidationBus(group, Duration.ofSeconds(30), 3);
+    BlockingQueue<List<Invalidation>> batches = new LinkedBlockingQueue<>();
+    receiver.subscribe(batches::add);
+    sender.subscribe(batch -> batches.add(List.of()));
+
+    for (int version = 1; version <= 100; version++) {
+      sender.publish(new Invalidation("user", "doc-food", version));
+    }
+    sender.publish(new Invalidation("user", "doc-rent", 101));
+    // the third document fills the batch, which is sent without waiting for the window
+    sender.publish(new Invalidation("other", null, 1));
+
+    List<Invalidation> batch = batches.poll(2, TimeUnit.SECONDS);
+    assertEquals(3, batch.size());
+    assertEquals("user/doc-food@100", batch.get(0).toString());
+    assertEquals("user/doc-rent@101", batch.get(1).toString());
+    assertNull(batch.get(2).getDocId());
+    // a bus never hears its own events
+    assertNull(batches.poll(100, TimeUnit.MILLISECONDS));
+
+    sender.close();
+    receiver.close();
+  }
+
+  @Test
+  public void testMulticastOnLoopback() throws Exception {
+    int port;
+    try (DatagramSocket probe = new DatagramSocket(0)) {
+      port = probe.getLocalPort();
+    }
+    InetSocketAddress address = new InetSocketAddress("239.255.77.78", port);
+    MulticastInvalidationBus sender =
+        new MulticastInvalidationBus(address, Duration.ofMillis(5), 1000);
+    MulticastInvalidationBus receiver =
+        new MulticastInvalidationBus(address, Duration.ofMillis(5), 1000);
+    BlockingQueue<Invalidation> received = new LinkedBlockingQueue<>();
+    receiver.subscribe(received::addAll);
+    sender.subscribe(received::addAll);
+
+    // more than fits in one packet
+    for (int i = 0; i < 600; i++) {
+      sender.publish(new Invalidation("user-" + i, "doc-" + "x".repeat(20) + i, i));
+    }
+    sender.publish(new Invalidation("cleared", null, 7));
+
+    for (int i = 0; i < 600; i++) {
+      Invalidation event = received.poll(2, TimeUnit.SECONDS);
+      assertEquals("user-" + i + "/doc-" + "x".repeat(20) + i + "@" + i, event.toString());
+    }
+    Invalidation cleared = received.poll(2, TimeUnit.SECONDS);
+    assertEquals("cleared", cleared.getCollectionId());
+    assertNull(cleared.getDocId());
+    assertNull(received.poll(100, TimeUnit.MILLISECONDS));
+
+    sender.close();
+    receiver.close();
+  }
+
+  @Test
+  public void testMalformedPacketsAreDropped() throws Exception {
+    int port;
+    try (DatagramSocket probe = new DatagramSocket(0)) {
+      port = probe.getLocalPort();
+    }
+    InetSocketAddress address = new InetSocketAddress("239.255.77.79", port);
+    MulticastInvalidationBus sender =
+        new MulticastInvalidationBus(address, Duration.ofMillis(5), 1000);
+    MulticastInvalidationBus receiver =
+        new MulticastInvalidationBus(address, Duration.ofMillis(5), 1000);
+    BlockingQueue<Invalidation> received = new LinkedBlockingQueue<>();
+    receiver.subscribe(received::addAll);
+    long badBefore = Metrics.counter("invalidation.bad_packets").sum();
+
+    // claims far more events than the packet holds
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    out.writeLong(42);
+    out.writeInt(Integer.MAX_VALUE);
+    byte[] packet = bytes.toByteArray();
+    try (MulticastSocket socket = new MulticastSocket()) {
+      socket.setNetworkInterface(
+          NetworkInterface.getByInetAddress(InetAddress.getLoopbackAddress()));
+      socket.setTimeToLive(0);
+      socket.send(new DatagramPacket(packet, packet.length, address));
+    }
+
+    // the receiver keeps going
+    sender.publish(new Invalidation("user-1", "doc-food", 3));
+    assertEquals("user-1/doc-food@3", received.poll(2, TimeUnit.SECONDS).toString());
+    assertTrue(Metrics.counter("invalidation.bad_packets").sum() > badBefore);
+
+    sender.close();
+    receiver.close();
+  }
+}
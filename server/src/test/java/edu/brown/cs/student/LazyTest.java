@@ -0,0 +1,105 @@
+package edu.brown.cs.student;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import edu.brown.cs.student.main.server.openai.LazyOpenAIClient;
+import edu.brown.cs.student.main.server.startup.Lazy;
+import edu.brown.cs.student.mocks.MockOpenAIClient;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+public class LazyTest {
+
+  @Test
+  public void testCreatedOnceInTheBackground() throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    AtomicInteger created = new AtomicInteger();
+    Lazy<String> lazy =
+        new Lazy<>(
+            "slow",
+            () -> {
+              release.await();
+              return "client-" + created.incrementAndGet();
+            });
+    assertEquals(Lazy.State.PENDING, lazy.getState());
+
+    ExecutorService executor = Executors.newCachedThreadPool();
+    lazy.start(executor);
+    // callers arriving while it starts wait for the same creation
+    CompletableFuture<String> first = CompletableFuture.supplyAsync(lazy::get, executor);
+    CompletableFuture<String> second = CompletableFuture.supplyAsync(lazy::get, executor);
+    Thread.sleep(50);
+    assertEquals(Lazy.State.STARTING, lazy.getState());
+    assertTrue(!first.isDone() && !second.isDone());
+
+    release.countDown();
+    assertEquals("client-1", first.get(2, TimeUnit.SECONDS));
+    assertEquals("client-1", second.get(2, TimeUnit.SECONDS));
+    assertEquals("client-1", lazy.get());
+    assertEquals(Lazy.State.READY, lazy.getState());
+    assertNull(lazy.getError());
+    assertEquals(1, created.get());
+    executor.shutdown();
+  }
+
+  @Test
+  public void testAwaitWaitsForACreationInProgress() throws Exception {
+    CountDownLatch release = new CountDownLatch(1);
+    Lazy<String> lazy =
+        new Lazy<>(
+            "closing",
+            () -> {
+              release.await();
+              return "value";
+            });
+    // nothing started, so nothing to wait for
+    assertNull(lazy.await(Duration.ofMillis(10)));
+
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    lazy.start(executor);
+    assertNull(lazy.await(Duration.ofMillis(10)));
+    release.countDown();
+    assertEquals("value", lazy.await(Duration.ofSeconds(2)));
+    executor.shutdown();
+  }
+
+  @Test
+  public void testCreatedByFirstUseWithoutStart() {
+    Lazy<String> lazy = new Lazy<>("eager", () -> "value");
+    assertEquals("value", lazy.get());
+    assertEquals(Lazy.State.READY, lazy.getState());
+  }
+
+  @Test
+  public void testFailureIsReportedAndNotRetried() {
+    AtomicInteger attempts = new AtomicInteger();
+    Lazy<MockOpenAIClient> lazy =
+        new Lazy<>(
+            "openai",
+            () -> {
+              attempts.incrementAndGet();
+              throw new IOException("no key");
+            });
+    LazyOpenAIClient client = new LazyOpenAIClient(lazy);
+
+    // callers see an unreachable OpenAI, and fall back as usual
+    IOException e = assertThrows(IOException.class, () -> client.generateSuggestion("prompt"));
+    assertEquals("openai is unavailable: no key", e.getMessage());
+    assertThrows(IllegalStateException.class, lazy::get);
+    assertEquals(Lazy.State.FAILED, lazy.getState());
+    assertEquals("no key", lazy.getError());
+    assertEquals(1, attempts.get());
+    // warming up never blocks on or creates the client
+    client.warmUp();
+  }
+}
@@ -0,0 +1,61 @@
+package edu.brown.cs.student;
+
+import static edu.brown.cs.student.mocks.Budgets.budget;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import edu.brown.cs.student.main.server.forecast.CategoryForecast;
+import edu.brown.cs.student.main.server.insights.LocalInsights;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+public class LocalInsightsTest {
+
+  private static final List<Map<String, Object>> BUDGETS =
+      List.of(
+          budget("food", "200", "260"),
+          budget("rent", "1000", "900"),
+          budget("fun", "100", "60"),
+          budget("books", "100", "10"),
+          budget("gifts", "lots", "5"));
+
+  @Test
+  public void testSummaryRanksSpending() {
+    String summary = LocalInsights.summary(BUDGETS, List.of());
+    assertTrue(summary.startsWith("Across 4 budgets you have spent $1,230.00 of $1,400.00 (88%)."));
+    assertTrue(summary.contains("Over budget: food (130%)."));
+    assertTrue(summary.contains("Close to the limit: rent (90%)."));
+    assertTrue(summary.contains("Most room left: books (10%)."));
+    assertEquals(summary, LocalInsights.summary(BUDGETS, List.of()));
+  }
+
+  @Test
+  public void testSummaryUsesForecasts() {
+    List<CategoryForecast> forecasts =
+        List.of(
+            new CategoryForecast("fun", 100, 60, 150, "2024-02-01T00:00", "linear", 0),
+            new CategoryForecast("books", 100, 10, 30, "2024-02-01T00:00", "linear", 0));
+    String summary = LocalInsights.summary(BUDGETS, forecasts);
+    assertTrue(
+        summary.contains("On pace to go over by the end of the period: fun (150% projected)."));
+  }
+
+  @Test
+  public void testAdviceSteps() {
+    List<CategoryForecast> forecasts =
+        List.of(new CategoryForecast("fun", 100, 60, 150, "2024-02-01T00:00", "linear", 0));
+    String advice = LocalInsights.advice(BUDGETS, forecasts, " save for a bike ");
+    assertTrue(advice.startsWith("Toward your goal \"save for a bike\": 1. Rein in food"));
+    assertTrue(advice.contains("2. Slow down on fun: at this pace it will reach $150.00"));
+    assertTrue(advice.contains("3. Consider trimming the budgets you use least (books (10%))"));
+    assertTrue(
+        advice.contains("4. If you stay within your budgets, you can set aside up to $230.00"));
+  }
+
+  @Test
+  public void testNoBudgets() {
+    assertTrue(LocalInsights.summary(List.of(), List.of()).startsWith("You have no budgets yet."));
+    assertTrue(LocalInsights.advice(List.of(), List.of(), "retire").contains("start by adding"));
+  }
+}
@@ -1,11 +1,13 @@
 package edu.brown.cs.student;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import com.squareup.moshi.JsonAdapter;
 import com.squareup.moshi.Moshi;
 import com.squareup.moshi.Types;
 import edu.brown.cs.student.main.server.handlers.OpenAISummaryHandler;
+import edu.brown.cs.student.main.server.insights.InsightRace;
 import edu.brown.cs.student.main.server.openai.OpenAIClientInterface;
 import edu.brown.cs.student.mocks.MockOpenAIClient;
 import edu.brown.cs.student.mocks.MockStorage;
@@ -13,6 +15,7 @@ import java.io.IOException;
 import java.lang.reflect.Type;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.time.Duration;
 import java.util.HashMap;
 import java.util.Map;
 import okio.Buffer;
@@ -160,4 +163,33 @@ public class OpenAISummaryHandlerTest {
 
     connection.disconnect();
   }
+
+  @Test
+  public void testSummaryFallsBackWhenOpenAIFails() throws Exception {
+    Map<String, Object> budgetData = new HashMap<>();
+    budgetData.put("category", "food");
+    budgetData.put("budget", "200");
+    budgetData.put("spent", "250");
+    mockStorage.addDocument("user-1", "doc-food", budgetData);
+
+    OpenAIClientInterface failingOpenAI =
+        prompt -> {
+          throw new IOException("OpenAI is down");
+        };
+    InsightRace race = new InsightRace(failingOpenAI, Duration.ofSeconds(1), Runnable::run, 10);
+    Spark.get(
+        "/local-summary", new OpenAISummaryHandler(mockStorage, failingOpenAI, race, null, null));
+    Spark.awaitInitialization();
+
+    HttpURLConnection connection = tryRequest("local-summary?user=1");
+    Map<String, Object> responseBody =
+        adapter.fromJson(new Buffer().readFrom(connection.getInputStream()));
+
+    assertEquals("success", responseBody.get("response_type"));
+    assertEquals("local", responseBody.get("source"));
+    assertTrue(responseBody.get("summary").toString().contains("Over budget: food (125%)."));
+
+    connection.disconnect();
+    Spark.unmap("/local-summary");
+  }
 }
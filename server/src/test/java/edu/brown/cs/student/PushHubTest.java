@@ -0,0 +1,137 @@
+package edu.brown.cs.student;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.squareup.moshi.JsonAdapter;
+import com.squareup.moshi.Moshi;
+import com.squareup.moshi.Types;
+import edu.brown.cs.student.main.server.push.PushHub;
+import edu.brown.cs.student.main.server.push.PushWebSocket;
+import edu.brown.cs.student.main.server.storage.VersionedStorage;
+import edu.brown.cs.student.main.server.storage.WatchableStorage;
+import edu.brown.cs.student.mocks.MockStorage;
+import java.lang.reflect.Type;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.WebSocket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+import spark.Spark;
+
+public class PushHubTest {
+
+  private static final Type mapStringObjectType =
+      Types.newParameterizedType(Map.class, String.class, Object.class);
+
+  /** Counts upstream watches so reference counting can be checked. */
+  private static class CountingStorage implements WatchableStorage {
+    private final VersionedStorage inner = new VersionedStorage(new MockStorage());
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger opened = new AtomicInteger();
+
+    @Override
+    public Subscription watchCollection(String collection_id, CollectionListener listener) {
+      this.active.incrementAndGet();
+      this.opened.incrementAndGet();
+      Subscription subscription = this.inner.watchCollection(collection_id, listener);
+      return () -> {
+        this.active.decrementAndGet();
+        subscription.cancel();
+      };
+    }
+  }
+
+  @Test
+  public void testOneUpstreamWatchPerCollection() {
+    CountingStorage storage = new CountingStorage();
+    PushHub hub = new PushHub(storage);
+    List<String> first = new ArrayList<>();
+    List<String> second = new ArrayList<>();
+    PushHub.Sink firstSink = first::add;
+    PushHub.Sink secondSink = second::add;
+
+    hub.subscribe("user-1", firstSink);
+    hub.subscribe("user-1", secondSink);
+    assertEquals(1, storage.opened.get());
+    assertEquals(1, hub.watchedCollections());
+
+    storage.inner.addDocument(
+        "user-1", "doc-food", Map.of("category", "food", "budget", "10", "spent", "1"));
+    assertEquals(1, first.size());
+    assertEquals(1, second.size());
+
+    hub.unsubscribe("user-1", firstSink);
+    assertEquals(1, storage.active.get());
+    storage.inner.deleteDocument("user-1", "doc-food");
+    assertEquals(1, first.size());
+    assertEquals(2, second.size());
+    assertTrue(second.get(1).contains("\"deletes\":[\"food\"]"));
+
+    hub.unsubscribe("user-1", secondSink);
+    assertEquals(0, storage.active.get());
+    assertEquals(0, hub.watchedCollections());
+
+    // a new subscriber attaches a fresh watch
+    hub.subscribe("user-1", firstSink);
+    assertEquals(2, storage.opened.get());
+  }
+
+  @Test
+  public void testChangesArePushedOverWebSocket() throws Exception {
+    Spark.stop();
+    Spark.awaitStop();
+    Spark.port(0);
+
+    VersionedStorage storage = new VersionedStorage(new MockStorage());
+    Spark.webSocket("/push", new PushWebSocket(new PushHub(storage)));
+    Spark.init();
+    Spark.awaitInitialization();
+
+    BlockingQueue<String> received = new LinkedBlockingQueue<>();
+    WebSocket socket =
+        HttpClient.newHttpClient()
+            .newWebSocketBuilder()
+            .buildAsync(
+                URI.create("ws://localhost:" + Spark.port() + "/push?user=1"),
+                new WebSocket.Listener() {
+                  @Override
+                  public CompletionStage<?> onText(
+                      WebSocket webSocket, CharSequence data, boolean last) {
+                    received.add(data.toString());
+                    webSocket.request(1);
+                    return null;
+                  }
+                })
+            .get(5, TimeUnit.SECONDS);
+
+    try {
+      // the subscription is registered by the connect callback, which may lag the handshake
+      long deadline = System.currentTimeMillis() + 5000;
+      String message = null;
+      while (message == null && System.currentTimeMillis() < deadline) {
+        storage.addDocument(
+            "user-1", "doc-rent", Map.of("category", "rent", "budget", "900", "spent", "0"));
+        message = received.poll(100, TimeUnit.MILLISECONDS);
+      }
+
+      JsonAdapter<Map<String, Object>> adapter =
+          new Moshi.Builder().build().adapter(mapStringObjectType);
+      Map<String, Object> body = adapter.fromJson(message);
+      assertEquals("changes", body.get("type"));
+      List<?> upserts = (List<?>) body.get("upserts");
+      assertEquals("rent", ((Map<?, ?>) upserts.get(0)).get("category"));
+    } finally {
+      socket.sendClose(WebSocket.NORMAL_CLOSURE, "done").get(5, TimeUnit.SECONDS);
+      Spark.stop();
+      Spark.awaitStop();
+    }
+  }
+}
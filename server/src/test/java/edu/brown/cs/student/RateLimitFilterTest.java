@@ -0,0 +1,136 @@
+package edu.brown.cs.student;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.squareup.moshi.JsonAdapter;
+import com.squareup.moshi.Moshi;
+import com.squareup.moshi.Types;
+import edu.brown.cs.student.main.server.handlers.OpenAISummaryHandler;
+import edu.brown.cs.student.main.server.ratelimit.RateLimitFilter;
+import edu.brown.cs.student.main.server.ratelimit.RateLimiter;
+import edu.brown.cs.student.mocks.MockOpenAIClient;
+import edu.brown.cs.student.mocks.MockStorage;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import okio.Buffer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import spark.Spark;
+
+public class RateLimitFilterTest {
+
+  private static JsonAdapter<Map<String, Object>> adapter;
+  private static final Type mapStringObjectType =
+      Types.newParameterizedType(Map.class, String.class, Object.class);
+
+  // fake clock, in nanos
+  private final AtomicLong now = new AtomicLong(0);
+
+  @BeforeAll
+  public static void setupOnce() {
+    Spark.stop();
+    Spark.awaitStop();
+    Spark.port(0);
+  }
+
+  @BeforeEach
+  public void setup() {
+    // 2 requests per user per minute, 3 in total per minute
+    RateLimiter rateLimiter = new RateLimiter(2, 30, 3, 20, 60, TimeUnit.SECONDS, this.now::get);
+    Spark.before("/summary", new RateLimitFilter(rateLimiter));
+    Spark.get("/summary", new OpenAISummaryHandler(new MockStorage(), new MockOpenAIClient()));
+    Spark.awaitInitialization();
+
+    Moshi moshi = new Moshi.Builder().build();
+    adapter = moshi.adapter(mapStringObjectType);
+  }
+
+  @AfterEach
+  public void tearDown() {
+    Spark.stop();
+    Spark.awaitStop();
+  }
+
+  private HttpURLConnection tryRequest(String apiCall) throws IOException {
+    URL requestURL = new URL("http://localhost:" + Spark.port() + "/" + apiCall);
+    HttpURLConnection clientConnection = (HttpURLConnection) requestURL.openConnection();
+    clientConnection.setRequestProperty("Accept", "application/json");
+    clientConnection.connect();
+    return clientConnection;
+  }
+
+  @Test
+  public void testUserLimitReturns429WithRetryAfter() throws Exception {
+    assertEquals(200, tryRequest("summary?user=1").getResponseCode());
+    assertEquals(200, tryRequest("summary?user=1").getResponseCode());
+
+    HttpURLConnection connection = tryRequest("summary?user=1");
+    assertEquals(429, connection.getResponseCode());
+    assertEquals("30", connection.getHeaderField("Retry-After"));
+    Map<String, Object> responseBody =
+        adapter.fromJson(new Buffer().readFrom(connection.getErrorStream()));
+    assertEquals("failure", responseBody.get("response_type"));
+    connection.disconnect();
+
+    // another user still has their own budget
+    assertEquals(200, tryRequest("summary?user=2").getResponseCode());
+  }
+
+  @Test
+  public void testGlobalLimitAndRefill() throws Exception {
+    assertEquals(200, tryRequest("summary?user=1").getResponseCode());
+    assertEquals(200, tryRequest("summary?user=2").getResponseCode());
+    assertEquals(200, tryRequest("summary?user=3").getResponseCode());
+    // user 4 has tokens of their own but the global bucket is empty
+    assertEquals(429, tryRequest("summary?user=4").getResponseCode());
+
+    this.now.addAndGet(TimeUnit.SECONDS.toNanos(20));
+    assertEquals(200, tryRequest("summary?user=4").getResponseCode());
+  }
+
+  @Test
+  public void testIdleBucketsAreSwept() {
+    RateLimiter rateLimiter = new RateLimiter(2, 1, 100, 1, 10, TimeUnit.SECONDS, this.now::get);
+    for (int i = 0; i < 50; i++) {
+      assertEquals(0, rateLimiter.tryAcquire("user-" + i));
+    }
+    assertEquals(50, rateLimiter.trackedUsers());
+
+    // all buckets refill and go idle; the next request triggers a sweep
+    this.now.addAndGet(TimeUnit.SECONDS.toNanos(11));
+    assertEquals(0, rateLimiter.tryAcquire("user-new"));
+    assertEquals(1, rateLimiter.trackedUsers());
+  }
+
+  @Test
+  public void testConcurrentAcquireNeverOverAdmits() throws Exception {
+    RateLimiter rateLimiter = new RateLimiter(1000, 1, 500, 1, 60, TimeUnit.SECONDS, this.now::get);
+    AtomicLong admitted = new AtomicLong();
+    Thread[] threads = new Thread[8];
+    for (int t = 0; t < threads.length; t++) {
+      threads[t] =
+          new Thread(
+              () -> {
+                for (int i = 0; i < 200; i++) {
+                  if (rateLimiter.tryAcquire("user-shared") == 0) {
+                    admitted.incrementAndGet();
+                  }
+                }
+              });
+      threads[t].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertEquals(500, admitted.get());
+    assertTrue(rateLimiter.trackedUsers() <= 1);
+  }
+}
@@ -0,0 +1,252 @@
+package edu.brown.cs.student;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import edu.brown.cs.student.main.server.storage.DocumentChange;
+import edu.brown.cs.student.main.server.storage.ReplicatedStorage;
+import edu.brown.cs.student.main.server.storage.VersionedStorage;
+import edu.brown.cs.student.main.server.storage.WatchableStorage;
+import edu.brown.cs.student.mocks.MockStorage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+public class ReplicatedStorageTest {
+
+  /**
+   * A backend that behaves like Firestore: a watch first receives the collection's contents, then
+   * every change, including changes made by "other servers" through {@link #remoteWrite}.
+   */
+  private static class FakeBackend extends MockStorage implements WatchableStorage {
+    private final Map<String, List<CollectionListener>> listeners = new ConcurrentHashMap<>();
+    private final Map<String, Map<String, Map<String, Object>>> docs = new ConcurrentHashMap<>();
+    private final AtomicInteger reads = new AtomicInteger();
+    private final AtomicInteger activeWatches = new AtomicInteger();
+    private volatile boolean deliverInitial = true;
+
+    @Override
+    public List<Map<String, Object>> getCollection(String collectionId)
+        throws InterruptedException, ExecutionException {
+      this.reads.incrementAndGet();
+      return super.getCollection(collectionId);
+    }
+
+    @Override
+    public void addDocument(String collectionId, String documentId, Map<String, Object> data) {
+      super.addDocument(collectionId, documentId, data);
+      this.docs.computeIfAbsent(collectionId, k -> new ConcurrentHashMap<>()).put(documentId, data);
+    }
+
+    void remoteWrite(String collectionId, String documentId, Map<String, Object> data) {
+      this.addDocument(collectionId, documentId, data);
+      this.echo(collectionId, documentId, data);
+    }
+
+    /** Delivers a change to the watches without writing it, e.g. a late echo of a local write. */
+    void echo(String collectionId, String documentId, Map<String, Object> data) {
+      DocumentChange change =
+          new DocumentChange(collectionId, documentId, data, System.currentTimeMillis());
+      for (CollectionListener listener : this.listeners.getOrDefault(collectionId, List.of())) {
+        listener.onChanges(List.of(change), false);
+      }
+    }
+
+    void failWatches(String collectionId) {
+      for (CollectionListener listener :
+          new ArrayList<>(this.listeners.getOrDefault(collectionId, List.of()))) {
+        listener.onError(new IllegalStateException("watch failed"));
+      }
+    }
+
+    @Override
+    public Subscription watchCollection(String collection_id, CollectionListener listener) {
+      this.activeWatches.incrementAndGet();
+      this.listeners.computeIfAbsent(collection_id, k -> new ArrayList<>()).add(listener);
+      if (this.deliverInitial) {
+        List<DocumentChange> initial = new ArrayList<>();
+        this.docs
+            .getOrDefault(collection_id, Map.of())
+            .forEach((id, data) -> initial.add(new DocumentChange(collection_id, id, data, 0)));
+        listener.onChanges(initial, true);
+      }
+      return () -> {
+        this.activeWatches.decrementAndGet();
+        this.listeners.get(collection_id).remove(listener);
+      };
+    }
+  }
+
+  private static Map<String, Object> budget(String category, String spent) {
+    return Map.of("category", category, "budget", "100", "spent", spent);
+  }
+
+  @Test
+  public void testReadsAreServedFromReplica() throws Exception {
+    FakeBackend backend = new FakeBackend();
+    backend.addDocument("user-1", "doc-food", budget("food", "10"));
+    ReplicatedStorage storage = new ReplicatedStorage(backend, 60_000, 1000, 100);
+
+    assertEquals(1, storage.getCollection("user-1").size());
+    assertEquals(1, storage.getCollection("user-1").size());
+    assertEquals(0, backend.reads.get());
+    assertEquals(1, backend.activeWatches.get());
+  }
+
+  @Test
+  public void testRemoteAndLocalWritesAreVisible() throws Exception {
+    FakeBackend backend = new FakeBackend();
+    ReplicatedStorage storage = new ReplicatedStorage(backend, 60_000, 1000, 100);
+    assertEquals(0, storage.getCollection("user-1").size());
+
+    backend.remoteWrite("user-1", "doc-food", budget("food", "10"));
+    assertEquals("10", storage.getCollection("user-1").get(0).get("spent"));
+
+    storage.addDocument("user-1", "doc-food", budget("food", "20"));
+    assertEquals("20", storage.getCollection("user-1").get(0).get("spent"));
+
+    storage.deleteDocument("user-1", "doc-food");
+    assertEquals(0, storage.getCollection("user-1").size());
+    assertEquals(0, backend.reads.get());
+  }
+
+  @Test
+  public void testIdleReplicasAreEvicted() throws Exception {
+    FakeBackend backend = new FakeBackend();
+    ReplicatedStorage storage = new ReplicatedStorage(backend, 50, 1000, 100);
+    storage.getCollection("user-1");
+    storage.getCollection("user-2");
+    assertEquals(2, backend.activeWatches.get());
+
+    Thread.sleep(120);
+    storage.getCollection("user-3");
+    assertEquals(1, storage.replicatedCollections());
+    assertEquals(1, backend.activeWatches.get());
+  }
+
+  @Test
+  public void testFallsBackWhenSnapshotIsLateOrFull() throws Exception {
+    FakeBackend backend = new FakeBackend();
+    backend.deliverInitial = false;
+    backend.addDocument("user-1", "doc-food", budget("food", "10"));
+    ReplicatedStorage storage = new ReplicatedStorage(backend, 60_000, 10, 1);
+
+    assertEquals(1, storage.getCollection("user-1").size());
+    assertEquals(1, backend.reads.get());
+
+    // the replica limit is reached, so other users read through
+    backend.deliverInitial = true;
+    storage.getCollection("user-2");
+    assertEquals(2, backend.reads.get());
+    assertEquals(1, storage.replicatedCollections());
+  }
+
+  @Test
+  public void testFailedWatchDropsReplica() throws Exception {
+    FakeBackend backend = new FakeBackend();
+    backend.addDocument("user-1", "doc-food", budget("food", "10"));
+    ReplicatedStorage storage = new ReplicatedStorage(backend, 60_000, 1000, 100);
+    storage.getCollection("user-1");
+
+    backend.failWatches("user-1");
+    assertEquals(0, storage.replicatedCollections());
+    assertEquals(0, backend.activeWatches.get());
+
+    // the next read attaches a fresh replica rather than serving the dead one
+    backend.addDocument("user-1", "doc-rent", budget("rent", "900"));
+    assertEquals(2, storage.getCollection("user-1").size());
+    assertEquals(1, backend.activeWatches.get());
+  }
+
+  @Test
+  public void testWatchesShareTheReplica() throws Exception {
+    FakeBackend backend = new FakeBackend();
+    backend.addDocument("user-1", "doc-food", budget("food", "10"));
+    ReplicatedStorage storage = new ReplicatedStorage(backend, 50, 1000, 100);
+    storage.getCollection("user-1");
+
+    List<DocumentChange> seen = new ArrayList<>();
+    AtomicInteger errors = new AtomicInteger();
+    WatchableStorage.Subscription subscription =
+        storage.watchCollection(
+            "user-1",
+            new WatchableStorage.CollectionListener() {
+              @Override
+              public void onChanges(List<DocumentChange> changes, boolean initial) {
+                seen.addAll(changes);
+              }
+
+              @Override
+              public void onError(Throwable error) {
+                errors.incrementAndGet();
+              }
+            });
+    assertEquals(1, backend.activeWatches.get());
+    assertEquals(1, seen.size());
+
+    backend.remoteWrite("user-1", "doc-rent", budget("rent", "900"));
+    assertEquals("doc-rent", seen.get(1).getDocId());
+
+    // a watched replica outlives its idle time
+    Thread.sleep(120);
+    storage.getCollection("user-2");
+    assertEquals(2, storage.replicatedCollections());
+
+    backend.failWatches("user-1");
+    assertEquals(1, errors.get());
+    subscription.cancel();
+    assertEquals(1, backend.activeWatches.get());
+  }
+
+  @Test
+  public void testRemoteChangesBumpTheVersionOnceReplicated() throws Exception {
+    FakeBackend backend = new FakeBackend();
+    backend.addDocument("user-1", "doc-food", budget("food", "10"));
+    VersionedStorage storage =
+        new VersionedStorage(new ReplicatedStorage(backend, 60_000, 1000, 100));
+    storage.getCollection("user-1");
+    long before = storage.getVersion("user-1");
+
+    // announced by the bus or not, the version moves again once the replica serves the write
+    backend.remoteWrite("user-1", "doc-food", budget("food", "20"));
+    assertTrue(storage.getVersion("user-1") > before);
+    List<VersionedStorage.Change> changes = storage.changesSince("user-1", before).getChanges();
+    assertEquals("20", changes.get(changes.size() - 1).getData().get("spent"));
+    assertEquals("20", storage.getCollection("user-1").get(0).get("spent"));
+
+    // the echo of a local write is not a new change
+    storage.addDocument("user-1", "doc-food", budget("food", "30"));
+    long written = storage.getVersion("user-1");
+    backend.remoteWrite("user-1", "doc-food", budget("food", "30"));
+    assertEquals(written, storage.getVersion("user-1"));
+  }
+
+  @Test
+  public void testLateEchoesOfLocalWritesAreIgnored() throws Exception {
+    FakeBackend backend = new FakeBackend();
+    backend.addDocument("user-1", "doc-food", budget("food", "10"));
+    VersionedStorage storage =
+        new VersionedStorage(new ReplicatedStorage(backend, 60_000, 1000, 100));
+    storage.getCollection("user-1");
+
+    storage.addDocument("user-1", "doc-food", budget("food", "20"));
+    storage.addDocument("user-1", "doc-food", budget("food", "30"));
+    long written = storage.getVersion("user-1");
+
+    // the first write echoes back after the second was made: no rollback, no new version
+    backend.echo("user-1", "doc-food", budget("food", "20"));
+    assertEquals("30", storage.getCollection("user-1").get(0).get("spent"));
+    backend.echo("user-1", "doc-food", budget("food", "30"));
+    assertEquals("30", storage.getCollection("user-1").get(0).get("spent"));
+    assertEquals(written, storage.getVersion("user-1"));
+
+    // once echoed, the same contents written elsewhere are a change again
+    backend.remoteWrite("user-1", "doc-food", budget("food", "20"));
+    assertEquals("20", storage.getCollection("user-1").get(0).get("spent"));
+    assertTrue(storage.getVersion("user-1") > written);
+  }
+}
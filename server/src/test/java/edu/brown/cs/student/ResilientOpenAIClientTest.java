@@ -0,0 +1,186 @@
+package edu.brown.cs.student;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.sun.net.httpserver.HttpServer;
+import edu.brown.cs.student.main.server.openai.CircuitBreaker;
+import edu.brown.cs.student.main.server.openai.CircuitOpenException;
+import edu.brown.cs.student.main.server.openai.OpenAIClient;
+import edu.brown.cs.student.main.server.openai.OpenAIHttpException;
+import edu.brown.cs.student.main.server.openai.ResilientOpenAIClient;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import okhttp3.OkHttpClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/** Exercises the resilience layer against a local fake of the OpenAI completions endpoint. */
+public class ResilientOpenAIClientTest {
+
+  private static final String COMPLETION =
+      "{\"choices\":[{\"message\":{\"role\":\"assistant\",\"content\":\" Spend less. \"}}]}";
+
+  private HttpServer fakeOpenAI;
+  // scripted responses, consumed one per request; once empty every request succeeds
+  private Queue<int[]> script;
+  private AtomicInteger requests;
+  private volatile long responseDelayMillis;
+  private volatile String retryAfter;
+  private OpenAIClient rawClient;
+
+  @BeforeEach
+  public void setup() throws IOException {
+    this.script = new ConcurrentLinkedQueue<>();
+    this.requests = new AtomicInteger();
+    this.responseDelayMillis = 0;
+    this.retryAfter = null;
+
+    this.fakeOpenAI = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    this.fakeOpenAI.createContext(
+        "/v1/chat/completions",
+        exchange -> {
+          this.requests.incrementAndGet();
+          try {
+            Thread.sleep(this.responseDelayMillis);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+          int[] next = this.script.poll();
+          int status = next == null ? 200 : next[0];
+          byte[] body =
+              (status == 200 ? COMPLETION : "{\"error\":{}}").getBytes(StandardCharsets.UTF_8);
+          if (status != 200 && this.retryAfter != null) {
+            exchange.getResponseHeaders().add("Retry-After", this.retryAfter);
+          }
+          exchange.sendResponseHeaders(status, body.length);
+          try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+          }
+        });
+    this.fakeOpenAI.start();
+
+    this.rawClient =
+        new OpenAIClient(
+            "test-key",
+            "http://localhost:" + this.fakeOpenAI.getAddress().getPort() + "/v1/chat/completions",
+            new OkHttpClient());
+  }
+
+  @AfterEach
+  public void tearDown() {
+    this.fakeOpenAI.stop(0);
+  }
+
+  private ResilientOpenAIClient resilient(int maxAttempts, Duration deadline, CircuitBreaker cb) {
+    return new ResilientOpenAIClient(
+        this.rawClient, maxAttempts, Duration.ofMillis(10), Duration.ofMillis(50), deadline, cb);
+  }
+
+  private CircuitBreaker breaker(int threshold) {
+    return new CircuitBreaker(threshold, TimeUnit.SECONDS.toNanos(60), System::nanoTime);
+  }
+
+  @Test
+  public void testRawClientSurfacesStatusCode() {
+    this.script.add(new int[] {503});
+    OpenAIHttpException e =
+        assertThrows(OpenAIHttpException.class, () -> this.rawClient.generateSuggestion("hi"));
+    assertEquals(503, e.getStatusCode());
+    assertTrue(e.isRetryable());
+  }
+
+  @Test
+  public void testRetriesServerErrorsThenSucceeds() throws Exception {
+    this.script.add(new int[] {500});
+    this.script.add(new int[] {503});
+    String result = resilient(3, Duration.ofSeconds(5), breaker(10)).generateSuggestion("hi");
+    assertEquals("Spend less.", result);
+    assertEquals(3, this.requests.get());
+  }
+
+  @Test
+  public void testDoesNotRetryClientErrors() {
+    this.script.add(new int[] {400});
+    OpenAIHttpException e =
+        assertThrows(
+            OpenAIHttpException.class,
+            () -> resilient(3, Duration.ofSeconds(5), breaker(10)).generateSuggestion("hi"));
+    assertEquals(400, e.getStatusCode());
+    assertEquals(1, this.requests.get());
+  }
+
+  @Test
+  public void testHonorsRetryAfter() throws Exception {
+    this.retryAfter = "1";
+    this.script.add(new int[] {429});
+    long start = System.nanoTime();
+    assertEquals(
+        "Spend less.", resilient(2, Duration.ofSeconds(5), breaker(10)).generateSuggestion("hi"));
+    assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(950));
+    assertEquals(2, this.requests.get());
+  }
+
+  @Test
+  public void testRetryAfterBeyondDeadlineFailsImmediately() {
+    this.retryAfter = "30";
+    this.script.add(new int[] {429});
+    long start = System.nanoTime();
+    assertThrows(
+        OpenAIHttpException.class,
+        () -> resilient(3, Duration.ofSeconds(2), breaker(10)).generateSuggestion("hi"));
+    assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+    assertEquals(1, this.requests.get());
+  }
+
+  @Test
+  public void testDeadlineBoundsSlowUpstream() {
+    this.responseDelayMillis = 2000;
+    long start = System.nanoTime();
+    assertThrows(
+        IOException.class,
+        () -> resilient(3, Duration.ofMillis(300), breaker(10)).generateSuggestion("hi"));
+    assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(1500));
+  }
+
+  @Test
+  public void testCircuitOpensAndFailsFast() throws Exception {
+    for (int i = 0; i < 10; i++) {
+      this.script.add(new int[] {502});
+    }
+    CircuitBreaker circuitBreaker = breaker(3);
+    ResilientOpenAIClient client = resilient(3, Duration.ofSeconds(5), circuitBreaker);
+
+    assertThrows(OpenAIHttpException.class, () -> client.generateSuggestion("hi"));
+    assertEquals(3, this.requests.get());
+    assertEquals(CircuitBreaker.State.OPEN, circuitBreaker.getState());
+
+    // while open, calls are refused without touching the upstream
+    assertThrows(CircuitOpenException.class, () -> client.generateSuggestion("hi"));
+    assertEquals(3, this.requests.get());
+  }
+
+  @Test
+  public void testHalfOpenTrialClosesCircuit() throws Exception {
+    AtomicInteger clock = new AtomicInteger(0);
+    CircuitBreaker circuitBreaker = new CircuitBreaker(1, 100, clock::get);
+    this.script.add(new int[] {500});
+    ResilientOpenAIClient client = resilient(1, Duration.ofSeconds(5), circuitBreaker);
+
+    assertThrows(OpenAIHttpException.class, () -> client.generateSuggestion("hi"));
+    assertThrows(CircuitOpenException.class, () -> client.generateSuggestion("hi"));
+
+    clock.addAndGet(100);
+    assertEquals("Spend less.", client.generateSuggestion("hi"));
+    assertEquals(CircuitBreaker.State.CLOSED, circuitBreaker.getState());
+  }
+}
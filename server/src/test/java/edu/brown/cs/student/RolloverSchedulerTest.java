@@ -0,0 +1,258 @@
+package edu.brown.cs.student;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import edu.brown.cs.student.main.server.rollover.BudgetPeriod;
+import edu.brown.cs.student.main.server.rollover.RolloverScheduler;
+import edu.brown.cs.student.main.server.sharding.HashRing;
+import edu.brown.cs.student.main.server.storage.DocumentWrite;
+import edu.brown.cs.student.mocks.MockStorage;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class RolloverSchedulerTest {
+
+  private MockStorage storage;
+  private AtomicLong clock;
+  private RolloverScheduler scheduler;
+
+  @BeforeEach
+  public void setup() {
+    this.storage = new MockStorage();
+    this.clock = new AtomicLong(millis("2024-01-15T10:00"));
+    this.scheduler = new RolloverScheduler(this.storage, ZoneOffset.UTC, this.clock::get, 100, 8);
+  }
+
+  private static long millis(String time) {
+    return LocalDateTime.parse(time).toInstant(ZoneOffset.UTC).toEpochMilli();
+  }
+
+  private Map<String, Object> add(String user, String category, String duration, String spent) {
+    Map<String, Object> budget = new HashMap<>();
+    budget.put("user", user);
+    budget.put("category", category);
+    budget.put("budget", "100");
+    budget.put("duration", duration);
+    budget.put("spent", spent);
+    budget.put("plant", "orchid");
+    budget.put("time", "2024-01-15T10:00");
+    this.storage.addDocument("user-" + user, "doc-" + category, budget);
+    this.scheduler.schedule("user-" + user, "doc-" + category, budget);
+    return budget;
+  }
+
+  @Test
+  public void testPeriodsFollowTheCalendar() {
+    BudgetPeriod monthly = BudgetPeriod.parse("Monthly");
+    LocalDateTime start = LocalDateTime.parse("2024-01-31T00:00");
+    assertEquals(LocalDateTime.parse("2024-02-29T00:00"), monthly.boundaryAfter(start, start));
+    assertEquals(
+        LocalDateTime.parse("2024-03-31T00:00"),
+        monthly.boundaryAfter(start, LocalDateTime.parse("2024-02-29T00:00")));
+    assertEquals(
+        LocalDateTime.parse("2024-02-29T00:00"),
+        monthly.boundaryAtOrBefore(start, LocalDateTime.parse("2024-03-30T00:00")));
+
+    assertEquals("14 days", BudgetPeriod.parse("2 weeks").toString());
+    assertEquals("30 days", BudgetPeriod.parse("30").toString());
+    assertEquals("12 months", BudgetPeriod.parse("yearly").toString());
+    assertNull(BudgetPeriod.parse("whenever"));
+    assertNull(BudgetPeriod.parse("0"));
+  }
+
+  @Test
+  public void testRolloverArchivesAndResets() throws Exception {
+    this.add("1", "food", "monthly", "80.5");
+    assertEquals(millis("2024-02-15T10:00"), this.scheduler.nextDueMillis());
+
+    this.clock.set(millis("2024-02-15T09:59"));
+    assertEquals(0, this.scheduler.runDue());
+
+    this.clock.set(millis("2024-02-15T10:00"));
+    assertEquals(1, this.scheduler.runDue());
+
+    Map<String, Object> budget = this.storage.getDocument("user-1", "doc-food");
+    assertEquals("0", budget.get("spent"));
+    assertEquals("2024-02-15T10:00", budget.get("period_start"));
+    List<Map<String, Object>> history =
+        this.storage.getCollection(RolloverScheduler.HISTORY_PREFIX + "user-1");
+    assertEquals(1, history.size());
+    assertEquals("80.5", history.get(0).get("spent"));
+    assertEquals("2024-01-15T10:00", history.get(0).get("period_start"));
+    assertEquals("2024-02-15T10:00", history.get(0).get("period_end"));
+
+    // rescheduled for the end of the new period
+    assertEquals(millis("2024-03-15T10:00"), this.scheduler.nextDueMillis());
+    assertEquals(1, this.scheduler.scheduledCount());
+  }
+
+  @Test
+  public void testOnlyDueBudgetsRollOver() throws Exception {
+    this.add("1", "food", "weekly", "10");
+    this.add("1", "rent", "monthly", "900");
+    this.add("2", "fun", "whenever", "5");
+    assertEquals(2, this.scheduler.scheduledCount());
+
+    this.clock.set(millis("2024-01-23T00:00"));
+    assertEquals(1, this.scheduler.runDue());
+    assertEquals("0", this.storage.getDocument("user-1", "doc-food").get("spent"));
+    assertEquals("900", this.storage.getDocument("user-1", "doc-rent").get("spent"));
+    assertEquals("5", this.storage.getDocument("user-2", "doc-fun").get("spent"));
+  }
+
+  @Test
+  public void testMissedPeriodsRollOverOnce() throws Exception {
+    this.add("1", "food", "weekly", "42");
+
+    // three and a half weeks later, e.g. after downtime
+    this.clock.set(millis("2024-02-08T22:00"));
+    assertEquals(1, this.scheduler.runDue());
+    List<Map<String, Object>> history = this.storage.getCollection("history-user-1");
+    assertEquals(1, history.size());
+    assertEquals("2024-02-05T10:00", history.get(0).get("period_end"));
+    assertEquals(millis("2024-02-12T10:00"), this.scheduler.nextDueMillis());
+  }
+
+  @Test
+  public void testDeletedAndReaddedBudgets() throws Exception {
+    this.add("1", "food", "weekly", "10");
+    this.add("1", "rent", "weekly", "20");
+    this.storage.deleteDocument("user-1", "doc-food");
+
+    // re-added later: its period restarts, but the scheduler was not told
+    Map<String, Object> rent = new HashMap<>(this.storage.getDocument("user-1", "doc-rent"));
+    rent.put("time", "2024-01-20T10:00");
+    this.storage.addDocument("user-1", "doc-rent", rent);
+
+    this.clock.set(millis("2024-01-22T10:00"));
+    assertEquals(0, this.scheduler.runDue());
+    // the deleted budget is forgotten, the re-added one waits for its new period to end
+    assertEquals(1, this.scheduler.scheduledCount());
+    assertEquals(millis("2024-01-27T10:00"), this.scheduler.nextDueMillis());
+  }
+
+  @Test
+  public void testRolloversAreWrittenInBatches() throws Exception {
+    List<Integer> batches = new ArrayList<>();
+    MockStorage counting =
+        new MockStorage() {
+          @Override
+          public void addDocuments(List<DocumentWrite> writes) {
+            batches.add(writes.size());
+            super.addDocuments(writes);
+          }
+        };
+    this.storage = counting;
+    this.scheduler = new RolloverScheduler(counting, ZoneOffset.UTC, this.clock::get, 100, 8);
+    for (int user = 0; user < 250; user++) {
+      this.add(Integer.toString(user), "food", "daily", "1");
+      this.add(Integer.toString(user), "rent", "daily", "2");
+    }
+
+    this.clock.set(millis("2024-01-16T10:00"));
+    assertEquals(500, this.scheduler.runDue());
+    // 100 budgets per batch, each an archive and a reset
+    assertEquals(List.of(200, 200, 200, 200, 200), batches);
+    assertTrue(this.scheduler.nextDueMillis() > this.clock.get());
+    assertEquals(2, this.storage.getCollection("history-user-249").size());
+  }
+
+  /** Storage that runs a change right after the first batch read, as if made concurrently. */
+  private MockStorage changedAfterFirstRead(Runnable change) {
+    MockStorage racing =
+        new MockStorage() {
+          private boolean changed;
+
+          @Override
+          public Map<String, List<Map<String, Object>>> getCollections(
+              List<String> collection_ids, int maxInFlight)
+              throws InterruptedException, ExecutionException {
+            Map<String, List<Map<String, Object>>> read =
+                super.getCollections(collection_ids, maxInFlight);
+            if (!this.changed) {
+              this.changed = true;
+              change.run();
+            }
+            return read;
+          }
+        };
+    this.storage = racing;
+    this.scheduler = new RolloverScheduler(racing, ZoneOffset.UTC, this.clock::get, 100, 8);
+    return racing;
+  }
+
+  @Test
+  public void testResetKeepsConcurrentEditsAndSkipsDeletes() throws Exception {
+    this.changedAfterFirstRead(
+        () -> {
+          Map<String, Object> food = new HashMap<>(this.storage.getDocument("user-1", "doc-food"));
+          food.put("budget", "250");
+          food.put("spent", "12");
+          this.storage.addDocument("user-1", "doc-food", food);
+          this.storage.deleteDocument("user-1", "doc-rent");
+        });
+    this.add("1", "food", "weekly", "10");
+    this.add("1", "rent", "weekly", "20");
+
+    this.clock.set(millis("2024-01-22T10:00"));
+    assertEquals(1, this.scheduler.runDue());
+    Map<String, Object> food = this.storage.getDocument("user-1", "doc-food");
+    assertEquals("250", food.get("budget"));
+    assertEquals("0", food.get("spent"));
+    assertEquals("12", this.storage.getCollection("history-user-1").get(0).get("spent"));
+    // the deleted budget is neither recreated nor scheduled again
+    assertNull(this.storage.getDocument("user-1", "doc-rent"));
+    assertEquals(1, this.scheduler.scheduledCount());
+  }
+
+  @Test
+  public void testRolloverMadeElsewhereIsNotRepeated() throws Exception {
+    this.changedAfterFirstRead(
+        () -> {
+          // another instance rolls the budget over first
+          Map<String, Object> food = new HashMap<>(this.storage.getDocument("user-1", "doc-food"));
+          food.put("spent", "0");
+          food.put("period_start", "2024-01-22T10:00");
+          this.storage.addDocument("user-1", "doc-food", food);
+        });
+    this.add("1", "food", "weekly", "10");
+
+    this.clock.set(millis("2024-01-22T10:00"));
+    assertEquals(0, this.scheduler.runDue());
+    assertEquals(0, this.storage.getCollection("history-user-1").size());
+    assertEquals(millis("2024-01-29T10:00"), this.scheduler.nextDueMillis());
+  }
+
+  @Test
+  public void testShardedInstancesScheduleOnlyTheirOwnUsers() throws Exception {
+    for (int user = 0; user < 20; user++) {
+      this.add(String.valueOf(user), "food", "weekly", "10");
+    }
+    HashRing ring = new HashRing(List.of("a", "b"), 128);
+    int owned = 0;
+    for (String self : ring.nodes()) {
+      RolloverScheduler sharded =
+          new RolloverScheduler(this.storage, ZoneOffset.UTC, this.clock::get, 100, 8, ring, self);
+      int expected = 0;
+      for (int user = 0; user < 20; user++) {
+        if (ring.owner("user-" + user).equals(self)) {
+          expected++;
+        }
+      }
+      assertEquals(expected, sharded.scheduleAll());
+      assertEquals(expected, sharded.scheduledCount());
+      owned += expected;
+    }
+    assertEquals(20, owned);
+  }
+}
@@ -0,0 +1,53 @@
+package edu.brown.cs.student;
+
+import edu.brown.cs.student.main.server.rollover.RolloverScheduler;
+import edu.brown.cs.student.main.server.storage.InMemoryStorage;
+import edu.brown.cs.student.main.server.synthetic.SyntheticDataGenerator;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures how fast {@link RolloverScheduler} indexes and rolls over budgets. Takes the number of
+ * budgets as its argument (default 1,000,000), all of which fall due at once; needs a few GB of
+ * heap. Run like {@link BatchAnalyticsScaling}.
+ */
+public class RolloverThroughput {
+
+  public static void main(String[] args) throws Exception {
+    int budgets = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+    int budgetsPerUser = 5;
+    InMemoryStorage storage = new InMemoryStorage(64, Long.MAX_VALUE);
+    // every synthetic budget starts on 2024-01-01
+    new SyntheticDataGenerator(1, budgetsPerUser, 1)
+        .load(storage, 0, budgets / budgetsPerUser, 500);
+    AtomicLong clock = new AtomicLong(millis("2024-01-01T00:00"));
+    RolloverScheduler scheduler =
+        new RolloverScheduler(storage, ZoneOffset.UTC, clock::get, 250, 64);
+
+    long start = System.nanoTime();
+    int scheduled = scheduler.scheduleAll();
+    report("scheduleAll", scheduled, System.nanoTime() - start);
+
+    // a year on, every budget (weekly, monthly and yearly alike) is due
+    clock.set(millis("2025-01-01T00:00"));
+    start = System.nanoTime();
+    int rolled = scheduler.runDue();
+    report("runDue", rolled, System.nanoTime() - start);
+
+    // nothing is due again until the weekly budgets' next period ends
+    start = System.nanoTime();
+    rolled = scheduler.runDue();
+    report("runDue (idle)", rolled, System.nanoTime() - start);
+  }
+
+  private static long millis(String time) {
+    return LocalDateTime.parse(time).toInstant(ZoneOffset.UTC).toEpochMilli();
+  }
+
+  private static void report(String name, int budgets, long nanos) {
+    System.out.printf(
+        "%-14s %d budgets in %d ms (%.0f budgets/s)%n",
+        name, budgets, nanos / 1_000_000, budgets / (nanos / 1e9));
+  }
+}
@@ -0,0 +1,163 @@
+package edu.brown.cs.student;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.sun.net.httpserver.HttpServer;
+import edu.brown.cs.student.main.server.sharding.HashRing;
+import edu.brown.cs.student.main.server.sharding.ShardRouter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import okio.Buffer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import spark.Spark;
+
+public class ShardRouterTest {
+
+  private HttpServer other;
+  private String self;
+  private String otherUrl;
+  private HashRing ring;
+
+  @BeforeAll
+  public static void setupOnce() {
+    Spark.stop();
+    Spark.awaitStop();
+    Spark.port(0);
+  }
+
+  @BeforeEach
+  public void setup() throws IOException {
+    // the other instance answers with who forwarded the request
+    this.other = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    this.other.createContext(
+        "/",
+        exchange -> {
+          String forwardedBy = exchange.getRequestHeaders().getFirst(ShardRouter.FORWARDED_HEADER);
+          byte[] body =
+              ("other " + exchange.getRequestURI() + " from " + forwardedBy)
+                  .getBytes(StandardCharsets.UTF_8);
+          exchange.getResponseHeaders().add("ETag", "\"v1\"");
+          exchange.sendResponseHeaders(200, body.length);
+          try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+          }
+        });
+    this.other.start();
+    this.otherUrl = "http://localhost:" + this.other.getAddress().getPort();
+
+    Spark.get("/whoami", (request, response) -> "self");
+    Spark.awaitInitialization();
+    this.self = "http://localhost:" + Spark.port();
+    this.ring = new HashRing(List.of(this.self, this.otherUrl), 64);
+  }
+
+  @AfterEach
+  public void tearDown() {
+    this.other.stop(0);
+    Spark.stop();
+    Spark.awaitStop();
+  }
+
+  private String userOwnedBy(String node) {
+    for (int user = 0; ; user++) {
+      if (this.ring.owner("user-" + user).equals(node)) {
+        return String.valueOf(user);
+      }
+    }
+  }
+
+  private HttpURLConnection get(String path) throws IOException {
+    HttpURLConnection connection = (HttpURLConnection) new URL(this.self + path).openConnection();
+    connection.setInstanceFollowRedirects(false);
+    connection.connect();
+    return connection;
+  }
+
+  private static String body(HttpURLConnection connection) throws IOException {
+    return new Buffer().readFrom(connection.getInputStream()).readUtf8();
+  }
+
+  @Test
+  public void testRingSpreadsUsersAndMovesFewOnResize() {
+    List<String> nodes = List.of("http://a", "http://b", "http://c");
+    HashRing three = new HashRing(nodes, 128);
+    HashRing four = new HashRing(List.of("http://a", "http://b", "http://c", "http://d"), 128);
+    Map<String, Integer> counts = new HashMap<>();
+    int moved = 0;
+    for (int user = 0; user < 30_000; user++) {
+      String owner = three.owner("user-" + user);
+      counts.merge(owner, 1, Integer::sum);
+      String newOwner = four.owner("user-" + user);
+      if (!newOwner.equals(owner)) {
+        moved++;
+        // keys only ever move to the new node
+        assertEquals("http://d", newOwner);
+      }
+    }
+    for (String node : nodes) {
+      assertTrue(counts.get(node) > 7_000 && counts.get(node) < 13_000, counts.toString());
+    }
+    // about a quarter of the users move to the fourth node
+    assertTrue(moved > 5_000 && moved < 10_000, String.valueOf(moved));
+  }
+
+  @Test
+  public void testForwardsToOwner() throws IOException {
+    Spark.before(
+        "/whoami",
+        new ShardRouter(this.ring, this.self, ShardRouter.Mode.FORWARD, Duration.ofSeconds(2)));
+
+    String local = this.userOwnedBy(this.self);
+    assertEquals("self", body(this.get("/whoami?user=" + local)));
+
+    String remote = this.userOwnedBy(this.otherUrl);
+    HttpURLConnection connection = this.get("/whoami?user=" + remote);
+    assertEquals(200, connection.getResponseCode());
+    assertEquals("\"v1\"", connection.getHeaderField("ETag"));
+    assertEquals("other /whoami?user=" + remote + " from " + this.self, body(connection));
+  }
+
+  @Test
+  public void testForwardedRequestsAreServedLocally() throws IOException {
+    Spark.before(
+        "/whoami",
+        new ShardRouter(this.ring, this.self, ShardRouter.Mode.FORWARD, Duration.ofSeconds(2)));
+    String remote = this.userOwnedBy(this.otherUrl);
+    HttpURLConnection connection =
+        (HttpURLConnection) new URL(this.self + "/whoami?user=" + remote).openConnection();
+    connection.setRequestProperty(ShardRouter.FORWARDED_HEADER, this.otherUrl);
+    assertEquals("self", body(connection));
+  }
+
+  @Test
+  public void testUnreachableOwnerIsServedLocally() throws IOException {
+    this.other.stop(0);
+    Spark.before(
+        "/whoami",
+        new ShardRouter(this.ring, this.self, ShardRouter.Mode.FORWARD, Duration.ofSeconds(2)));
+    assertEquals("self", body(this.get("/whoami?user=" + this.userOwnedBy(this.otherUrl))));
+  }
+
+  @Test
+  public void testRedirectsToOwner() throws IOException {
+    Spark.before(
+        "/whoami",
+        new ShardRouter(this.ring, this.self, ShardRouter.Mode.REDIRECT, Duration.ofSeconds(2)));
+    String remote = this.userOwnedBy(this.otherUrl);
+    HttpURLConnection connection = this.get("/whoami?user=" + remote);
+    assertEquals(307, connection.getResponseCode());
+    assertEquals(this.otherUrl + "/whoami?user=" + remote, connection.getHeaderField("Location"));
+  }
+}
@@ -0,0 +1,176 @@
+package edu.brown.cs.student;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import edu.brown.cs.student.main.server.shutdown.ShutdownCoordinator;
+import edu.brown.cs.student.main.server.shutdown.ShutdownCoordinator.Stage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import okio.Buffer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import spark.Spark;
+
+public class ShutdownCoordinatorTest {
+
+  private final CountDownLatch release = new CountDownLatch(1);
+  private final List<String> ran = new CopyOnWriteArrayList<>();
+
+  @BeforeAll
+  public static void setupOnce() {
+    Spark.stop();
+    Spark.awaitStop();
+    Spark.port(0);
+  }
+
+  @AfterEach
+  public void tearDown() {
+    this.release.countDown();
+    Spark.stop();
+    Spark.awaitStop();
+  }
+
+  private ShutdownCoordinator start(Duration drainTimeout) {
+    ShutdownCoordinator coordinator = new ShutdownCoordinator(drainTimeout, Duration.ofSeconds(5));
+    coordinator.registerFilters();
+    Spark.before("/halted", (request, response) -> Spark.halt(429));
+    Spark.get("/fast", (request, response) -> "fast");
+    Spark.get(
+        "/slow",
+        (request, response) -> {
+          this.release.await();
+          return "slow";
+        });
+    Spark.get(
+        "/boom",
+        (request, response) -> {
+          throw new IllegalStateException("boom");
+        });
+    Spark.awaitInitialization();
+    // registered out of order: the stages decide
+    coordinator.addStep(Stage.CLIENTS, "clients", remaining -> this.ran.add("clients"));
+    coordinator.addStep(Stage.STORAGE, "storage", remaining -> this.ran.add("storage"));
+    coordinator.addStep(Stage.WRITERS, "writers", remaining -> this.ran.add("writers"));
+    coordinator.addStep(
+        Stage.BUFFERS,
+        "failing",
+        remaining -> {
+          throw new IOException("disk full");
+        });
+    coordinator.addStep(Stage.BUFFERS, "buffers", remaining -> this.ran.add("buffers"));
+    return coordinator;
+  }
+
+  private static HttpURLConnection get(String path) throws IOException {
+    HttpURLConnection connection =
+        (HttpURLConnection) new URL("http://localhost:" + Spark.port() + path).openConnection();
+    connection.connect();
+    return connection;
+  }
+
+  private static String body(HttpURLConnection connection) throws IOException {
+    InputStream in =
+        connection.getResponseCode() < 400
+            ? connection.getInputStream()
+            : connection.getErrorStream();
+    return new Buffer().readFrom(in).readUtf8();
+  }
+
+  @Test
+  public void testCountsRequestsHoweverTheyEnd() throws IOException {
+    ShutdownCoordinator coordinator = this.start(Duration.ofSeconds(2));
+    assertEquals(200, get("/fast").getResponseCode());
+    assertEquals(429, get("/halted").getResponseCode());
+    assertEquals(500, get("/boom").getResponseCode());
+    assertEquals(0, coordinator.inFlight());
+  }
+
+  @Test
+  public void testDrainsThenRunsStepsInStageOrder() throws Exception {
+    ShutdownCoordinator coordinator = this.start(Duration.ofSeconds(2));
+    CompletableFuture<String> slow =
+        CompletableFuture.supplyAsync(
+            () -> {
+              try {
+                return body(get("/slow"));
+              } catch (IOException e) {
+                throw new RuntimeException(e);
+              }
+            });
+    while (coordinator.inFlight() == 0) {
+      Thread.sleep(5);
+    }
+
+    CompletableFuture<Boolean> shutdown = CompletableFuture.supplyAsync(coordinator::shutdown);
+    while (!coordinator.isDraining()) {
+      Thread.sleep(5);
+    }
+    // new requests are turned away while the slow one finishes
+    HttpURLConnection rejected = get("/fast");
+    assertEquals(503, rejected.getResponseCode());
+    assertEquals("close", rejected.getHeaderField("Connection"));
+    assertTrue(body(rejected).contains("shutting down"));
+    assertTrue(this.ran.isEmpty());
+
+    this.release.countDown();
+    assertEquals("slow", slow.get(2, TimeUnit.SECONDS));
+    // a failing step is reported, and the later ones still run
+    assertFalse(shutdown.get(5, TimeUnit.SECONDS));
+    assertEquals(List.of("writers", "buffers", "storage", "clients"), this.ran);
+    assertFalse(coordinator.shutdown());
+  }
+
+  @Test
+  public void testGivesUpDrainingAfterTheTimeout() throws Exception {
+    ShutdownCoordinator coordinator = this.start(Duration.ofMillis(200));
+    CompletableFuture.runAsync(
+        () -> {
+          try {
+            get("/slow").getResponseCode();
+          } catch (IOException e) {
+            // the server stops under it
+          }
+        });
+    while (coordinator.inFlight() == 0) {
+      Thread.sleep(5);
+    }
+    long start = System.nanoTime();
+    assertFalse(coordinator.shutdown());
+    assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(4));
+    assertEquals(List.of("writers", "buffers", "storage", "clients"), this.ran);
+  }
+
+  @Test
+  public void testInterruptedStepDoesNotFailTheLaterOnes() throws Exception {
+    ShutdownCoordinator coordinator = new ShutdownCoordinator(Duration.ZERO, Duration.ofSeconds(5));
+    coordinator.addStep(
+        Stage.WRITERS,
+        "interrupted",
+        remaining -> {
+          throw new InterruptedException();
+        });
+    coordinator.addStep(
+        Stage.STORAGE,
+        "storage",
+        remaining -> {
+          // would throw at once if the interrupt were still set
+          Thread.sleep(1);
+          this.ran.add("storage");
+        });
+    assertFalse(coordinator.shutdown());
+    assertEquals(List.of("storage"), this.ran);
+    // restored once every step has run
+    assertTrue(Thread.interrupted());
+  }
+}
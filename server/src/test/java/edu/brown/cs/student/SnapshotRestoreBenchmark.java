@@ -0,0 +1,47 @@
+package edu.brown.cs.student;
+
+import edu.brown.cs.student.main.server.storage.InMemoryStorage;
+import edu.brown.cs.student.main.server.storage.StorageSnapshot;
+import edu.brown.cs.student.main.server.synthetic.SyntheticDataGenerator;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Measures how long saving and restoring a snapshot of production-shaped data takes, i.e. the
+ * storage part of a self-hosted server's startup. Takes the number of documents as its argument
+ * (default 1,000,000); needs a few GB of heap. Run like {@link BatchAnalyticsScaling}.
+ */
+public class SnapshotRestoreBenchmark {
+
+  public static void main(String[] args) throws Exception {
+    int documents = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+    int budgetsPerUser = 5;
+    Path file = Files.createTempFile("storage", ".snapshot");
+    try {
+      InMemoryStorage storage = new InMemoryStorage(64, Long.MAX_VALUE);
+      new SyntheticDataGenerator(1, budgetsPerUser, 10)
+          .load(storage, 0, documents / budgetsPerUser, 500);
+
+      long start = System.nanoTime();
+      long written = StorageSnapshot.write(storage, file);
+      long writeMillis = (System.nanoTime() - start) / 1_000_000;
+      System.out.printf(
+          "wrote %d documents (%.1f MB, %d bytes/doc) in %d ms%n",
+          written, Files.size(file) / 1e6, Files.size(file) / written, writeMillis);
+      storage = null;
+
+      // restore into a fresh storage a few times; the first run also pays for JIT warm-up
+      for (int run = 0; run < 3; run++) {
+        System.gc();
+        InMemoryStorage restored = new InMemoryStorage(64, Long.MAX_VALUE);
+        start = System.nanoTime();
+        long loaded = StorageSnapshot.restore(file, restored);
+        System.out.printf(
+            "restore %d: %d documents in %d ms%n",
+            run, loaded, (System.nanoTime() - start) / 1_000_000);
+      }
+    } finally {
+      Files.deleteIfExists(file);
+    }
+  }
+}
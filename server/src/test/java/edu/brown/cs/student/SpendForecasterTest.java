@@ -0,0 +1,138 @@
+package edu.brown.cs.student;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import edu.brown.cs.student.main.server.forecast.CategoryForecast;
+import edu.brown.cs.student.main.server.forecast.SpendForecaster;
+import edu.brown.cs.student.main.server.metrics.Metrics;
+import edu.brown.cs.student.main.server.storage.VersionedStorage;
+import edu.brown.cs.student.mocks.MockStorage;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class SpendForecasterTest {
+
+  private VersionedStorage storage;
+  private AtomicLong clock;
+  private SpendForecaster forecaster;
+
+  @BeforeEach
+  public void setup() {
+    this.storage = new VersionedStorage(new MockStorage());
+    this.clock = new AtomicLong(millis("2024-01-11T00:00"));
+    this.forecaster = new SpendForecaster(this.storage, ZoneOffset.UTC, this.clock::get, 2);
+  }
+
+  private static long millis(String time) {
+    return LocalDateTime.parse(time).toInstant(ZoneOffset.UTC).toEpochMilli();
+  }
+
+  private void add(String user, String category, String spent) {
+    Map<String, Object> budget = new HashMap<>();
+    budget.put("user", user);
+    budget.put("category", category);
+    budget.put("budget", "300");
+    budget.put("duration", "monthly");
+    budget.put("spent", spent);
+    budget.put("plant", "orchid");
+    budget.put("time", "2024-01-01T00:00");
+    this.storage.addDocument("user-" + user, "doc-" + category, budget);
+  }
+
+  private void archive(String user, String category, String periodEnd, String spent) {
+    Map<String, Object> period = new HashMap<>();
+    period.put("category", category);
+    period.put("spent", spent);
+    period.put("period_end", periodEnd);
+    this.storage.addDocument("history-user-" + user, "doc-" + category + "-" + periodEnd, period);
+  }
+
+  private CategoryForecast forecast(String user, String category) throws Exception {
+    for (CategoryForecast forecast : this.forecaster.forecast("user-" + user)) {
+      if (forecast.getCategory().equals(category)) {
+        return forecast;
+      }
+    }
+    return null;
+  }
+
+  @Test
+  public void testLinearProjectionFromRunRate() throws Exception {
+    this.add("1", "food", "100");
+    CategoryForecast forecast = this.forecast("1", "food");
+    // 10 of January's 31 days have passed
+    assertEquals(310, forecast.getProjected(), 1e-9);
+    assertEquals("linear", forecast.getMethod());
+    assertEquals("2024-02-01T00:00", forecast.getPeriodEnd());
+    assertEquals(true, forecast.toMap().get("over_budget"));
+  }
+
+  @Test
+  public void testHistoryIsSmoothedAndBlended() throws Exception {
+    this.add("1", "food", "100");
+    this.archive("1", "food", "2023-12-01T00:00", "300");
+    this.archive("1", "food", "2023-11-01T00:00", "200");
+    CategoryForecast forecast = this.forecast("1", "food");
+    // level 0.5 * 300 + 0.5 * 200 = 250 for the remaining 21 days, the run rate for the first 10
+    assertEquals(100 + 21 * 250 / 31.0, forecast.getProjected(), 1e-9);
+    assertEquals("smoothed", forecast.getMethod());
+    assertEquals(2, forecast.getHistoryPeriods());
+  }
+
+  @Test
+  public void testWritesAreAppliedWithoutReloading() throws Exception {
+    this.add("1", "food", "100");
+    this.add("1", "rent", "0");
+    assertEquals(2, this.forecaster.forecast("user-1").size());
+    long loads = Metrics.counter("forecast.loads").sum();
+
+    this.add("1", "food", "50");
+    this.storage.deleteDocument("user-1", "doc-rent");
+    this.archive("1", "food", "2023-12-01T00:00", "250");
+    List<CategoryForecast> forecasts = this.forecaster.forecast("user-1");
+    assertEquals(1, forecasts.size());
+    assertEquals(50 + 21 * 250 / 31.0, forecasts.get(0).getProjected(), 1e-9);
+    assertEquals(loads, Metrics.counter("forecast.loads").sum());
+  }
+
+  @Test
+  public void testEndedPeriodForecastsTheNextOne() throws Exception {
+    this.add("1", "food", "280");
+    this.clock.set(millis("2024-02-03T00:00"));
+    CategoryForecast forecast = this.forecast("1", "food");
+    assertEquals(0, forecast.getSpent());
+    assertEquals("2024-03-01T00:00", forecast.getPeriodEnd());
+  }
+
+  @Test
+  public void testUnknownDurationIsNotProjected() throws Exception {
+    Map<String, Object> budget = new HashMap<>();
+    budget.put("category", "gifts");
+    budget.put("budget", "lots");
+    budget.put("duration", "whenever");
+    budget.put("spent", "20");
+    budget.put("time", "2024-01-01T00:00");
+    this.storage.addDocument("user-1", "doc-gifts", budget);
+    CategoryForecast forecast = this.forecast("1", "gifts");
+    assertEquals("none", forecast.getMethod());
+    assertEquals(20, forecast.getProjected());
+    assertTrue(!forecast.toMap().containsKey("over_budget"));
+  }
+
+  @Test
+  public void testLeastRecentlyUsedUsersAreEvicted() throws Exception {
+    for (String user : List.of("1", "2", "3")) {
+      this.add(user, "food", "10");
+      this.forecaster.forecast("user-" + user);
+    }
+    assertEquals(2, this.forecaster.cachedUsers());
+    assertEquals(31, this.forecast("1", "food").getProjected(), 1e-9);
+  }
+}
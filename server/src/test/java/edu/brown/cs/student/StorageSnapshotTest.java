@@ -0,0 +1,102 @@
+package edu.brown.cs.student;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import edu.brown.cs.student.main.server.storage.InMemoryStorage;
+import edu.brown.cs.student.main.server.storage.StorageSnapshot;
+import edu.brown.cs.student.main.server.synthetic.SyntheticDataGenerator;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class StorageSnapshotTest {
+
+  @TempDir Path dir;
+
+  private static InMemoryStorage newStorage() {
+    return new InMemoryStorage(16, Long.MAX_VALUE);
+  }
+
+  @Test
+  public void testRoundTrip() throws Exception {
+    InMemoryStorage storage = newStorage();
+    SyntheticDataGenerator generator = new SyntheticDataGenerator(5, 4, 3);
+    generator.load(storage, 0, 50, 100);
+    Map<String, Object> odd = new HashMap<>();
+    odd.put("notes", null);
+    odd.put("count", 3L);
+    odd.put("ratio", 0.5);
+    odd.put("flag", true);
+    odd.put("tags", List.of("a", "ü"));
+    odd.put("nested", Map.of("k", "v"));
+    storage.addDocument("other", "doc-odd", odd);
+
+    Path file = this.dir.resolve("storage.snapshot");
+    assertEquals(201, StorageSnapshot.write(storage, file));
+
+    InMemoryStorage restored = newStorage();
+    assertEquals(201, StorageSnapshot.restore(file, restored));
+    assertEquals(
+        new HashSet<>(storage.listCollections()), new HashSet<>(restored.listCollections()));
+    for (String collection : storage.listCollections()) {
+      assertEquals(
+          new HashSet<>(storage.getCollection(collection)),
+          new HashSet<>(restored.getCollection(collection)));
+    }
+    assertEquals(storage.usedBytes(), restored.usedBytes());
+    assertEquals(storage.documentCount(), restored.documentCount());
+  }
+
+  @Test
+  public void testCorruptSnapshotIsRejected() throws Exception {
+    InMemoryStorage storage = newStorage();
+    storage.addDocument("user-1", "doc-food", Map.of("category", "food"));
+    Path file = this.dir.resolve("storage.snapshot");
+    StorageSnapshot.write(storage, file);
+
+    byte[] bytes = Files.readAllBytes(file);
+    bytes[bytes.length / 2] ^= 1;
+    Files.write(file, bytes);
+    IOException e =
+        assertThrows(IOException.class, () -> StorageSnapshot.restore(file, newStorage()));
+    assertTrue(e.getMessage().contains("checksum"));
+
+    Files.write(file, new byte[] {1, 2, 3});
+    assertThrows(IOException.class, () -> StorageSnapshot.restore(file, newStorage()));
+  }
+
+  @Test
+  public void testScheduledSnapshotsOnlyAfterWrites() throws Exception {
+    InMemoryStorage storage = newStorage();
+    Path file = this.dir.resolve("periodic.snapshot");
+    ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    try {
+      StorageSnapshot.schedule(storage, file, 20, scheduler);
+      Thread.sleep(100);
+      // nothing written yet, so nothing saved
+      assertTrue(Files.notExists(file));
+
+      storage.addDocument("user-1", "doc-food", Map.of("category", "food"));
+      long deadline = System.currentTimeMillis() + 5000;
+      while (Files.notExists(file) && System.currentTimeMillis() < deadline) {
+        Thread.sleep(10);
+      }
+      InMemoryStorage restored = newStorage();
+      assertEquals(1, StorageSnapshot.restore(file, restored));
+    } finally {
+      scheduler.shutdownNow();
+      scheduler.awaitTermination(5, TimeUnit.SECONDS);
+    }
+  }
+}
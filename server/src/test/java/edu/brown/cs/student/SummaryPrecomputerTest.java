@@ -0,0 +1,98 @@
+package edu.brown.cs.student;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import edu.brown.cs.student.main.server.insights.SummaryPrecomputer;
+import edu.brown.cs.student.main.server.openai.BudgetPromptBuilder;
+import edu.brown.cs.student.main.server.storage.VersionedStorage;
+import edu.brown.cs.student.mocks.MockStorage;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class SummaryPrecomputerTest {
+
+  private VersionedStorage storage;
+  private AtomicInteger calls;
+  private SummaryPrecomputer precomputer;
+
+  @BeforeEach
+  public void setup() {
+    this.storage = new VersionedStorage(new MockStorage());
+    this.calls = new AtomicInteger();
+    this.precomputer =
+        new SummaryPrecomputer(
+            this.storage,
+            prompt -> "summary " + this.calls.incrementAndGet(),
+            new BudgetPromptBuilder(600, 0.02),
+            Duration.ofMillis(100),
+            10,
+            2);
+  }
+
+  @AfterEach
+  public void tearDown() {
+    this.precomputer.shutdown();
+  }
+
+  private void spend(String user, String spent) {
+    Map<String, Object> budget = new HashMap<>();
+    budget.put("category", "food");
+    budget.put("budget", "200");
+    budget.put("spent", spent);
+    this.storage.addDocument("user-" + user, "doc-food", budget);
+  }
+
+  private static void await(BooleanSupplier condition) throws InterruptedException {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+    while (!condition.getAsBoolean() && System.nanoTime() < deadline) {
+      Thread.sleep(10);
+    }
+  }
+
+  @Test
+  public void testBurstOfWritesRegeneratesOnce() throws Exception {
+    assertNull(this.precomputer.fresh("user-1"));
+    for (int i = 1; i <= 5; i++) {
+      this.spend("1", String.valueOf(i * 10));
+    }
+    assertNull(this.precomputer.fresh("user-1"));
+    await(() -> this.precomputer.fresh("user-1") != null);
+    assertEquals("summary 1", this.precomputer.fresh("user-1"));
+    Thread.sleep(200);
+    assertEquals(1, this.calls.get());
+  }
+
+  @Test
+  public void testStaleSummaryIsNotServed() throws Exception {
+    this.precomputer.fresh("user-1");
+    this.spend("1", "10");
+    await(() -> this.precomputer.fresh("user-1") != null);
+
+    this.spend("1", "20");
+    assertNull(this.precomputer.fresh("user-1"));
+    await(() -> this.precomputer.fresh("user-1") != null);
+    assertEquals("summary 2", this.precomputer.fresh("user-1"));
+  }
+
+  @Test
+  public void testOnlyFollowedUsersAreRegenerated() throws Exception {
+    this.spend("1", "10");
+    for (String user : new String[] {"2", "3", "4"}) {
+      this.precomputer.fresh("user-" + user);
+    }
+    // user-2 was the least recently requested of three, with room for two
+    this.spend("2", "10");
+    this.spend("3", "10");
+    await(() -> this.precomputer.fresh("user-3") != null);
+    Thread.sleep(200);
+    assertEquals(1, this.calls.get());
+  }
+}
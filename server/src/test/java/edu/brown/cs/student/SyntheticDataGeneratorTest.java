@@ -0,0 +1,80 @@
+package edu.brown.cs.student;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import edu.brown.cs.student.main.server.storage.DocumentWrite;
+import edu.brown.cs.student.main.server.storage.VersionedStorage;
+import edu.brown.cs.student.main.server.synthetic.SyntheticDataGenerator;
+import edu.brown.cs.student.mocks.MockStorage;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+
+public class SyntheticDataGeneratorTest {
+
+  @Test
+  public void testSameSeedSameData() {
+    SyntheticDataGenerator first = new SyntheticDataGenerator(7, 6, 20);
+    SyntheticDataGenerator second = new SyntheticDataGenerator(7, 6, 20);
+    for (int user = 0; user < 100; user++) {
+      assertEquals(first.budgets(user), second.budgets(user));
+    }
+    assertNotEquals(first.budgets(0), new SyntheticDataGenerator(8, 6, 20).budgets(0));
+    assertNotEquals(first.budgets(0), first.budgets(1));
+  }
+
+  @Test
+  public void testBudgetsAreWellFormed() {
+    SyntheticDataGenerator generator = new SyntheticDataGenerator(1, 15, 12);
+    List<Map<String, Object>> budgets = generator.budgets(3);
+    assertEquals(15, budgets.size());
+
+    Set<Object> categories = new HashSet<>();
+    for (int i = 0; i < budgets.size(); i++) {
+      Map<String, Object> budget = budgets.get(i);
+      categories.add(budget.get("category"));
+      assertTrue(Double.parseDouble(budget.get("budget").toString()) >= 5);
+      assertTrue(List.of("monthly", "weekly", "yearly").contains(budget.get("duration")));
+
+      double[] transactions = generator.transactions(3, i);
+      assertEquals(12, transactions.length);
+      double sum = 0;
+      for (double amount : transactions) {
+        assertTrue(amount >= 0);
+        sum += amount;
+      }
+      assertEquals(Double.parseDouble(budget.get("spent").toString()), sum, 1e-6);
+    }
+    // more budgets than built-in categories still gives distinct ones
+    assertEquals(15, categories.size());
+    assertTrue(categories.contains("misc 1"));
+  }
+
+  @Test
+  public void testLoadWritesInBatches() throws Exception {
+    List<Integer> batchSizes = new ArrayList<>();
+    MockStorage storage =
+        new MockStorage() {
+          @Override
+          public void addDocuments(List<DocumentWrite> writes) {
+            batchSizes.add(writes.size());
+            super.addDocuments(writes);
+          }
+        };
+    VersionedStorage versioned = new VersionedStorage(storage);
+
+    SyntheticDataGenerator generator = new SyntheticDataGenerator(3, 4, 5);
+    assertEquals(40, generator.load(versioned, 100, 10, 16));
+    assertEquals(List.of(16, 16, 8), batchSizes);
+    assertEquals(10, storage.listCollections().size());
+    assertEquals(
+        new HashSet<>(generator.budgets(105)), new HashSet<>(storage.getCollection("user-105")));
+    // the versioning layer saw every write of the batch
+    assertEquals(4, versioned.getVersion("user-105"));
+  }
+}
@@ -0,0 +1,26 @@
+package edu.brown.cs.student.mocks;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/** Builds budget documents shaped like the ones AddHandler stores, for tests. */
+public class Budgets {
+
+  private Budgets() {}
+
+  /**
+   * @param category the budget's category
+   * @param budget the amount budgeted
+   * @param spent the amount spent so far
+   * @return a monthly budget document, which the caller may modify
+   */
+  public static Map<String, Object> budget(String category, String budget, String spent) {
+    Map<String, Object> data = new HashMap<>();
+    data.put("category", category);
+    data.put("budget", budget);
+    data.put("spent", spent);
+    data.put("duration", "monthly");
+    data.put("plant", "orchid");
+    return data;
+  }
+}
@@ -52,6 +52,11 @@ public class MockStorage implements StorageInterface {
     }
   }
 
+  @Override
+  public List<String> listCollections() {
+    return new ArrayList<>(storage.keySet());
+  }
+
   /**
    * Retrieves a document by its ID from the given collection.
    *
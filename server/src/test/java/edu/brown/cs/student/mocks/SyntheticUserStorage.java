@@ -0,0 +1,55 @@
+package edu.brown.cs.student.mocks;
+
+import edu.brown.cs.student.main.server.storage.StorageInterface;
+import edu.brown.cs.student.main.server.synthetic.SyntheticDataGenerator;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Read-only storage holding any number of synthetic users without keeping them in memory: each
+ * user's budgets are regenerated by {@link SyntheticDataGenerator} whenever they are read, so the
+ * same user always has the same budgets.
+ */
+public class SyntheticUserStorage implements StorageInterface {
+
+  private final int users;
+  private final SyntheticDataGenerator generator = new SyntheticDataGenerator(42, 5, 10);
+
+  public SyntheticUserStorage(int users) {
+    this.users = users;
+  }
+
+  @Override
+  public List<String> listCollections() {
+    return new AbstractList<>() {
+      @Override
+      public String get(int index) {
+        return "user-" + index;
+      }
+
+      @Override
+      public int size() {
+        return SyntheticUserStorage.this.users;
+      }
+    };
+  }
+
+  @Override
+  public List<Map<String, Object>> getCollection(String collectionId) {
+    if (!collectionId.startsWith("user-")) {
+      return new ArrayList<>();
+    }
+    return this.generator.budgets(Integer.parseInt(collectionId.substring(5)));
+  }
+
+  @Override
+  public void addDocument(String collectionId, String documentId, Map<String, Object> data) {}
+
+  @Override
+  public void clearCollection(String collectionId) {}
+
+  @Override
+  public void deleteDocument(String collectionId, String documentId) {}
+}